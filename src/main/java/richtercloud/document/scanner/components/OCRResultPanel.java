@@ -15,6 +15,7 @@
 package richtercloud.document.scanner.components;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
 import richtercloud.message.handler.Message;
 import richtercloud.message.handler.MessageHandler;
@@ -24,10 +25,21 @@ import richtercloud.reflection.form.builder.panels.CancelablePanel;
  *
  * @author richter
  */
+/*
+internal implementation notes:
+- texts of recognized pages are displayed as soon as they're available, but
+setValue is only invoked with the complete result in doTaskGUI in order to
+avoid notifying update listeners (which e.g. trigger value detection) with
+partial results
+*/
 public class OCRResultPanel extends CancelablePanel<OCRResultPanelPanel, String> {
     private static final long serialVersionUID = 1L;
     private OCRResultPanelFetcher oCRResultPanelFetcher;
     private final MessageHandler messageHandler;
+    /**
+     * The texts of the pages recognized so far during the current fetch.
+     */
+    private final StringBuilder partialResult = new StringBuilder();
 
     public OCRResultPanel(OCRResultPanelFetcher retriever,
             String initialValue,
@@ -45,10 +57,26 @@ public class OCRResultPanel extends CancelablePanel<OCRResultPanelPanel, String>
                 cancelable));
         this.oCRResultPanelFetcher = retriever;
         this.messageHandler = messageHandler;
+        this.oCRResultPanelFetcher.addProgressListener(progressEvent -> {
+            if(progressEvent.getNewValue() == null) {
+                return;
+            }
+            String partialResult0;
+            synchronized(partialResult) {
+                partialResult.append(progressEvent.getNewValue());
+                partialResult0 = partialResult.toString();
+            }
+            SwingUtilities.invokeLater(() -> {
+                getMainPanel().getoCRResultTextArea().setText(partialResult0);
+            });
+        });
     }
 
     @Override
     protected String doTaskNonGUI() {
+        synchronized(partialResult) {
+            partialResult.setLength(0);
+        }
         String oCRResult;
         try {
             oCRResult = oCRResultPanelFetcher.fetch();
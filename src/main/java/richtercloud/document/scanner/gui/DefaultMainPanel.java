@@ -15,6 +15,7 @@
 package richtercloud.document.scanner.gui;
 
 import java.awt.HeadlessException;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -73,9 +74,13 @@ import richtercloud.document.scanner.ifaces.OCRPanel;
 import richtercloud.document.scanner.ifaces.OCRSelectComponent;
 import richtercloud.document.scanner.ifaces.OCRSelectPanel;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanel;
-import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcher;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcherProgressEvent;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcherProgressListener;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
+import richtercloud.document.scanner.ocr.CachedOCREngine;
+import richtercloud.document.scanner.ocr.OCRPageResult;
+import richtercloud.document.scanner.ocr.OCRPriority;
+import richtercloud.document.scanner.ocr.ParallelOCREngine;
 import richtercloud.document.scanner.setter.ValueSetter;
 import richtercloud.document.scanner.valuedetectionservice.ValueDetectionServiceCreationException;
 import richtercloud.message.handler.ConfirmMessageHandler;
@@ -178,7 +183,7 @@ public class DefaultMainPanel extends MainPanel {
     private final MainPanelDockingManager mainPanelDockingManager;
     private final GroupLayout layout;
     private int documentItemCount = 0;
-    private OCREngine oCREngine;
+    private volatile OCREngine oCREngine;
     private final FieldInitializer queryComponentFieldInitializer;
     private final QueryHistoryEntryStorage entryStorage;
     private final JPAFieldRetriever fieldRetriever;
@@ -256,6 +261,12 @@ public class DefaultMainPanel extends MainPanel {
     @Override
     public void setoCREngine(OCREngine oCREngine) {
         this.oCREngine = oCREngine;
+        //the OCR result panel fetchers use this.oCREngine on every fetch
+        for(OCRSelectComponent oCRSelectComponent : documentSwitchingMap.keySet()) {
+            if(oCRSelectComponent instanceof DefaultOCRSelectComponent) {
+                ((DefaultOCRSelectComponent)oCRSelectComponent).setoCREngine(oCREngine);
+            }
+        }
     }
 
     @Override
@@ -456,8 +467,18 @@ public class DefaultMainPanel extends MainPanel {
 
     @Override
     public void removeActiveDocumentItem() {
-        this.mainPanelDockingManager.removeDocument(this.getoCRSelectComponent());
+        OCRSelectComponent activeOCRSelectComponent = this.getoCRSelectComponent();
+        this.mainPanelDockingManager.removeDocument(activeOCRSelectComponent);
         this.documentItemCount--;
+        this.documentItems.values().remove(activeOCRSelectComponent);
+            //avoid offering the closed document for adding scan results
+        //the images might still be referenced by the entity of the document,
+        //but their cached data isn't needed anymore
+        List<ImageWrapper> images = new LinkedList<>();
+        for(OCRSelectPanel oCRSelectPanel : activeOCRSelectComponent.getoCRSelectPanelPanel().getoCRSelectPanels()) {
+            images.add(oCRSelectPanel.getImage());
+        }
+        DefaultImageWrapper.disposeAll(images);
     }
 
     /**
@@ -646,7 +667,28 @@ public class DefaultMainPanel extends MainPanel {
     }
 
     private void handleOCRSelection() throws ImageWrapperException {
-        BufferedImage imageSelection = oCRSelectComponent.getoCRSelectPanelPanel().getSelection();
+        OCRPanel oCRPanel = documentSwitchingMap.get(oCRSelectComponent).getLeft();
+        OCRSelectPanelPanel oCRSelectPanelPanel = oCRSelectComponent.getoCRSelectPanelPanel();
+        if(oCREngine instanceof CachedOCREngine
+                && oCRSelectPanelPanel instanceof DefaultOCRSelectPanelPanel) {
+            //look up the words of the selection in the result of the
+            //recognition of the page which is much faster than recognizing
+            //the selection
+            Pair<OCRSelectPanel, Rectangle> selectionArea = ((DefaultOCRSelectPanelPanel)oCRSelectPanelPanel).getSelectionArea();
+            if(selectionArea != null) {
+                ImageWrapper image = selectionArea.getLeft().getImage();
+                OCRPageResult pageResult = ((CachedOCREngine<?>)oCREngine).getPageResult(image);
+                if(pageResult != null) {
+                    LOGGER.debug(String.format("using word positions of recognized page for selection %s",
+                            selectionArea.getRight()));
+                    oCRPanel.getoCRResultTextArea().setText(pageResult.getText(selectionArea.getRight(),
+                            image.getInitialWidth(),
+                            image.getInitialHeight()));
+                    return;
+                }
+            }
+        }
+        BufferedImage imageSelection = oCRSelectPanelPanel.getSelection();
         if(imageSelection == null) {
             //image panels only contain selections of width or height <= 0 ->
             //skip silently or cache has been shutdown
@@ -654,12 +696,18 @@ public class DefaultMainPanel extends MainPanel {
         }
         String oCRResult;
         try {
-            oCRResult = oCREngine.recognizeImages(new LinkedList<>(Arrays.asList(imageSelection)));
+            if(oCREngine instanceof ParallelOCREngine) {
+                //the user waits for the result while background pages of
+                //scan jobs might be queued
+                oCRResult = ((ParallelOCREngine<?>)oCREngine).recognizeImages(new LinkedList<>(Arrays.asList(imageSelection)),
+                        OCRPriority.INTERACTIVE);
+            }else {
+                oCRResult = oCREngine.recognizeImages(new LinkedList<>(Arrays.asList(imageSelection)));
+            }
         } catch (OCREngineRecognitionException ex) {
             issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
             return;
         }
-        OCRPanel oCRPanel = documentSwitchingMap.get(oCRSelectComponent).getLeft();
         oCRPanel.getoCRResultTextArea().setText(oCRResult);
     }
 
@@ -675,7 +723,8 @@ public class DefaultMainPanel extends MainPanel {
      * fetching of OCR results.
      */
     private class DocumentTabOCRResultPanelFetcher implements OCRResultPanelFetcher {
-        private final OCRSelectPanelPanelFetcher oCRSelectPanelPanelFetcher;
+        private final OCRSelectPanelPanel oCRSelectPanelPanel;
+        private final DefaultOCRSelectPanelPanelFetcher oCRSelectPanelPanelFetcher;
         private final Map<OCRResultPanelFetcherProgressListener, OCRSelectPanelPanelFetcherProgressListener> listenerMap = new HashMap<>();
 
         /**
@@ -686,12 +735,26 @@ public class DefaultMainPanel extends MainPanel {
          * before {@link #fetch() } works.
          */
         DocumentTabOCRResultPanelFetcher(OCRSelectPanelPanel oCRSelectPanelPanel) {
+            this.oCRSelectPanelPanel = oCRSelectPanelPanel;
             this.oCRSelectPanelPanelFetcher = new DefaultOCRSelectPanelPanelFetcher(oCRSelectPanelPanel,
                     oCREngine);
         }
 
         @Override
         public String fetch() throws OCREngineRecognitionException {
+            OCREngine oCREngine0 = oCREngine;
+                //the engine might have been replaced since the last fetch
+            oCRSelectPanelPanelFetcher.setoCREngine(oCREngine0);
+            if(oCREngine0 instanceof CachedOCREngine) {
+                //the OCR result panel requests a recognition explicitly, so
+                //text which has been taken from the text layer of an imported
+                //document mustn't be returned
+                List<ImageWrapper> images = new LinkedList<>();
+                for(OCRSelectPanel oCRSelectPanel : oCRSelectPanelPanel.getoCRSelectPanels()) {
+                    images.add(oCRSelectPanel.getImage());
+                }
+                ((CachedOCREngine<?>)oCREngine0).requireRecognition(images);
+            }
             return oCRSelectPanelPanelFetcher.fetch();
         }
 
@@ -67,7 +67,7 @@ public class DefaultOCRSelectComponent extends OCRSelectComponent {
     private final JCheckBox valueDetectionCheckBox = new JCheckBox("Show auto detection components on form");
     private float zoomLevel = 1;
     private final EntityPanel entityPanel;
-    private final OCREngine oCREngine;
+    private volatile OCREngine oCREngine;
     private final DocumentScannerConf documentScannerConf;
     private File file;
 
@@ -317,6 +317,15 @@ public class DefaultOCRSelectComponent extends OCRSelectComponent {
         return oCRSelectPanelPanel;
     }
 
+    /**
+     * Sets the engine used for following value detections, e.g. after the
+     * engine has been replaced in the OCR engine configuration.
+     * @param oCREngine the engine
+     */
+    public void setoCREngine(OCREngine oCREngine) {
+        this.oCREngine = oCREngine;
+    }
+
     @Override
     public File getFile() {
         return file;
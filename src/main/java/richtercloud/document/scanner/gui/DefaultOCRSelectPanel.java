@@ -16,6 +16,7 @@ package richtercloud.document.scanner.gui;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
@@ -30,6 +31,8 @@ import richtercloud.document.scanner.ifaces.ImageWrapper;
 import richtercloud.document.scanner.ifaces.ImageWrapperException;
 import richtercloud.document.scanner.ifaces.OCRSelectPanel;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelSelectionListener;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
+import richtercloud.document.scanner.model.imagewrapper.TilePyramid;
 import richtercloud.message.handler.ExceptionMessage;
 import richtercloud.message.handler.IssueHandler;
 
@@ -80,6 +83,21 @@ public class DefaultOCRSelectPanel extends OCRSelectPanel implements MouseListen
 
     private void updatePreferredSize() throws ImageWrapperException {
         int width, height;
+        if(image instanceof DefaultImageWrapper
+                && TilePyramid.isPaintable(image.getRotationDegrees())) {
+            //avoid creating a preview only in order to get its size if it's
+            //painted from the tile pyramid
+            width = (int)(preferredWidth*zoomLevel);
+            height = image.getImageHeightScaled(width);
+            if(image.getRotationDegrees()/90%2 != 0) {
+                int tmp = width;
+                width = height;
+                height = tmp;
+            }
+            this.setPreferredSize(new Dimension(width,
+                    height));
+            return;
+        }
         BufferedImage imagePreview = image.getImagePreview((int) (preferredWidth*zoomLevel));
         if(imagePreview == null) {
             //cache has been shut down
@@ -176,17 +194,24 @@ public class DefaultOCRSelectPanel extends OCRSelectPanel implements MouseListen
         super.paintComponent(g);
         try {
             int width = (int) (preferredWidth*zoomLevel);
-            Image drawImage = this.image.getImagePreview(width);
-            if(drawImage == null) {
-                //cache has been shut down
-                return;
+            if(!(this.image instanceof DefaultImageWrapper)
+                    || !((DefaultImageWrapper)this.image).paintPreview((Graphics2D) g,
+                            width)) {
+                //paintPreview draws only the tiles intersecting with the clip
+                //of g, but requires the tile pyramid which might not have
+                //been built yet
+                Image drawImage = this.image.getImagePreview(width);
+                if(drawImage == null) {
+                    //cache has been shut down
+                    return;
+                }
+                g.drawImage(drawImage,
+                        0, //x
+                        0, //y
+                        null //imageObserver
+                ); //don't scale here by specifying width and height because the
+                    //image is already scaled in ImageWrapper
             }
-            g.drawImage(drawImage,
-                    0, //x
-                    0, //y
-                    null //imageObserver
-            ); //don't scale here by specifying width and height because the
-                //image is already scaled in ImageWrapper
             if(this.getDragStart() != null && this.getDragEnd() != null) {
                 g.drawRect(this.dragSelectionX(),
                         this.dragSelectionY(),
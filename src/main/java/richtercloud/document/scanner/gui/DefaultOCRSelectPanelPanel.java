@@ -25,6 +25,8 @@ import java.util.LinkedList;
 import java.util.List;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.ImageWrapperException;
@@ -144,11 +146,14 @@ public class DefaultOCRSelectPanelPanel extends OCRSelectPanelPanel implements S
     }
 
     /**
+     * Gets the selected area in the coordinates of the image of the panel
+     * scaled to its initial width and height.
      *
-     * @return the selected image or {@code null} if all image panels contain selections with width or height <= 0
+     * @return the panel containing the selection and the selected area or
+     * {@code null} if all image panels contain selections with width or height
+     * {@code <= 0}
      */
-    @Override
-    public BufferedImage getSelection() throws ImageWrapperException {
+    public Pair<OCRSelectPanel, Rectangle> getSelectionArea() {
         for(OCRSelectPanel panel : this.oCRSelectPanels) {
             if(panel.getDragStart() != null && panel.getDragEnd() != null) {
                 int width = panel.dragSelectionWidth();
@@ -177,22 +182,41 @@ public class DefaultOCRSelectPanelPanel extends OCRSelectPanelPanel implements S
                 assert subimageWidth > 0;
                 int subimageHeight = height*panel.getImage().getInitialHeight()/panel.getPreferredSize().height;
                 assert subimageHeight > 0;
-                BufferedImage preview = panel.getImage().getImagePreview(panel.getImage().getInitialWidth());
-                if(preview == null) {
-                    //cache has been shut down
-                    return null;
-                }
-                BufferedImage imageSelection = preview.getSubimage(subimageX, //x
-                        subimageY, //y
-                        subimageWidth, //width
-                        subimageHeight //height
-                );
-                return imageSelection;
+                return new ImmutablePair<>(panel,
+                        new Rectangle(subimageX,
+                                subimageY,
+                                subimageWidth,
+                                subimageHeight));
             }
         }
         return null;
     }
 
+    /**
+     *
+     * @return the selected image or {@code null} if all image panels contain selections with width or height <= 0
+     */
+    @Override
+    public BufferedImage getSelection() throws ImageWrapperException {
+        Pair<OCRSelectPanel, Rectangle> selectionArea = getSelectionArea();
+        if(selectionArea == null) {
+            return null;
+        }
+        OCRSelectPanel panel = selectionArea.getLeft();
+        Rectangle area = selectionArea.getRight();
+        BufferedImage preview = panel.getImage().getImagePreview(panel.getImage().getInitialWidth());
+        if(preview == null) {
+            //cache has been shut down
+            return null;
+        }
+        BufferedImage imageSelection = preview.getSubimage(area.x, //x
+                area.y, //y
+                area.width, //width
+                area.height //height
+        );
+        return imageSelection;
+    }
+
     @Override
     public Dimension getPreferredScrollableViewportSize() {
         return this.getPreferredSize(); //as suggested by
@@ -15,9 +15,9 @@
 package richtercloud.document.scanner.gui;
 
 import java.io.InputStream;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import org.apache.commons.collections4.OrderedMap;
 import org.apache.commons.collections4.map.LinkedMap;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
@@ -31,6 +31,10 @@ import richtercloud.document.scanner.ifaces.OCRSelectPanelPanel;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcher;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcherProgressEvent;
 import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcherProgressListener;
+import richtercloud.document.scanner.ocr.OCRCancellationToken;
+import richtercloud.document.scanner.ocr.OCRPageOrder;
+import richtercloud.document.scanner.ocr.OCRPriority;
+import richtercloud.document.scanner.ocr.ParallelOCREngine;
 
 /**
  * This could be in {@link OCRSelectPanelPanel} as well, but has been once moved
@@ -40,8 +44,13 @@ import richtercloud.document.scanner.ifaces.OCRSelectPanelPanelFetcherProgressLi
  */
 public class DefaultOCRSelectPanelPanelFetcher implements OCRSelectPanelPanelFetcher {
     private final OCRSelectPanelPanel oCRSelectPanelPanel;
-    private final Set<OCRSelectPanelPanelFetcherProgressListener> progressListeners = new HashSet<>();
-    private final OCREngine oCREngine;
+    private final Set<OCRSelectPanelPanelFetcherProgressListener> progressListeners = new CopyOnWriteArraySet<>();
+    private volatile OCREngine oCREngine;
+    /**
+     * The token of the running fetch which allows to cancel it without
+     * canceling recognitions of other components (e.g. running scan jobs).
+     */
+    private volatile OCRCancellationToken cancellationToken;
 
     public DefaultOCRSelectPanelPanelFetcher(OCRSelectPanelPanel oCRSelectPanelPanel,
             OCREngine oCREngine) {
@@ -49,6 +58,15 @@ public class DefaultOCRSelectPanelPanelFetcher implements OCRSelectPanelPanelFet
         this.oCREngine = oCREngine;
     }
 
+    /**
+     * Sets the engine used by following fetches. Running fetches keep using
+     * the engine they've been started with.
+     * @param oCREngine the engine
+     */
+    public void setoCREngine(OCREngine oCREngine) {
+        this.oCREngine = oCREngine;
+    }
+
     @Override
     public void addProgressListener(OCRSelectPanelPanelFetcherProgressListener progressListener) {
         this.progressListeners.add(progressListener);
@@ -61,6 +79,7 @@ public class DefaultOCRSelectPanelPanelFetcher implements OCRSelectPanelPanelFet
 
     @Override
     public String fetch() throws OCREngineRecognitionException {
+        OCREngine oCREngine0 = this.oCREngine;
         List<OCRSelectPanel> imagePanels = oCRSelectPanelPanel.getoCRSelectPanels();
         OrderedMap<ImageWrapper, InputStream> imageStreams = new LinkedMap<>();
         for (final OCRSelectPanel imagePanel : imagePanels) {
@@ -75,18 +94,40 @@ public class DefaultOCRSelectPanelPanelFetcher implements OCRSelectPanelPanelFet
                 throw new OCREngineRecognitionException(ex);
             }
         }
-        oCREngine.addProgressListener(new OCREngineProgressListener() {
-            @Override
-            public void onProgressUpdate(OCREngineProgressEvent progressEvent) {
-                for(OCRSelectPanelPanelFetcherProgressListener progressListener : progressListeners) {
-                    progressListener.onProgressUpdate(new OCRSelectPanelPanelFetcherProgressEvent(progressEvent.getNewValue(), progressEvent.getProgress()));
+        //need to operate on original image in order to get acceptable OCR
+        //results
+        String oCRResult;
+        if(oCREngine0 instanceof ParallelOCREngine) {
+            OCRCancellationToken cancellationToken0 = new OCRCancellationToken();
+            this.cancellationToken = cancellationToken0;
+            //a listener for this invocation only avoids receiving pages of
+            //other documents which are recognized at the same time
+            oCRResult = ((ParallelOCREngine<?>) oCREngine0).recognizeImageStreams(imageStreams,
+                    pageEvent -> {
+                        for(OCRSelectPanelPanelFetcherProgressListener progressListener : progressListeners) {
+                            progressListener.onProgressUpdate(new OCRSelectPanelPanelFetcherProgressEvent(pageEvent.getText(),
+                                    pageEvent.getProgress()));
+                        }
+                    },
+                    OCRPageOrder.ORDERED,
+                    cancellationToken0,
+                    OCRPriority.DOCUMENT);
+        }else {
+            OCREngineProgressListener oCREngineProgressListener = new OCREngineProgressListener() {
+                @Override
+                public void onProgressUpdate(OCREngineProgressEvent progressEvent) {
+                    for(OCRSelectPanelPanelFetcherProgressListener progressListener : progressListeners) {
+                        progressListener.onProgressUpdate(new OCRSelectPanelPanelFetcherProgressEvent(progressEvent.getNewValue(), progressEvent.getProgress()));
+                    }
                 }
+            };
+            oCREngine0.addProgressListener(oCREngineProgressListener);
+            try {
+                oCRResult = oCREngine0.recognizeImageStreams(imageStreams);
+            }finally {
+                oCREngine0.removeProgressListener(oCREngineProgressListener);
             }
-        });
-        String oCRResult;
-        oCRResult = oCREngine.recognizeImageStreams(imageStreams);
-            //need to operate on original image in order to get
-            //acceptable OCR results
+        }
         if(oCRResult == null) {
             //indicates that the OCREngine.recognizeImage has been aborted
             return null;
@@ -96,6 +137,13 @@ public class DefaultOCRSelectPanelPanelFetcher implements OCRSelectPanelPanelFet
 
     @Override
     public void cancelFetch() {
+        if(oCREngine instanceof ParallelOCREngine) {
+            OCRCancellationToken cancellationToken0 = this.cancellationToken;
+            if(cancellationToken0 != null) {
+                cancellationToken0.cancel();
+            }
+            return;
+        }
         this.oCREngine.cancelRecognizeImages();
     }
 }
@@ -90,12 +90,14 @@ import richtercloud.document.scanner.ifaces.OCRSelectPanel;
 import richtercloud.document.scanner.model.Company;
 import richtercloud.document.scanner.model.Document;
 import richtercloud.document.scanner.model.imagewrapper.CachingImageWrapper;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
 import richtercloud.document.scanner.model.imagewrapper.ImageWrapperStorageDirExistsException;
 import richtercloud.document.scanner.model.warninghandler.CompanyWarningHandler;
 import richtercloud.document.scanner.ocr.BinaryNotFoundException;
 import richtercloud.document.scanner.ocr.DelegatingOCREngineFactory;
 import richtercloud.document.scanner.ocr.OCREngineFactory;
 import richtercloud.document.scanner.ocr.OCREngineSelectDialog;
+import richtercloud.document.scanner.ocr.ParallelOCREngine;
 import richtercloud.document.scanner.setter.AmountMoneyPanelSetter;
 import richtercloud.document.scanner.setter.EmbeddableListPanelSetter;
 import richtercloud.document.scanner.setter.LongIdPanelSetter;
@@ -380,6 +382,9 @@ public class DocumentScanner extends javax.swing.JFrame implements Managed<Excep
         },
                 "amount-money-exchange-rate-retriever-init-thread"
         );
+        CachingImageWrapper.configure(documentScannerConf.getPreviewCacheMaxBytes());
+        DefaultImageWrapper.configureRawRasterStore(documentScannerConf.getRawRasterStoreMaxBytes());
+            //before the first image wrapper can be created
         this.cachingImageWrapperInitThread  = new Thread(() -> {
             try {
                 Class.forName(CachingImageWrapper.class.getName());
@@ -647,6 +652,9 @@ public class DocumentScanner extends javax.swing.JFrame implements Managed<Excep
             }
             this.documentController.shutdown();
                 //shuts down this.scannerDevice as well
+            if(this.oCREngine instanceof ParallelOCREngine) {
+                ((ParallelOCREngine) this.oCREngine).shutdown();
+            }
             assert !this.scannerDevice.isOpen();
             if(this.storage != null) {
                 this.storage.shutdown();
@@ -1031,8 +1039,17 @@ public class DocumentScanner extends javax.swing.JFrame implements Managed<Excep
                 return;
             }
             this.documentScannerConf = documentScannerConf1;
+            OCREngine previousOCREngine = this.oCREngine;
             this.oCREngine = oCREngineFactory.create(documentScannerConf.getoCREngineConf());
             mainPanel.setoCREngine(oCREngine);
+            documentController.setoCREngine(oCREngine);
+            //open documents and new scan jobs use the new engine now, so that
+            //the scheduler threads and process pool working directories of
+            //the previous engine can be released (recognitions of running
+            //scan jobs are ended)
+            if(previousOCREngine instanceof ParallelOCREngine) {
+                ((ParallelOCREngine) previousOCREngine).shutdown();
+            }
         }catch(Throwable ex) {
             handleUnexpectedException(ex,
                     "Exception during OCR Engine configuration",
@@ -1056,7 +1073,8 @@ public class DocumentScanner extends javax.swing.JFrame implements Managed<Excep
             List<ImageWrapper> images = Tools.retrieveImages(selectedFile,
                     this,
                     documentScannerConf.getImageWrapperStorageDir(),
-                    issueHandler);
+                    issueHandler,
+                    oCREngine);
             if(images == null) {
                 LOGGER.debug("image retrieval has been canceled, discontinuing adding document");
                 return;
@@ -1142,7 +1160,8 @@ public class DocumentScanner extends javax.swing.JFrame implements Managed<Excep
                 List<ImageWrapper> images = Tools.retrieveImages(selectedFile,
                         this,
                         documentScannerConf.getImageWrapperStorageDir(),
-                        issueHandler);
+                        issueHandler,
+                        oCREngine);
                 if(images == null) {
                     LOGGER.debug("image retrieval has been canceled, discontinuing adding document");
                     return;
@@ -31,11 +31,17 @@ import javax.swing.SwingWorker;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.DocumentAddException;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
+import richtercloud.document.scanner.ifaces.OCREngine;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
 import richtercloud.document.scanner.model.imagewrapper.CachingImageWrapper;
+import richtercloud.document.scanner.ocr.CachedOCREngine;
+import richtercloud.document.scanner.ocr.PdfsandwichOCREngine;
+import richtercloud.document.scanner.ocr.TextLayerQualityCheck;
 import richtercloud.message.handler.IssueHandler;
 import richtercloud.reflection.form.builder.ClassInfo;
 import richtercloud.swing.worker.get.wait.dialog.SwingWorkerCompletionWaiter;
@@ -47,6 +53,7 @@ import richtercloud.swing.worker.get.wait.dialog.SwingWorkerGetWaitDialog;
  */
 public class Tools {
     private final static Logger LOGGER = LoggerFactory.getLogger(Tools.class);
+    private final static TextLayerQualityCheck TEXT_LAYER_QUALITY_CHECK = new TextLayerQualityCheck();
 
     public static List<Class<?>> sortEntityClasses(Set<Class<?>> entityClasses) {
         List<Class<?>> entityClassesSort = new LinkedList<>(entityClasses);
@@ -92,6 +99,40 @@ public class Tools {
             Window waitDialogParent,
             File imageWrapperStorageDir,
             IssueHandler issueHandler) throws DocumentAddException, InterruptedException, ExecutionException {
+        return retrieveImages(documentFile,
+                waitDialogParent,
+                imageWrapperStorageDir,
+                issueHandler,
+                null //oCREngine
+        );
+    }
+
+    /**
+     * Retrieves the images of {@code documentFile} like
+     * {@link #retrieveImages(java.io.File, java.awt.Window, java.io.File, richtercloud.message.handler.IssueHandler) }
+     * and avoids recognizing them where possible.
+     *
+     * If {@code oCREngine} is a {@link CachedOCREngine}, the text layers of
+     * pages which pass {@link TextLayerQualityCheck} (born digital or already
+     * OCRed PDFs) are stored as recognition results of their images. If
+     * {@code oCREngine} is a {@link PdfsandwichOCREngine}, the remaining pages
+     * are recognized with one process in the background.
+     * @param documentFile
+     * @param waitDialogParent
+     * @param imageWrapperStorageDir
+     * @param issueHandler
+     * @param oCREngine the engine used to recognize the images or {@code null}
+     * @return the retrieved images or {@code null} if the retrieval has been
+     * canceled (in dialog)
+     * @throws DocumentAddException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static List<ImageWrapper> retrieveImages(final File documentFile,
+            Window waitDialogParent,
+            File imageWrapperStorageDir,
+            IssueHandler issueHandler,
+            OCREngine oCREngine) throws DocumentAddException, InterruptedException, ExecutionException {
         if(documentFile == null) {
             throw new IllegalArgumentException("documentFile mustn't be null");
         }
@@ -110,6 +151,10 @@ public class Tools {
                     InputStream pdfInputStream = new FileInputStream(documentFile);
                     try (PDDocument document = PDDocument.load(pdfInputStream)) {
                         PDFRenderer pdfRenderer = new PDFRenderer(document);
+                        PDFTextStripper textStripper = oCREngine instanceof CachedOCREngine
+                                ? new PDFTextStripper()
+                                : null;
+                        int textLayerPageCount = 0;
                         for(int page=0; page<document.getNumberOfPages(); page++) {
                             if(dialog.isCanceled()) {
                                 document.close();
@@ -121,11 +166,34 @@ public class Tools {
                                     image,
                                     issueHandler);
                             retValue.add(imageWrapper);
+                            if(textStripper != null
+                                    && useTextLayer(document,
+                                            page,
+                                            textStripper,
+                                            imageWrapper,
+                                            (CachedOCREngine<?>) oCREngine)) {
+                                textLayerPageCount++;
+                            }
                         }
+                        LOGGER.debug(String.format("using text layer of %d of %d pages of '%s'",
+                                textLayerPageCount,
+                                document.getNumberOfPages(),
+                                documentFile.getAbsolutePath()));
                     }
                 }catch(IOException ex) {
                     throw new DocumentAddException(ex);
                 }
+                if(oCREngine instanceof PdfsandwichOCREngine) {
+                    try {
+                        ((PdfsandwichOCREngine) oCREngine).recognizeDocumentAsync(documentFile,
+                                retValue);
+                    } catch (OCREngineRecognitionException ex) {
+                        //pages are recognized separately
+                        LOGGER.warn(String.format("starting recognition of document '%s' failed",
+                                documentFile.getAbsolutePath()),
+                                ex);
+                    }
+                }
                 return retValue;
             }
 
@@ -142,6 +210,40 @@ public class Tools {
         return retValue;
     }
 
+    /**
+     * Stores the text layer of page {@code page} of {@code document} as
+     * text layer result of {@code image} (see
+     * {@link CachedOCREngine#putTextLayerResult(richtercloud.document.scanner.ifaces.ImageWrapper, java.lang.String) })
+     * if it passes
+     * {@link #TEXT_LAYER_QUALITY_CHECK} so that the page isn't recognized.
+     * @return {@code true} if the text layer has been used, {@code false}
+     * otherwise
+     */
+    private static boolean useTextLayer(PDDocument document,
+            int page,
+            PDFTextStripper textStripper,
+            ImageWrapper image,
+            CachedOCREngine<?> oCREngine) {
+        try {
+            //PDFTextStripper pages are 1-based
+            textStripper.setStartPage(page+1);
+            textStripper.setEndPage(page+1);
+            String text = textStripper.getText(document);
+            if(!TEXT_LAYER_QUALITY_CHECK.isUsable(text)) {
+                return false;
+            }
+            oCREngine.putTextLayerResult(image,
+                    text);
+            return true;
+        } catch (IOException | OCREngineRecognitionException ex) {
+            //the page is recognized
+            LOGGER.warn(String.format("using text layer of page %d failed",
+                    page),
+                    ex);
+            return false;
+        }
+    }
+
     private Tools() {
     }
 }
@@ -38,6 +38,8 @@ import richtercloud.document.scanner.components.OCRResultFormatter;
 import richtercloud.document.scanner.gui.Constants;
 import richtercloud.document.scanner.gui.scanner.ScannerConf;
 import richtercloud.document.scanner.ifaces.OCREngineConf;
+import richtercloud.document.scanner.model.imagewrapper.CachingImageWrapper;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
 import richtercloud.document.scanner.ocr.TesseractOCREngineConf;
 import richtercloud.document.scanner.valuedetectionservice.ContactValueDetectionServiceConf;
 import richtercloud.document.scanner.valuedetectionservice.CurrencyFormatValueDetectionServiceConf;
@@ -334,6 +336,21 @@ public class DocumentScannerConf implements Serializable {
      * configurations (like storage configurations).
      */
     private File binaryDownloadDir = BINARY_DOWNLOAD_DIR_DEFAULT;
+    /**
+     * The heap budget of the image preview caches in bytes or {@code 0} in
+     * order to use {@link CachingImageWrapper#CACHE_MAX_BYTES_DEFAULT}. Swing
+     * and JavaFX previews get one half of it each.
+     */
+    @Parameter(names = {"--preview-cache-max-bytes"}, description = "The maximum amount of memory in bytes used for cached image previews, one half each for Swing and JavaFX previews")
+    private long previewCacheMaxBytes;
+    /**
+     * The maximum size of uncompressed rasters of page images kept in the
+     * image wrapper storage directory in bytes or {@code 0} in order to
+     * disable them (see
+     * {@link DefaultImageWrapper#configureRawRasterStore(long) }).
+     */
+    @Parameter(names = {"--raw-raster-store-max-bytes"}, description = "The maximum amount of disk space in bytes used for uncompressed page images which are read through memory mapping (0 disables them)")
+    private long rawRasterStoreMaxBytes;
 
     /**
      * Creates an configuration with default values.
@@ -646,6 +663,8 @@ public class DocumentScannerConf implements Serializable {
                 documentScannerConf.getFieldOrderMap(),
                 documentScannerConf.getBinaryDownloadDir()
         );
+        this.previewCacheMaxBytes = documentScannerConf.previewCacheMaxBytes;
+        this.rawRasterStoreMaxBytes = documentScannerConf.rawRasterStoreMaxBytes;
     }
 
     public Set<String> getValueDetectionServiceJARPaths() {
@@ -664,6 +683,25 @@ public class DocumentScannerConf implements Serializable {
         this.binaryDownloadDir = binaryDownloadDir;
     }
 
+    public long getPreviewCacheMaxBytes() {
+        if(previewCacheMaxBytes <= 0) {
+            return CachingImageWrapper.CACHE_MAX_BYTES_DEFAULT;
+        }
+        return previewCacheMaxBytes;
+    }
+
+    public void setPreviewCacheMaxBytes(long previewCacheMaxBytes) {
+        this.previewCacheMaxBytes = previewCacheMaxBytes;
+    }
+
+    public long getRawRasterStoreMaxBytes() {
+        return Math.max(0, rawRasterStoreMaxBytes);
+    }
+
+    public void setRawRasterStoreMaxBytes(long rawRasterStoreMaxBytes) {
+        this.rawRasterStoreMaxBytes = rawRasterStoreMaxBytes;
+    }
+
     public Map<Class<?>, List<Field>> getFieldOrderMap() {
         return fieldOrderMap;
     }
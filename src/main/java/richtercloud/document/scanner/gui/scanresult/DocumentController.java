@@ -124,7 +124,11 @@ public class DocumentController {
      */
     private final Map<String, SaneSession> addressSessionMap = new HashMap<>();
     private final IssueHandler issueHandler;
-    private final OCREngine<OCREngineConf> oCREngine;
+    /**
+     * The engine passed to new scan jobs. Running scan jobs keep using the
+     * engine they've been created with.
+     */
+    private volatile OCREngine<OCREngineConf> oCREngine;
 
     public DocumentController(IssueHandler issueHandler,
             OCREngine<OCREngineConf> oCREngine) {
@@ -132,6 +136,10 @@ public class DocumentController {
         this.oCREngine = oCREngine;
     }
 
+    public void setoCREngine(OCREngine<OCREngineConf> oCREngine) {
+        this.oCREngine = oCREngine;
+    }
+
     public SaneDevice getScannerDevice(String scannerName,
             Map<String, ScannerConf> scannerConfMap,
             String scannerAddressFallback,
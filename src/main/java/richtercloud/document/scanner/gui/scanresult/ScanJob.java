@@ -32,6 +32,10 @@ import richtercloud.document.scanner.ifaces.OCREngine;
 import richtercloud.document.scanner.ifaces.OCREngineConf;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
 import richtercloud.document.scanner.model.imagewrapper.CachingImageWrapper;
+import richtercloud.document.scanner.ocr.OCRCancellationToken;
+import richtercloud.document.scanner.ocr.OCRPageOrder;
+import richtercloud.document.scanner.ocr.OCRPriority;
+import richtercloud.document.scanner.ocr.ParallelOCREngine;
 import richtercloud.message.handler.ExceptionMessage;
 import richtercloud.message.handler.IssueHandler;
 
@@ -106,7 +110,18 @@ public class ScanJob extends DocumentJob implements Runnable {
             try {
                 OrderedMap<ImageWrapper, InputStream> imageInputStreamMap = new LinkedMap<>();
                 imageInputStreamMap.put(imageWrapper, imageWrapper.getOriginalImageStream());
-                oCREngine.recognizeImageStreams(imageInputStreamMap);
+                if(oCREngine instanceof ParallelOCREngine) {
+                    //nobody waits for the result which is only cached for
+                    //later use, so it mustn't delay the OCR of the open
+                    //document or of selections
+                    ((ParallelOCREngine<?>)oCREngine).recognizeImageStreams(imageInputStreamMap,
+                            null, //pageListener
+                            OCRPageOrder.ORDERED,
+                            new OCRCancellationToken(),
+                            OCRPriority.BACKGROUND);
+                }else {
+                    oCREngine.recognizeImageStreams(imageInputStreamMap);
+                }
             } catch (ImageWrapperException | OCREngineRecognitionException ex) {
                 issueHandler.handle(new ExceptionMessage(ex));
             }
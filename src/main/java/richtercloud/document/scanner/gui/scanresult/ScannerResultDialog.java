@@ -71,6 +71,7 @@ import richtercloud.document.scanner.gui.scanner.DocumentSource;
 import richtercloud.document.scanner.ifaces.DocumentItem;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
 import richtercloud.document.scanner.ifaces.ImageWrapperException;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
 import richtercloud.message.handler.ExceptionMessage;
 import richtercloud.message.handler.JavaFXDialogIssueHandler;
 import richtercloud.message.handler.Message;
@@ -686,7 +687,11 @@ public class ScannerResultDialog extends JDialog {
             });
             deletePageButton.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
                 try {
+                    List<ImageWrapper> deletedImageWrappers = scanResultPane.getSelectedScanResults().stream()
+                            .map(scanResult -> scanResult.getImageWrapper())
+                            .collect(Collectors.toList());
                     scanResultPane.removeScanResultPanes(scanResultPane.getSelectedScanResults());
+                    DefaultImageWrapper.disposeAll(deletedImageWrappers);
                     if(scanResultPane.getSelectedScanResults().isEmpty()) {
                         //is most likely always empty, but adding this simple
                         //check might avoid trouble in the future
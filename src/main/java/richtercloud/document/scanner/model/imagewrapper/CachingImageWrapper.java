@@ -14,23 +14,21 @@
  */
 package richtercloud.document.scanner.model.imagewrapper;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.Striped;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javafx.scene.image.WritableImage;
-import javax.cache.Cache;
-import javax.cache.CacheManager;
-import javax.cache.Caching;
-import javax.cache.configuration.FactoryBuilder;
-import javax.cache.configuration.MutableConfiguration;
-import javax.cache.expiry.AccessedExpiryPolicy;
-import javax.cache.expiry.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.ImageWrapperException;
@@ -42,75 +40,228 @@ import richtercloud.message.handler.IssueHandler;
  * original image from disk in order to save memory/freeing of image data after
  * they've been used in memeory.
  *
+ * The previews are stored in two caches for Swing and JavaFX previews which
+ * get one half of a heap budget each (see {@link #configure(long) }). Previews
+ * are weighted with their estimated size (width &times; height &times; bytes
+ * per pixel) and the least recently used previews are evicted if the half of
+ * their cache is exceeded or if they haven't been accessed for an hour. Cache statistics are logged on
+ * {@link #shutdown() } and can be retrieved with
+ * {@link #getPreviewCacheStats() } and {@link #getPreviewFXCacheStats() }.
+ *
+ * Requests for different images run in parallel while concurrent requests for
+ * the same image are processed one after another so that only the first one
+ * generates a preview which the others get from the cache.
+ *
  * Currently this class manages its cache in static constants which is not too
  * elegant and should be changed to a MVC architecture one day.
  *
  * @author richter
  */
+/*
+internal implementation notes:
+- The caches use a concurrency level of 1 because Guava splits the maximum
+weight between segments which would cause large previews to be evicted long
+before the budget is used up. Contention doesn't matter since access is
+serialized per image anyway.
+- JavaFX images store 4 bytes per pixel independently of the source image.
+- The budget is split rather than shared since Guava caches can't share a
+maximum weight and a single cache for both preview types would mix up their
+statistics. A half of the budget is left unused if only one type of previews
+is requested.
+*/
 public class CachingImageWrapper extends DefaultImageWrapper {
     private static final long serialVersionUID = 1L;
     private final static Logger LOGGER = LoggerFactory.getLogger(CachingImageWrapper.class);
     private final static String SHUTDOWN_TEMPLATE = "returning null because shutdown has been requested";
-    private final static CacheManager MANAGER =
-                 Caching.getCachingProvider().getCacheManager();
-    private final static Cache<Long, Map<Integer, BufferedImage>> CACHE;
-    private final static Cache<Long, Map<Integer, WritableImage>> JAVAFX_CACHE;
-    private final static Cache<Long, File> STREAM_CACHE;
-    static {
-        MutableConfiguration<Long, Map<Integer, BufferedImage>> config = new MutableConfiguration<>();
-        MutableConfiguration<Long, Map<Integer, WritableImage>> javaFXConfig = new MutableConfiguration<>();
-        MutableConfiguration<Long, File> streamConfig = new MutableConfiguration<>();
-        for(MutableConfiguration config0 : new MutableConfiguration[] {config, javaFXConfig, streamConfig}) {
-            config0.setStoreByValue(false)
-                    .setStatisticsEnabled(true)
-                    .setExpiryPolicyFactory(FactoryBuilder.factoryOf(
-                            new AccessedExpiryPolicy(new Duration(TimeUnit.HOURS, 1))));
+    /**
+     * The default heap budget of both preview caches together.
+     */
+    public final static long CACHE_MAX_BYTES_DEFAULT = Runtime.getRuntime().maxMemory()/4;
+    private final static long CACHE_EXPIRY_HOURS = 1;
+    private final static int JAVAFX_BYTES_PER_PIXEL = 4;
+
+    private final static class CacheKey {
+        private final long cacheId;
+        private final int width;
+
+        CacheKey(long cacheId,
+                int width) {
+            this.cacheId = cacheId;
+            this.width = width;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*Long.hashCode(cacheId)+width;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj) {
+                return true;
+            }
+            if(!(obj instanceof CacheKey)) {
+                return false;
+            }
+            final CacheKey other = (CacheKey) obj;
+            return this.cacheId == other.cacheId
+                    && this.width == other.width;
+        }
+    }
+    private static volatile Cache<CacheKey, BufferedImage> cache = createCache(CACHE_MAX_BYTES_DEFAULT/2,
+            CachingImageWrapper::weighPreview,
+            "preview");
+    private static volatile Cache<CacheKey, WritableImage> javaFXCache = createCache(CACHE_MAX_BYTES_DEFAULT/2,
+            CachingImageWrapper::weighPreviewFX,
+            "Java FX preview");
+    private static volatile boolean shutdown = false;
+
+    private static int weighPreview(CacheKey key,
+            BufferedImage value) {
+        return getImageBytes(value);
+    }
+
+    private static int weighPreviewFX(CacheKey key,
+            WritableImage value) {
+        return (int)Math.min(Integer.MAX_VALUE,
+                (long)value.getWidth()*(long)value.getHeight()*JAVAFX_BYTES_PER_PIXEL);
+    }
+
+    private static <V> Cache<CacheKey, V> createCache(long maxBytes,
+            Weigher<CacheKey, V> weigher,
+            String name) {
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .weigher(weigher)
+                .expireAfterAccess(CACHE_EXPIRY_HOURS, TimeUnit.HOURS)
+                .recordStats()
+                .<CacheKey, V>removalListener(notification -> {
+                    if(notification.getCause() == RemovalCause.SIZE) {
+                        LOGGER.trace(String.format("evicted %s cache entry for width %d id %d because the budget of %d bytes is exceeded",
+                                name,
+                                notification.getKey().width,
+                                notification.getKey().cacheId,
+                                maxBytes));
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Replaces the preview caches with empty caches which are limited to one
+     * half of {@code maxBytes} each. Should be invoked once before the first
+     * preview is requested.
+     * @param maxBytes the maximum estimated size of all previews in bytes
+     */
+    public static void configure(long maxBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes has to be > 0");
+        }
+        SHUTDOWN_LOCK.writeLock().lock();
+        try {
+            cache = createCache(maxBytes/2,
+                    CachingImageWrapper::weighPreview,
+                    "preview");
+            javaFXCache = createCache(maxBytes/2,
+                    CachingImageWrapper::weighPreviewFX,
+                    "Java FX preview");
+            LOGGER.debug(String.format("configured preview caches with a budget of %d bytes",
+                    maxBytes));
+        }finally {
+            SHUTDOWN_LOCK.writeLock().unlock();
         }
-        CACHE = MANAGER.createCache("cache",
-                config);
-        JAVAFX_CACHE = MANAGER.createCache("javafx-cache",
-                javaFXConfig);
-        STREAM_CACHE = MANAGER.createCache("stream-cache",
-                streamConfig);
     }
-    private static boolean shutdown = false;
 
     /**
-     * Avoids <pre>java.lang.IllegalStateException: null
-     *     at org.ehcache.jcache.JCache.checkNotClosed(JCache.java:763) ~[jcache-1.0.1.jar:na]</pre>
+     * Gets the hit, miss and eviction statistics of the cache of Swing
+     * previews since it has been created (see {@link #configure(long) }).
+     * @return the statistics
+     */
+    public static CacheStats getPreviewCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Gets the hit, miss and eviction statistics of the cache of JavaFX
+     * previews since it has been created (see {@link #configure(long) }).
+     * @return the statistics
+     */
+    public static CacheStats getPreviewFXCacheStats() {
+        return javaFXCache.stats();
+    }
+
+    /**
+     * Waits for running requests, logs cache statistics and releases all
+     * cached previews and streams. All following requests return
+     * {@code null}.
      */
     /*
     internal implementation notes:
-    - this might close JCaches in other classes as well which might be
-    troublesome, so if other classes use JCache as well, introduce a shared
-    shutdown lock
     - the possibility that shutdown doesn't get this lock before the next thread
-    invoking getOriginalImageStream0 exists and can only be avoid with a
+    requesting a preview or stream exists and can only be avoid with a
     prioritizable lock like it's used in reflection-form-builder-jpa
     */
     public static void shutdown() {
-        STREAM_CACHE_LOCK.lock();
+        SHUTDOWN_LOCK.writeLock().lock();
         try {
-            Caching.getCachingProvider().close();
+            LOGGER.info(String.format("preview cache statistics: %s",
+                    cache.stats()));
+            LOGGER.info(String.format("Java FX preview cache statistics: %s",
+                    javaFXCache.stats()));
+            cache.invalidateAll();
+            javaFXCache.invalidateAll();
+            DefaultImageWrapper.shutdownStreamCache();
             shutdown = true;
         }finally {
-            STREAM_CACHE_LOCK.unlock();
+            SHUTDOWN_LOCK.writeLock().unlock();
         }
     }
     private final long cacheId;
     private final static AtomicInteger CACHE_ID_INTEGER = new AtomicInteger();
     /**
-     * The lock for writing to and reading from the stream cache.
+     * The number of locks in {@link #CACHE_ID_LOCKS}.
+     */
+    private final static int CACHE_ID_LOCK_STRIPES = 64;
+    /**
+     * The locks for generating and storing previews and streams of one cache
+     * id and changing its rotation. Requests for different images can run in
+     * parallel while concurrent requests for the same image wait for the first
+     * one and use its result.
      */
     /*
     internal implementation notes:
-    - a static STREAM_CACHE needs a static lock; this also works around the
-    problem that during (de-)serialization the locks needs to be checked for
-    initialization
+    - static locks work around the problem that during (de-)serialization the
+    locks needs to be checked for initialization
+    - locks are striped by cache id rather than by cache id and width because a
+    change of the rotation invalidates all entries of a cache id
+    - the locks are reentrant which is necessary because getImagePreviewFX
+    invokes getImagePreview of the same instance
     */
-    private final static Lock STREAM_CACHE_LOCK = new ReentrantLock();
-    private final static Lock PREVIEW_CACHE_LOCK = new ReentrantLock();
-    private final static Lock PREVIEW_FX_CACHE_LOCK = new ReentrantLock();
+    private final static Striped<Lock> CACHE_ID_LOCKS = Striped.lock(CACHE_ID_LOCK_STRIPES);
+    /**
+     * Allows requests to run in parallel and {@link #shutdown() } to wait for
+     * them.
+     */
+    private final static ReadWriteLock SHUTDOWN_LOCK = new ReentrantReadWriteLock();
+
+    /**
+     * Acquires the shutdown lock for reading and the lock of this instance's
+     * cache id.
+     * @return the acquired lock of the cache id which has to be passed to
+     * {@link #unlockCacheId(java.util.concurrent.locks.Lock) }
+     */
+    private Lock lockCacheId() {
+        SHUTDOWN_LOCK.readLock().lock();
+        Lock retValue = CACHE_ID_LOCKS.get(cacheId);
+        retValue.lock();
+        return retValue;
+    }
+
+    private void unlockCacheId(Lock cacheIdLock) {
+        cacheIdLock.unlock();
+        SHUTDOWN_LOCK.readLock().unlock();
+    }
 
     public CachingImageWrapper(File storageDir,
             BufferedImage image,
@@ -133,23 +284,15 @@ public class CachingImageWrapper extends DefaultImageWrapper {
      */
     @Override
     public BufferedImage getImagePreview(int width) throws ImageWrapperException {
-        PREVIEW_CACHE_LOCK.lock();
+        Lock cacheIdLock = lockCacheId();
         try {
             if(shutdown) {
                 LOGGER.trace(SHUTDOWN_TEMPLATE);
                 return null;
             }
-            Map<Integer, BufferedImage> wrapperCacheEntry = CACHE.get(cacheId);
-            if(wrapperCacheEntry == null) {
-                wrapperCacheEntry = new HashMap<>();
-                CACHE.put(cacheId, wrapperCacheEntry);
-                LOGGER.trace(String.format("creating empty preview cache cache entry for id %d",
-                        cacheId));
-            }else {
-                LOGGER.trace(String.format("using preview cache entry for id %d",
-                        cacheId));
-            }
-            BufferedImage imagePreview = wrapperCacheEntry.get(width);
+            CacheKey key = new CacheKey(cacheId,
+                    width);
+            BufferedImage imagePreview = cache.getIfPresent(key);
             if(imagePreview == null) {
                 imagePreview = super.getImagePreview(width);
                 if(imagePreview == null) {
@@ -157,10 +300,10 @@ public class CachingImageWrapper extends DefaultImageWrapper {
                     LOGGER.trace(SHUTDOWN_TEMPLATE);
                     return null;
                 }
-                LOGGER.trace(String.format("storing Java FX preview cache entry for width %d id %d",
+                LOGGER.trace(String.format("storing preview cache entry for width %d id %d",
                         width,
                         cacheId));
-                wrapperCacheEntry.put(width, imagePreview);
+                cache.put(key, imagePreview);
             }else {
                 LOGGER.trace(String.format("using preview cache entry for width %d id %d",
                         width,
@@ -168,29 +311,21 @@ public class CachingImageWrapper extends DefaultImageWrapper {
             }
             return imagePreview;
         }finally {
-            PREVIEW_CACHE_LOCK.unlock();
+            unlockCacheId(cacheIdLock);
         }
     }
 
     @Override
     public WritableImage getImagePreviewFX(int width) throws ImageWrapperException {
-        PREVIEW_FX_CACHE_LOCK.lock();
+        Lock cacheIdLock = lockCacheId();
         try {
             if(shutdown) {
                 LOGGER.trace(SHUTDOWN_TEMPLATE);
                 return null;
             }
-            Map<Integer, WritableImage> wrapperCacheEntry = JAVAFX_CACHE.get(cacheId);
-            if(wrapperCacheEntry == null) {
-                wrapperCacheEntry = new HashMap<>();
-                JAVAFX_CACHE.put(cacheId, wrapperCacheEntry);
-                LOGGER.trace(String.format("creating empty Java FX preview cache cache entry for id %d",
-                        cacheId));
-            }else {
-                LOGGER.trace(String.format("using Java FX preview cache entry for id %d",
-                        cacheId));
-            }
-            WritableImage imagePreview = wrapperCacheEntry.get(width);
+            CacheKey key = new CacheKey(cacheId,
+                    width);
+            WritableImage imagePreview = javaFXCache.getIfPresent(key);
             if(imagePreview == null) {
                 imagePreview = super.getImagePreviewFX(width);
                 if(imagePreview == null) {
@@ -200,7 +335,7 @@ public class CachingImageWrapper extends DefaultImageWrapper {
                 LOGGER.trace(String.format("storing Java FX preview cache entry for width %d id %d",
                         width,
                         cacheId));
-                wrapperCacheEntry.put(width, imagePreview);
+                javaFXCache.put(key, imagePreview);
             }else {
                 LOGGER.trace(String.format("using Java FX preview cache entry for width %d id %d",
                         width,
@@ -208,50 +343,41 @@ public class CachingImageWrapper extends DefaultImageWrapper {
             }
             return imagePreview;
         }finally {
-            PREVIEW_FX_CACHE_LOCK.unlock();
+            unlockCacheId(cacheIdLock);
         }
     }
 
     @Override
     public File getOriginalImageStream0(String formatName) throws ImageWrapperException {
-        STREAM_CACHE_LOCK.lock();
+        Lock cacheIdLock = lockCacheId();
         try {
             if(shutdown) {
                 LOGGER.trace(SHUTDOWN_TEMPLATE);
                 return null;
             }
-            File streamSource = STREAM_CACHE.get(cacheId);
-            if(streamSource == null) {
-                streamSource = super.getOriginalImageStream0(formatName);
-                STREAM_CACHE.put(cacheId, streamSource);
-                LOGGER.trace(String.format("storing orginal stream cache entry for id %d",
-                        cacheId));
-            }else {
-                LOGGER.trace(String.format("using orginal stream cache entry for id %d",
-                        cacheId));
-            }
-            return streamSource;
+            //rotated streams are cached by DefaultImageWrapper
+            return super.getOriginalImageStream0(formatName);
         }finally {
-            STREAM_CACHE_LOCK.unlock();
+            unlockCacheId(cacheIdLock);
         }
     }
 
     @Override
     public void setRotationDegrees(double rotationDegrees) throws ImageWrapperException{
-        STREAM_CACHE_LOCK.lock();
+        Lock cacheIdLock = lockCacheId();
         try {
             if(shutdown) {
                 LOGGER.trace("returning immediately because shutdown has been requested");
                 return;
             }
             super.setRotationDegrees(rotationDegrees);
-            CACHE.remove(cacheId);
-            JAVAFX_CACHE.remove(cacheId);
-            STREAM_CACHE.remove(cacheId);
-            LOGGER.trace(String.format("clearing preview and stream caches after change of rotation for id %d",
+            cache.asMap().keySet().removeIf(key -> key.cacheId == cacheId);
+            javaFXCache.asMap().keySet().removeIf(key -> key.cacheId == cacheId);
+            //streams are cached per rotation and don't need to be cleared
+            LOGGER.trace(String.format("clearing preview caches after change of rotation for id %d",
                     cacheId));
         }finally {
-            STREAM_CACHE_LOCK.unlock();
+            unlockCacheId(cacheIdLock);
         }
     }
 }
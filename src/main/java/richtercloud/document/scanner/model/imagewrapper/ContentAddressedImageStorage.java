@@ -0,0 +1,354 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.ifaces.ImageWrapperException;
+
+/**
+ * Stores images in PNG files named after the SHA-256 hash of their pixels so
+ * that identical images are stored and encoded only once.
+ *
+ * Files are located in a subdirectory of the storage directory named after the
+ * first two characters of the hash in order to avoid directories with a huge
+ * number of files. They're written to a temporary file and renamed atomically
+ * so that concurrent writers of the same image don't need to be coordinated
+ * and readers never see partially written files.
+ *
+ * Every object storing an image (the owner) is tracked with a weak reference
+ * and a file is deleted once all its owners have been garbage collected.
+ * Owners can declare that they're no longer used with
+ * {@link #dispose(java.io.File, java.lang.Object) } which keeps the file, but
+ * notifies the listener passed to the constructor once all owners of a file
+ * are disposed or garbage collected so that data derived from it can be
+ * released.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- The hash is computed from the pixels rather than the encoded bytes because
+that allows to skip encoding of images which are already stored. Encoded images
+are stored with the hash which has been computed for their pixels before (e.g.
+persisted as name of the storage file) since hashing them requires decoding. It includes
+the dimensions and the ARGB values of all pixels, so that images which look
+the same share a file even if they have different image types (e.g. a scan and
+the same page imported from a PDF).
+- Checking for an existing file, renaming, tracking owners and deleting files
+of collected owners happen under one lock in order to avoid deleting a file
+which has just been referenced again. Hashing and encoding happen outside the
+lock. The listener is invoked while holding the lock which is fine as long as it
+doesn't call back into the storage.
+- Files aren't deleted on dispose because disposed wrappers can still be
+referenced by entities (e.g. of a document which has been opened again) and
+need to be able to read their file. Collected owners are expunged on every
+call of a storage method rather than by a separate thread, so that files of
+collected wrappers might remain until the next call.
+- Owners aren't persisted since the storage directory is emptied at
+application shutdown; files which already exist when they're stored for the
+first time are reused because their content is identified by their name.
+*/
+final class ContentAddressedImageStorage {
+    private final static Logger LOGGER = LoggerFactory.getLogger(ContentAddressedImageStorage.class);
+    private final static String FORMAT = "png";
+    private final static int SHARD_LENGTH = 2;
+    private final static String TMP_SUFFIX = ".tmp";
+    private final static Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * A weak reference to an object storing an image.
+     */
+    private final static class Owner extends WeakReference<Object> {
+        private final File storageFile;
+        private boolean disposed = false;
+
+        Owner(Object referent,
+                File storageFile,
+                ReferenceQueue<Object> queue) {
+            super(referent,
+                    queue);
+            this.storageFile = storageFile;
+        }
+    }
+
+    private final Map<File, List<Owner>> owners = new HashMap<>();
+    private final ReferenceQueue<Object> ownerQueue = new ReferenceQueue<>();
+    private final Consumer<File> unusedListener;
+
+    /**
+     * Creates a new {@code ContentAddressedImageStorage}.
+     * @param unusedListener invoked with a storage file once all its owners
+     * are disposed or garbage collected
+     */
+    ContentAddressedImageStorage(Consumer<File> unusedListener) {
+        this.unusedListener = unusedListener;
+    }
+
+    /**
+     * Computes the content hash of {@code image}.
+     * @param image the image
+     * @return the hash as hexadecimal string
+     */
+    static String hash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putInt(width)
+                .putInt(height);
+        int[] row = new int[width];
+        ByteBuffer rowBytes = ByteBuffer.allocate(width*Integer.BYTES);
+        for(int y=0; y<height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            rowBytes.clear();
+            rowBytes.asIntBuffer().put(row);
+            hasher.putBytes(rowBytes.array());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Gets the hash of the image stored in {@code storageFile} from its name.
+     * @param storageFile the file
+     * @return the hash or {@code null} if {@code storageFile} isn't named like
+     * a file of this storage, e.g. because it has been created by older
+     * versions which named files after a counter
+     */
+    static String getHash(File storageFile) {
+        String name = storageFile.getName();
+        File shardDir = storageFile.getParentFile();
+        if(!HASH_PATTERN.matcher(name).matches()
+                || shardDir == null
+                || !shardDir.getName().equals(name.substring(0, SHARD_LENGTH))) {
+            return null;
+        }
+        return name;
+    }
+
+    private static File getStorageFile(File storageDir,
+            String hash) {
+        return new File(new File(storageDir, hash.substring(0, SHARD_LENGTH)),
+                hash);
+    }
+
+    /**
+     * Stores {@code image} in {@code storageDir} unless an identical image is
+     * already stored and adds {@code owner} to the owners of the file.
+     * @param storageDir the storage directory
+     * @param image the image
+     * @param owner the object using the file
+     * @return the file containing the encoded image
+     * @throws IOException if the image can't be encoded or written
+     */
+    File store(File storageDir,
+            BufferedImage image,
+            Object owner) throws IOException {
+        File retValue = getStorageFile(storageDir,
+                hash(image));
+        synchronized(this) {
+            expungeCollectedOwners();
+            if(retValue.isFile()) {
+                LOGGER.trace(String.format("image already stored in '%s'",
+                        retValue.getAbsolutePath()));
+                acquire(retValue,
+                        owner);
+                return retValue;
+            }
+        }
+        File tmpFile = createTmpFile(retValue);
+        try {
+            if(!ImageIO.write(image,
+                    FORMAT,
+                    tmpFile)) {
+                throw new ImageWrapperException(String.format("no image writer for format '%s' found",
+                        FORMAT));
+            }
+            moveIntoPlace(tmpFile,
+                    retValue,
+                    owner);
+        }finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+        return retValue;
+    }
+
+    /**
+     * Stores the encoded image read from {@code inputStream} in
+     * {@code storageDir} unless an image with the same hash is already stored
+     * and adds {@code owner} to the owners of the file. The image is neither
+     * decoded nor hashed, so that deserialization doesn't need to decode every
+     * page.
+     * @param storageDir the storage directory
+     * @param inputStream the stream containing the encoded image which is
+     * read until its end unless the image is already stored
+     * @param hash the hash of the image which has been computed when it was
+     * stored first (see {@link #getHash(java.io.File) })
+     * @param owner the object using the file
+     * @return the file containing the encoded image
+     * @throws IOException if reading or writing fails
+     */
+    File store(File storageDir,
+            InputStream inputStream,
+            String hash,
+            Object owner) throws IOException {
+        if(!HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException(String.format("'%s' isn't a valid hash",
+                    hash));
+        }
+        File retValue = getStorageFile(storageDir,
+                hash);
+        synchronized(this) {
+            expungeCollectedOwners();
+            if(retValue.isFile()) {
+                LOGGER.trace(String.format("image already stored in '%s'",
+                        retValue.getAbsolutePath()));
+                acquire(retValue,
+                        owner);
+                return retValue;
+            }
+        }
+        File tmpFile = createTmpFile(retValue);
+        try {
+            Files.copy(inputStream,
+                    tmpFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            moveIntoPlace(tmpFile,
+                    retValue,
+                    owner);
+        }finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+        return retValue;
+    }
+
+    private File createTmpFile(File storageFile) throws IOException {
+        Files.createDirectories(storageFile.getParentFile().toPath());
+        return File.createTempFile(storageFile.getName().substring(0, SHARD_LENGTH+1),
+                TMP_SUFFIX,
+                storageFile.getParentFile());
+    }
+
+    /**
+     * Renames {@code tmpFile} to {@code storageFile} unless it exists and adds
+     * {@code owner} to the owners of {@code storageFile}.
+     */
+    private synchronized void moveIntoPlace(File tmpFile,
+            File storageFile,
+            Object owner) throws IOException {
+        expungeCollectedOwners();
+        if(!storageFile.isFile()) {
+            Files.move(tmpFile.toPath(),
+                    storageFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.trace(String.format("stored image in '%s'",
+                    storageFile.getAbsolutePath()));
+        }
+        acquire(storageFile,
+                owner);
+    }
+
+    private void acquire(File storageFile,
+            Object owner) {
+        owners.computeIfAbsent(storageFile,
+                key -> new LinkedList<>())
+                .add(new Owner(owner,
+                        storageFile,
+                        ownerQueue));
+    }
+
+    /**
+     * Marks {@code owner} as no longer using {@code storageFile} and notifies
+     * the listener if all owners of the file are disposed. The file is kept
+     * until all owners have been garbage collected. Disposing an owner more
+     * than once notifies the listener again if all owners are disposed.
+     * @param storageFile the file
+     * @param owner the owner passed to {@code store}
+     */
+    synchronized void dispose(File storageFile,
+            Object owner) {
+        expungeCollectedOwners();
+        List<Owner> fileOwners = owners.get(storageFile);
+        if(fileOwners == null) {
+            return;
+        }
+        for(Owner fileOwner : fileOwners) {
+            if(fileOwner.get() == owner) {
+                fileOwner.disposed = true;
+            }
+        }
+        if(isDisposed(fileOwners)) {
+            unusedListener.accept(storageFile);
+        }
+    }
+
+    private static boolean isDisposed(List<Owner> fileOwners) {
+        return fileOwners.stream().allMatch(fileOwner -> fileOwner.disposed);
+    }
+
+    private void expungeCollectedOwners() {
+        Reference<?> ownerReference;
+        while((ownerReference = ownerQueue.poll()) != null) {
+            Owner owner = (Owner) ownerReference;
+            List<Owner> fileOwners = owners.get(owner.storageFile);
+            if(fileOwners == null || !fileOwners.remove(owner)) {
+                continue;
+            }
+            if(fileOwners.isEmpty()) {
+                owners.remove(owner.storageFile);
+                if(!owner.storageFile.delete() && owner.storageFile.exists()) {
+                    LOGGER.warn(String.format("storage file '%s' couldn't be deleted",
+                            owner.storageFile.getAbsolutePath()));
+                }else {
+                    LOGGER.trace(String.format("deleted storage file '%s' of garbage collected images",
+                            owner.storageFile.getAbsolutePath()));
+                }
+                unusedListener.accept(owner.storageFile);
+            }else if(!owner.disposed && isDisposed(fileOwners)) {
+                unusedListener.accept(owner.storageFile);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of owners of {@code storageFile} which haven't been
+     * garbage collected.
+     * @param storageFile the file
+     * @return the number of owners
+     */
+    synchronized int getOwnerCount(File storageFile) {
+        expungeCollectedOwners();
+        List<Owner> fileOwners = owners.get(storageFile);
+        return fileOwners == null ? 0 : fileOwners.size();
+    }
+}
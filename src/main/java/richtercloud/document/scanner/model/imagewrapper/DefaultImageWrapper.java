@@ -14,81 +14,213 @@
  */
 package richtercloud.document.scanner.model.imagewrapper;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.RenderedImage;
+import java.awt.image.DataBuffer;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
-import javafx.application.Platform;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.image.WritableImage;
 import javax.imageio.ImageIO;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
 import richtercloud.document.scanner.ifaces.ImageWrapperException;
-import richtercloud.message.handler.ExceptionMessage;
 import richtercloud.message.handler.IssueHandler;
 
 /**
- * Quite bad implementation of {@link ImageWrapper} which loads every request
- * from disk and reexecutes every transformation.
+ * {@link ImageWrapper} which stores images on disk and caches decoded images,
+ * rotated streams and tile pyramids shared by all instances.
  *
- * Stores files inside directory {@code storageDir} naming them with an
- * increased counter. Storage fails if {@code storageDir} contains a file with
- * a name equals to the counter. That means that the directory should be emptied
- * at application shutdown. It should also be checked that the directory is
+ * Stores files inside directory {@code storageDir} content-addressed (see
+ * {@link ContentAddressedImageStorage}) so that identical images are stored
+ * and encoded only once and instances of them share one storage file. The
+ * directory should be emptied at application shutdown. It should also be checked that the directory is
  * empty at application start in order to not miss emptying the directory after
  * a crash of the application. Emptying the storage directory isn't handled here
  * because it's more of an application task.
  *
- * Callers are responsible for initializing JavaFX (e.g. by calling
- * {@code new JFXPanel()} once).
+ * Decoded images are kept in a memory-budgeted cache which is shared by all
+ * instances (see {@link #getOriginalImage() }) so that repeated access to the
+ * same page doesn't decode the stored PNG again.
+ *
+ * Rotated images requested as stream are encoded once per rotation and format
+ * into a shared on-disk cache with a quota (see
+ * {@link RotatedImageStreamCache}). The files are deleted when they're
+ * evicted, when all wrappers of the image are disposed (see
+ * {@link #dispose() }) or garbage collected and on
+ * {@link #shutdownStreamCache() }.
+ *
+ * Optionally uncompressed rasters of decoded images are kept in a bounded
+ * working set of memory mapped files next to the storage files (see
+ * {@link #configureRawRasterStore(long) }) while the storage files remain
+ * PNG files.
+ *
+ * A {@link TilePyramid} of every image is built in the background after
+ * creation (or on first request after deserialization) and kept in a
+ * memory-budgeted cache. Pyramids which have been evicted are built again on
+ * request only after a delay. Once it's available previews are scaled from the
+ * closest level instead of the full page and views can draw only their
+ * visible tiles with {@link #paintPreview(java.awt.Graphics2D, int) }.
+ *
+ * Rotation and scaling are performed with Java2D (see
+ * {@link ImageTransformations}) and can be requested from any thread. Callers
+ * of {@link #getImagePreviewFX(int) } are responsible for initializing JavaFX
+ * (e.g. by calling {@code new JFXPanel()} once).
  *
  * @author richter
  */
 /*
 internal implementation notes:
-- It's not worth storing images on disk using their MD5 hash as filename since
-that only prevents waste of a small amount of disk space until shutdown of the
-application in case more than one ImageWrapper is created for the same
-BufferedImage. Currently instances are only created when needed and references
-passed to data consumers.
 - It'd be nice to delegate storage to a separate class, but that highly
 complicates implementation of (de-)serialization and references in entities.
 - This class shouldn't initialize JavaFX because it makes it hard to test in a
 headless environment and is not the task of a data container.
+- The decoded image cache is keyed by the storage file which is shared by
+instances of identical images and contains unrotated images only, so that a change of the rotation
+doesn't need to invalidate it (derived rotated data is invalidated by
+CachingImageWrapper). The values are soft in addition to the weight limit in
+order to give them up before an OutOfMemoryError occurs. The same applies to
+the tile pyramid cache.
+- Tile pyramids are built on a dedicated low priority executor, so that
+building them never delays the thread creating the wrapper or requesting a
+preview which falls back to scaling the original image until the pyramid is
+available. Builds reference the storage file only and decode through the
+decoded image cache, so that queued builds don't keep images in memory.
 */
 public class DefaultImageWrapper implements ImageWrapper {
     private final static Logger LOGGER = LoggerFactory.getLogger(DefaultImageWrapper.class);
-    private static int storageFileNameCounter = 0;
+    private final static ContentAddressedImageStorage STORAGE = new ContentAddressedImageStorage(DefaultImageWrapper::invalidateDerivedData);
     private static final long serialVersionUID = 1L;
+    /**
+     * The share of the maximum heap size which can be used for decoded images.
+     */
+    private final static int DECODED_IMAGE_CACHE_HEAP_DIVISOR = 8;
+    private final static Cache<File, BufferedImage> DECODED_IMAGE_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(Runtime.getRuntime().maxMemory()/DECODED_IMAGE_CACHE_HEAP_DIVISOR)
+            .weigher((File key, BufferedImage value) -> getImageBytes(value))
+            .softValues()
+            .recordStats()
+            .build();
+    /**
+     * The share of the maximum heap size which can be used for tile pyramids.
+     */
+    private final static int TILE_PYRAMID_CACHE_HEAP_DIVISOR = 8;
+    /**
+     * The time after the eviction of a tile pyramid during which it isn't
+     * built again on request.
+     */
+    private final static int TILE_PYRAMID_REBUILD_DELAY_SECONDS = 30;
+    private final static int TILE_PYRAMID_EVICTIONS_MAX_SIZE = 4096;
+    /**
+     * The storage files of the images whose tile pyramid has been evicted
+     * recently.
+     */
+    private final static Cache<File, Boolean> TILE_PYRAMID_EVICTIONS = CacheBuilder.newBuilder()
+            .expireAfterWrite(TILE_PYRAMID_REBUILD_DELAY_SECONDS, TimeUnit.SECONDS)
+            .maximumSize(TILE_PYRAMID_EVICTIONS_MAX_SIZE)
+            .build();
+    private final static Cache<File, TilePyramid> TILE_PYRAMID_CACHE = CacheBuilder.newBuilder()
+            .maximumWeight(Runtime.getRuntime().maxMemory()/TILE_PYRAMID_CACHE_HEAP_DIVISOR)
+            .weigher((File key, TilePyramid value) -> (int)Math.min(Integer.MAX_VALUE, value.getBytes()))
+            .softValues()
+            .removalListener((RemovalNotification<File, TilePyramid> notification) -> {
+                if(notification.wasEvicted()) {
+                    TILE_PYRAMID_EVICTIONS.put(notification.getKey(),
+                            Boolean.TRUE);
+                }
+            })
+            .recordStats()
+            .build();
+    /**
+     * The storage files of the images whose tile pyramid is being built.
+     */
+    private final static Set<File> TILE_PYRAMID_BUILDS = ConcurrentHashMap.newKeySet();
+    /**
+     * The maximum number of queued tile pyramid builds. If it's exceeded the
+     * oldest build is dropped since its page is most likely no longer
+     * displayed.
+     */
+    private final static int TILE_PYRAMID_QUEUE_CAPACITY = 32;
+    private final static ExecutorService TILE_PYRAMID_EXECUTOR;
+    static {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread retValue = new Thread(runnable,
+                        String.format("tile-pyramid-builder-%d",
+                                threadCounter.incrementAndGet()));
+                retValue.setDaemon(true);
+                retValue.setPriority(Thread.MIN_PRIORITY);
+                return retValue;
+            }
+        };
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount,
+                threadCount,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(TILE_PYRAMID_QUEUE_CAPACITY),
+                threadFactory,
+                (runnable, executor0) -> {
+                    //discard oldest semantics without calling execute again
+                    //which could recurse
+                    if(executor0.isShutdown()) {
+                        dropTilePyramidBuild(runnable);
+                        return;
+                    }
+                    dropTilePyramidBuild(executor0.getQueue().poll());
+                    //rejection only occurs if all threads are running, so the
+                    //queued build is picked up by one of them
+                    if(!executor0.getQueue().offer(runnable)) {
+                        //another thread took the free slot
+                        dropTilePyramidBuild(runnable);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        TILE_PYRAMID_EXECUTOR = executor;
+    }
+    /**
+     * The store of uncompressed rasters or {@code null} if it's disabled (see
+     * {@link #configureRawRasterStore(long) }).
+     */
+    private static volatile RawRasterStore rawRasterStore;
+    /**
+     * The maximum size of all rotated image files in the stream cache.
+     */
+    private final static long STREAM_CACHE_QUOTA_BYTES = 512L*1024*1024;
+    private final static RotatedImageStreamCache STREAM_CACHE = new RotatedImageStreamCache(STREAM_CACHE_QUOTA_BYTES);
     static {
         //don't initialize JavaFX here (see class internal implementation notes
         //for further infos)
-        ImageIO.setUseCache(true);
-            //use ImageIO parallel to the cache implemented in
-            //DefaultImageWrapper because it can't hurt
-        try {
-            File imageIOCacheDir = Files.createTempDirectory("document-scanner-image-io-cache").toFile();
-            ImageIO.setCacheDirectory(imageIOCacheDir);
-            LOGGER.debug(String.format("set '%s' as cache directory for ImageIO", imageIOCacheDir.getAbsolutePath()));
-        } catch (IOException ex) {
-            LOGGER.error("creation of ImageIO cache directory failed, skipping setting of cache");
-        }
+        ImageIO.setUseCache(false);
+            //images are read from files or byte arrays which are seekable or
+            //already in memory, so that the disk cache of ImageIO only causes
+            //additional writes to a temporary file
     }
     /**
      * The parent directory of {@code storageFile} (stored for persisting).
@@ -99,6 +231,13 @@ public class DefaultImageWrapper implements ImageWrapper {
     private final int initialHeight;
     private double rotationDegrees;
     private final transient IssueHandler issueHandler;
+    /**
+     * The perceptual hash of the unrotated image (see {@link PerceptualHash})
+     * which is computed on creation while the image is in memory or
+     * {@code null} if it hasn't been computed yet (after deserialization of
+     * instances created by older versions).
+     */
+    private long[] perceptualHash;
 
     public DefaultImageWrapper(File storageDir,
             BufferedImage image,
@@ -107,20 +246,151 @@ public class DefaultImageWrapper implements ImageWrapper {
         assert storageDir.isDirectory();
         this.storageDir = storageDir;
         this.issueHandler = issueHandler;
-        this.storageFile = createStorageFile(storageDir);
-        assert !storageFile.exists();
-        FileUtils.touch(storageFile);
-            //ImageIO.write randomly fails or doesn't if storage file exists
-        ImageIO.write(image, "png", this.storageFile);
+        this.storageFile = STORAGE.store(storageDir,
+                image,
+                this);
         this.initialWidth = image.getWidth();
         this.initialHeight = image.getHeight();
+        this.perceptualHash = PerceptualHash.compute(image);
+        scheduleTilePyramid(storageFile);
     }
 
-    private File createStorageFile(File storageDir) {
-        File retValue;
-        synchronized(this) {
-            retValue = new File(storageDir, String.valueOf(storageFileNameCounter));
-            storageFileNameCounter += 1;
+    /**
+     * Builds the tile pyramid of the image stored in a storage file.
+     */
+    private final static class TilePyramidBuild implements Runnable {
+        private final File storageFile;
+
+        TilePyramidBuild(File storageFile) {
+            this.storageFile = storageFile;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if(TILE_PYRAMID_CACHE.getIfPresent(storageFile) != null) {
+                    return;
+                }
+                TilePyramid tilePyramid = TilePyramid.build(decode(storageFile));
+                TILE_PYRAMID_CACHE.put(storageFile,
+                        tilePyramid);
+                LOGGER.trace(String.format("built tile pyramid with %d levels for '%s'",
+                        tilePyramid.getLevelCount(),
+                        storageFile.getAbsolutePath()));
+            }catch(ImageWrapperException | RuntimeException ex) {
+                //previews are still created from the original image
+                LOGGER.warn(String.format("building tile pyramid for '%s' failed",
+                        storageFile.getAbsolutePath()),
+                        ex);
+            }finally {
+                TILE_PYRAMID_BUILDS.remove(storageFile);
+            }
+        }
+    }
+
+    /**
+     * Removes a build which won't be executed from
+     * {@link #TILE_PYRAMID_BUILDS} so that it can be scheduled again.
+     * @param runnable the dropped runnable or {@code null}
+     */
+    private static void dropTilePyramidBuild(Runnable runnable) {
+        if(!(runnable instanceof TilePyramidBuild)) {
+            return;
+        }
+        File storageFile = ((TilePyramidBuild)runnable).storageFile;
+        TILE_PYRAMID_BUILDS.remove(storageFile);
+        LOGGER.trace(String.format("dropped building of tile pyramid for '%s'",
+                storageFile.getAbsolutePath()));
+    }
+
+    /**
+     * Builds the tile pyramid of the image stored in {@code storageFile} in
+     * the background unless it's available or already being built.
+     * @param storageFile the storage file of the image
+     */
+    private static void scheduleTilePyramid(File storageFile) {
+        if(TILE_PYRAMID_CACHE.getIfPresent(storageFile) != null) {
+            //identical image
+            return;
+        }
+        if(!TILE_PYRAMID_BUILDS.add(storageFile)) {
+            return;
+        }
+        try {
+            TILE_PYRAMID_EXECUTOR.execute(new TilePyramidBuild(storageFile));
+        }catch(RejectedExecutionException ex) {
+            TILE_PYRAMID_BUILDS.remove(storageFile);
+            LOGGER.warn("building of tile pyramid rejected",
+                    ex);
+        }
+    }
+
+    /**
+     * Gets the tile pyramid of the unrotated image and schedules building it
+     * if it isn't available unless it has been evicted recently.
+     * @return the tile pyramid or {@code null} if it hasn't been built yet or
+     * has been evicted
+     */
+    /*
+    internal implementation notes:
+    - This is called on every paint, so rebuilding evicted pyramids right away
+    would decode and build them over and over if the cache is too small for
+    the displayed pages. Callers fall back to scaling the original image in the
+    meantime.
+    */
+    public TilePyramid getTilePyramid() {
+        TilePyramid retValue = TILE_PYRAMID_CACHE.getIfPresent(storageFile);
+        if(retValue == null
+                && TILE_PYRAMID_EVICTIONS.getIfPresent(storageFile) == null) {
+            scheduleTilePyramid(storageFile);
+        }
+        return retValue;
+    }
+
+    /**
+     * Draws the parts of the image scaled to {@code width} and rotated which
+     * intersect with the clip of {@code graphics} using the tile pyramid.
+     * @param graphics the graphics to draw on
+     * @param width the width of the unrotated image on screen
+     * @return {@code true} if the image has been drawn, {@code false} if the
+     * tile pyramid isn't available yet or the rotation isn't a multiple of 90
+     * degrees in which case callers should draw
+     * {@link #getImagePreview(int) }
+     * @throws ImageWrapperException if the original image is needed and
+     * can't be read
+     */
+    public boolean paintPreview(Graphics2D graphics,
+            int width) throws ImageWrapperException {
+        double rotationDegrees0 = this.rotationDegrees;
+        if(!TilePyramid.isPaintable(rotationDegrees0)) {
+            return false;
+        }
+        TilePyramid tilePyramid = getTilePyramid();
+        if(tilePyramid == null) {
+            return false;
+        }
+        BufferedImage original = tilePyramid.selectLevel(width) == 0
+                ? getOriginalImage()
+                : null;
+        tilePyramid.paint(graphics,
+                original,
+                width,
+                rotationDegrees0);
+        return true;
+    }
+
+    /**
+     * Gets the perceptual hash of the unrotated image which allows to find
+     * images which look alike.
+     * @return the hash (see {@link PerceptualHash#compute(java.awt.image.BufferedImage) })
+     * @throws ImageWrapperException if the hash has to be computed and the
+     * image can't be read
+     */
+    public long[] getPerceptualHash() throws ImageWrapperException {
+        long[] retValue = this.perceptualHash;
+        if(retValue == null) {
+            retValue = PerceptualHash.compute(getOriginalImage());
+            this.perceptualHash = retValue;
         }
         return retValue;
     }
@@ -156,7 +426,18 @@ public class DefaultImageWrapper implements ImageWrapper {
                 //cache has been shut down
                 return null;
             }
-            InputStream retValue = new BufferedInputStream(new FileInputStream(tmpFile));
+            InputStream retValue;
+            try {
+                retValue = new BufferedInputStream(new FileInputStream(tmpFile));
+            }catch(FileNotFoundException ex) {
+                //the file has been evicted from the stream cache in the
+                //meantime
+                tmpFile = getOriginalImageStream0(formatName);
+                if(tmpFile == null) {
+                    return null;
+                }
+                retValue = new BufferedInputStream(new FileInputStream(tmpFile));
+            }
             return retValue;
         } catch (IOException ex) {
             throw new ImageWrapperException(ex);
@@ -164,52 +445,44 @@ public class DefaultImageWrapper implements ImageWrapper {
     }
 
     /**
-     * Generates a temporary file with the rotated image data written to it
-     * which can be used as source for an input stream.
+     * Gets a file with the rotated image data written to it which can be used
+     * as source for an input stream. The file is the storage file if the
+     * image isn't rotated and {@code formatName} is the storage format or a
+     * file of the shared stream cache otherwise. In both cases it must neither
+     * be modified nor deleted by callers.
      *
-     * @param formatName
-     * @return
-     * @throws IOException
+     * @param formatName the format of the image data
+     * @return the file or {@code null} if the stream cache has been shut down
+     * @throws ImageWrapperException if the image can't be read or encoded
      */
     /*
     internal implementation notes:
-    - This is exposed in order to allow subclasses to cache the generated files.
+    - This is exposed in order to allow subclasses to intercept requests.
+    - The rotation is copied into a local variable so that the encoded image
+    matches the cache key if the rotation is changed concurrently.
     */
-    @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
     protected File getOriginalImageStream0(String formatName) throws ImageWrapperException {
-        try {
-            File tmpFile = File.createTempFile("image-wrapper", null);
-            LOGGER.debug(String.format("using '%s' as temporary file",
-                    tmpFile));
-            FutureTask<Image> javaFXTask = new FutureTask<>(() -> {
-                ImageView imageView = new ImageView(this.storageFile.toURI().toURL().toString());
-                imageView.setRotate(rotationDegrees);
-                Image rotatedImage = imageView.snapshot(null, //params
-                        null //image
-                );
-                return rotatedImage;
-            });
-            Platform.runLater(javaFXTask);
-            Image rotatedImage;
-            try {
-                rotatedImage = javaFXTask.get();
-            } catch (InterruptedException | ExecutionException ex) {
-                LOGGER.error("unexpected exception during rotation of image",
-                        ex);
-                issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                throw new RuntimeException(ex);
-            }
-            assert rotatedImage != null;
-            //There's no way to write a JavaFX image into a file without converting
-            //it into a Swing/AWT image
-            RenderedImage renderedImage = SwingFXUtils.fromFXImage(rotatedImage, null);
-            ImageIO.write(renderedImage,
-                    formatName,
-                    tmpFile);
-            return tmpFile;
-        } catch (IOException ex) {
-            throw new ImageWrapperException(ex);
+        double rotationDegrees0 = this.rotationDegrees;
+        if(rotationDegrees0%360 == 0
+                && FORMAT_DEFAULT.equalsIgnoreCase(formatName)) {
+            return storageFile;
         }
+        return STREAM_CACHE.get(storageFile,
+                rotationDegrees0,
+                formatName,
+                target -> {
+                    LOGGER.debug(String.format("encoding image rotated by %f degrees into '%s'",
+                            rotationDegrees0,
+                            target.getAbsolutePath()));
+                    BufferedImage rotatedImage = ImageTransformations.rotate(getOriginalImage(),
+                            rotationDegrees0);
+                    if(!ImageIO.write(rotatedImage,
+                            formatName,
+                            target)) {
+                        throw new ImageWrapperException(String.format("no image writer for format '%s' found",
+                                formatName));
+                    }
+                });
     }
 
     protected File getOriginalImageStream0() throws ImageWrapperException {
@@ -222,154 +495,117 @@ public class DefaultImageWrapper implements ImageWrapper {
     }
 
     /**
-     * Since it's overly hard to handle already rotated images in JavaFX (need
-     * to figure out whether to set {@link ImageView#setFitWidth(double) } or
-     * {@link ImageView#setFitHeight(double) }, etc.) always return the
-     * unrotated image and rotate in Swing and JavaFX separately since that's
-     * easier to maintain and no computation overhead.
+     * Always returns the unrotated image; previews and streams are rotated
+     * with {@link ImageTransformations}.
+     *
+     * The image is decoded only once as long as it's kept in the shared
+     * decoded image cache. The returned instance is shared between callers and
+     * must not be modified.
      *
-     * @return
-     * @throws IOException
+     * @return the unrotated image
+     * @throws ImageWrapperException if the image can't be read
      */
     @Override
     public BufferedImage getOriginalImage() throws ImageWrapperException {
-        try {
-            BufferedImage original = ImageIO.read(this.storageFile);
-            return original;
-        } catch (IOException ex) {
-            throw new ImageWrapperException(ex);
-        }
+        return decode(storageFile);
     }
 
-    @Override
-    @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
-    public BufferedImage getImagePreview(int width) throws ImageWrapperException {
-        BufferedImage original = getOriginalImage();
-        if(width == initialWidth && rotationDegrees/360 == 0) {
-            return original;
-        }
-        //Implementations using Java AWT are quite complicated (because and don't work,
-        //so using JavaFX is fine as a workaround
-        WritableImage originalImage = SwingFXUtils.toFXImage(original,
-                null //wimg (specifying an existing empty image with desired
-                    //width and height doesn't cause the created image to be
-                    //scaled)
-        );
-        ImageView imageView;
-        try {
-            imageView = getImagePreviewFXImageView(originalImage,
-                    width);
-        } catch (IOException ex) {
-            throw new ImageWrapperException(ex);
-        }
-        BufferedImage image;
-        //this will be called form Swing EDT
-        FutureTask<BufferedImage> javaFXTask = new FutureTask<>(() -> {
-            BufferedImage image0 = SwingFXUtils.fromFXImage(imageView.snapshot(null, null), null);
-            return image0;
-        });
-        Platform.runLater(javaFXTask);
+    /**
+     * Gets the decoded image stored in {@code storageFile} from the decoded
+     * image cache or decodes it.
+     * @param storageFile the storage file
+     * @return the unrotated image
+     * @throws ImageWrapperException if the image can't be read
+     */
+    private static BufferedImage decode(File storageFile) throws ImageWrapperException {
         try {
-            image = javaFXTask.get();
-        }catch(InterruptedException | ExecutionException ex) {
-            LOGGER.error("unexpected exception during retrieval of image preview",
-                    ex);
-            issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
-            throw new RuntimeException(ex);
+            return DECODED_IMAGE_CACHE.get(storageFile,
+                    () -> {
+                        RawRasterStore rawRasterStore0 = rawRasterStore;
+                        if(rawRasterStore0 != null) {
+                            BufferedImage original = rawRasterStore0.read(storageFile);
+                            if(original != null) {
+                                return original;
+                            }
+                        }
+                        LOGGER.trace(String.format("decoding '%s'",
+                                storageFile.getAbsolutePath()));
+                        BufferedImage original = ImageIO.read(storageFile);
+                        if(original == null) {
+                            throw new ImageWrapperException(String.format("no image reader found for storage file '%s'",
+                                    storageFile.getAbsolutePath()));
+                        }
+                        if(rawRasterStore0 != null) {
+                            rawRasterStore0.write(storageFile,
+                                    original);
+                        }
+                        return original;
+                    });
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof ImageWrapperException) {
+                throw (ImageWrapperException)ex.getCause();
+            }
+            throw new ImageWrapperException(ex.getCause());
+        } catch (UncheckedExecutionException | ExecutionError ex) {
+            throw new ImageWrapperException(ex.getCause());
         }
-        return image;
-
-        //Implementation using Graphics2D
-//        int width0, height0;
-//        if(this.rotationDegrees/90 % 2 == 0) {
-//            width0 = width;
-//            height0 = getImageHeightScaled(width);
-//        }else {
-//            width0 = getImageHeightScaled(width);
-//            height0 = width;
-//        }
-//        BufferedImage retValue = new BufferedImage(width0,
-//                height0,
-//                BufferedImage.TYPE_INT_ARGB);
-//        Graphics2D bGr = retValue.createGraphics();
-//        bGr.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-//                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            //prevents bad quality after scaling
-//        bGr.rotate(Math.toRadians(rotationDegrees),
-//                original.getWidth()/2,
-//                original.getHeight()/2);
-//        boolean drawingCompleted = bGr.drawImage(original,
-//                0, //x
-//                0, //y
-//                width0, //width (specifying width and height is as good as specifying the scale factory
-//                height0, //height
-//                null //imageObserver
-//        );
-//        assert drawingCompleted;
-//        bGr.dispose();
-
-        //Implementation using AffineTransform (causing empty image (except for
-        //small white strip in the lower left corner
-//        AffineTransform at = new AffineTransform();
-//        at.rotate(Math.toRadians(rotationDegrees),
-//                original.getWidth()/(double)2, //center for rotating
-//                original.getHeight()/(double)2);
-//        double scale = width/(double)original.getWidth();
-//        at.scale(scale,
-//                scale);
-//        AffineTransformOp affineTransformOp = new AffineTransformOp(at,
-//                new RenderingHints(RenderingHints.KEY_INTERPOLATION,
-//                        RenderingHints.VALUE_INTERPOLATION_BILINEAR));
-//        retValue = affineTransformOp.filter(original,
-//                null);
-//        return retValue;
     }
 
     /**
-     * Allows invoking {@link ImageView#snapshot(javafx.scene.SnapshotParameters, javafx.scene.image.WritableImage) }
-     * on return value from JavaFX thread and from Swing EDT (inside a
-     * {@link Platform#runLater(java.lang.Runnable) } lambda).
+     * Approximates the memory used by the raster of {@code image}.
+     * @param image the image
+     * @return the size of the data buffer in bytes
+     */
+    static int getImageBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        long retValue = (long)dataBuffer.getSize()
+                *dataBuffer.getNumBanks()
+                *DataBuffer.getDataTypeSize(dataBuffer.getDataType())/8;
+        return (int)Math.min(Integer.MAX_VALUE, retValue);
+    }
+
+    /**
+     * Scales the original image or the closest level of the tile pyramid if
+     * it's available to {@code width} and rotates it with
+     * {@link ImageTransformations} which works on any thread.
      *
-     * @param width
-     * @return
+     * @param width the width of the unrotated preview
+     * @return the preview
+     * @throws ImageWrapperException if the original image can't be read
      */
-    private ImageView getImagePreviewFXImageView(WritableImage originalImage,
-            int width) throws IOException {
-        //Since there's no way to scale a WritableImage without an ImageView
-        //<ref>http://stackoverflow.com/questions/35611176/how-can-i-resize-a-javafx-image</ref>
-        //use the following:
-        ImageView imageView = new ImageView(originalImage);
-        imageView.setPreserveRatio(true);
-        imageView.setFitWidth(width);
-            //omitting fitHeight cause the ratio to be preserved
-            //setting fitWidth and then rotating avoid to figure out whether
-            //fitWidth or fitHeight has to be set depending on rotation
-        imageView.setRotate(this.rotationDegrees);
-        imageView.setSmooth(false //allows faster scaling
-        );
-        return imageView;
+    @Override
+    public BufferedImage getImagePreview(int width) throws ImageWrapperException {
+        TilePyramid tilePyramid = getTilePyramid();
+        int level = tilePyramid != null ? tilePyramid.selectLevel(width) : 0;
+        BufferedImage source = level == 0
+                ? getOriginalImage()
+                : tilePyramid.getLevel(level,
+                        null //original
+                );
+        BufferedImage scaled = ImageTransformations.scaleToWidth(source,
+                width);
+        return ImageTransformations.rotate(scaled,
+                rotationDegrees);
     }
 
+    /**
+     * Converts the preview created by {@link #getImagePreview(int) } into a
+     * JavaFX image which is the only step requiring JavaFX.
+     *
+     * @param width the width of the unrotated preview
+     * @return the preview
+     * @throws ImageWrapperException if the original image can't be read
+     */
     @Override
     public WritableImage getImagePreviewFX(int width) throws ImageWrapperException {
-        BufferedImage image = getOriginalImage();
-        WritableImage originalImage = SwingFXUtils.toFXImage(image,
-                null //wimg (specifying an existing empty image with desired
-                    //width and height doesn't cause the created image to be
-                    //scaled)
-        );
-        if(width == initialWidth && rotationDegrees/360 == 0) {
-            return originalImage;
+        BufferedImage imagePreview = getImagePreview(width);
+        if(imagePreview == null) {
+            //cache has been shut down
+            return null;
         }
-        ImageView imageView;
-        try {
-            imageView = getImagePreviewFXImageView(originalImage,
-                    width);
-        } catch (IOException ex) {
-            throw new ImageWrapperException(ex);
-        }
-        WritableImage retValue = imageView.snapshot(null, null);
-        return retValue;
+        return SwingFXUtils.toFXImage(imagePreview,
+                null //wimg
+        );
     }
 
     @Override
@@ -396,13 +632,10 @@ public class DefaultImageWrapper implements ImageWrapper {
             //image
             out.writeDouble(this.rotationDegrees);
             out.writeUTF(this.storageDir.getAbsolutePath());
-            InputStream inputStream = getOriginalImageStream();
-            if(inputStream == null) {
-                //prevent invalid data being serialized
-                throw new ImageWrapperException("cache has been shut down");
-            }
-            IOUtils.copyLarge(inputStream, out);
-            //see readObject for comment on buffer specification
+            //the unrotated image since the rotation is restored in readObject
+            //which recognizes it by the content-addressed name of storageFile
+            Files.copy(storageFile.toPath(),
+                    out);
         } catch (IOException ex) {
             throw new ImageWrapperException(ex);
         }
@@ -414,22 +647,124 @@ public class DefaultImageWrapper implements ImageWrapper {
         this.rotationDegrees = in.readDouble();
         String storageDirPath = in.readUTF();
         File storageDir0 = new File(storageDirPath);
-        File storageFile0 = createStorageFile(storageDir0);
-        Field storageFileField = DefaultImageWrapper.class.getDeclaredField("storageFile");
-        storageFileField.setAccessible(true);
-        storageFileField.set(this,
-                storageFile0); //set on final field through reflection
-        try (OutputStream storageFileOutputStream = new BufferedOutputStream(new FileOutputStream(storageFile0))) {
-            IOUtils.copyLarge(in, storageFileOutputStream);
-            //Buffer specification unnecessary if buffered streams are used.
-            //Large buffers don't speed up I/O by more than a few percent
-            //<ref>http://www.oracle.com/technetwork/articles/javase/perftuning-137844.html</ref>
-            storageFileOutputStream.flush();
-            //flush and close necessary in order to avoid half written image
-            //files
+        File storageFile0;
+        String hash = ContentAddressedImageStorage.getHash(this.storageFile);
+        if(hash != null) {
+            //the unrotated image which doesn't need to be decoded since the
+            //name of the storage file is its hash
+            storageFile0 = STORAGE.store(storageDir0,
+                    in,
+                    hash,
+                    this);
+        }else {
+            //instances created before the introduction of content-addressed
+            //storage persisted the rotated image
+            BufferedImage image = ImageIO.read(in);
+            if(image == null) {
+                throw new ImageWrapperException("no image reader found for stored image data");
+            }
+            storageFile0 = STORAGE.store(storageDir0,
+                    image,
+                    this);
+            if(this.rotationDegrees%360 != 0) {
+                //use the rotated image as original in order to avoid rotating
+                //it twice
+                LOGGER.debug(String.format("converting image rotated by %f degrees of older version",
+                        this.rotationDegrees));
+                this.rotationDegrees = 0;
+                setFinalField("initialWidth",
+                        image.getWidth());
+                setFinalField("initialHeight",
+                        image.getHeight());
+                this.perceptualHash = PerceptualHash.compute(image);
+            }
+        }
+        setFinalField("storageFile",
+                storageFile0);
+    }
+
+    /**
+     * Sets a final field after deserialization through reflection.
+     */
+    private void setFinalField(String name,
+            Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = DefaultImageWrapper.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(this,
+                value);
+    }
+
+    /**
+     * Declares that this wrapper is no longer used, e.g. because the document
+     * it belongs to has been closed. Once all wrappers of an identical image
+     * are disposed or garbage collected the files in the stream cache and the
+     * raw raster store are deleted and the decoded image and tile pyramid are
+     * removed from memory. The storage file is deleted after all wrappers of
+     * the image have been garbage collected. The wrapper can still be used
+     * afterwards, but has to decode and encode the image again.
+     */
+    public void dispose() {
+        STORAGE.dispose(storageFile,
+                this);
+    }
+
+    /**
+     * Disposes all instances of {@code DefaultImageWrapper} in {@code images}
+     * (see {@link #dispose() }) and ignores other implementations.
+     * @param images the images which are no longer used
+     */
+    public static void disposeAll(Collection<? extends ImageWrapper> images) {
+        for(ImageWrapper image : images) {
+            if(image instanceof DefaultImageWrapper) {
+                ((DefaultImageWrapper)image).dispose();
+            }
+        }
+    }
+
+    /**
+     * Releases all data derived from {@code storageFile}.
+     * @param storageFile the storage file which is no longer used
+     */
+    private static void invalidateDerivedData(File storageFile) {
+        LOGGER.trace(String.format("releasing cached data of '%s'",
+                storageFile.getAbsolutePath()));
+        STREAM_CACHE.invalidate(storageFile);
+        DECODED_IMAGE_CACHE.invalidate(storageFile);
+        TILE_PYRAMID_CACHE.invalidate(storageFile);
+        RawRasterStore rawRasterStore0 = rawRasterStore;
+        if(rawRasterStore0 != null) {
+            rawRasterStore0.invalidate(storageFile);
         }
     }
 
+    /**
+     * Enables or disables storing uncompressed rasters of decoded images next
+     * to the storage files which are read through memory mapping instead of
+     * decoding the storage file again once the decoded image has been evicted
+     * from memory. Rasters which have already been stored aren't used after
+     * reconfiguration.
+     * @param maxBytes the maximum size of all raster files or {@code 0} in
+     * order to disable the store
+     */
+    public static void configureRawRasterStore(long maxBytes) {
+        if(maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes mustn't be negative");
+        }
+        rawRasterStore = maxBytes == 0
+                ? null
+                : new RawRasterStore(maxBytes);
+        LOGGER.debug(String.format("configured raw raster store with maximum size %d bytes",
+                maxBytes));
+    }
+
+    /**
+     * Deletes all files of the stream cache. Requests for rotated streams
+     * return {@code null} afterwards.
+     */
+    public static void shutdownStreamCache() {
+        STREAM_CACHE.shutdown();
+    }
+
     @Override
     public File getStorageFile() {
         return storageFile;
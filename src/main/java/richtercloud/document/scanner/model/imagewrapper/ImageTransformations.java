@@ -0,0 +1,206 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Rotation and scaling of images with Java2D which can be used on any thread
+ * and in headless environments.
+ *
+ * Rotations by multiples of 90 degrees are performed by copying the raster
+ * which is lossless and keeps the image type. Other rotations are drawn with
+ * bilinear interpolation on a white background which is enlarged to the
+ * bounds of the rotated image. Positive angles rotate clockwise on screen
+ * like {@code javafx.scene.image.ImageView#setRotate(double)}.
+ *
+ * Downscaling halves the image repeatedly with bilinear interpolation before
+ * scaling to the target size which avoids the aliasing of scaling by large
+ * factors in one step.
+ *
+ * @author richter
+ */
+public final class ImageTransformations {
+
+    /**
+     * Rotates {@code image} by {@code rotationDegrees}.
+     * @param image the image
+     * @param rotationDegrees the clockwise rotation in degrees
+     * @return {@code image} if the rotation is a multiple of 360 degrees or a
+     * new rotated image
+     */
+    public static BufferedImage rotate(BufferedImage image,
+            double rotationDegrees) {
+        double normalizedDegrees = rotationDegrees%360;
+        if(normalizedDegrees < 0) {
+            normalizedDegrees += 360;
+        }
+        if(normalizedDegrees == 0) {
+            return image;
+        }
+        if(normalizedDegrees%90 == 0) {
+            return rotateQuadrants(image,
+                    (int)(normalizedDegrees/90));
+        }
+        double theta = Math.toRadians(normalizedDegrees);
+        AffineTransform rotation = AffineTransform.getRotateInstance(theta);
+        Rectangle2D bounds = rotation.createTransformedShape(new Rectangle2D.Double(0,
+                0,
+                image.getWidth(),
+                image.getHeight())).getBounds2D();
+        int width = (int) Math.ceil(bounds.getWidth());
+        int height = (int) Math.ceil(bounds.getHeight());
+        BufferedImage retValue = new BufferedImage(width,
+                height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.translate(-bounds.getX(), -bounds.getY());
+            graphics.transform(rotation);
+            graphics.drawImage(image, 0, 0, null);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+
+    /**
+     * Rotates {@code image} clockwise by {@code quadrants} times 90 degrees by
+     * copying rows of the raster.
+     */
+    private static BufferedImage rotateQuadrants(BufferedImage image,
+            int quadrants) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swapped = quadrants%2 == 1;
+        ColorModel colorModel = image.getColorModel();
+        WritableRaster targetRaster = colorModel.createCompatibleWritableRaster(swapped ? height : width,
+                swapped ? width : height);
+        Raster sourceRaster = image.getRaster();
+        int bands = sourceRaster.getNumBands();
+        int[] row = new int[width*bands];
+        int[] reversedRow = new int[width*bands];
+        for(int y=0; y<height; y++) {
+            sourceRaster.getPixels(0, y, width, 1, row);
+            if(quadrants != 1) {
+                //180 and 270 degrees need the pixels of the row in reverse
+                //order
+                for(int x=0; x<width; x++) {
+                    System.arraycopy(row, x*bands,
+                            reversedRow, (width-1-x)*bands,
+                            bands);
+                }
+            }
+            switch(quadrants) {
+                case 1:
+                    //row y becomes column height-1-y from top to bottom
+                    targetRaster.setPixels(height-1-y, 0, 1, width, row);
+                    break;
+                case 2:
+                    targetRaster.setPixels(0, height-1-y, width, 1, reversedRow);
+                    break;
+                case 3:
+                    //row y becomes column y from bottom to top
+                    targetRaster.setPixels(y, 0, 1, width, reversedRow);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("quadrants %d not supported",
+                            quadrants));
+            }
+        }
+        return new BufferedImage(colorModel,
+                targetRaster,
+                colorModel.isAlphaPremultiplied(),
+                null //properties
+        );
+    }
+
+    /**
+     * Scales {@code image} to {@code width} preserving its aspect ratio.
+     * @param image the image
+     * @param width the target width
+     * @return {@code image} if it has the target width already or a new
+     * scaled image
+     */
+    public static BufferedImage scaleToWidth(BufferedImage image,
+            int width) {
+        if(width <= 0) {
+            throw new IllegalArgumentException("width has to be > 0");
+        }
+        int height = Math.max(1, (int) Math.round(image.getHeight()*(double)width/image.getWidth()));
+        if(width == image.getWidth() && height == image.getHeight()) {
+            return image;
+        }
+        int type = image.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB
+                : image.getType() == BufferedImage.TYPE_BYTE_GRAY
+                        ? BufferedImage.TYPE_BYTE_GRAY
+                        : BufferedImage.TYPE_INT_RGB;
+        BufferedImage retValue = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            //halve until the next step reaches the target size
+            int stepWidth = currentWidth/2 >= width ? currentWidth/2 : width;
+            int stepHeight = currentWidth/2 >= width ? Math.max(height, currentHeight/2) : height;
+            retValue = drawScaled(retValue,
+                    stepWidth,
+                    stepHeight,
+                    type,
+                    width > image.getWidth()
+                            ? RenderingHints.VALUE_INTERPOLATION_BICUBIC
+                            : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            currentWidth = stepWidth;
+            currentHeight = stepHeight;
+        }while(currentWidth != width || currentHeight != height);
+        return retValue;
+    }
+
+    private static BufferedImage drawScaled(BufferedImage image,
+            int width,
+            int height,
+            int type,
+            Object interpolation) {
+        BufferedImage retValue = new BufferedImage(width,
+                height,
+                type);
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    interpolation);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+
+    private ImageTransformations() {
+    }
+}
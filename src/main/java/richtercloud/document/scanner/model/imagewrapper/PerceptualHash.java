@@ -0,0 +1,122 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Computes a perceptual hash (difference hash) of an image which is equal or
+ * differs in few bits for images which look alike, e.g. two scans of the same
+ * cover sheet, unlike cryptographic hashes of the image data.
+ *
+ * The image is reduced to a grid of {@code (GRID_SIZE+1)*GRID_SIZE} cells of
+ * average luminance and every bit indicates whether a cell is brighter than
+ * its right neighbour. The hash has {@link #BIT_COUNT} bits stored in
+ * {@code long}s.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- a grid of 16 rows is used instead of the common 8 because document pages
+look more alike than photos and need a finer resolution to be told apart
+- a bit is only set if the difference exceeds a margin because blank areas
+(the majority of a document page) would otherwise produce bits determined by
+scanner noise; larger margins make the hash more robust against noise, but
+let pages which differ in few words (e.g. invoices from the same template)
+have equal hashes
+- no hash can tell a shifted rescan of a page from a page which differs in a
+few characters since both change few cells slightly, so callers have to
+decide about the distance they accept
+- cell averages are computed from a sample of at most SAMPLES_PER_CELL^2
+pixels per cell which keeps the computation cheap for 300 DPI pages
+*/
+public final class PerceptualHash {
+    public final static int GRID_SIZE = 16;
+    public final static int BIT_COUNT = GRID_SIZE*GRID_SIZE;
+    public final static int LONG_COUNT = BIT_COUNT/Long.SIZE;
+    /**
+     * The minimum difference of the average luminance (0-255) of adjacent
+     * cells to set a bit.
+     */
+    private final static int LUMINANCE_MARGIN = 1;
+    private final static int SAMPLES_PER_CELL = 32;
+
+    /**
+     * Computes the hash of {@code image}.
+     * @param image the image
+     * @return the hash as array of {@link #LONG_COUNT} {@code long}s
+     */
+    public static long[] compute(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int columns = GRID_SIZE+1;
+        double[] cellLuminances = new double[columns*GRID_SIZE];
+        for(int row=0; row<GRID_SIZE; row++) {
+            int top = row*height/GRID_SIZE;
+            int bottom = Math.max(top+1, (row+1)*height/GRID_SIZE);
+            int yStep = Math.max(1, (bottom-top)/SAMPLES_PER_CELL);
+            for(int column=0; column<columns; column++) {
+                int left = column*width/columns;
+                int right = Math.max(left+1, (column+1)*width/columns);
+                int xStep = Math.max(1, (right-left)/SAMPLES_PER_CELL);
+                long luminanceSum = 0;
+                int sampleCount = 0;
+                for(int y=top; y<bottom && y<height; y+=yStep) {
+                    for(int x=left; x<right && x<width; x+=xStep) {
+                        int rgb = image.getRGB(x, y);
+                        luminanceSum += (((rgb >> 16) & 0xFF)*299
+                                + ((rgb >> 8) & 0xFF)*587
+                                + (rgb & 0xFF)*114)/1000;
+                        sampleCount++;
+                    }
+                }
+                cellLuminances[row*columns+column] = sampleCount == 0
+                        ? 0
+                        : luminanceSum/(double)sampleCount;
+            }
+        }
+        long[] retValue = new long[LONG_COUNT];
+        for(int row=0; row<GRID_SIZE; row++) {
+            for(int column=0; column<GRID_SIZE; column++) {
+                double difference = cellLuminances[row*columns+column]
+                        - cellLuminances[row*columns+column+1];
+                if(difference > LUMINANCE_MARGIN) {
+                    int bit = row*GRID_SIZE+column;
+                    retValue[bit/Long.SIZE] |= 1L << (bit%Long.SIZE);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * The number of bits which differ in {@code hash0} and {@code hash1}.
+     * @param hash0 the first hash
+     * @param hash1 the second hash
+     * @return the Hamming distance
+     */
+    public static int distance(long[] hash0,
+            long[] hash1) {
+        int retValue = 0;
+        for(int i=0; i<hash0.length; i++) {
+            retValue += Long.bitCount(hash0[i] ^ hash1[i]);
+        }
+        return retValue;
+    }
+
+    private PerceptualHash() {
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores uncompressed rasters of images next to their storage files and reads
+ * them through memory mapping, so that reading an image is a copy of the
+ * mapped file whose residency is managed by the page cache of the operating
+ * system instead of decoding a PNG file.
+ *
+ * A raster file consists of a header of {@link #HEADER_SIZE} bytes (magic
+ * number, version, format, width and height as big endian integers) followed
+ * by the pixels in rows without padding, either with one byte per pixel for
+ * gray images or with three bytes per pixel in blue, green, red order which is
+ * the layout of {@link BufferedImage#TYPE_3BYTE_BGR}. Images with alpha
+ * channel or more than 8 bits per component aren't stored.
+ *
+ * The total size of the raster files is limited; if it's exceeded, the least
+ * recently used raster files are deleted. The storage files themselves are
+ * never touched, so that they remain the compact archival format.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- File I/O happens outside the lock. Files are written to a temporary file and
+moved into place so that readers never see partially written files. A file
+which is deleted by eviction while it's read remains readable on POSIX systems;
+otherwise reading fails and callers fall back to the storage file.
+- Indexed gray images (e.g. black and white scans) are stored as gray images
+with one byte per pixel which is lossless, but increases the size of the
+decoded image.
+*/
+class RawRasterStore {
+    private final static Logger LOGGER = LoggerFactory.getLogger(RawRasterStore.class);
+    private final static int MAGIC = 0x44535252; //"DSRR"
+    private final static int VERSION = 1;
+    private final static int FORMAT_GRAY8 = 1;
+    private final static int FORMAT_BGR24 = 3;
+    /**
+     * The size of the header in bytes.
+     */
+    final static int HEADER_SIZE = 5*Integer.BYTES;
+    private final static String SUFFIX = ".raw";
+    private final long maxBytes;
+    /**
+     * The sizes of the raster files in access order.
+     */
+    private final LinkedHashMap<File, Long> rasterFiles = new LinkedHashMap<>(16,
+            0.75f,
+            true //accessOrder
+    );
+    private long sizeBytes = 0;
+
+    /**
+     * Creates a new {@code RawRasterStore}.
+     * @param maxBytes the maximum size of all raster files
+     */
+    RawRasterStore(long maxBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes has to be > 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    private static File getRasterFile(File storageFile) {
+        return new File(storageFile.getParentFile(),
+                storageFile.getName()+SUFFIX);
+    }
+
+    /**
+     * Reads the raster of the image stored in {@code storageFile}.
+     * @param storageFile the storage file identifying the image
+     * @return the image or {@code null} if no raster has been stored or it
+     * couldn't be read
+     */
+    BufferedImage read(File storageFile) {
+        File rasterFile = getRasterFile(storageFile);
+        synchronized(this) {
+            if(rasterFiles.get(rasterFile) == null) {
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(rasterFile.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0,
+                    channel.size());
+            if(buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                throw new IOException("invalid header");
+            }
+            int format = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            BufferedImage retValue;
+            if(format == FORMAT_GRAY8) {
+                retValue = new BufferedImage(width,
+                        height,
+                        BufferedImage.TYPE_BYTE_GRAY);
+            }else if(format == FORMAT_BGR24) {
+                retValue = new BufferedImage(width,
+                        height,
+                        BufferedImage.TYPE_3BYTE_BGR);
+            }else {
+                throw new IOException(String.format("unsupported format %d",
+                        format));
+            }
+            byte[] pixels = ((DataBufferByte)retValue.getRaster().getDataBuffer()).getData();
+            if(buffer.remaining() != pixels.length) {
+                throw new IOException("invalid length");
+            }
+            buffer.get(pixels);
+            LOGGER.trace(String.format("read raster of '%s' from '%s'",
+                    storageFile.getAbsolutePath(),
+                    rasterFile.getAbsolutePath()));
+            return retValue;
+        }catch(NoSuchFileException ex) {
+            //evicted in the meantime
+            return null;
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("reading raster file '%s' failed, deleting it",
+                    rasterFile.getAbsolutePath()),
+                    ex);
+            invalidate(storageFile);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the raster of {@code image} unless it has an alpha channel.
+     * @param storageFile the storage file identifying the image
+     * @param image the image
+     */
+    void write(File storageFile,
+            BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        if(colorModel.hasAlpha()) {
+            return;
+        }
+        for(int componentSize : colorModel.getComponentSize()) {
+            if(componentSize > Byte.SIZE) {
+                //can't be stored without loss
+                return;
+            }
+        }
+        int format;
+        BufferedImage source;
+        if(colorModel.getColorSpace().getType() == ColorSpace.TYPE_GRAY
+                || isGray(colorModel)) {
+            format = FORMAT_GRAY8;
+            source = convert(image,
+                    BufferedImage.TYPE_BYTE_GRAY);
+        }else {
+            format = FORMAT_BGR24;
+            source = convert(image,
+                    BufferedImage.TYPE_3BYTE_BGR);
+        }
+        byte[] pixels = ((DataBufferByte)source.getRaster().getDataBuffer()).getData();
+        File rasterFile = getRasterFile(storageFile);
+        long rasterFileSize = HEADER_SIZE+(long)pixels.length;
+        try {
+            File tmpFile = File.createTempFile(rasterFile.getName(),
+                    null,
+                    rasterFile.getParentFile());
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(format)
+                        .putInt(image.getWidth())
+                        .putInt(image.getHeight())
+                        .flip();
+                while(header.hasRemaining()) {
+                    channel.write(header);
+                }
+                ByteBuffer data = ByteBuffer.wrap(pixels);
+                while(data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }catch(IOException ex) {
+                Files.deleteIfExists(tmpFile.toPath());
+                throw ex;
+            }
+            Files.move(tmpFile.toPath(),
+                    rasterFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("writing raster file '%s' failed",
+                    rasterFile.getAbsolutePath()),
+                    ex);
+            return;
+        }
+        synchronized(this) {
+            Long previousSize = rasterFiles.put(rasterFile,
+                    rasterFileSize);
+            if(previousSize != null) {
+                sizeBytes -= previousSize;
+            }
+            sizeBytes += rasterFileSize;
+            LOGGER.trace(String.format("stored raster of '%s' in '%s' (%d bytes, %d bytes in store)",
+                    storageFile.getAbsolutePath(),
+                    rasterFile.getAbsolutePath(),
+                    rasterFileSize,
+                    sizeBytes));
+            evict(rasterFile);
+        }
+    }
+
+    /**
+     * Deletes the raster file of {@code storageFile} if it exists.
+     * @param storageFile the storage file identifying the image
+     */
+    synchronized void invalidate(File storageFile) {
+        File rasterFile = getRasterFile(storageFile);
+        Long rasterFileSize = rasterFiles.remove(rasterFile);
+        if(rasterFileSize != null) {
+            sizeBytes -= rasterFileSize;
+            deleteFile(rasterFile);
+        }
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    private void evict(File keep) {
+        Iterator<Map.Entry<File, Long>> iterator = rasterFiles.entrySet().iterator();
+        while(sizeBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<File, Long> eldest = iterator.next();
+            if(eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            sizeBytes -= eldest.getValue();
+            LOGGER.trace(String.format("evicting raster file '%s' because the maximum size of %d bytes is exceeded",
+                    eldest.getKey().getAbsolutePath(),
+                    maxBytes));
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    private void deleteFile(File rasterFile) {
+        assert rasterFile.getName().endsWith(SUFFIX);
+        if(!rasterFile.delete() && rasterFile.exists()) {
+            LOGGER.warn(String.format("raster file '%s' couldn't be deleted, retrying on exit",
+                    rasterFile.getAbsolutePath()));
+            rasterFile.deleteOnExit();
+        }
+    }
+
+    private static boolean isGray(ColorModel colorModel) {
+        if(!(colorModel instanceof IndexColorModel)) {
+            return false;
+        }
+        IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+        for(int i=0; i<indexColorModel.getMapSize(); i++) {
+            int red = indexColorModel.getRed(i);
+            if(red != indexColorModel.getGreen(i)
+                    || red != indexColorModel.getBlue(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets {@code image} as an image of {@code type} whose data buffer
+     * contains only the pixels of the image without padding.
+     */
+    private static BufferedImage convert(BufferedImage image,
+            int type) {
+        int bytesPerPixel = type == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3;
+        if(image.getType() == type
+                && image.getRaster().getParent() == null
+                && ((DataBufferByte)image.getRaster().getDataBuffer()).getData().length == image.getWidth()*image.getHeight()*bytesPerPixel) {
+            return image;
+        }
+        BufferedImage retValue = new BufferedImage(image.getWidth(),
+                image.getHeight(),
+                type);
+        if(type == BufferedImage.TYPE_BYTE_GRAY
+                && image.getColorModel() instanceof IndexColorModel) {
+            //copy the gray values of the palette because drawing would
+            //convert them between color spaces
+            IndexColorModel colorModel = (IndexColorModel) image.getColorModel();
+            int[] row = new int[image.getWidth()];
+            for(int y=0; y<image.getHeight(); y++) {
+                image.getRaster().getSamples(0, y, image.getWidth(), 1, 0, row);
+                for(int x=0; x<row.length; x++) {
+                    row[x] = colorModel.getRed(row[x]);
+                }
+                retValue.getRaster().setSamples(0, y, image.getWidth(), 1, 0, row);
+            }
+            return retValue;
+        }
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+}
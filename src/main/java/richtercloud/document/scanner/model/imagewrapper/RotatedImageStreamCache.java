@@ -0,0 +1,316 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.ifaces.ImageWrapperException;
+
+/**
+ * A bounded cache of encoded rotated images on disk which allows to pass
+ * rotated images as streams without encoding them on every request.
+ *
+ * Every variant, i.e. every combination of storage file, rotation and format,
+ * is encoded once into a file in a temporary directory owned by the cache. The
+ * total size of the files is limited by a quota; if it's exceeded the least
+ * recently used files are deleted. Files of an image are deleted as well if
+ * it's invalidated (see {@link #invalidate(java.io.File) }), i.e. when it's no
+ * longer used by any image wrapper, and all files are deleted on
+ * {@link #shutdown() }.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- Encoding happens outside the lock so that requests for different images don't
+wait for each other. If two threads encode the same variant, the result which
+is stored last is discarded.
+- Only files inside the cache directory are ever deleted which guarantees that
+storage files of image wrappers are never touched.
+- Files are deleted while they might still be read. That's fine on POSIX
+systems; on systems which don't allow it the deletion is retried on exit.
+*/
+class RotatedImageStreamCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(RotatedImageStreamCache.class);
+
+    /**
+     * Writes a variant to the file which is passed to it.
+     */
+    @FunctionalInterface
+    interface Encoder {
+
+        void encode(File target) throws IOException;
+    }
+
+    private final static class Key {
+        private final File storageFile;
+        private final double rotationDegrees;
+        private final String formatName;
+
+        Key(File storageFile,
+                double rotationDegrees,
+                String formatName) {
+            this.storageFile = storageFile;
+            double normalizedDegrees = rotationDegrees%360;
+            if(normalizedDegrees < 0) {
+                normalizedDegrees += 360;
+            }
+            this.rotationDegrees = normalizedDegrees;
+            this.formatName = formatName.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(storageFile,
+                    rotationDegrees,
+                    formatName);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj) {
+                return true;
+            }
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return Double.doubleToLongBits(this.rotationDegrees) == Double.doubleToLongBits(other.rotationDegrees)
+                    && this.storageFile.equals(other.storageFile)
+                    && this.formatName.equals(other.formatName);
+        }
+    }
+
+    private final static class Entry {
+        private final File file;
+        private final long sizeBytes;
+
+        Entry(File file,
+                long sizeBytes) {
+            this.file = file;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final long quotaBytes;
+    /**
+     * The cached files in access order.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16,
+            0.75f,
+            true //accessOrder
+    );
+    private long sizeBytes = 0;
+    /**
+     * The directory containing the cached files which is created on first
+     * use.
+     */
+    private File cacheDir;
+    private boolean shutdown = false;
+
+    /**
+     * Creates a new {@code RotatedImageStreamCache}.
+     * @param quotaBytes the maximum size of all cached files in bytes; the
+     * most recently stored file is kept even if it exceeds the quota on its
+     * own
+     */
+    RotatedImageStreamCache(long quotaBytes) {
+        if(quotaBytes <= 0) {
+            throw new IllegalArgumentException("quotaBytes has to be > 0");
+        }
+        this.quotaBytes = quotaBytes;
+    }
+
+    /**
+     * Gets the cached file of the specified variant or encodes it with
+     * {@code encoder} if it isn't cached.
+     *
+     * @param storageFile the file identifying the image
+     * @param rotationDegrees the rotation of the variant
+     * @param formatName the format of the variant
+     * @param encoder the encoder writing the variant in case it isn't cached
+     * @return the file which is owned by the cache and must neither be
+     * modified nor deleted or {@code null} if the cache has been shut down
+     * @throws ImageWrapperException if {@code encoder} fails or the file
+     * can't be created
+     */
+    File get(File storageFile,
+            double rotationDegrees,
+            String formatName,
+            Encoder encoder) throws ImageWrapperException {
+        Key key = new Key(storageFile,
+                rotationDegrees,
+                formatName);
+        File targetDir;
+        synchronized(this) {
+            if(shutdown) {
+                return null;
+            }
+            Entry entry = entries.get(key);
+            if(entry != null && entry.file.isFile()) {
+                LOGGER.trace(String.format("using cached stream file '%s'",
+                        entry.file.getAbsolutePath()));
+                return entry.file;
+            }
+            targetDir = getCacheDir();
+        }
+        File target;
+        try {
+            target = File.createTempFile("image-wrapper",
+                    "."+key.formatName,
+                    targetDir);
+        } catch (IOException ex) {
+            throw new ImageWrapperException(ex);
+        }
+        try {
+            encoder.encode(target);
+        }catch(IOException ex) {
+            deleteFile(target);
+            if(ex instanceof ImageWrapperException) {
+                throw (ImageWrapperException)ex;
+            }
+            throw new ImageWrapperException(ex);
+        }catch(RuntimeException ex) {
+            deleteFile(target);
+            throw ex;
+        }
+        synchronized(this) {
+            if(shutdown) {
+                deleteFile(target);
+                return null;
+            }
+            Entry existing = entries.get(key);
+            if(existing != null && existing.file.isFile()) {
+                deleteFile(target);
+                return existing.file;
+            }
+            if(existing != null) {
+                //deleted by a temporary directory cleaner
+                removeEntry(key);
+            }
+            Entry entry = new Entry(target,
+                    target.length());
+            entries.put(key, entry);
+            sizeBytes += entry.sizeBytes;
+            LOGGER.debug(String.format("cached stream file '%s' (%d bytes, %d bytes in cache)",
+                    target.getAbsolutePath(),
+                    entry.sizeBytes,
+                    sizeBytes));
+            evict(key);
+            return target;
+        }
+    }
+
+    /**
+     * Deletes all cached files of the image identified by
+     * {@code storageFile}.
+     * @param storageFile the file identifying the image
+     */
+    synchronized void invalidate(File storageFile) {
+        List<Key> keys = new ArrayList<>();
+        for(Key key : entries.keySet()) {
+            if(key.storageFile.equals(storageFile)) {
+                keys.add(key);
+            }
+        }
+        for(Key key : keys) {
+            removeEntry(key);
+        }
+    }
+
+    /**
+     * Deletes all cached files and the cache directory. All following requests
+     * return {@code null}.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        for(Key key : new ArrayList<>(entries.keySet())) {
+            removeEntry(key);
+        }
+        if(cacheDir != null && !cacheDir.delete() && cacheDir.exists()) {
+            LOGGER.warn(String.format("stream cache directory '%s' couldn't be deleted",
+                    cacheDir.getAbsolutePath()));
+        }
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict(Key keep) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while(sizeBytes > quotaBytes && iterator.hasNext()) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            if(eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            sizeBytes -= eldest.getValue().sizeBytes;
+            LOGGER.trace(String.format("evicting stream file '%s' because the quota of %d bytes is exceeded",
+                    eldest.getValue().file.getAbsolutePath(),
+                    quotaBytes));
+            deleteFile(eldest.getValue().file);
+        }
+    }
+
+    private void removeEntry(Key key) {
+        Entry entry = entries.remove(key);
+        if(entry != null) {
+            sizeBytes -= entry.sizeBytes;
+            deleteFile(entry.file);
+        }
+    }
+
+    private File getCacheDir() throws ImageWrapperException {
+        if(cacheDir == null || !cacheDir.isDirectory()) {
+            try {
+                cacheDir = Files.createTempDirectory("document-scanner-image-streams").toFile();
+            } catch (IOException ex) {
+                throw new ImageWrapperException(ex);
+            }
+            LOGGER.debug(String.format("using '%s' as stream cache directory",
+                    cacheDir.getAbsolutePath()));
+        }
+        return cacheDir;
+    }
+
+    private void deleteFile(File file) {
+        if(!file.getParentFile().equals(cacheDir)) {
+            //never delete files which haven't been created by the cache
+            LOGGER.error(String.format("refusing to delete '%s' which isn't located in stream cache directory",
+                    file.getAbsolutePath()));
+            return;
+        }
+        if(!file.delete() && file.exists()) {
+            LOGGER.warn(String.format("stream file '%s' couldn't be deleted, retrying on exit",
+                    file.getAbsolutePath()));
+            file.deleteOnExit();
+        }
+    }
+}
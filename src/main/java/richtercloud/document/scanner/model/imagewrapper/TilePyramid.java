@@ -0,0 +1,237 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A multi-resolution representation of an unrotated image which allows views
+ * to draw only the visible part of an image at the level closest to the
+ * requested size.
+ *
+ * Level 0 is the original image which isn't stored in the pyramid in order to
+ * avoid keeping it in memory twice (it's passed to the methods which need
+ * it). Every following level has half the width and height of the previous
+ * one until the image fits into one tile of {@link #TILE_SIZE} pixels. Levels
+ * are drawn in tiles of {@link #TILE_SIZE} pixels of which only the ones
+ * intersecting the clip of the target graphics are drawn, so that the costs
+ * of drawing are bounded by the size of the visible area rather than the size
+ * of the image.
+ *
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- Tiles are regions of the level images rather than separate images. Copying
+them wouldn't reduce the drawing costs since Java2D only processes the source
+region passed to drawImage, but would require managing more objects.
+- Destination coordinates of tiles are calculated from the source coordinates
+with the same rounding so that adjacent tiles share their edges without gaps.
+*/
+public final class TilePyramid {
+    /**
+     * The width and height of tiles in pixels.
+     */
+    public final static int TILE_SIZE = 256;
+    private final int width;
+    private final int height;
+    /**
+     * The levels starting with level 1.
+     */
+    private final List<BufferedImage> levels;
+
+    /**
+     * Builds the levels of {@code image} by halving it repeatedly.
+     * @param image the unrotated image which isn't referenced by the pyramid
+     * @return the new pyramid
+     */
+    public static TilePyramid build(BufferedImage image) {
+        List<BufferedImage> levels = new ArrayList<>();
+        BufferedImage current = image;
+        while(current.getWidth() > TILE_SIZE || current.getHeight() > TILE_SIZE) {
+            current = ImageTransformations.scaleToWidth(current,
+                    Math.max(1, current.getWidth()/2));
+            levels.add(current);
+        }
+        return new TilePyramid(image.getWidth(),
+                image.getHeight(),
+                levels);
+    }
+
+    private TilePyramid(int width,
+            int height,
+            List<BufferedImage> levels) {
+        this.width = width;
+        this.height = height;
+        this.levels = Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * The number of levels including level 0.
+     * @return the level count
+     */
+    public int getLevelCount() {
+        return levels.size()+1;
+    }
+
+    public int getLevelWidth(int level) {
+        return level == 0 ? width : levels.get(level-1).getWidth();
+    }
+
+    public int getLevelHeight(int level) {
+        return level == 0 ? height : levels.get(level-1).getHeight();
+    }
+
+    /**
+     * Gets the image of {@code level}.
+     * @param level the level
+     * @param original the image of level 0
+     * @return {@code original} for level 0 or the image of the level
+     */
+    public BufferedImage getLevel(int level,
+            BufferedImage original) {
+        return level == 0 ? original : levels.get(level-1);
+    }
+
+    /**
+     * Selects the smallest level which is at least as wide as
+     * {@code targetWidth} so that drawing it at {@code targetWidth} doesn't
+     * upscale unless {@code targetWidth} exceeds the original width.
+     * @param targetWidth the width of the unrotated image on screen
+     * @return the level
+     */
+    public int selectLevel(int targetWidth) {
+        int retValue = 0;
+        while(retValue+1 < getLevelCount()
+                && getLevelWidth(retValue+1) >= targetWidth) {
+            retValue++;
+        }
+        return retValue;
+    }
+
+    /**
+     * The memory used by all levels except level 0.
+     * @return the size in bytes
+     */
+    public long getBytes() {
+        long retValue = 0;
+        for(BufferedImage level : levels) {
+            retValue += DefaultImageWrapper.getImageBytes(level);
+        }
+        return retValue;
+    }
+
+    /**
+     * Checks whether {@link #paint(java.awt.Graphics2D, java.awt.image.BufferedImage, int, double) }
+     * supports {@code rotationDegrees}.
+     * @param rotationDegrees the rotation
+     * @return {@code true} if {@code rotationDegrees} is a multiple of 90
+     */
+    public static boolean isPaintable(double rotationDegrees) {
+        return rotationDegrees%90 == 0;
+    }
+
+    /**
+     * Draws the visible tiles of the level closest to {@code targetWidth}
+     * scaled to {@code targetWidth} and rotated by {@code rotationDegrees} at
+     * the origin of {@code graphics}.
+     * @param graphics the graphics to draw on whose clip determines the
+     * visible tiles
+     * @param original the image of level 0 which is only used if level 0 is
+     * drawn and may be {@code null} otherwise
+     * @param targetWidth the width of the unrotated image on screen
+     * @param rotationDegrees the clockwise rotation which has to be a
+     * multiple of 90 degrees
+     * @throws IllegalArgumentException if {@code rotationDegrees} isn't a
+     * multiple of 90 degrees
+     */
+    public void paint(Graphics2D graphics,
+            BufferedImage original,
+            int targetWidth,
+            double rotationDegrees) {
+        if(!isPaintable(rotationDegrees)) {
+            throw new IllegalArgumentException("rotationDegrees has to be a multiple of 90");
+        }
+        int level = selectLevel(targetWidth);
+        BufferedImage levelImage = getLevel(level,
+                original);
+        if(levelImage == null) {
+            throw new IllegalArgumentException("original mustn't be null if level 0 is drawn");
+        }
+        int targetHeight = Math.max(1, (int) Math.round(height*(double)targetWidth/width));
+        double scaleX = targetWidth/(double)levelImage.getWidth();
+        double scaleY = targetHeight/(double)levelImage.getHeight();
+        Graphics2D levelGraphics = (Graphics2D) graphics.create();
+        try {
+            int quadrants = (int) (((rotationDegrees/90)%4+4)%4);
+            switch(quadrants) {
+                case 1:
+                    levelGraphics.translate(targetHeight, 0);
+                    break;
+                case 2:
+                    levelGraphics.translate(targetWidth, targetHeight);
+                    break;
+                case 3:
+                    levelGraphics.translate(0, targetWidth);
+                    break;
+                default:
+                    break;
+            }
+            levelGraphics.transform(AffineTransform.getQuadrantRotateInstance(quadrants));
+            levelGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            Rectangle clip = levelGraphics.getClipBounds();
+            if(clip == null) {
+                clip = new Rectangle(0, 0, targetWidth, targetHeight);
+            }
+            int firstTileX = Math.max(0, (int) Math.floor(clip.x/scaleX)/TILE_SIZE);
+            int firstTileY = Math.max(0, (int) Math.floor(clip.y/scaleY)/TILE_SIZE);
+            int lastTileX = Math.min((levelImage.getWidth()-1)/TILE_SIZE,
+                    (int) Math.ceil((clip.x+clip.width)/scaleX)/TILE_SIZE);
+            int lastTileY = Math.min((levelImage.getHeight()-1)/TILE_SIZE,
+                    (int) Math.ceil((clip.y+clip.height)/scaleY)/TILE_SIZE);
+            for(int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+                int sy1 = tileY*TILE_SIZE;
+                int sy2 = Math.min(sy1+TILE_SIZE, levelImage.getHeight());
+                for(int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+                    int sx1 = tileX*TILE_SIZE;
+                    int sx2 = Math.min(sx1+TILE_SIZE, levelImage.getWidth());
+                    levelGraphics.drawImage(levelImage,
+                            (int) Math.round(sx1*scaleX),
+                            (int) Math.round(sy1*scaleY),
+                            (int) Math.round(sx2*scaleX),
+                            (int) Math.round(sy2*scaleY),
+                            sx1,
+                            sy1,
+                            sx2,
+                            sy2,
+                            null //imageObserver
+                    );
+                }
+            }
+        }finally {
+            levelGraphics.dispose();
+        }
+    }
+}
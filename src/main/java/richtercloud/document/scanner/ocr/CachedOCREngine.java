@@ -14,106 +14,628 @@
  */
 package richtercloud.document.scanner.ocr;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
-import richtercloud.document.scanner.ifaces.OCREngineConf;
+import richtercloud.document.scanner.ifaces.ImageWrapperException;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
 
 /**
  * An {@link OCREngine} which checks a non-persistent cache to fetch OCR
- * results. Note that cache keys are {@link BufferedImage}s which might be
- * non-identical when they're equal (see
- * {@link BufferedImage#equals(java.lang.Object) } for details).
+ * results. Cache keys are hashes of the image data (see
+ * {@link PersistentOCRResultCache#createKey(byte[], java.lang.String) } and
+ * {@link PersistentOCRResultCache#createKey(java.awt.image.BufferedImage, java.lang.String) })
+ * so that neither images nor {@link ImageWrapper}s are retained by the cache.
+ * The size of the non-persistent caches of texts and word positions is limited
+ * by the estimated heap usage of the results of which each gets one half (see
+ * {@link CachedOCREngineConf#getMemoryCacheMaxBytes() }).
  *
- * If two calls from different threads to
- * {@link #recognizeImage(java.awt.image.BufferedImage) } with the same argument
- * are made, one request is delayed until the first is processed and for the
- * second the result of the first request will be reused immediately.
+ * If the non-persistent cache doesn't contain a result the
+ * {@link PersistentOCRResultCache} configured in {@link CachedOCREngineConf}
+ * is checked which addresses results by the hash of the image data and
+ * {@link #getConfigurationFingerprint() } and thus allows to reuse results
+ * after restarts and for reopened documents.
+ *
+ * If two calls from different threads request the result for the same image
+ * data, only one recognition is performed and the other caller waits for its
+ * result.
+ *
+ * Results of {@link ImageWrapper}s are reused for images which look alike
+ * (e.g. repeated cover sheets) based on their perceptual hash if it differs
+ * in at most {@link CachedOCREngineConf#getDuplicateMaxDistance() } bits (see
+ * {@link DuplicatePageIndex}).
+ *
+ * Texts which haven't been recognized, but extracted from the text layer of
+ * the document a page has been imported from (see
+ * {@link #putTextLayerResult(richtercloud.document.scanner.ifaces.ImageWrapper, java.lang.String) }),
+ * are stored separately from recognition results. They're returned instead of
+ * recognizing a page unless a recognition result is available or a
+ * recognition has been required for the page explicitly (see
+ * {@link #requireRecognition(java.util.Collection) }).
  *
  * @author richter
  */
 /*
 internal implementation notes:
 - implements both parallelization and caching since they're hard to separate
+- Guava's Cache.get(K, Callable) provides single-flight loading per key,
+weight-based eviction and statistics which would otherwise have to be
+implemented with a ConcurrentHashMap of futures
+- the mapping from ImageWrapper to keys uses weak keys (which are compared by
+identity) in order to avoid reading and hashing the image stream again for
+images which have already been recognized without retaining the wrappers
+- canceled recognitions (indicated by null results) are not cached; callers
+waiting for a recognition which has been canceled by another request retry
+with their own token unless it has been canceled as well
+- word positions are stored next to the text in the persistent cache under a
+derived key so that they're available for reopened documents as well
+- results of pages which look like a recognized page (see DuplicatePageIndex)
+are reused only after a miss for their own key and stored under that key;
+word positions aren't reused since the layout of near-duplicates might be
+shifted
+- text layer results are stored under a derived key like word positions, so
+that recognition results in both caches are never replaced by text from
+another source and text layers are neither reused for near-duplicate pages
+nor returned after a recognition has been required
+- the memory caches use a concurrency level of 1 because Guava splits the
+maximum weight between segments which would evict large results long before
+the budget is used up (like the preview caches of CachingImageWrapper)
 */
-public abstract class CachedOCREngine<C extends OCREngineConf> extends ParallelOCREngine<C> {
+public abstract class CachedOCREngine<C extends CachedOCREngineConf> extends ParallelOCREngine<C> {
     private final static Logger LOGGER = LoggerFactory.getLogger(CachedOCREngine.class);
-    private final transient Map<BufferedImage, String> cache = new HashMap<>();
-    private final transient Map<ImageWrapper, String> imageWrapperCache = new HashMap<>();
-    private final transient Map<BufferedImage, Lock> lockMap = new HashMap<>();
-    private final transient Map<ImageWrapper, Lock> imageWrapperLockMap = new HashMap<>();
+    private final transient Cache<String, String> cache;
+    /**
+     * Word positions of recognized pages for engines which provide them.
+     */
+    private final transient Cache<String, OCRPageResult> pageResultCache;
+    private final transient Cache<ImageWrapper, ImageWrapperKey> imageWrapperKeyCache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    /**
+     * The images whose text layer results mustn't be returned.
+     */
+    private final transient Cache<ImageWrapper, Boolean> recognitionRequiredImages = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    /**
+     * The persistent cache or {@code null} if it's disabled or couldn't be
+     * initialized.
+     */
+    private final transient PersistentOCRResultCache persistentCache;
+    /**
+     * The index of perceptual hashes of recognized pages which is created
+     * lazily because it depends on {@link #getConfigurationFingerprint() }
+     * which might depend on state of subclasses.
+     */
+    private transient DuplicatePageIndex duplicatePageIndex;
+    private final transient Object duplicatePageIndexLock = new Object();
 
     public CachedOCREngine(C oCREngineConf) {
         super(oCREngineConf);
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(oCREngineConf.getMemoryCacheMaxBytes()/2)
+                .weigher((String key, String value) -> {
+                    //Java strings need approximately 2 bytes per character
+                    return 2*(key.length()+value.length());
+                })
+                .recordStats()
+                .build();
+        this.pageResultCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(oCREngineConf.getMemoryCacheMaxBytes()/2)
+                .weigher((String key, OCRPageResult value) -> value.estimateSize())
+                .build();
+        PersistentOCRResultCache persistentCache0 = null;
+        if(oCREngineConf.isResultCacheEnabled()) {
+            try {
+                persistentCache0 = PersistentOCRResultCache.getInstance(oCREngineConf.getResultCacheDir(),
+                        oCREngineConf.getResultCacheMaxBytes());
+            } catch (IOException ex) {
+                LOGGER.warn("initialization of persistent OCR result cache failed, continuing without it",
+                        ex);
+            }
+        }
+        this.persistentCache = persistentCache0;
     }
 
-    @Override
-    protected String recognizeImage(BufferedImage image) throws OCREngineRecognitionException {
-        String retValue = cache.get(image);
-        if(retValue == null) {
-            Lock imageLock = lockMap.get(image);
-            if(imageLock == null) {
-                imageLock = new ReentrantLock();
-                lockMap.put(image,
-                        imageLock);
+    public PersistentOCRResultCache getPersistentCache() {
+        return persistentCache;
+    }
+
+    /**
+     * Hit, miss, load and eviction counters of the non-persistent cache.
+     * @return a snapshot of the statistics
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * The number of results in the non-persistent cache.
+     * @return the entry count
+     */
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the word positions of the last recognition of {@code image} which
+     * allows to get the text of an area without recognizing it again.
+     *
+     * @param image the image
+     * @return the page result or {@code null} if {@code image} hasn't been
+     * recognized in its current rotation or the engine doesn't provide word
+     * positions
+     */
+    public OCRPageResult getPageResult(ImageWrapper image) {
+        ImageWrapperKey imageWrapperKey = imageWrapperKeyCache.getIfPresent(image);
+        if(imageWrapperKey == null
+                || imageWrapperKey.rotationDegrees != image.getRotationDegrees()) {
+            return null;
+        }
+        OCRPageResult retValue = pageResultCache.getIfPresent(imageWrapperKey.key);
+        if(retValue == null && persistentCache != null) {
+            String tsv = persistentCache.get(getPageResultKey(imageWrapperKey.key));
+            if(tsv != null) {
+                retValue = OCRPageResult.parseTsv(tsv);
+                pageResultCache.put(imageWrapperKey.key,
+                        retValue);
             }
-            imageLock.lock();
-            try {
-                retValue = recognizeImage0(image);
-                cache.put(image, retValue);
-            }finally {
-                imageLock.unlock();
+        }
+        return retValue;
+    }
+
+    /**
+     * Stores the word positions of the image with cache key {@code key} in
+     * the non-persistent and persistent cache.
+     *
+     * @param key the cache key of the image
+     * @param tsv the word positions in tesseract's TSV format (see
+     * {@link OCRPageResult#parseTsv(java.lang.String) })
+     */
+    protected void putPageResult(String key,
+            String tsv) {
+        pageResultCache.put(key,
+                OCRPageResult.parseTsv(tsv));
+        if(persistentCache != null) {
+            persistentCache.put(getPageResultKey(key),
+                    tsv);
+        }
+    }
+
+    /**
+     * Stores the word positions of the image with cache key {@code key} in
+     * the non-persistent and persistent cache.
+     *
+     * @param key the cache key of the image
+     * @param pageResult the word positions in coordinates of the image
+     */
+    protected void putPageResult(String key,
+            OCRPageResult pageResult) {
+        pageResultCache.put(key,
+                pageResult);
+        if(persistentCache != null) {
+            persistentCache.put(getPageResultKey(key),
+                    pageResult.toTsv());
+        }
+    }
+
+    /**
+     * Gets the cache key of {@code image} in its current rotation which is
+     * computed from its original image stream (like the streams passed to
+     * {@link #recognizeImageStreams(org.apache.commons.collections4.OrderedMap) }
+     * by the GUI) unless it's known already.
+     *
+     * @param image the image
+     * @return the key
+     * @throws OCREngineRecognitionException if the image stream can't be read
+     */
+    protected String getKey(ImageWrapper image) throws OCREngineRecognitionException {
+        ImageWrapperKey imageWrapperKey = imageWrapperKeyCache.getIfPresent(image);
+        if(imageWrapperKey != null
+                && imageWrapperKey.rotationDegrees == image.getRotationDegrees()) {
+            return imageWrapperKey.key;
+        }
+        String retValue;
+        try (InputStream imageStream = image.getOriginalImageStream()) {
+            if(imageStream == null) {
+                throw new OCREngineRecognitionException(String.format("image %s doesn't provide image data",
+                        image));
+            }
+            retValue = PersistentOCRResultCache.createKey(IOUtils.toByteArray(imageStream),
+                    getConfigurationFingerprint());
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
+        imageWrapperKeyCache.put(image,
+                new ImageWrapperKey(retValue,
+                        image.getRotationDegrees()));
+        return retValue;
+    }
+
+    /**
+     * Stores {@code text} which has been extracted from the text layer of the
+     * document {@code image} has been imported from so that following
+     * requests which don't require a recognition don't recognize it. The text
+     * is stored separately from recognition results.
+     *
+     * @param image the image
+     * @param text the text of the text layer of the page
+     * @throws OCREngineRecognitionException if the image stream can't be read
+     */
+    public void putTextLayerResult(ImageWrapper image,
+            String text) throws OCREngineRecognitionException {
+        String textLayerKey = getTextLayerKey(getKey(image));
+        cache.put(textLayerKey,
+                text);
+        if(persistentCache != null) {
+            persistentCache.put(textLayerKey,
+                    text);
+        }
+    }
+
+    /**
+     * Makes following requests for {@code images} recognize them (or return
+     * cached recognition results) rather than returning results obtained from
+     * text layers, e.g. because the user requested a recognition explicitly.
+     *
+     * @param images the images
+     */
+    public void requireRecognition(Collection<ImageWrapper> images) {
+        for(ImageWrapper image : images) {
+            recognitionRequiredImages.put(image,
+                    Boolean.TRUE);
+        }
+    }
+
+    private String getTextLayerResult(String key) {
+        String textLayerKey = getTextLayerKey(key);
+        String retValue = cache.getIfPresent(textLayerKey);
+        if(retValue == null && persistentCache != null) {
+            retValue = persistentCache.get(textLayerKey);
+            if(retValue != null) {
+                cache.put(textLayerKey,
+                        retValue);
             }
         }
         return retValue;
     }
 
+    /**
+     * Stores a result for the image with cache key {@code key}.
+     *
+     * @param key the cache key
+     * @param text the text of the image
+     */
+    protected void putResult(String key,
+            String text) {
+        cache.put(key,
+                text);
+        if(persistentCache != null) {
+            persistentCache.put(key,
+                    text);
+        }
+    }
+
+    /**
+     * Gets the index of perceptual hashes of recognized pages which is stored
+     * next to the persistent cache if it's enabled.
+     * @return the index or {@code null} if the reuse of results for duplicate
+     * pages is disabled
+     */
+    protected DuplicatePageIndex getDuplicatePageIndex() {
+        if(!getoCREngineConf().isDuplicateDetectionEnabled()) {
+            return null;
+        }
+        synchronized(duplicatePageIndexLock) {
+            if(duplicatePageIndex == null) {
+                if(persistentCache != null) {
+                    duplicatePageIndex = DuplicatePageIndex.load(new File(persistentCache.getCacheDir(),
+                                    DuplicatePageIndex.FILE_NAME),
+                            getConfigurationFingerprint(),
+                            getoCREngineConf().getDuplicateMaxDistance(),
+                            persistentCache::contains);
+                }else {
+                    duplicatePageIndex = new DuplicatePageIndex(getoCREngineConf().getDuplicateMaxDistance());
+                }
+            }
+            return duplicatePageIndex;
+        }
+    }
+
+    private static long[] getPerceptualHash(ImageWrapper image) {
+        if(!(image instanceof DefaultImageWrapper)) {
+            return null;
+        }
+        try {
+            return ((DefaultImageWrapper) image).getPerceptualHash();
+        } catch (ImageWrapperException ex) {
+            LOGGER.debug(String.format("computing perceptual hash of image %s failed, skipping duplicate detection",
+                    image),
+                    ex);
+            return null;
+        }
+    }
+
+    private void indexDuplicatePage(long[] perceptualHash,
+            double rotationDegrees,
+            String key) {
+        if(perceptualHash == null) {
+            return;
+        }
+        DuplicatePageIndex duplicatePageIndex0 = getDuplicatePageIndex();
+        if(duplicatePageIndex0 != null) {
+            duplicatePageIndex0.put(perceptualHash,
+                    rotationDegrees,
+                    key);
+        }
+    }
+
+    /**
+     * Gets the cached result of a page which looks like the page with
+     * {@code perceptualHash}.
+     * @return the result or {@code null} if there's no such page or its result
+     * is no longer cached
+     */
+    private String getDuplicateResult(long[] perceptualHash,
+            double rotationDegrees,
+            String key) {
+        if(perceptualHash == null) {
+            return null;
+        }
+        DuplicatePageIndex duplicatePageIndex0 = getDuplicatePageIndex();
+        if(duplicatePageIndex0 == null) {
+            return null;
+        }
+        for(String duplicateKey : duplicatePageIndex0.find(perceptualHash,
+                rotationDegrees)) {
+            if(duplicateKey.equals(key)) {
+                continue;
+            }
+            String retValue = cache.getIfPresent(duplicateKey);
+            if(retValue == null && persistentCache != null) {
+                retValue = persistentCache.get(duplicateKey);
+            }
+            if(retValue != null) {
+                LOGGER.debug(String.format("reusing OCR result of near-duplicate page with key %s for key %s",
+                        duplicateKey,
+                        key));
+                return retValue;
+            }
+        }
+        return null;
+    }
+
+    private static String getPageResultKey(String key) {
+        return key+"-words";
+    }
+
+    private static String getTextLayerKey(String key) {
+        return key+"-text-layer";
+    }
+
+    /**
+     * A string describing all configuration values which influence OCR
+     * results. It's part of the keys of the persistent cache so that changes
+     * of these values don't cause outdated results to be returned.
+     *
+     * @return the fingerprint
+     */
+    protected String getConfigurationFingerprint() {
+        return getoCREngineConf().getClass().getName();
+    }
+
+    /**
+     * Checks whether the result for {@code key} is available in the
+     * non-persistent or persistent cache without recognizing it. Results
+     * obtained from text layers are taken into account.
+     * @param key the key
+     * @return {@code true} if the result is cached, {@code false} otherwise
+     */
+    protected boolean isCached(String key) {
+        return isRecognized(key)
+                || isRecognized(getTextLayerKey(key));
+    }
+
+    private boolean isRecognized(String key) {
+        //asMap doesn't record statistics
+        return cache.asMap().containsKey(key)
+                || persistentCache != null && persistentCache.contains(key);
+    }
+
+    @Override
+    protected String recognizeImage(BufferedImage image) throws OCREngineRecognitionException {
+        String key = PersistentOCRResultCache.createKey(image,
+                getConfigurationFingerprint());
+        return getOrRecognize(key,
+                () -> recognizeImage0(image));
+    }
+
     @Override
     protected String recognizeImageStream(ImageWrapper image, InputStream inputStream) throws OCREngineRecognitionException {
-        //The lock for the image need to be acquired before the
-        //imageWrapperCache is checked, otherwise recognizeImageStream0 is
-        //invoked for every parallel execution
-        Lock imageLock;
-        synchronized(this) {
-            imageLock = imageWrapperLockMap.get(image);
-            if(imageLock == null) {
-                imageLock = new ReentrantLock();
-                imageWrapperLockMap.put(image,
-                        imageLock);
-                LOGGER.trace(String.format("created lock for image %s", image));
+        ImageWrapperKey imageWrapperKey = imageWrapperKeyCache.getIfPresent(image);
+        if(imageWrapperKey != null
+                && imageWrapperKey.rotationDegrees == image.getRotationDegrees()) {
+            String retValue = cache.getIfPresent(imageWrapperKey.key);
+            if(retValue != null) {
+                LOGGER.trace(String.format("using cached OCR result for image %s", image));
+                return retValue;
             }
         }
-        LOGGER.trace(String.format("acquiring lock for image %s", image));
-        imageLock.lock();
-        String retValue;
+        byte[] imageData;
         try {
-            retValue = imageWrapperCache.get(image);
-            if(retValue == null) {
-                LOGGER.trace(String.format("starting OCR for image %s", image));
-                retValue = recognizeImageStream0(inputStream);
-                if(retValue != null) {
-                    //null if process has been canceled
-                    imageWrapperCache.put(image,
-                                retValue);
+            imageData = IOUtils.toByteArray(inputStream);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
+        String key = PersistentOCRResultCache.createKey(imageData,
+                getConfigurationFingerprint());
+        double rotationDegrees = image.getRotationDegrees();
+        imageWrapperKeyCache.put(image,
+                new ImageWrapperKey(key,
+                        rotationDegrees));
+        if(recognitionRequiredImages.getIfPresent(image) == null
+                && !isRecognized(key)) {
+            String textLayerResult = getTextLayerResult(key);
+            if(textLayerResult != null) {
+                LOGGER.trace(String.format("using text layer result for image %s", image));
+                return textLayerResult;
+            }
+        }
+        long[] perceptualHash = getPerceptualHash(image);
+        return getOrRecognize(key,
+                () -> {
+                    String duplicateResult = getDuplicateResult(perceptualHash,
+                            rotationDegrees,
+                            key);
+                    if(duplicateResult != null) {
+                        return duplicateResult;
+                    }
+                    LOGGER.trace(String.format("starting OCR for image %s", image));
+                    String result = recognizeImageData0(key,
+                            imageData);
+                    if(result != null) {
+                        indexDuplicatePage(perceptualHash,
+                                rotationDegrees,
+                                key);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Gets the result for {@code key} from the non-persistent or persistent
+     * cache or invokes {@code recognition} exactly once for all concurrent
+     * callers.
+     *
+     * @param key the key
+     * @param recognition the recognition to run on cache misses
+     * @return the result or {@code null} if the recognition has been canceled
+     * @throws OCREngineRecognitionException if {@code recognition} throws it
+     */
+    private String getOrRecognize(String key,
+            Recognition recognition) throws OCREngineRecognitionException {
+        OCRCancellationToken cancellationToken = getCancellationToken();
+        while(true) {
+            try {
+                return getOrRecognize0(key,
+                        recognition,
+                        cancellationToken);
+            } catch (RecognitionCanceledException ex) {
+                if(ex.cancellationToken == cancellationToken
+                        || cancellationToken.isCanceled()) {
+                    return null;
                 }
-            }else {
-                LOGGER.trace(String.format("using cached OCR result for image %s", image));
+                LOGGER.debug(String.format("recognition for key %s has been canceled by another request, retrying",
+                        key));
             }
-        }finally{
-            LOGGER.trace(String.format("unlocking image lock for image %s", image));
-            imageLock.unlock();
         }
-        return retValue;
+    }
+
+    private String getOrRecognize0(String key,
+            Recognition recognition,
+            OCRCancellationToken cancellationToken) throws OCREngineRecognitionException, RecognitionCanceledException {
+        try {
+            return cache.get(key,
+                    () -> {
+                        if(persistentCache != null) {
+                            String persistentResult = persistentCache.get(key);
+                            if(persistentResult != null) {
+                                LOGGER.trace(String.format("using persistently cached OCR result for key %s",
+                                        key));
+                                return persistentResult;
+                            }
+                        }
+                        String result = recognition.run();
+                        if(result == null) {
+                            throw new RecognitionCanceledException(cancellationToken);
+                        }
+                        if(persistentCache != null) {
+                            persistentCache.put(key,
+                                    result);
+                        }
+                        return result;
+                    });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof RecognitionCanceledException) {
+                throw (RecognitionCanceledException) cause;
+            }
+            if(cause instanceof OCREngineRecognitionException) {
+                throw (OCREngineRecognitionException) cause;
+            }
+            throw new OCREngineRecognitionException(cause);
+        }
     }
 
     protected abstract String recognizeImage0(BufferedImage image) throws OCREngineRecognitionException;
 
     protected abstract String recognizeImageStream0(InputStream inputStream) throws OCREngineRecognitionException;
+
+    /**
+     * Recognizes encoded image data after a cache miss. Delegates to
+     * {@link #recognizeImageStream0(java.io.InputStream) } by default and can
+     * be overridden by engines which prepare recognitions by key.
+     *
+     * @param key the cache key of {@code imageData}
+     * @param imageData the encoded image data
+     * @return the recognized text or {@code null} if the recognition has been
+     * canceled
+     * @throws OCREngineRecognitionException if the recognition fails
+     */
+    protected String recognizeImageData0(String key,
+            byte[] imageData) throws OCREngineRecognitionException {
+        return recognizeImageStream0(new ByteArrayInputStream(imageData));
+    }
+
+    @FunctionalInterface
+    private interface Recognition {
+        String run() throws OCREngineRecognitionException;
+    }
+
+    /**
+     * Signals that a recognition has been canceled which can't be expressed by
+     * a {@code null} value in a Guava cache.
+     */
+    private static class RecognitionCanceledException extends Exception {
+        private static final long serialVersionUID = 1L;
+        /**
+         * The token of the request which performed the recognition.
+         */
+        private final transient OCRCancellationToken cancellationToken;
+
+        RecognitionCanceledException(OCRCancellationToken cancellationToken) {
+            this.cancellationToken = cancellationToken;
+        }
+    }
+
+    private static class ImageWrapperKey {
+        private final String key;
+        /**
+         * The rotation of the image when the key was computed since rotation
+         * changes the image data.
+         */
+        private final double rotationDegrees;
+
+        ImageWrapperKey(String key,
+                double rotationDegrees) {
+            this.key = key;
+            this.rotationDegrees = rotationDegrees;
+        }
+    }
 }
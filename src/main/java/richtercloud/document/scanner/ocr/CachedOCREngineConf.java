@@ -0,0 +1,169 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * Configuration of the in-memory and persistent OCR result caches of a
+ * {@link CachedOCREngine}.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- the default directory is not derived from DocumentScannerConf.CONFIG_DIR_DEFAULT
+because DocumentScannerConf creates a default OCR engine configuration in its
+static initializer before that constant is initialized
+- like in ParallelOCREngineConf missing values (null and 0) are interpreted as
+default values for configuration files written by older versions
+*/
+public abstract class CachedOCREngineConf extends ParallelOCREngineConf {
+    private static final long serialVersionUID = 1L;
+    public final static File RESULT_CACHE_DIR_DEFAULT = new File(new File(System.getProperty("user.home"),
+            ".document-scanner"),
+            "ocr-result-cache");
+    public final static long RESULT_CACHE_MAX_BYTES_DEFAULT = 256L*1024*1024;
+    public final static long MEMORY_CACHE_MAX_BYTES_DEFAULT = 16L*1024*1024;
+    /**
+     * Reuse of results for duplicate pages is disabled by default since
+     * pages which differ in small details can't be distinguished reliably by
+     * their perceptual hash.
+     */
+    public final static int DUPLICATE_MAX_DISTANCE_DEFAULT = -1;
+    /**
+     * The largest supported distance which keeps the lookup in
+     * {@link PerceptualHashIndex} selective.
+     */
+    public final static int DUPLICATE_MAX_DISTANCE_MAX = 31;
+    /**
+     * The directory where OCR results are stored across restarts.
+     */
+    private File resultCacheDir = RESULT_CACHE_DIR_DEFAULT;
+    /**
+     * The maximum size of all files in {@code resultCacheDir}. A negative
+     * value disables the persistent cache.
+     */
+    private long resultCacheMaxBytes = RESULT_CACHE_MAX_BYTES_DEFAULT;
+    /**
+     * The maximum estimated heap usage of OCR results cached in memory. Texts
+     * and word positions get one half of it each.
+     */
+    private long memoryCacheMaxBytes = MEMORY_CACHE_MAX_BYTES_DEFAULT;
+    /**
+     * The maximum number of bits in which the perceptual hashes of two pages
+     * may differ in order to reuse the result of one for the other (see
+     * {@link DuplicatePageIndex}). A negative value disables the reuse,
+     * {@code null} means the default. Larger values find more duplicates,
+     * but increase the risk to reuse the result of a page which differs in
+     * small details like an amount or a date. Values between 4 and 12 find
+     * most rescans of the same sheet (e.g. cover or separator sheets) and
+     * should only be used if forms from the same template are not
+     * recognized or their results are checked.
+     */
+    private Integer duplicateMaxDistance = DUPLICATE_MAX_DISTANCE_DEFAULT;
+
+    public CachedOCREngineConf() {
+    }
+
+    public long getMemoryCacheMaxBytes() {
+        if(memoryCacheMaxBytes <= 0) {
+            return MEMORY_CACHE_MAX_BYTES_DEFAULT;
+        }
+        return memoryCacheMaxBytes;
+    }
+
+    public void setMemoryCacheMaxBytes(long memoryCacheMaxBytes) {
+        this.memoryCacheMaxBytes = memoryCacheMaxBytes;
+    }
+
+    public File getResultCacheDir() {
+        if(resultCacheDir == null) {
+            return RESULT_CACHE_DIR_DEFAULT;
+        }
+        return resultCacheDir;
+    }
+
+    public void setResultCacheDir(File resultCacheDir) {
+        this.resultCacheDir = resultCacheDir;
+    }
+
+    public long getResultCacheMaxBytes() {
+        if(resultCacheMaxBytes == 0) {
+            return RESULT_CACHE_MAX_BYTES_DEFAULT;
+        }
+        return resultCacheMaxBytes;
+    }
+
+    public void setResultCacheMaxBytes(long resultCacheMaxBytes) {
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+    }
+
+    /**
+     * The maximum distance of perceptual hashes of duplicate pages which is
+     * limited to {@link #DUPLICATE_MAX_DISTANCE_MAX}.
+     * @return the maximum distance or a negative value if the reuse of
+     * results for duplicate pages is disabled
+     */
+    public int getDuplicateMaxDistance() {
+        if(duplicateMaxDistance == null) {
+            return DUPLICATE_MAX_DISTANCE_DEFAULT;
+        }
+        return Math.min(duplicateMaxDistance,
+                DUPLICATE_MAX_DISTANCE_MAX);
+    }
+
+    public void setDuplicateMaxDistance(Integer duplicateMaxDistance) {
+        this.duplicateMaxDistance = duplicateMaxDistance;
+    }
+
+    public boolean isDuplicateDetectionEnabled() {
+        return getDuplicateMaxDistance() >= 0;
+    }
+
+    public boolean isResultCacheEnabled() {
+        return getResultCacheMaxBytes() > 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = super.hashCode();
+        hash = 53 * hash + Objects.hashCode(this.getResultCacheDir());
+        hash = 53 * hash + Long.hashCode(this.getResultCacheMaxBytes());
+        hash = 53 * hash + Long.hashCode(this.getMemoryCacheMaxBytes());
+        hash = 53 * hash + this.getDuplicateMaxDistance();
+        return hash;
+    }
+
+    protected boolean equalsTransitive(CachedOCREngineConf other) {
+        if(!super.equalsTransitive(other)) {
+            return false;
+        }
+        if (!Objects.equals(this.getResultCacheDir(), other.getResultCacheDir())) {
+            return false;
+        }
+        if (this.getResultCacheMaxBytes() != other.getResultCacheMaxBytes()) {
+            return false;
+        }
+        if (this.getMemoryCacheMaxBytes() != other.getMemoryCacheMaxBytes()) {
+            return false;
+        }
+        if (this.getDuplicateMaxDistance() != other.getDuplicateMaxDistance()) {
+            return false;
+        }
+        return true;
+    }
+}
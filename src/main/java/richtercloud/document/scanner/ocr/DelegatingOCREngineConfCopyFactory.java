@@ -38,6 +38,9 @@ public class DelegatingOCREngineConfCopyFactory implements OCREngineConfCopyFact
         if(oCREngineConf instanceof TesseractOCREngineConf) {
             return new TesseractOCREngineConf((TesseractOCREngineConf) oCREngineConf);
         }
+        if(oCREngineConf instanceof PdfsandwichOCREngineConf) {
+            return new PdfsandwichOCREngineConf((PdfsandwichOCREngineConf) oCREngineConf);
+        }
         throw new IllegalArgumentException(String.format("OCR engine configuration of type %s not supported", oCREngineConf.getClass()));
     }
 }
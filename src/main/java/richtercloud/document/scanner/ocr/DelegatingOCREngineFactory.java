@@ -24,13 +24,16 @@ import richtercloud.message.handler.IssueHandler;
  */
 public class DelegatingOCREngineFactory implements OCREngineFactory<OCREngine, OCREngineConf> {
     private final TesseractOCREngineFactory tesseractOCREngineFactory;
+    private final PdfsandwichOCREngineFactory pdfsandwichOCREngineFactory;
 
     public DelegatingOCREngineFactory(IssueHandler issueHandler) {
         this.tesseractOCREngineFactory = new TesseractOCREngineFactory(issueHandler);
+        this.pdfsandwichOCREngineFactory = new PdfsandwichOCREngineFactory(issueHandler);
     }
 
     /**
-     * Supports {@link TesseractOCREngineConf} only.
+     * Supports {@link TesseractOCREngineConf} and
+     * {@link PdfsandwichOCREngineConf}.
      * @param oCREngineConf
      * @throws IllegalArgumentException is {@code oCREngineConf} isn't supported
      * @return the created OCR engine
@@ -40,6 +43,9 @@ public class DelegatingOCREngineFactory implements OCREngineFactory<OCREngine, O
         if(oCREngineConf instanceof TesseractOCREngineConf) {
             return tesseractOCREngineFactory.create((TesseractOCREngineConf) oCREngineConf);
         }
+        if(oCREngineConf instanceof PdfsandwichOCREngineConf) {
+            return pdfsandwichOCREngineFactory.create((PdfsandwichOCREngineConf) oCREngineConf);
+        }
         throw new IllegalArgumentException(String.format("OCREngineConf of type '%s' isn't supported", oCREngineConf.getClass()));
     }
 }
@@ -0,0 +1,269 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.model.imagewrapper.PerceptualHash;
+
+/**
+ * Maps perceptual hashes of recognized pages to the cache keys of their OCR
+ * results so that the result of a page can be reused for pages which look
+ * alike (e.g. cover sheets, terms and conditions or separator sheets which
+ * occur in many documents) even though their image data differs.
+ *
+ * The index is optionally backed by a file in the directory of the
+ * {@link PersistentOCRResultCache} which makes it work across the archive and
+ * restarts. The file is shared by all engine configurations which are
+ * distinguished by a hash of the configuration fingerprint.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- entries are appended to the file one line at a time; entries whose result
+has been evicted from the persistent cache are skipped when the file is loaded
+and the file is compacted if they're the majority
+- the rotation is part of the entry since results depend on it while the
+perceptual hash is computed from the unrotated image
+*/
+public class DuplicatePageIndex {
+    private final static Logger LOGGER = LoggerFactory.getLogger(DuplicatePageIndex.class);
+    public final static String FILE_NAME = "perceptual-hashes.txt";
+    /**
+     * Guards all file access since the file is shared by all engines using
+     * the same cache directory.
+     */
+    private final static Object FILE_LOCK = new Object();
+
+    /**
+     * Creates an index from the entries of {@code configurationFingerprint}
+     * stored in {@code file} which are still valid.
+     * @param file the backing file which is created when the first entry is
+     * added
+     * @param configurationFingerprint the configuration fingerprint of the
+     * engine
+     * @param maxDistance the maximum number of bits in which perceptual hashes
+     * of pages which are considered duplicates may differ
+     * @param keyValid checks whether the result of a key is still available
+     * @return the loaded index
+     */
+    public static DuplicatePageIndex load(File file,
+            String configurationFingerprint,
+            int maxDistance,
+            Predicate<String> keyValid) {
+        DuplicatePageIndex retValue = new DuplicatePageIndex(file,
+                configurationFingerprint,
+                maxDistance);
+        synchronized(FILE_LOCK) {
+            if(!file.exists()) {
+                return retValue;
+            }
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(file.toPath(),
+                        StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                LOGGER.warn(String.format("reading perceptual hash index '%s' failed, starting with an empty index",
+                        file.getAbsolutePath()),
+                        ex);
+                return retValue;
+            }
+            List<String> retainedLines = new ArrayList<>(lines.size());
+            int staleCount = 0;
+            for(String line : lines) {
+                String[] fields = line.split(" ");
+                if(fields.length != 4) {
+                    staleCount++;
+                    continue;
+                }
+                if(!fields[0].equals(retValue.fingerprintHash)) {
+                    retainedLines.add(line);
+                    continue;
+                }
+                if(!keyValid.test(fields[3])) {
+                    staleCount++;
+                    continue;
+                }
+                try {
+                    retValue.index.put(parseHash(fields[2]),
+                            new Entry(Double.parseDouble(fields[1]),
+                                    fields[3]));
+                    retainedLines.add(line);
+                }catch(IllegalArgumentException ex) {
+                    staleCount++;
+                }
+            }
+            LOGGER.debug(String.format("loaded %d perceptual hashes from '%s' (%d stale)",
+                    retValue.index.size(),
+                    file.getAbsolutePath(),
+                    staleCount));
+            if(staleCount > retainedLines.size()) {
+                try {
+                    File tmpFile = File.createTempFile(FILE_NAME, null, file.getParentFile());
+                    Files.write(tmpFile.toPath(),
+                            retainedLines,
+                            StandardCharsets.UTF_8);
+                    Files.move(tmpFile.toPath(),
+                            file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    LOGGER.warn(String.format("compacting perceptual hash index '%s' failed",
+                            file.getAbsolutePath()),
+                            ex);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    private static long[] parseHash(String hex) {
+        if(hex.length() != PerceptualHash.LONG_COUNT*16) {
+            throw new IllegalArgumentException("invalid hash length");
+        }
+        long[] retValue = new long[PerceptualHash.LONG_COUNT];
+        for(int i=0; i<retValue.length; i++) {
+            retValue[i] = Long.parseUnsignedLong(hex.substring(i*16, (i+1)*16),
+                    16);
+        }
+        return retValue;
+    }
+
+    private static String formatHash(long[] hash) {
+        StringBuilder retValue = new StringBuilder(hash.length*16);
+        for(long value : hash) {
+            String valueHex = Long.toHexString(value);
+            for(int i=valueHex.length(); i<16; i++) {
+                retValue.append('0');
+            }
+            retValue.append(valueHex);
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * The backing file or {@code null} if the index isn't persisted.
+     */
+    private final File file;
+    private final String fingerprintHash;
+    private final PerceptualHashIndex<Entry> index;
+
+    /**
+     * Creates an empty index which isn't persisted.
+     * @param maxDistance the maximum number of bits in which perceptual hashes
+     * of pages which are considered duplicates may differ
+     */
+    public DuplicatePageIndex(int maxDistance) {
+        this(null,
+                "",
+                maxDistance);
+    }
+
+    private DuplicatePageIndex(File file,
+            String configurationFingerprint,
+            int maxDistance) {
+        this.file = file;
+        this.fingerprintHash = Hashing.sha256().hashString(configurationFingerprint, StandardCharsets.UTF_8).toString().substring(0, 16);
+        this.index = new PerceptualHashIndex<>(PerceptualHash.BIT_COUNT,
+                maxDistance);
+    }
+
+    /**
+     * Adds the page with {@code perceptualHash} and {@code rotationDegrees}
+     * whose result is stored under {@code key}.
+     * @param perceptualHash the perceptual hash of the unrotated page
+     * @param rotationDegrees the rotation of the page when it was recognized
+     * @param key the cache key of the result
+     */
+    public void put(long[] perceptualHash,
+            double rotationDegrees,
+            String key) {
+        index.put(perceptualHash,
+                new Entry(rotationDegrees,
+                        key));
+        if(file == null) {
+            return;
+        }
+        String line = String.format("%s %s %s %s\n",
+                fingerprintHash,
+                Double.toString(rotationDegrees),
+                formatHash(perceptualHash),
+                key);
+        synchronized(FILE_LOCK) {
+            try {
+                Files.write(file.toPath(),
+                        line.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            } catch (IOException ex) {
+                LOGGER.warn(String.format("storing perceptual hash in '%s' failed",
+                        file.getAbsolutePath()),
+                        ex);
+            }
+        }
+    }
+
+    /**
+     * Finds the cache keys of pages which look like the page with
+     * {@code perceptualHash} and have been recognized in the same rotation.
+     * @param perceptualHash the perceptual hash of the unrotated page
+     * @param rotationDegrees the rotation of the page
+     * @return the keys ordered by increasing distance of the perceptual
+     * hashes
+     */
+    public List<String> find(long[] perceptualHash,
+            double rotationDegrees) {
+        List<Entry> entries = index.find(perceptualHash);
+        if(entries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> retValue = new LinkedList<>();
+        for(Entry entry : entries) {
+            if(entry.rotationDegrees == rotationDegrees
+                    && !retValue.contains(entry.key)) {
+                retValue.add(entry.key);
+            }
+        }
+        return retValue;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private final static class Entry {
+        private final double rotationDegrees;
+        private final String key;
+
+        Entry(double rotationDegrees,
+                String key) {
+            this.rotationDegrees = rotationDegrees;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.Node;
+
+/**
+ * Normalizes images before they're passed to an OCR process in order to reduce
+ * the amount of data to transfer and the number of pixels to process. All
+ * steps use Java2D only and are optional:
+ * <ul>
+ * <li>conversion to 8-bit grayscale</li>
+ * <li>cropping of white margins</li>
+ * <li>downscaling to a target resolution (only for images which carry
+ * resolution metadata)</li>
+ * <li>adaptive binarization (Bradley's method with a moving window)</li>
+ * </ul>
+ *
+ * The resolution of an image is read from its metadata. If it's not available
+ * (e.g. for images stored by {@code DefaultImageWrapper}) the image isn't
+ * scaled because the size of the document it shows is unknown and a guessed
+ * resolution would reduce larger documents (e.g. A3 or legal pages) below the
+ * target resolution.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- binarization is performed after scaling because it's the most expensive step
+and its result doesn't improve by a higher resolution
+- the moving window sums of the binarization are kept per column in order to
+avoid an integral image which would need a long per pixel
+- instances are immutable and thus can be shared by all worker threads
+*/
+public class ImagePreprocessor {
+    /**
+     * The default resolution images are scaled down to.
+     */
+    public final static int TARGET_DPI_DEFAULT = 300;
+    /**
+     * Luminance below which pixels are considered content when cropping
+     * margins.
+     */
+    private final static int CONTENT_THRESHOLD = 128;
+    /**
+     * Percentage by which pixels have to be darker than their neighbourhood in
+     * order to become black during binarization.
+     */
+    private final static int BINARIZATION_SENSITIVITY = 15;
+    private final boolean grayscale;
+    private final boolean binarization;
+    private final int targetDpi;
+    private final boolean cropMargins;
+
+    /**
+     * Creates a new {@code ImagePreprocessor}.
+     * @param grayscale whether to convert images to grayscale
+     * @param binarization whether to convert images to black and white
+     * (implies {@code grayscale})
+     * @param targetDpi the resolution to scale images with a higher resolution
+     * down to or a value {@code <= 0} in order to disable scaling
+     * @param cropMargins whether to remove white margins
+     */
+    public ImagePreprocessor(boolean grayscale,
+            boolean binarization,
+            int targetDpi,
+            boolean cropMargins) {
+        this.grayscale = grayscale || binarization;
+        this.binarization = binarization;
+        this.targetDpi = targetDpi;
+        this.cropMargins = cropMargins;
+    }
+
+    /**
+     * Whether any preprocessing step is enabled.
+     * @return {@code true} if images are changed, {@code false} if they're
+     * passed unchanged
+     */
+    public boolean isEnabled() {
+        return grayscale || targetDpi > 0 || cropMargins;
+    }
+
+    /**
+     * Describes the enabled steps for cache keys of OCR results since the
+     * steps change the results. The target resolution is only part of the
+     * fingerprint if scaling is enabled.
+     * @return the fingerprint
+     */
+    public String getFingerprint() {
+        String retValue = String.format("grayscale=%b,binarization=%b,cropMargins=%b",
+                grayscale,
+                binarization,
+                cropMargins);
+        if(targetDpi > 0) {
+            retValue = String.format("%s,targetDpi=%d",
+                    retValue,
+                    targetDpi);
+        }
+        return retValue;
+    }
+
+    /**
+     * Decodes {@code imageData} and preprocesses it using the resolution stored
+     * in its metadata.
+     * @param imageData the encoded image
+     * @return the preprocessed image
+     * @throws IOException if {@code imageData} can't be decoded
+     */
+    public PreprocessedImage preprocess(byte[] imageData) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            Iterator<ImageReader> readerItr = ImageIO.getImageReaders(imageInputStream);
+            if(!readerItr.hasNext()) {
+                throw new IOException("no image reader found for image data");
+            }
+            ImageReader reader = readerItr.next();
+            try {
+                reader.setInput(imageInputStream);
+                double sourceDpi = -1;
+                IIOMetadata metadata = reader.getImageMetadata(0);
+                if(metadata != null && metadata.isStandardMetadataFormatSupported()) {
+                    sourceDpi = readDpi(metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName));
+                }
+                BufferedImage image = reader.read(0);
+                return preprocess(image,
+                        sourceDpi);
+            }finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the horizontal resolution from standard image metadata.
+     * @return the resolution or {@code -1} if it's not specified
+     */
+    private static double readDpi(Node standardMetadata) {
+        for(Node child = standardMetadata.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if("Dimension".equals(child.getNodeName())) {
+                for(Node dimension = child.getFirstChild(); dimension != null; dimension = dimension.getNextSibling()) {
+                    if("HorizontalPixelSize".equals(dimension.getNodeName())) {
+                        Node value = dimension.getAttributes().getNamedItem("value");
+                        if(value != null) {
+                            try {
+                                //millimeters per pixel
+                                double pixelSize = Double.parseDouble(value.getNodeValue());
+                                if(pixelSize > 0) {
+                                    return 25.4/pixelSize;
+                                }
+                            }catch(NumberFormatException ex) {
+                                return -1;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Preprocesses {@code image}.
+     * @param image the image which isn't changed
+     * @param sourceDpi the resolution of {@code image} or a value {@code <= 0}
+     * if it's unknown in which case {@code image} isn't scaled
+     * @return the preprocessed image
+     */
+    public PreprocessedImage preprocess(BufferedImage image,
+            double sourceDpi) {
+        int originalWidth = image.getWidth();
+        int originalHeight = image.getHeight();
+        BufferedImage retValue = image;
+        if(grayscale || cropMargins) {
+            retValue = toGrayscale(retValue);
+        }
+        Rectangle area = new Rectangle(0, 0, originalWidth, originalHeight);
+        if(cropMargins) {
+            area = findContentArea(retValue);
+            retValue = retValue.getSubimage(area.x,
+                    area.y,
+                    area.width,
+                    area.height);
+        }
+        if(!grayscale) {
+            //grayscale copy has only been created for cropping
+            retValue = image.getSubimage(area.x,
+                    area.y,
+                    area.width,
+                    area.height);
+        }
+        if(targetDpi > 0 && sourceDpi > targetDpi) {
+            retValue = scale(retValue,
+                    targetDpi/sourceDpi);
+        }
+        if(binarization) {
+            retValue = binarize(retValue);
+        }
+        return new PreprocessedImage(retValue,
+                area,
+                originalWidth,
+                originalHeight);
+    }
+
+    private static BufferedImage toGrayscale(BufferedImage image) {
+        if(image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage retValue = new BufferedImage(image.getWidth(),
+                image.getHeight(),
+                BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the smallest area containing all rows and columns with a
+     * significant number of dark pixels plus a small padding.
+     * @param grayImage an image of type {@link BufferedImage#TYPE_BYTE_GRAY}
+     * @return the area which is the complete image if there's no content
+     */
+    private static Rectangle findContentArea(BufferedImage grayImage) {
+        int width = grayImage.getWidth();
+        int height = grayImage.getHeight();
+        int[] rowCounts = new int[height];
+        int[] columnCounts = new int[width];
+        WritableRaster raster = grayImage.getRaster();
+        int[] row = new int[width];
+        for(int y=0; y<height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            for(int x=0; x<width; x++) {
+                if(row[x] < CONTENT_THRESHOLD) {
+                    rowCounts[y] += 1;
+                    columnCounts[x] += 1;
+                }
+            }
+        }
+        //ignore dust and single pixel lines of scanner glass edges
+        int minRowCount = Math.max(1, width/500);
+        int minColumnCount = Math.max(1, height/500);
+        int top = 0;
+        while(top < height && rowCounts[top] < minRowCount) {
+            top++;
+        }
+        if(top == height) {
+            return new Rectangle(0, 0, width, height);
+        }
+        int bottom = height-1;
+        while(bottom > top && rowCounts[bottom] < minRowCount) {
+            bottom--;
+        }
+        int left = 0;
+        while(left < width-1 && columnCounts[left] < minColumnCount) {
+            left++;
+        }
+        int right = width-1;
+        while(right > left && columnCounts[right] < minColumnCount) {
+            right--;
+        }
+        int padding = Math.max(10, Math.max(width, height)/100);
+        left = Math.max(0, left-padding);
+        top = Math.max(0, top-padding);
+        right = Math.min(width-1, right+padding);
+        bottom = Math.min(height-1, bottom+padding);
+        return new Rectangle(left,
+                top,
+                right-left+1,
+                bottom-top+1);
+    }
+
+    /**
+     * Scales {@code image} by {@code factor < 1} with bilinear interpolation in
+     * steps of at most one half in order to avoid skipping pixels.
+     */
+    private static BufferedImage scale(BufferedImage image,
+            double factor) {
+        int targetWidth = Math.max(1, (int)Math.round(image.getWidth()*factor));
+        int targetHeight = Math.max(1, (int)Math.round(image.getHeight()*factor));
+        int type = image.getType() == BufferedImage.TYPE_BYTE_GRAY
+                ? BufferedImage.TYPE_BYTE_GRAY
+                : BufferedImage.TYPE_INT_RGB;
+        BufferedImage retValue = image;
+        do {
+            int width = Math.max(targetWidth, retValue.getWidth()/2);
+            int height = Math.max(targetHeight, retValue.getHeight()/2);
+            BufferedImage scaled = new BufferedImage(width,
+                    height,
+                    type);
+            Graphics2D graphics = scaled.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(retValue, 0, 0, width, height, null);
+            }finally {
+                graphics.dispose();
+            }
+            retValue = scaled;
+        }while(retValue.getWidth() > targetWidth || retValue.getHeight() > targetHeight);
+        return retValue;
+    }
+
+    /**
+     * Binarizes {@code grayImage} with Bradley's adaptive thresholding which
+     * compares every pixel with the mean of a window of about an eighth of
+     * the image width around it.
+     * @param grayImage an image of type {@link BufferedImage#TYPE_BYTE_GRAY}
+     * @return the binary image
+     */
+    private static BufferedImage binarize(BufferedImage grayImage) {
+        int width = grayImage.getWidth();
+        int height = grayImage.getHeight();
+        int halfWindow = Math.max(7, width/16);
+        byte[] pixels;
+        if(grayImage.getRaster().getDataBuffer() instanceof DataBufferByte
+                && grayImage.getRaster().getParent() == null) {
+            pixels = ((DataBufferByte)grayImage.getRaster().getDataBuffer()).getData();
+        }else {
+            //subimages share the buffer of their parent
+            pixels = new byte[width*height];
+            grayImage.getRaster().getDataElements(0, 0, width, height, pixels);
+        }
+        BufferedImage retValue = new BufferedImage(width,
+                height,
+                BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster binaryRaster = retValue.getRaster();
+        int[] columnSums = new int[width];
+        int windowTop = 0;
+        int windowBottom = -1;
+        int[] binaryRow = new int[width];
+        for(int y=0; y<height; y++) {
+            //move the window rows to [y-halfWindow, y+halfWindow]
+            int newTop = Math.max(0, y-halfWindow);
+            int newBottom = Math.min(height-1, y+halfWindow);
+            while(windowBottom < newBottom) {
+                windowBottom++;
+                int offset = windowBottom*width;
+                for(int x=0; x<width; x++) {
+                    columnSums[x] += pixels[offset+x] & 0xFF;
+                }
+            }
+            while(windowTop < newTop) {
+                int offset = windowTop*width;
+                for(int x=0; x<width; x++) {
+                    columnSums[x] -= pixels[offset+x] & 0xFF;
+                }
+                windowTop++;
+            }
+            int windowHeight = windowBottom-windowTop+1;
+            int windowSum = 0;
+            int windowLeft = 0;
+            int windowRight = -1;
+            int offset = y*width;
+            for(int x=0; x<width; x++) {
+                int newLeft = Math.max(0, x-halfWindow);
+                int newRight = Math.min(width-1, x+halfWindow);
+                while(windowRight < newRight) {
+                    windowRight++;
+                    windowSum += columnSums[windowRight];
+                }
+                while(windowLeft < newLeft) {
+                    windowSum -= columnSums[windowLeft];
+                    windowLeft++;
+                }
+                long count = (long)(windowRight-windowLeft+1)*windowHeight;
+                long value = pixels[offset+x] & 0xFF;
+                binaryRow[x] = value*count*100 <= (long)windowSum*(100-BINARIZATION_SENSITIVITY)
+                        ? 0
+                        : 1;
+            }
+            binaryRaster.setSamples(0, y, width, 1, 0, binaryRow);
+        }
+        return retValue;
+    }
+
+    /**
+     * The result of {@link #preprocess(java.awt.image.BufferedImage, double) }
+     * which allows to map positions in the preprocessed image back to the
+     * original image.
+     */
+    public static class PreprocessedImage {
+        private final BufferedImage image;
+        private final Rectangle area;
+        private final int originalWidth;
+        private final int originalHeight;
+
+        PreprocessedImage(BufferedImage image,
+                Rectangle area,
+                int originalWidth,
+                int originalHeight) {
+            this.image = image;
+            this.area = area;
+            this.originalWidth = originalWidth;
+            this.originalHeight = originalHeight;
+        }
+
+        /**
+         * The preprocessed image.
+         * @return the image or {@code null} if this instance has been created
+         * with {@link #withoutImage() }
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * The area of the original image which the preprocessed image shows.
+         * @return the area
+         */
+        public Rectangle getArea() {
+            return new Rectangle(area);
+        }
+
+        public int getOriginalWidth() {
+            return originalWidth;
+        }
+
+        public int getOriginalHeight() {
+            return originalHeight;
+        }
+
+        /**
+         * Encodes the preprocessed image as PNG.
+         * @return the encoded image
+         * @throws IOException if encoding fails
+         */
+        public byte[] encode() throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
+        }
+
+        /**
+         * Creates a copy which doesn't reference the image in order to keep
+         * the mapping information without the memory usage of the image.
+         * @return the copy
+         */
+        public PreprocessedImage withoutImage() {
+            return new PreprocessedImage(null,
+                    area,
+                    originalWidth,
+                    originalHeight);
+        }
+
+        /**
+         * Maps the word positions of a recognition of the preprocessed image
+         * to the original image.
+         * @param pageResult the result of the recognition of the preprocessed
+         * image
+         * @return the result in coordinates of the original image
+         */
+        public OCRPageResult toOriginalCoordinates(OCRPageResult pageResult) {
+            return pageResult.transform(area,
+                    originalWidth,
+                    originalHeight);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cuts large page images into horizontal strips which can be recognized in
+ * parallel. Cuts are only placed in runs of blank rows found with a row
+ * projection (the number of dark pixels per row) so that no text line is cut.
+ * Every strip includes the complete blank runs above and below it, i.e.
+ * adjacent strips overlap by the blank rows only and no word is recognized
+ * twice.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- if there's no blank run near the ideal position of a cut (e.g. for photos or
+tables with vertical lines), the cut is omitted and the adjacent strips are
+merged, i.e. the page might be split into fewer strips than requested or not
+at all
+- a row counts as blank if it contains a tiny fraction of dark pixels which
+tolerates scanner noise and dust
+*/
+public class ImageStripSplitter {
+    private final static int DARK_LUMINANCE_THRESHOLD = 128;
+    /**
+     * The fraction of dark pixels a row may contain in order to be considered
+     * blank.
+     */
+    private final static double BLANK_ROW_DARK_FRACTION = 0.002;
+    private final int minStripPixels;
+
+    /**
+     * Creates a new {@code ImageStripSplitter}.
+     * @param minStripPixels the minimum number of pixels of a strip which
+     * avoids splitting pages into strips which are too small to outweigh the
+     * cost of another process
+     */
+    public ImageStripSplitter(int minStripPixels) {
+        if(minStripPixels <= 0) {
+            throw new IllegalArgumentException("minStripPixels has to be > 0");
+        }
+        this.minStripPixels = minStripPixels;
+    }
+
+    public int getMinStripPixels() {
+        return minStripPixels;
+    }
+
+    /**
+     * Splits {@code image} into at most {@code maxStripCount} strips.
+     *
+     * @param image the image
+     * @param maxStripCount the maximum number of strips, e.g. the number of
+     * idle processes
+     * @return the strips from top to bottom which cover the complete image;
+     * contains only the bounds of {@code image} if it's too small or can't be
+     * split
+     */
+    public List<Rectangle> split(BufferedImage image,
+            int maxStripCount) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        int stripCount = (int)Math.min(maxStripCount,
+                (long)width*height/minStripPixels);
+        if(stripCount < 2) {
+            return Collections.singletonList(bounds);
+        }
+        List<int[]> blankRuns = findBlankRuns(image);
+        //the blank runs in which the cuts are placed
+        List<int[]> cuts = new ArrayList<>(stripCount-1);
+        int searchRadius = height/(2*stripCount);
+        for(int i=1; i<stripCount; i++) {
+            int target = i*height/stripCount;
+            int[] nearestRun = null;
+            int nearestDistance = Integer.MAX_VALUE;
+            for(int[] blankRun : blankRuns) {
+                int center = (blankRun[0]+blankRun[1])/2;
+                int distance = Math.abs(center-target);
+                if(distance <= searchRadius
+                        && distance < nearestDistance
+                        && (cuts.isEmpty() || blankRun[0] > cuts.get(cuts.size()-1)[1])) {
+                    nearestRun = blankRun;
+                    nearestDistance = distance;
+                }
+            }
+            if(nearestRun != null) {
+                cuts.add(nearestRun);
+            }
+        }
+        if(cuts.isEmpty()) {
+            return Collections.singletonList(bounds);
+        }
+        List<Rectangle> retValue = new ArrayList<>(cuts.size()+1);
+        int stripStart = 0;
+        for(int[] cut : cuts) {
+            retValue.add(new Rectangle(0, stripStart, width, cut[1]-stripStart));
+            stripStart = cut[0];
+        }
+        retValue.add(new Rectangle(0, stripStart, width, height-stripStart));
+        return retValue;
+    }
+
+    /**
+     * Finds runs of blank rows which don't touch the top or bottom border.
+     * @return the runs as pairs of the first row and the row after the last
+     * row of the run
+     */
+    private static List<int[]> findBlankRuns(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int maxDarkPixels = (int)(width*BLANK_ROW_DARK_FRACTION);
+        int[] row = new int[width];
+        List<int[]> retValue = new ArrayList<>();
+        int runStart = -1;
+        boolean contentAbove = false;
+        for(int y=0; y<height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int darkPixels = 0;
+            for(int x=0; x<width && darkPixels <= maxDarkPixels; x++) {
+                int rgb = row[x];
+                int luminance = (((rgb >> 16) & 0xff)*299
+                        +((rgb >> 8) & 0xff)*587
+                        +(rgb & 0xff)*114)/1000;
+                if(luminance < DARK_LUMINANCE_THRESHOLD) {
+                    darkPixels++;
+                }
+            }
+            boolean blank = darkPixels <= maxDarkPixels;
+            if(blank) {
+                if(runStart < 0 && contentAbove) {
+                    runStart = y;
+                }
+            }else {
+                if(runStart >= 0) {
+                    retValue.add(new int[] {runStart, y});
+                    runStart = -1;
+                }
+                contentAbove = true;
+            }
+        }
+        //a run reaching the bottom border isn't between content
+        return retValue;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * The format in which images created in memory are passed to OCR processes.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- PNM is written directly from the raster without compression; tesseract (or
+rather leptonica) reads it from files and stdin and detects the format by its
+magic number
+- 1-bit images are written as PBM, grayscale images as PGM and all other
+images as PPM (dropping the alpha channel)
+*/
+public enum ImageTransportFormat {
+    /**
+     * Compressed PNG written with {@link ImageIO} which produces small data at
+     * the cost of deflate compression in the JVM and decompression in the
+     * process.
+     */
+    PNG {
+        @Override
+        public void write(BufferedImage image,
+                OutputStream outputStream) throws IOException {
+            if(!ImageIO.write(image, "png", outputStream)) {
+                throw new IOException(String.format("no PNG writer available for image type %d",
+                        image.getType()));
+            }
+        }
+    },
+    /**
+     * Uncompressed PBM, PGM or PPM which is cheap to write and to read, but
+     * about ten to twenty times larger than PNG.
+     */
+    PNM {
+        @Override
+        public void write(BufferedImage image,
+                OutputStream outputStream) throws IOException {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            Raster raster = image.getRaster();
+            ColorModel colorModel = image.getColorModel();
+            if(image.getType() == BufferedImage.TYPE_BYTE_BINARY
+                    && colorModel.getPixelSize() == 1) {
+                writeHeader("P4", width, height, false, outputStream);
+                //PBM uses 1 for black, the palette might use either index
+                int blackSample = luminance(colorModel.getRGB(0)) < luminance(colorModel.getRGB(1))
+                        ? 0
+                        : 1;
+                int[] samples = new int[width];
+                byte[] row = new byte[(width+7)/8];
+                for(int y=0; y<height; y++) {
+                    raster.getSamples(0, y, width, 1, 0, samples);
+                    Arrays.fill(row, (byte)0);
+                    for(int x=0; x<width; x++) {
+                        if(samples[x] == blackSample) {
+                            row[x >> 3] |= 0x80 >> (x & 7);
+                        }
+                    }
+                    outputStream.write(row);
+                }
+            }else if(image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                writeHeader("P5", width, height, true, outputStream);
+                byte[] row = new byte[width];
+                for(int y=0; y<height; y++) {
+                    raster.getDataElements(0, y, width, 1, row);
+                    outputStream.write(row);
+                }
+            }else {
+                writeHeader("P6", width, height, true, outputStream);
+                int[] pixels = new int[width];
+                byte[] row = new byte[width*3];
+                for(int y=0; y<height; y++) {
+                    image.getRGB(0, y, width, 1, pixels, 0, width);
+                    for(int x=0; x<width; x++) {
+                        int pixel = pixels[x];
+                        row[3*x] = (byte)(pixel >> 16);
+                        row[3*x+1] = (byte)(pixel >> 8);
+                        row[3*x+2] = (byte)pixel;
+                    }
+                    outputStream.write(row);
+                }
+            }
+            outputStream.flush();
+        }
+    };
+
+    private static void writeHeader(String magicNumber,
+            int width,
+            int height,
+            boolean maxValue,
+            OutputStream outputStream) throws IOException {
+        String header = String.format(maxValue
+                        ? "%s\n%d %d\n255\n"
+                        : "%s\n%d %d\n",
+                magicNumber,
+                width,
+                height);
+        outputStream.write(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int luminance(int rgb) {
+        return ((rgb >> 16) & 0xFF)*299
+                + ((rgb >> 8) & 0xFF)*587
+                + (rgb & 0xFF)*114;
+    }
+
+    /**
+     * Writes {@code image} in this format.
+     * @param image the image
+     * @param outputStream the stream to write to which isn't closed
+     * @throws IOException if writing fails
+     */
+    public abstract void write(BufferedImage image,
+            OutputStream outputStream) throws IOException;
+}
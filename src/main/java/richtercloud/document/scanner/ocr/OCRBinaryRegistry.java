@@ -0,0 +1,395 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probes the binaries of OCR engines once and caches their availability,
+ * version and available languages for a limited time so that recognitions
+ * don't have to start an extra process per page in order to check the binary.
+ *
+ * Expired results of available binaries are returned immediately and
+ * revalidated in the background. Expired results of unavailable binaries and
+ * results which have been invalidated with {@link #invalidate(java.lang.String) }
+ * (e.g. after a failed recognition) are revalidated before they're returned.
+ * Concurrent callers for the same binary share one probe.
+ *
+ * Use {@link #getInstance() } in order to share the results in the JVM.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- the binary is started with --version which tesseract answers with exit code
+0; binaries which don't support the option are still available since the
+process could be started (which is what the former per-page check tested),
+but not healthy
+- available languages are only retrieved on request because only tesseract
+supports them; the retrieval is passed by the caller which knows how to parse
+the output of the binary
+- the background revalidation uses one daemon thread which times out when idle
+like the workers of OCRScheduler
+- the output of the probe is redirected to a file so that the timeout applies
+to binaries which hang without closing their output; reading a pipe until EOF
+would wait for them forever while holding the lock of the binary
+*/
+public class OCRBinaryRegistry {
+    private final static Logger LOGGER = LoggerFactory.getLogger(OCRBinaryRegistry.class);
+    /**
+     * The default time after which probe results are revalidated.
+     */
+    public final static long TTL_MILLIS_DEFAULT = TimeUnit.MINUTES.toMillis(5);
+    private final static long PROBE_TIMEOUT_MILLIS_DEFAULT = TimeUnit.SECONDS.toMillis(10);
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    private final static OCRBinaryRegistry INSTANCE = new OCRBinaryRegistry(TTL_MILLIS_DEFAULT);
+
+    public static OCRBinaryRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final long ttlNanos;
+    private final long probeTimeoutMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor revalidationExecutor;
+
+    /**
+     * Creates a new {@code OCRBinaryRegistry}.
+     * @param ttlMillis the time after which probe results are revalidated
+     */
+    public OCRBinaryRegistry(long ttlMillis) {
+        this(ttlMillis,
+                PROBE_TIMEOUT_MILLIS_DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code OCRBinaryRegistry}.
+     * @param ttlMillis the time after which probe results are revalidated
+     * @param probeTimeoutMillis the time after which a probe which didn't
+     * terminate is destroyed
+     */
+    OCRBinaryRegistry(long ttlMillis,
+            long probeTimeoutMillis) {
+        if(ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis has to be > 0");
+        }
+        if(probeTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("probeTimeoutMillis has to be > 0");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.probeTimeoutMillis = probeTimeoutMillis;
+        this.revalidationExecutor = new ThreadPoolExecutor(1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread retValue = new Thread(runnable,
+                            "ocr-binary-registry-revalidation");
+                    retValue.setDaemon(true);
+                    return retValue;
+                });
+        this.revalidationExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the cached status of {@code binary} or probes it if there's no
+     * valid status.
+     * @param binary the binary
+     * @return the status
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the probe
+     */
+    public BinaryStatus getStatus(String binary) throws InterruptedException {
+        Entry entry = entries.computeIfAbsent(binary, Entry::new);
+        BinaryStatus status = entry.status;
+        if(status != null && status.isAvailable()) {
+            if(isExpired(status.probeNanos)) {
+                revalidateAsync(entry);
+            }
+            return status;
+        }
+        synchronized(entry) {
+            status = entry.status;
+            if(status == null || isExpired(status.probeNanos)) {
+                status = probe(binary);
+                entry.status = status;
+            }
+            return status;
+        }
+    }
+
+    /**
+     * Probes {@code binary} regardless of the cached status and discards its
+     * cached languages, e.g. in order to validate a configuration.
+     * @param binary the binary
+     * @return the new status
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the probe
+     */
+    public BinaryStatus revalidate(String binary) throws InterruptedException {
+        Entry entry = entries.computeIfAbsent(binary, Entry::new);
+        synchronized(entry) {
+            BinaryStatus retValue = probe(binary);
+            entry.status = retValue;
+            entry.languages = null;
+            return retValue;
+        }
+    }
+
+    /**
+     * Throws {@link BinaryNotFoundException} if {@code binary} can't be
+     * started according to {@link #getStatus(java.lang.String) }.
+     * @param binary the binary
+     * @throws BinaryNotFoundException if the binary isn't available
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the probe
+     */
+    public void checkAvailable(String binary) throws BinaryNotFoundException, InterruptedException {
+        BinaryStatus status = getStatus(binary);
+        if(!status.isAvailable()) {
+            throw new BinaryNotFoundException(binary,
+                    status.getUnavailableCause());
+        }
+    }
+
+    /**
+     * Gets the cached languages of {@code binary} or retrieves them with
+     * {@code retrieval} if there're none or they're expired.
+     * @param binary the binary
+     * @param retrieval the retrieval which is invoked at most once at a time
+     * per binary
+     * @return the languages
+     * @throws TesseractOCREngineAvailableLanguageRetrievalException if
+     * {@code retrieval} throws it (failures aren't cached)
+     * @throws IOException if {@code retrieval} throws it
+     * @throws InterruptedException if {@code retrieval} throws it
+     */
+    public List<String> getAvailableLanguages(String binary,
+            LanguageRetrieval retrieval) throws TesseractOCREngineAvailableLanguageRetrievalException, IOException, InterruptedException {
+        Entry entry = entries.computeIfAbsent(binary, Entry::new);
+        synchronized(entry) {
+            if(entry.languages == null || isExpired(entry.languagesProbeNanos)) {
+                entry.languages = Collections.unmodifiableList(retrieval.retrieve());
+                entry.languagesProbeNanos = System.nanoTime();
+            }
+            return entry.languages;
+        }
+    }
+
+    /**
+     * Discards the results for {@code binary} so that it's probed again on
+     * the next request, e.g. after a recognition failed or the installation
+     * changed.
+     * @param binary the binary
+     */
+    public void invalidate(String binary) {
+        Entry entry = entries.get(binary);
+        if(entry != null) {
+            synchronized(entry) {
+                entry.status = null;
+                entry.languages = null;
+            }
+        }
+    }
+
+    private boolean isExpired(long probeNanos) {
+        return System.nanoTime()-probeNanos > ttlNanos;
+    }
+
+    private void revalidateAsync(Entry entry) {
+        if(!entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        revalidationExecutor.execute(() -> {
+            try {
+                BinaryStatus status = probe(entry.binary);
+                synchronized(entry) {
+                    entry.status = status;
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.debug(String.format("revalidation of binary '%s' has been interrupted",
+                        entry.binary));
+            } finally {
+                entry.revalidating.set(false);
+            }
+        });
+    }
+
+    /**
+     * Starts {@code binary --version}.
+     */
+    private BinaryStatus probe(String binary) throws InterruptedException {
+        LOGGER.debug(String.format("probing binary '%s'",
+                binary));
+        File outputFile;
+        try {
+            outputFile = File.createTempFile("ocr-binary-probe", ".txt");
+        } catch (IOException ex) {
+            LOGGER.warn("creation of file for probe output failed",
+                    ex);
+            return new BinaryStatus(binary,
+                    true,
+                    null,
+                    null);
+        }
+        try {
+            Process process;
+            try {
+                process = new ProcessBuilder(binary, "--version")
+                        .redirectErrorStream(true)
+                        .redirectOutput(outputFile)
+                        .start();
+            } catch (IOException ex) {
+                return new BinaryStatus(binary,
+                        false,
+                        null,
+                        ex);
+            }
+            String version = null;
+            try {
+                if(!process.waitFor(probeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    LOGGER.warn(String.format("binary '%s' didn't respond within %d ms",
+                            binary,
+                            probeTimeoutMillis));
+                }else if(process.exitValue() == 0) {
+                    version = readVersion(outputFile);
+                }
+            }catch(InterruptedException ex) {
+                process.destroyForcibly();
+                throw ex;
+            }
+            return new BinaryStatus(binary,
+                    true,
+                    version,
+                    null);
+        }finally {
+            if(!outputFile.delete() && outputFile.exists()) {
+                LOGGER.debug(String.format("deletion of probe output file '%s' failed",
+                        outputFile.getAbsolutePath()));
+            }
+        }
+    }
+
+    /**
+     * Reads the first non-empty line of the output of a probe.
+     */
+    private static String readVersion(File outputFile) {
+        try {
+            for(String line : Files.readAllLines(outputFile.toPath(),
+                    StandardCharsets.UTF_8)) {
+                if(!line.trim().isEmpty()) {
+                    return line.trim();
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("reading probe output failed",
+                    ex);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the languages supported by a binary.
+     */
+    @FunctionalInterface
+    public interface LanguageRetrieval {
+        List<String> retrieve() throws TesseractOCREngineAvailableLanguageRetrievalException, IOException, InterruptedException;
+    }
+
+    /**
+     * The result of probing a binary.
+     */
+    public static class BinaryStatus {
+        private final String binary;
+        private final boolean available;
+        private final String version;
+        private final IOException unavailableCause;
+        private final long probeNanos = System.nanoTime();
+
+        BinaryStatus(String binary,
+                boolean available,
+                String version,
+                IOException unavailableCause) {
+            this.binary = binary;
+            this.available = available;
+            this.version = version;
+            this.unavailableCause = unavailableCause;
+        }
+
+        public String getBinary() {
+            return binary;
+        }
+
+        /**
+         * Whether the binary can be started.
+         * @return {@code true} if it can be started, {@code false} otherwise
+         */
+        public boolean isAvailable() {
+            return available;
+        }
+
+        /**
+         * Whether the binary can be started and answered {@code --version}
+         * successfully.
+         * @return {@code true} if it's healthy, {@code false} otherwise
+         */
+        public boolean isHealthy() {
+            return available && version != null;
+        }
+
+        /**
+         * The first line of the output of {@code --version}.
+         * @return the version or {@code null} if the binary isn't healthy
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * The exception which occured when the binary was started.
+         * @return the exception or {@code null} if the binary is available
+         */
+        public IOException getUnavailableCause() {
+            return unavailableCause;
+        }
+    }
+
+    private static class Entry {
+        private final String binary;
+        private volatile BinaryStatus status;
+        private volatile List<String> languages;
+        private volatile long languagesProbeNanos;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        Entry(String binary) {
+            this.binary = binary;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allows to cancel one recognition request (e.g. the OCR of a document or of
+ * a selection) without affecting other requests which are processed by the
+ * same engine at the same time.
+ *
+ * Resources of the request (processes, queued pages) register cancel actions
+ * with {@link #onCancel(java.lang.Runnable) } while they're in use and
+ * unregister them when they're done so that the token only references the
+ * resources which are currently running.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- cancel actions are invoked outside the lock so that they can take their
+own locks (e.g. the ones of TesseractProcessPool) without risking deadlocks
+*/
+public class OCRCancellationToken {
+    private final static Logger LOGGER = LoggerFactory.getLogger(OCRCancellationToken.class);
+    private final Set<Runnable> cancelActions = new LinkedHashSet<>();
+    private volatile boolean canceled = false;
+
+    /**
+     * Cancels the request by running all registered cancel actions. Later
+     * registrations are canceled immediately.
+     */
+    public void cancel() {
+        Runnable[] cancelActions0;
+        synchronized(cancelActions) {
+            if(canceled) {
+                return;
+            }
+            canceled = true;
+            cancelActions0 = cancelActions.toArray(new Runnable[cancelActions.size()]);
+            cancelActions.clear();
+        }
+        for(Runnable cancelAction : cancelActions0) {
+            try {
+                cancelAction.run();
+            }catch(RuntimeException ex) {
+                LOGGER.warn("cancel action failed",
+                        ex);
+            }
+        }
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Registers {@code cancelAction} to be run when the request is canceled.
+     * It's run immediately if the request has already been canceled.
+     *
+     * @param cancelAction the action
+     * @return the registration which has to be closed as soon as the
+     * resource canceled by {@code cancelAction} isn't used anymore
+     */
+    public Registration onCancel(Runnable cancelAction) {
+        synchronized(cancelActions) {
+            if(!canceled) {
+                cancelActions.add(cancelAction);
+                return () -> {
+                    synchronized(cancelActions) {
+                        cancelActions.remove(cancelAction);
+                    }
+                };
+            }
+        }
+        cancelAction.run();
+        return () -> {};
+    }
+
+    /**
+     * A registered cancel action which can be removed with {@link #close() }.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import richtercloud.document.scanner.ifaces.ImageWrapper;
+
+/**
+ *
+ * @author richter
+ */
+public class OCRPageEvent {
+    private final int pageIndex;
+    private final int pageCount;
+    private final int recognizedPageCount;
+    private final ImageWrapper image;
+    private final String text;
+
+    public OCRPageEvent(int pageIndex,
+            int pageCount,
+            int recognizedPageCount,
+            ImageWrapper image,
+            String text) {
+        this.pageIndex = pageIndex;
+        this.pageCount = pageCount;
+        this.recognizedPageCount = recognizedPageCount;
+        this.image = image;
+        this.text = text;
+    }
+
+    /**
+     * The zero-based index of the page in the recognized document.
+     * @return the page index
+     */
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * The number of pages which have been delivered including this one.
+     * @return the number of recognized pages
+     */
+    public int getRecognizedPageCount() {
+        return recognizedPageCount;
+    }
+
+    /**
+     * The recognized image.
+     * @return the image or {@code null} if the recognition has been started
+     * with {@link java.awt.image.BufferedImage}s
+     */
+    public ImageWrapper getImage() {
+        return image;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public double getProgress() {
+        return recognizedPageCount/(double)pageCount;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+/**
+ * The order in which {@link OCRPageListener}s are notified about recognized
+ * pages.
+ *
+ * @author richter
+ */
+public enum OCRPageOrder {
+    /**
+     * Pages are delivered in document order, i.e. a page is delivered as soon
+     * as it and all preceding pages are recognized.
+     */
+    ORDERED,
+    /**
+     * Pages are delivered as soon as they're recognized.
+     */
+    COMPLETION
+}
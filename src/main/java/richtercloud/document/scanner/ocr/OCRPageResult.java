@@ -0,0 +1,271 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The words of a recognized page with their bounding boxes which allows to
+ * retrieve the text of an area of the page without recognizing it again.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- words are kept in the reading order determined by the OCR engine which
+allows to reconstruct lines with a linear scan
+- tesseract's TSV format is parsed here since it's the only source of word
+results so far; other formats (e.g. hOCR) can be added as further factory
+methods
+*/
+public class OCRPageResult {
+    private final static int TSV_COLUMN_COUNT = 12;
+    private final static int TSV_LEVEL_PAGE = 1;
+    private final static int TSV_LEVEL_WORD = 5;
+    private final int width;
+    private final int height;
+    private final List<OCRWord> words;
+
+    /**
+     * Parses the TSV output of tesseract for one page.
+     *
+     * @param tsv the output with the columns {@code level page_num block_num
+     * par_num line_num word_num left top width height conf text}; header and
+     * malformed lines are ignored
+     * @return the parsed result
+     */
+    public static OCRPageResult parseTsv(String tsv) {
+        int width = 0;
+        int height = 0;
+        List<OCRWord> words = new ArrayList<>();
+        for(String line : tsv.split("\n")) {
+            String[] columns = line.split("\t", -1);
+            if(columns.length < TSV_COLUMN_COUNT-1) {
+                continue;
+            }
+            try {
+                int level = Integer.parseInt(columns[0]);
+                Rectangle bounds = new Rectangle(Integer.parseInt(columns[6]),
+                        Integer.parseInt(columns[7]),
+                        Integer.parseInt(columns[8]),
+                        Integer.parseInt(columns[9]));
+                if(level == TSV_LEVEL_PAGE) {
+                    width = bounds.width;
+                    height = bounds.height;
+                }else if(level == TSV_LEVEL_WORD) {
+                    String text = columns.length >= TSV_COLUMN_COUNT
+                            ? columns[11].trim()
+                            : "";
+                    if(text.isEmpty()) {
+                        continue;
+                    }
+                    words.add(new OCRWord(text,
+                            bounds,
+                            Double.parseDouble(columns[10]),
+                            Integer.parseInt(columns[2]),
+                            Integer.parseInt(columns[3]),
+                            Integer.parseInt(columns[4])));
+                }
+            }catch(NumberFormatException ex) {
+                //header or malformed line
+            }
+        }
+        return new OCRPageResult(width,
+                height,
+                words);
+    }
+
+    /**
+     * Creates a new {@code OCRPageResult}.
+     * @param width the width of the recognized image in pixels
+     * @param height the height of the recognized image in pixels
+     * @param words the words in reading order
+     */
+    public OCRPageResult(int width,
+            int height,
+            List<OCRWord> words) {
+        this.width = width;
+        this.height = height;
+        this.words = Collections.unmodifiableList(new ArrayList<>(words));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public List<OCRWord> getWords() {
+        return words;
+    }
+
+    /**
+     * Gets the text of all words in {@code area}. Words of the same line are
+     * separated by spaces, lines by newlines.
+     *
+     * @param area the area in the coordinates of an image of size
+     * {@code referenceWidth} x {@code referenceHeight} (e.g. a scaled preview)
+     * @param referenceWidth the width of the image {@code area} refers to
+     * @param referenceHeight the height of the image {@code area} refers to
+     * @return the text which might be empty if there're no words in
+     * {@code area}
+     */
+    public String getText(Rectangle area,
+            int referenceWidth,
+            int referenceHeight) {
+        double scaleX = (double)width/referenceWidth;
+        double scaleY = (double)height/referenceHeight;
+        Rectangle scaledArea = new Rectangle((int)Math.floor(area.x*scaleX),
+                (int)Math.floor(area.y*scaleY),
+                (int)Math.ceil(area.width*scaleX),
+                (int)Math.ceil(area.height*scaleY));
+        StringBuilder retValueBuilder = new StringBuilder();
+        OCRWord previousWord = null;
+        for(OCRWord word : words) {
+            if(!word.isInside(scaledArea)) {
+                continue;
+            }
+            if(previousWord != null) {
+                retValueBuilder.append(previousWord.isSameLine(word)
+                        ? " "
+                        : "\n");
+            }
+            retValueBuilder.append(word.getText());
+            previousWord = word;
+        }
+        String retValue = retValueBuilder.toString();
+        return retValue;
+    }
+
+    /**
+     * Maps the word positions of a recognition of an area of an image which
+     * might have been scaled to the coordinates of the complete image.
+     *
+     * @param area the area of the image which has been recognized
+     * @param imageWidth the width of the complete image
+     * @param imageHeight the height of the complete image
+     * @return the result in coordinates of the complete image
+     */
+    public OCRPageResult transform(Rectangle area,
+            int imageWidth,
+            int imageHeight) {
+        double scaleX = width > 0 ? (double)area.width/width : 1;
+        double scaleY = height > 0 ? (double)area.height/height : 1;
+        List<OCRWord> transformedWords = new ArrayList<>(words.size());
+        for(OCRWord word : words) {
+            Rectangle bounds = word.getBounds();
+            Rectangle transformedBounds = new Rectangle(area.x+(int)Math.round(bounds.x*scaleX),
+                    area.y+(int)Math.round(bounds.y*scaleY),
+                    (int)Math.round(bounds.width*scaleX),
+                    (int)Math.round(bounds.height*scaleY));
+            transformedWords.add(new OCRWord(word.getText(),
+                    transformedBounds,
+                    word.getConfidence(),
+                    word.getBlockNumber(),
+                    word.getParagraphNumber(),
+                    word.getLineNumber()));
+        }
+        OCRPageResult retValue = new OCRPageResult(imageWidth,
+                imageHeight,
+                transformedWords);
+        return retValue;
+    }
+
+    /**
+     * Combines the results of the recognition of parts of one image (e.g.
+     * strips) which have been mapped to the coordinates of the image with
+     * {@link #transform(java.awt.Rectangle, int, int) }. Block numbers are
+     * renumbered so that words of different parts are never considered to be
+     * on the same line.
+     *
+     * @param results the results of the parts in reading order
+     * @param imageWidth the width of the complete image
+     * @param imageHeight the height of the complete image
+     * @return the combined result
+     */
+    public static OCRPageResult concatenate(List<OCRPageResult> results,
+            int imageWidth,
+            int imageHeight) {
+        List<OCRWord> words = new ArrayList<>();
+        int blockOffset = 0;
+        for(OCRPageResult result : results) {
+            int maxBlockNumber = 0;
+            for(OCRWord word : result.getWords()) {
+                words.add(new OCRWord(word.getText(),
+                        word.getBounds(),
+                        word.getConfidence(),
+                        blockOffset+word.getBlockNumber(),
+                        word.getParagraphNumber(),
+                        word.getLineNumber()));
+                maxBlockNumber = Math.max(maxBlockNumber,
+                        word.getBlockNumber());
+            }
+            blockOffset += maxBlockNumber+1;
+        }
+        OCRPageResult retValue = new OCRPageResult(imageWidth,
+                imageHeight,
+                words);
+        return retValue;
+    }
+
+    /**
+     * Writes this result in tesseract's TSV format so that it can be read
+     * with {@link #parseTsv(java.lang.String) }. Only the page and word levels
+     * are written.
+     * @return the TSV representation
+     */
+    public String toTsv() {
+        StringBuilder retValue = new StringBuilder(64+words.size()*48);
+        retValue.append("level\tpage_num\tblock_num\tpar_num\tline_num\tword_num\tleft\ttop\twidth\theight\tconf\ttext\n");
+        retValue.append(String.format("%d\t1\t0\t0\t0\t0\t0\t0\t%d\t%d\t-1\t\n",
+                TSV_LEVEL_PAGE,
+                width,
+                height));
+        int wordNumber = 1;
+        for(OCRWord word : words) {
+            Rectangle bounds = word.getBounds();
+            retValue.append(TSV_LEVEL_WORD).append("\t1\t")
+                    .append(word.getBlockNumber()).append('\t')
+                    .append(word.getParagraphNumber()).append('\t')
+                    .append(word.getLineNumber()).append('\t')
+                    .append(wordNumber++).append('\t')
+                    .append(bounds.x).append('\t')
+                    .append(bounds.y).append('\t')
+                    .append(bounds.width).append('\t')
+                    .append(bounds.height).append('\t')
+                    .append(word.getConfidence()).append('\t')
+                    .append(word.getText()).append('\n');
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Estimates the heap usage of this result for cache weighing.
+     * @return the estimated size in bytes
+     */
+    public int estimateSize() {
+        int retValue = 64;
+        for(OCRWord word : words) {
+            //object headers, rectangle and fields
+            retValue += 96+2*word.getText().length();
+        }
+        return retValue;
+    }
+}
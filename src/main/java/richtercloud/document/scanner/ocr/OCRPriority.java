@@ -0,0 +1,50 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+/**
+ * The priority class of a recognition request which determines the order in
+ * which {@link OCRScheduler} and {@link TesseractProcessPool} process queued
+ * work. Requests of a higher priority are processed before all queued
+ * requests of lower priorities, requests of the same priority in submission
+ * order.
+ *
+ * @author richter
+ */
+public enum OCRPriority {
+    /**
+     * Recognitions the user is waiting for, e.g. the OCR of a selection.
+     */
+    INTERACTIVE,
+    /**
+     * Recognitions of the pages of the document which is currently open.
+     */
+    DOCUMENT,
+    /**
+     * Recognitions nobody is waiting for, e.g. pages of running scan jobs or
+     * bulk imports.
+     */
+    BACKGROUND;
+
+    /**
+     * Whether this priority is higher than {@code other}.
+     * @param other the other priority
+     * @return {@code true} if requests of this priority are processed before
+     * requests of {@code other}, {@code false} otherwise
+     */
+    public boolean isHigherThan(OCRPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs recognition tasks of one {@link ParallelOCREngine} with a limited
+ * number of workers and a bounded queue. Submitting threads block while the
+ * queue is full which applies backpressure to scan jobs and other callers
+ * instead of starting an unlimited number of OCR processes.
+ *
+ * Queued tasks are processed in the order of their {@link OCRPriority}, i.e.
+ * tasks of lower priorities don't start as long as tasks of higher priorities
+ * are waiting. {@link OCRPriority#INTERACTIVE} tasks aren't subject to the
+ * queue capacity and are run on one additional worker if all workers are busy
+ * so that the user doesn't wait for running background tasks either.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- workers are daemon threads and time out when idle so that engines which are
+replaced after a configuration change don't keep the JVM alive or leak threads
+even if shutdown isn't invoked
+- tasks mustn't submit further tasks to the same scheduler and wait for them
+because that can deadlock once all workers are busy
+- the queue capacity is enforced with a semaphore because
+PriorityBlockingQueue is unbounded; permits are released when a task starts
+- a task which is running can't be preempted since it's usually waiting for an
+external process, therefore interactive tasks get an additional worker instead
+of waiting for a free one
+*/
+public class OCRScheduler {
+    private final static Logger LOGGER = LoggerFactory.getLogger(OCRScheduler.class);
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    private final static AtomicInteger SCHEDULER_COUNTER = new AtomicInteger();
+    private final ThreadPoolExecutor executor;
+    /**
+     * Runs interactive tasks which are submitted while all workers of
+     * {@code executor} are busy.
+     */
+    private final ThreadPoolExecutor interactiveExecutor;
+    private final int workerCount;
+    private final int queueCapacity;
+    private final Semaphore queueSlots;
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    private final AtomicInteger[] queuedTaskCounts = new AtomicInteger[OCRPriority.values().length];
+
+    public OCRScheduler(int workerCount,
+            int queueCapacity) {
+        if(workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount has to be > 0");
+        }
+        if(queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity has to be > 0");
+        }
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.queueSlots = new Semaphore(queueCapacity);
+        for(int i=0; i<queuedTaskCounts.length; i++) {
+            queuedTaskCounts[i] = new AtomicInteger();
+        }
+        final int schedulerNumber = SCHEDULER_COUNTER.incrementAndGet();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread retValue = new Thread(runnable,
+                        String.format("ocr-scheduler-%d-worker-%d",
+                                schedulerNumber,
+                                threadCounter.incrementAndGet()));
+                retValue.setDaemon(true);
+                return retValue;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(workerCount,
+                workerCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(queueCapacity),
+                threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.interactiveExecutor = new ThreadPoolExecutor(1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        this.interactiveExecutor.allowCoreThreadTimeOut(true);
+        LOGGER.debug(String.format("created OCR scheduler with %d workers and queue capacity %d",
+                workerCount,
+                queueCapacity));
+    }
+
+    /**
+     * Enqueues {@code task} with {@link OCRPriority#DOCUMENT} and blocks if
+     * the queue is full.
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if the scheduler has been shut down
+     * or the submitting thread has been interrupted while waiting for space in
+     * the queue
+     */
+    public void submit(Runnable task) throws RejectedExecutionException {
+        submit(task,
+                OCRPriority.DOCUMENT);
+    }
+
+    /**
+     * Enqueues {@code task} before all queued tasks of lower priorities. Blocks
+     * if the queue is full unless {@code priority} is
+     * {@link OCRPriority#INTERACTIVE}.
+     *
+     * @param task the task to run
+     * @param priority the priority of the task
+     * @throws RejectedExecutionException if the scheduler has been shut down
+     * or the submitting thread has been interrupted while waiting for space in
+     * the queue
+     */
+    public void submit(Runnable task,
+            OCRPriority priority) throws RejectedExecutionException {
+        if(executor.isShutdown()) {
+            throw new RejectedExecutionException("scheduler has been shut down");
+        }
+        if(priority == OCRPriority.INTERACTIVE) {
+            if(executor.getActiveCount() >= workerCount) {
+                LOGGER.trace("all workers busy, running interactive task on additional worker");
+                interactiveExecutor.execute(task);
+            }else {
+                execute(new PrioritizedTask(task,
+                        priority,
+                        false //bounded
+                ));
+            }
+            return;
+        }
+        try {
+            queueSlots.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ex);
+        }
+        execute(new PrioritizedTask(task,
+                priority,
+                true //bounded
+        ));
+    }
+
+    private void execute(PrioritizedTask task) {
+        queuedTaskCounts[task.priority.ordinal()].incrementAndGet();
+        try {
+            executor.execute(task);
+        }catch(RejectedExecutionException ex) {
+            task.dequeued();
+            throw ex;
+        }
+    }
+
+    /**
+     * The number of tasks waiting for a free worker.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size()+interactiveExecutor.getQueue().size();
+    }
+
+    /**
+     * The number of tasks of {@code priority} waiting for a free worker.
+     * @param priority the priority
+     * @return the queue depth
+     */
+    public int getQueueDepth(OCRPriority priority) {
+        return queuedTaskCounts[priority.ordinal()].get();
+    }
+
+    /**
+     * The number of workers currently running a task.
+     * @return the active worker count
+     */
+    public int getActiveWorkerCount() {
+        return executor.getActiveCount()+interactiveExecutor.getActiveCount();
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * The total number of tasks which have been completed since creation.
+     * @return the completed task count
+     */
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount()+interactiveExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * Stops accepting new tasks. Already submitted tasks are processed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        interactiveExecutor.shutdown();
+    }
+
+    private class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final Runnable task;
+        private final OCRPriority priority;
+        private final long sequence = sequenceCounter.incrementAndGet();
+        /**
+         * Whether the task holds a permit of {@code queueSlots}.
+         */
+        private final boolean bounded;
+
+        PrioritizedTask(Runnable task,
+                OCRPriority priority,
+                boolean bounded) {
+            this.task = task;
+            this.priority = priority;
+            this.bounded = bounded;
+        }
+
+        void dequeued() {
+            queuedTaskCounts[priority.ordinal()].decrementAndGet();
+            if(bounded) {
+                queueSlots.release();
+            }
+        }
+
+        @Override
+        public void run() {
+            dequeued();
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int retValue = priority.compareTo(other.priority);
+            if(retValue == 0) {
+                retValue = Long.compare(sequence, other.sequence);
+            }
+            return retValue;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Rectangle;
+
+/**
+ * A word recognized by an {@link OCREngine} with its position on the page.
+ *
+ * @author richter
+ */
+public class OCRWord {
+    private final String text;
+    private final Rectangle bounds;
+    private final double confidence;
+    private final int blockNumber;
+    private final int paragraphNumber;
+    private final int lineNumber;
+
+    /**
+     * Creates a new {@code OCRWord}.
+     * @param text the recognized text
+     * @param bounds the bounding box in pixels of the recognized image
+     * @param confidence the confidence between {@code 0} and {@code 100} or a
+     * negative value if unknown
+     * @param blockNumber the number of the block on the page
+     * @param paragraphNumber the number of the paragraph in the block
+     * @param lineNumber the number of the line in the paragraph
+     */
+    public OCRWord(String text,
+            Rectangle bounds,
+            double confidence,
+            int blockNumber,
+            int paragraphNumber,
+            int lineNumber) {
+        this.text = text;
+        this.bounds = new Rectangle(bounds);
+        this.confidence = confidence;
+        this.blockNumber = blockNumber;
+        this.paragraphNumber = paragraphNumber;
+        this.lineNumber = lineNumber;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    public int getParagraphNumber() {
+        return paragraphNumber;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Whether this word belongs to the same line as {@code other}.
+     * @param other the other word
+     * @return {@code true} if both words are in the same line, {@code false}
+     * otherwise
+     */
+    public boolean isSameLine(OCRWord other) {
+        return blockNumber == other.blockNumber
+                && paragraphNumber == other.paragraphNumber
+                && lineNumber == other.lineNumber;
+    }
+
+    /**
+     * Whether the center of this word is inside {@code area}.
+     * @param area the area in pixels of the recognized image
+     * @return {@code true} if the word is inside, {@code false} otherwise
+     */
+    public boolean isInside(Rectangle area) {
+        return area.contains(bounds.getCenterX(),
+                bounds.getCenterY());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s", text, bounds);
+    }
+}
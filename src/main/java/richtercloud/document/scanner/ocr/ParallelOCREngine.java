@@ -16,26 +16,38 @@ package richtercloud.document.scanner.ocr;
 
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import org.apache.commons.collections4.OrderedMap;
 import richtercloud.document.scanner.ifaces.ImageWrapper;
 import richtercloud.document.scanner.ifaces.OCREngine;
-import richtercloud.document.scanner.ifaces.OCREngineConf;
 import richtercloud.document.scanner.ifaces.OCREngineProgressEvent;
 import richtercloud.document.scanner.ifaces.OCREngineProgressListener;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
 
 /**
+ * An {@link OCREngine} which recognizes images in parallel on an
+ * {@link OCRScheduler} which is shared by all invocations of the engine and
+ * configured through {@link ParallelOCREngineConf}.
+ *
+ * Every request is associated with an {@link OCRCancellationToken} which can
+ * be passed by callers in order to cancel the request without affecting other
+ * requests. {@link #cancelRecognizeImages() } cancels all running requests.
+ * Tasks of canceled requests which are still queued return immediately.
+ *
+ * Requests have an {@link OCRPriority} which determines the order in which
+ * their tasks are processed by the scheduler. Methods without priority
+ * parameter use {@link OCRPriority#DOCUMENT}.
  *
  * @author richter
  */
@@ -47,13 +59,34 @@ images seems pointless) and avoiding unnecessary creation of task instances
 when retrieving cached results -> don't care about creation of task instances.
 - expressing cancelation by returning null from thread workers avoids a boolean
 flag in ParallelOCREngine
+- the token and the priority of a request are made available to the
+recognition methods of subclasses on the worker thread (see
+getCancellationToken and getPriority) instead of adding a parameter to every
+abstract method
 */
-public abstract class ParallelOCREngine<C extends OCREngineConf> implements OCREngine<C> {
-    private final Set<OCREngineProgressListener> progressListeners = new HashSet<>();
+public abstract class ParallelOCREngine<C extends ParallelOCREngineConf> implements OCREngine<C> {
+    private final Set<OCREngineProgressListener> progressListeners = new CopyOnWriteArraySet<>();
     private final C oCREngineConf;
+    private final OCRScheduler scheduler;
+    /**
+     * The token of the request which is processed by the current worker
+     * thread.
+     */
+    private final static ThreadLocal<OCRCancellationToken> CURRENT_CANCELLATION_TOKEN = new ThreadLocal<>();
+    /**
+     * The priority of the request which is processed by the current worker
+     * thread.
+     */
+    private final static ThreadLocal<OCRPriority> CURRENT_PRIORITY = new ThreadLocal<>();
+    /**
+     * Tokens of requests which have unfinished tasks.
+     */
+    private final Set<OCRCancellationToken> activeCancellationTokens = ConcurrentHashMap.newKeySet();
 
     public ParallelOCREngine(C oCREngineConf) {
         this.oCREngineConf = oCREngineConf;
+        this.scheduler = new OCRScheduler(oCREngineConf.getWorkerCount(),
+                oCREngineConf.getQueueCapacity());
     }
 
     @Override
@@ -61,82 +94,390 @@ public abstract class ParallelOCREngine<C extends OCREngineConf> implements OCRE
         return oCREngineConf;
     }
 
-    private String recognizeTasks(List<FutureTask<String>> tasks) throws OCREngineRecognitionException {
-        StringBuilder retValueBuilder = new StringBuilder(1000);
-        //check in loop whether cache can be used, otherwise enqueue started
-        //SwingWorkers; after loop wait for SwingWorkers until queue is
-        //empty and append to retValueBuilder (if cache has been used
-        //(partially) queue will be empty)
-        Queue<FutureTask<String>> threadQueue = new LinkedList<>();
-            //the Queue preserves the order to workers
-        ExecutorService executor = Executors.newCachedThreadPool();
-        for(FutureTask<String> task : tasks) {
-            executor.submit(task);
-            threadQueue.add(task);
+    /**
+     * The scheduler which runs all recognitions of this engine. Allows to
+     * monitor queue depth and active worker count.
+     * @return the scheduler
+     */
+    public OCRScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Stops accepting new recognition tasks. Should be invoked when the engine
+     * is replaced or the application shuts down.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * The token of the request which is processed by the calling thread.
+     * @return the token or a token which is never canceled if the calling
+     * thread isn't a worker of this engine
+     */
+    protected static OCRCancellationToken getCancellationToken() {
+        OCRCancellationToken retValue = CURRENT_CANCELLATION_TOKEN.get();
+        if(retValue == null) {
+            retValue = new OCRCancellationToken();
+        }
+        return retValue;
+    }
+
+    /**
+     * The priority of the request which is processed by the calling thread.
+     * @return the priority or {@link OCRPriority#DOCUMENT} if the calling
+     * thread isn't a worker of this engine
+     */
+    protected static OCRPriority getPriority() {
+        OCRPriority retValue = CURRENT_PRIORITY.get();
+        if(retValue == null) {
+            retValue = OCRPriority.DOCUMENT;
+        }
+        return retValue;
+    }
+
+    /**
+     * Submits {@code task} to the scheduler.
+     * @param task the task
+     * @param cancellationToken the token of the request
+     * @param priority the priority of the request
+     * @return a future which is completed with the result of {@code task} or
+     * {@code null} if the request has been canceled before the task started
+     * @throws RejectedExecutionException if the scheduler doesn't accept the
+     * task
+     */
+    private CompletableFuture<String> submitTask(Callable<String> task,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws RejectedExecutionException {
+        CompletableFuture<String> retValue = new CompletableFuture<>();
+        scheduler.submit(() -> {
+            if(cancellationToken.isCanceled()) {
+                retValue.complete(null);
+                return;
+            }
+            CURRENT_CANCELLATION_TOKEN.set(cancellationToken);
+            CURRENT_PRIORITY.set(priority);
+            try {
+                retValue.complete(task.call());
+            }catch(Throwable ex) {
+                retValue.completeExceptionally(ex);
+            }finally {
+                CURRENT_CANCELLATION_TOKEN.remove();
+                CURRENT_PRIORITY.remove();
+            }
+        },
+                priority);
+        return retValue;
+    }
+
+    /**
+     * Submits {@code tasks} to the scheduler and registers
+     * {@code cancellationToken} as active until all of them are completed.
+     */
+    private List<CompletableFuture<String>> submitTasks(List<Callable<String>> tasks,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        List<CompletableFuture<String>> retValue = new ArrayList<>(tasks.size());
+        activeCancellationTokens.add(cancellationToken);
+        for(Callable<String> task : tasks) {
+            try {
+                retValue.add(submitTask(task,
+                        cancellationToken,
+                        priority));
+            }catch(RejectedExecutionException ex) {
+                for(CompletableFuture<String> future : retValue) {
+                    future.cancel(false);
+                }
+                activeCancellationTokens.remove(cancellationToken);
+                throw new OCREngineRecognitionException(ex);
+            }
+        }
+        CompletableFuture.allOf(retValue.toArray(new CompletableFuture<?>[retValue.size()]))
+                .whenComplete((result, ex) -> activeCancellationTokens.remove(cancellationToken));
+        return retValue;
+    }
+
+    /**
+     * Cancels all running requests of this engine.
+     */
+    @Override
+    public void cancelRecognizeImages() {
+        for(OCRCancellationToken cancellationToken : activeCancellationTokens) {
+            cancellationToken.cancel();
+        }
+    }
+
+    private List<Callable<String>> createImageStreamTasks(OrderedMap<ImageWrapper, InputStream> imageStreams) {
+        List<Callable<String>> retValue = new ArrayList<>(imageStreams.size());
+        for(Map.Entry<ImageWrapper, InputStream> imageStream : imageStreams.entrySet()) {
+            retValue.add(() -> recognizeImageStream(imageStream.getKey(),
+                    imageStream.getValue()));
         }
-        executor.shutdown();
-        int i=0;
+        return retValue;
+    }
+
+    /**
+     * Waits for all {@code futures} and notifies {@code pageListener} and the
+     * progress listeners of this engine about each page.
+     *
+     * @param futures the futures of the pages in document order
+     * @param images the images of the pages in document order or {@code null}
+     * if they're not available
+     * @param pageListener the listener to notify (might be {@code null})
+     * @param pageOrder the order in which listeners are notified
+     * @return the concatenated text of all pages in document order or
+     * {@code null} if the recognition of any page has been canceled
+     */
+    private String awaitPages(List<CompletableFuture<String>> futures,
+            List<ImageWrapper> images,
+            OCRPageListener pageListener,
+            OCRPageOrder pageOrder) throws OCREngineRecognitionException {
+        int pageCount = futures.size();
+        String[] results = new String[pageCount];
         boolean aborted = false;
-        while(!threadQueue.isEmpty()) {
-            FutureTask<String> threadQueueHead = threadQueue.poll();
+        BlockingQueue<Integer> completionQueue = null;
+        if(pageOrder == OCRPageOrder.COMPLETION) {
+            completionQueue = new LinkedBlockingQueue<>();
+            for(int i=0; i<pageCount; i++) {
+                final int pageIndex = i;
+                final BlockingQueue<Integer> completionQueue0 = completionQueue;
+                futures.get(i).whenComplete((result, ex) -> completionQueue0.add(pageIndex));
+            }
+        }
+        for(int recognizedPageCount=1; recognizedPageCount<=pageCount; recognizedPageCount++) {
             String oCRResult;
+            int pageIndex = recognizedPageCount-1;
             try {
-                oCRResult = threadQueueHead.get();
-                if(oCRResult == null) {
-                    aborted = true;
-                    //still need to wait for all tasks to finish because it's up
-                    //to implementations to finished them properly
+                if(completionQueue != null) {
+                    pageIndex = completionQueue.take();
                 }
-            } catch (InterruptedException | ExecutionException ex) {
+                oCRResult = futures.get(pageIndex).get();
+            } catch (InterruptedException ex) {
                 throw new OCREngineRecognitionException(ex);
+            } catch (ExecutionException ex) {
+                if(ex.getCause() instanceof OCREngineRecognitionException) {
+                    throw (OCREngineRecognitionException) ex.getCause();
+                }
+                throw new OCREngineRecognitionException(ex.getCause());
+            }
+            if(oCRResult == null) {
+                aborted = true;
+                //still need to wait for all tasks to finish because it's up
+                //to implementations to finished them properly
             }
             if(!aborted) {
-                retValueBuilder.append(oCRResult);
+                results[pageIndex] = oCRResult;
+                OCRPageEvent pageEvent = new OCRPageEvent(pageIndex,
+                        pageCount,
+                        recognizedPageCount,
+                        images != null ? images.get(pageIndex) : null,
+                        oCRResult);
+                if(pageListener != null) {
+                    pageListener.onPageRecognized(pageEvent);
+                }
                 for(OCREngineProgressListener progressListener: progressListeners) {
-                    progressListener.onProgressUpdate(new OCREngineProgressEvent(oCRResult, i/tasks.size()));
+                    progressListener.onProgressUpdate(new OCREngineProgressEvent(oCRResult,
+                            pageEvent.getProgress()));
                 }
-                i += 1;
             }
         }
         if(aborted) {
             return null;
         }
+        StringBuilder retValueBuilder = new StringBuilder(1000);
+        for(String result : results) {
+            retValueBuilder.append(result);
+        }
         String retValue = retValueBuilder.toString();
         return retValue;
     }
 
     @Override
     public String recognizeImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams) throws OCREngineRecognitionException {
-        List<FutureTask<String>> tasks = new LinkedList<>();
-        for(Map.Entry<ImageWrapper, InputStream> imageStream : imageStreams.entrySet()) {
-            FutureTask<String> task = new FutureTask<>(new Callable<String>() {
-                @Override
-                public String call() throws OCREngineRecognitionException {
-                    String oCRResult = recognizeImageStream(imageStream.getKey(),
-                            imageStream.getValue());
-                    return oCRResult;
-                }
-            });
-            tasks.add(task);
-        }
-        String retValue = recognizeTasks(tasks);
+        return recognizeImageStreams(imageStreams,
+                null, //pageListener
+                OCRPageOrder.ORDERED);
+    }
+
+    /**
+     * Recognizes {@code imageStreams} and notifies {@code pageListener} about
+     * the text of each page as soon as it's available in the order specified by
+     * {@code pageOrder}. Listeners are notified on the calling thread.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param pageListener the listener to notify (might be {@code null})
+     * @param pageOrder the order in which {@code pageListener} is notified
+     * @return the concatenated text of all pages in document order or
+     * {@code null} if the recognition has been canceled
+     * @throws OCREngineRecognitionException if the recognition of any page
+     * fails
+     */
+    public String recognizeImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRPageListener pageListener,
+            OCRPageOrder pageOrder) throws OCREngineRecognitionException {
+        return recognizeImageStreams(imageStreams,
+                pageListener,
+                pageOrder,
+                new OCRCancellationToken());
+    }
+
+    /**
+     * Recognizes {@code imageStreams} like
+     * {@link #recognizeImageStreams(org.apache.commons.collections4.OrderedMap, richtercloud.document.scanner.ocr.OCRPageListener, richtercloud.document.scanner.ocr.OCRPageOrder) }
+     * and allows to cancel only this request with {@code cancellationToken}.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param pageListener the listener to notify (might be {@code null})
+     * @param pageOrder the order in which {@code pageListener} is notified
+     * @param cancellationToken the token which cancels this request
+     * @return the concatenated text of all pages in document order or
+     * {@code null} if the recognition has been canceled
+     * @throws OCREngineRecognitionException if the recognition of any page
+     * fails
+     */
+    public String recognizeImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRPageListener pageListener,
+            OCRPageOrder pageOrder,
+            OCRCancellationToken cancellationToken) throws OCREngineRecognitionException {
+        return recognizeImageStreams(imageStreams,
+                pageListener,
+                pageOrder,
+                cancellationToken,
+                OCRPriority.DOCUMENT);
+    }
+
+    /**
+     * Recognizes {@code imageStreams} like
+     * {@link #recognizeImageStreams(org.apache.commons.collections4.OrderedMap, richtercloud.document.scanner.ocr.OCRPageListener, richtercloud.document.scanner.ocr.OCRPageOrder, richtercloud.document.scanner.ocr.OCRCancellationToken) }
+     * with {@code priority}.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param pageListener the listener to notify (might be {@code null})
+     * @param pageOrder the order in which {@code pageListener} is notified
+     * @param cancellationToken the token which cancels this request
+     * @param priority the priority of this request
+     * @return the concatenated text of all pages in document order or
+     * {@code null} if the recognition has been canceled
+     * @throws OCREngineRecognitionException if the recognition of any page
+     * fails
+     */
+    public String recognizeImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRPageListener pageListener,
+            OCRPageOrder pageOrder,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        List<CompletableFuture<String>> futures = submitImageStreams(imageStreams,
+                cancellationToken,
+                priority);
+        String retValue = awaitPages(futures,
+                new ArrayList<>(imageStreams.keySet()),
+                pageListener,
+                pageOrder);
         return retValue;
     }
 
+    /**
+     * Starts the recognition of {@code imageStreams} and returns immediately.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @return one future per page in document order which is completed with
+     * the text of the page or {@code null} if the recognition has been
+     * canceled
+     * @throws OCREngineRecognitionException if the recognitions can't be
+     * submitted
+     */
+    public List<CompletableFuture<String>> recognizeImageStreamsAsync(OrderedMap<ImageWrapper, InputStream> imageStreams) throws OCREngineRecognitionException {
+        return recognizeImageStreamsAsync(imageStreams,
+                new OCRCancellationToken());
+    }
+
+    /**
+     * Starts the recognition of {@code imageStreams} which can be canceled
+     * with {@code cancellationToken} and returns immediately.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param cancellationToken the token which cancels this request
+     * @return one future per page in document order
+     * @throws OCREngineRecognitionException if the recognitions can't be
+     * submitted
+     */
+    public List<CompletableFuture<String>> recognizeImageStreamsAsync(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRCancellationToken cancellationToken) throws OCREngineRecognitionException {
+        return recognizeImageStreamsAsync(imageStreams,
+                cancellationToken,
+                OCRPriority.DOCUMENT);
+    }
+
+    /**
+     * Starts the recognition of {@code imageStreams} with {@code priority}
+     * which can be canceled with {@code cancellationToken} and returns
+     * immediately.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param cancellationToken the token which cancels this request
+     * @param priority the priority of this request
+     * @return one future per page in document order
+     * @throws OCREngineRecognitionException if the recognitions can't be
+     * submitted
+     */
+    public List<CompletableFuture<String>> recognizeImageStreamsAsync(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        return submitImageStreams(imageStreams,
+                cancellationToken,
+                priority);
+    }
+
+    /**
+     * Submits one task per page of {@code imageStreams} to the scheduler.
+     * Subclasses can override this in order to prepare the recognition of all
+     * pages of a call at once.
+     *
+     * @param imageStreams the images to recognize in document order
+     * @param cancellationToken the token of the request
+     * @param priority the priority of the request
+     * @return one future per page in document order
+     * @throws OCREngineRecognitionException if the tasks can't be submitted
+     */
+    protected List<CompletableFuture<String>> submitImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        return submitTasks(createImageStreamTasks(imageStreams),
+                cancellationToken,
+                priority);
+    }
+
     @Override
     public String recognizeImages(List<BufferedImage> images) throws OCREngineRecognitionException {
-        List<FutureTask<String>> tasks = new LinkedList<>();
+        return recognizeImages(images,
+                OCRPriority.DOCUMENT);
+    }
+
+    /**
+     * Recognizes {@code images} with {@code priority}, e.g.
+     * {@link OCRPriority#INTERACTIVE} for selections the user waits for.
+     *
+     * @param images the images to recognize
+     * @param priority the priority of the request
+     * @return the concatenated text of all images or {@code null} if the
+     * recognition has been canceled
+     * @throws OCREngineRecognitionException if the recognition of any image
+     * fails
+     */
+    public String recognizeImages(List<BufferedImage> images,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        List<Callable<String>> tasks = new ArrayList<>(images.size());
         for(BufferedImage image : images) {
-            FutureTask<String> task = new FutureTask<>(new Callable<String>() {
-                @Override
-                public String call() throws OCREngineRecognitionException {
-                    String oCRResult = recognizeImage(image);
-                    return oCRResult;
-                }
-            });
-            tasks.add(task);
+            tasks.add(() -> recognizeImage(image));
         }
-        String retValue = recognizeTasks(tasks);
+        List<CompletableFuture<String>> futures = submitTasks(tasks,
+                new OCRCancellationToken(),
+                priority);
+        String retValue = awaitPages(futures,
+                null, //images
+                null, //pageListener
+                OCRPageOrder.ORDERED);
         return retValue;
     }
 
@@ -0,0 +1,97 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import richtercloud.document.scanner.ifaces.OCREngineConf;
+
+/**
+ * Configuration of the {@link OCRScheduler} which is shared by all
+ * recognitions of a {@link ParallelOCREngine}.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- values <= 0 are interpreted as default values because configuration files
+written by older versions don't contain the properties and XStream doesn't
+invoke field initializers
+*/
+public abstract class ParallelOCREngineConf implements OCREngineConf {
+    private static final long serialVersionUID = 1L;
+    /**
+     * The default maximum number of recognitions running at the same time.
+     */
+    public final static int WORKER_COUNT_DEFAULT = Runtime.getRuntime().availableProcessors();
+    /**
+     * The default maximum number of recognitions waiting for a free worker
+     * before submitting threads are blocked.
+     */
+    public final static int QUEUE_CAPACITY_DEFAULT = 256;
+    private int workerCount = WORKER_COUNT_DEFAULT;
+    private int queueCapacity = QUEUE_CAPACITY_DEFAULT;
+
+    public ParallelOCREngineConf() {
+    }
+
+    /**
+     * The maximum number of recognitions which run at the same time.
+     * @return the configured worker count or {@link #WORKER_COUNT_DEFAULT} if
+     * none is configured
+     */
+    public int getWorkerCount() {
+        if(workerCount <= 0) {
+            return WORKER_COUNT_DEFAULT;
+        }
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * The maximum number of recognitions which wait for a free worker.
+     * @return the configured queue capacity or {@link #QUEUE_CAPACITY_DEFAULT}
+     * if none is configured
+     */
+    public int getQueueCapacity() {
+        if(queueCapacity <= 0) {
+            return QUEUE_CAPACITY_DEFAULT;
+        }
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 37 * hash + this.getWorkerCount();
+        hash = 37 * hash + this.getQueueCapacity();
+        return hash;
+    }
+
+    protected boolean equalsTransitive(ParallelOCREngineConf other) {
+        if (this.getWorkerCount() != other.getWorkerCount()) {
+            return false;
+        }
+        if (this.getQueueCapacity() != other.getQueueCapacity()) {
+            return false;
+        }
+        return true;
+    }
+}
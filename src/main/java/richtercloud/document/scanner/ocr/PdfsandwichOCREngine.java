@@ -18,73 +18,599 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import richtercloud.message.handler.ExceptionMessage;
+import richtercloud.document.scanner.ifaces.ImageWrapper;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
 import richtercloud.message.handler.IssueHandler;
 
 /**
+ * An {@link OCREngine} which recognizes complete PDF documents with one
+ * {@code pdfsandwich} process which creates a PDF with a text layer (sandwich
+ * PDF) whose text is extracted page by page with PDFBox.
+ *
+ * {@link #recognizePdf(java.io.File, java.io.File) } returns the text of every
+ * page and optionally keeps the sandwich PDF.
+ * {@link #recognizeDocumentAsync(java.io.File, java.util.List) } recognizes
+ * an imported PDF in the background and stores the text of its pages for the
+ * images they've been rendered to, so that the OCR of the document costs one
+ * process launch instead of one per page. Recognitions of these images which
+ * are requested before the document is recognized wait for it.
+ *
+ * Single images are wrapped in a one-page PDF since {@code pdfsandwich} only
+ * reads PDFs.
  *
  * @author richter
  */
+/*
+internal implementation notes:
+- every recognition uses its own temporary directory which contains the input
+and output PDF, the process output and the temporary files of pdfsandwich
+(TMPDIR) and of PDFBox; it's deleted after the recognition (also if it failed
+or has been canceled) so that no temporary data outlives a recognition
+- documents are recognized one after another on a separate worker because
+recognitions of pages on the workers of the scheduler wait for them which
+would deadlock if the document were recognized on the scheduler; it also
+limits the temporary data to the one of one document at a time while
+pdfsandwich parallelizes the recognition of the pages of the document itself
+- the text of the pages is only used if the output has as many pages as
+images have been passed because they're matched by index
+- every registered page recognition is completed and removed when its document
+has been recognized, failed, been rejected or dropped on shutdown, so that
+waiting page recognitions never wait forever; page recognitions additionally
+wait at most one page timeout for their document to start and then until a
+deadline which depends on the page count of their document only (the
+documents queued before don't matter), and can be canceled with their request
+*/
 public class PdfsandwichOCREngine extends ProcessOCREngine<PdfsandwichOCREngineConf> {
     private final static Logger LOGGER = LoggerFactory.getLogger(PdfsandwichOCREngine.class);
+    private final static String INPUT_FILE_NAME = "input.pdf";
+    private final static String OUTPUT_FILE_NAME = "output.pdf";
+    private final static String LOG_FILE_NAME = "pdfsandwich.log";
+    /**
+     * The maximum number of characters of the process output included in
+     * exception messages.
+     */
+    private final static int LOG_TAIL_LENGTH = 2000;
+    /**
+     * The resolution images are assumed to have when they're wrapped in a PDF
+     * which is the resolution {@code pdfsandwich} renders pages with by
+     * default, i.e. images are recognized in their original size.
+     */
+    private final static int IMAGE_DPI = 300;
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    private final static AtomicInteger ENGINE_COUNTER = new AtomicInteger();
+    private final ThreadPoolExecutor documentExecutor;
+    /**
+     * Recognitions of pages queued by
+     * {@link #recognizeDocumentAsync(java.io.File, java.util.List) } by cache
+     * key.
+     */
+    private final Map<String, DocumentPage> documentPageRecognitions = new ConcurrentHashMap<>();
 
     public PdfsandwichOCREngine(PdfsandwichOCREngineConf oCREngineConf,
             IssueHandler issueHandler) {
         super(oCREngineConf,
                 issueHandler);
+        final int engineNumber = ENGINE_COUNTER.incrementAndGet();
+        this.documentExecutor = new ThreadPoolExecutor(1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread retValue = new Thread(runnable,
+                            String.format("pdfsandwich-%d-document-worker",
+                                    engineNumber));
+                    retValue.setDaemon(true);
+                    return retValue;
+                });
+        this.documentExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    protected String getConfigurationFingerprint() {
+        return String.format("%s:%s:%s",
+                super.getConfigurationFingerprint(),
+                this.getoCREngineConf().getBinary(),
+                getLanguageString());
+    }
+
+    private String getLanguageString() {
+        return String.join("+", this.getoCREngineConf().getSelectedLanguages());
     }
 
     /**
-     * Processes {@code image} with {@code pdfsandwich} including creation of
-     * temporary input and output files and reading data back from the latter
-     * since {@code pdfsandwich} seems to be incapable of reading from stdin or
-     * writing to stdout.
-     * @param image
-     * @return
+     * Recognizes all pages of {@code pdfFile} with one process.
+     *
+     * @param pdfFile the PDF to recognize which isn't modified
+     * @param sandwichPdfFile the file the sandwich PDF is written to or
+     * {@code null} if it isn't needed which allows {@code pdfsandwich} to omit
+     * the images in the output
+     * @return the text of every page or {@code null} if the recognition has
+     * been canceled
+     * @throws OCREngineRecognitionException if the process fails or its
+     * output can't be read
      */
-    @Override
-    @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
-    protected String recognizeImage1(BufferedImage image) {
+    public List<String> recognizePdf(File pdfFile,
+            File sandwichPdfFile) throws OCREngineRecognitionException {
+        File workDir = createWorkDir();
+        try {
+            return recognizePdf0(pdfFile,
+                    sandwichPdfFile,
+                    workDir);
+        }finally {
+            deleteWorkDir(workDir);
+        }
+    }
+
+    /**
+     * Recognizes all pages of the PDF read from {@code pdfStream} with one
+     * process like {@link #recognizePdf(java.io.File, java.io.File) }.
+     *
+     * @param pdfStream the stream providing the PDF
+     * @param sandwichPdfFile the file the sandwich PDF is written to or
+     * {@code null} if it isn't needed
+     * @return the text of every page or {@code null} if the recognition has
+     * been canceled
+     * @throws OCREngineRecognitionException if the stream can't be read, the
+     * process fails or its output can't be read
+     */
+    public List<String> recognizePdf(InputStream pdfStream,
+            File sandwichPdfFile) throws OCREngineRecognitionException {
+        File workDir = createWorkDir();
+        try {
+            File inputFile = new File(workDir, INPUT_FILE_NAME);
+            Files.copy(pdfStream,
+                    inputFile.toPath());
+            return recognizePdf0(inputFile,
+                    sandwichPdfFile,
+                    workDir);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }finally {
+            deleteWorkDir(workDir);
+        }
+    }
+
+    /**
+     * Recognizes {@code pdfFile} in the background and stores the text of its
+     * pages as results for {@code pages}.
+     *
+     * @param pdfFile the PDF which mustn't be deleted before the returned
+     * future is completed
+     * @param pages the images {@code pdfFile} has been rendered to in page
+     * order
+     * @return a future which is completed when the results are stored or
+     * completed exceptionally if the recognition failed or the engine has been
+     * shut down before it started
+     * @throws OCREngineRecognitionException if the image data of
+     * {@code pages} can't be read
+     */
+    public CompletableFuture<Void> recognizeDocumentAsync(File pdfFile,
+            List<ImageWrapper> pages) throws OCREngineRecognitionException {
+        List<String> keys = new ArrayList<>(pages.size());
+        List<CompletableFuture<String>> pageRecognitions = new ArrayList<>(pages.size());
+        boolean allCached = true;
+        for(ImageWrapper page : pages) {
+            String key = getKey(page);
+            keys.add(key);
+            allCached &= isCached(key);
+        }
+        if(allCached) {
+            //e.g. all pages had a usable text layer
+            LOGGER.debug(String.format("all %d pages of document '%s' have been recognized before",
+                    pages.size(),
+                    pdfFile.getAbsolutePath()));
+            return CompletableFuture.completedFuture(null);
+        }
+        for(String key : keys) {
+            if(isCached(key)) {
+                //don't override results obtained otherwise, e.g. from the text
+                //layer of the page
+                pageRecognitions.add(null);
+                continue;
+            }
+            pageRecognitions.add(new CompletableFuture<>());
+        }
+        DocumentRecognition documentRecognition = new DocumentRecognition(pdfFile,
+                keys,
+                pageRecognitions);
+        for(int i=0; i<keys.size(); i++) {
+            CompletableFuture<String> pageRecognition = pageRecognitions.get(i);
+            if(pageRecognition != null) {
+                documentPageRecognitions.put(keys.get(i),
+                        new DocumentPage(pageRecognition,
+                                documentRecognition));
+            }
+        }
+        try {
+            documentExecutor.execute(documentRecognition);
+        }catch(RejectedExecutionException ex) {
+            //shut down
+            documentRecognition.abort();
+        }
+        return documentRecognition.result;
+    }
+
+    private List<String> recognizePdf0(File pdfFile,
+            File sandwichPdfFile,
+            File workDir) throws OCREngineRecognitionException {
         try {
-            LOGGER.debug(String.format("using prefix '%s' for pdfsandwich input temp file name", this.getoCREngineConf().getInputTempFilePrefix()));
-            File inputFile = File.createTempFile(getoCREngineConf().getInputTempFilePrefix(),
-                    null);
-            ImageIO.write(image, "png", inputFile);
-            ProcessBuilder pdfsandwichProcessBuilder = new ProcessBuilder(this.getoCREngineConf().getBinary(),
-                    "-noimage",
-                    inputFile.getAbsolutePath()
-            ).redirectOutput(ProcessBuilder.Redirect.PIPE);
-                //does not expect an output file, but create an output named
-                //after a scheme
+            //the status is cached by the registry so that no process is
+            //started per document
+            OCRBinaryRegistry.getInstance().checkAvailable(this.getoCREngineConf().getBinary());
+        }catch(BinaryNotFoundException ex) {
+            throw new OCREngineRecognitionException("pdfsandwich not available (see nested exception for details)",
+                    ex);
+        }catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            int pageCount;
+            try (PDDocument document = PDDocument.load(pdfFile,
+                    MemoryUsageSetting.setupTempFileOnly().setTempDir(workDir))) {
+                pageCount = document.getNumberOfPages();
+            }
+            File outputFile = new File(workDir, OUTPUT_FILE_NAME);
+            File logFile = new File(workDir, LOG_FILE_NAME);
+            List<String> command = new LinkedList<>();
+            command.add(this.getoCREngineConf().getBinary());
+            command.add("-lang");
+            command.add(getLanguageString());
+            command.add("-nthreads");
+            command.add(String.valueOf(this.getoCREngineConf().getWorkerCount()));
+            command.add("-quiet");
+            if(sandwichPdfFile == null) {
+                command.add("-noimage");
+            }
+            command.add("-o");
+            command.add(outputFile.getAbsolutePath());
+            command.add(pdfFile.getAbsolutePath());
+            ProcessBuilder pdfsandwichProcessBuilder = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile);
+                //output is redirected to a file in order to avoid blocking on
+                //full pipe buffers
+            pdfsandwichProcessBuilder.environment().put("TMPDIR", workDir.getAbsolutePath());
+            LOGGER.debug(String.format("recognizing %d pages of '%s' with command %s",
+                    pageCount,
+                    pdfFile.getAbsolutePath(),
+                    command));
             Process pdfsandwichProcess = pdfsandwichProcessBuilder.start();
-            getBinaryProcesses().add(pdfsandwichProcess);
-            int pdfsandwichProcessExitValue = pdfsandwichProcess.waitFor();
-            if(pdfsandwichProcessExitValue != 0) {
-                //tesseractProcess.destroy might cause IOException, but
-                //termination with exit value != 0 might occur as well
+            int pdfsandwichProcessExitValue;
+            try (OCRCancellationToken.Registration processRegistration = registerProcess(pdfsandwichProcess)) {
+                pdfsandwichProcessExitValue = waitForProcess(pdfsandwichProcess,
+                        pageCount);
+            }
+            if(getCancellationToken().isCanceled()) {
                 return null;
             }
-            throw new UnsupportedOperationException("Wait for https://github.com/Manawyrm/pdfsandwich-txt-output to pull fix for 'make install' error (see https://github.com/Manawyrm/pdfsandwich-txt-output/issues/2 for details)");
+            if(pdfsandwichProcessExitValue != 0 || !outputFile.isFile()) {
+                //probe the binary again before the next recognition
+                OCRBinaryRegistry.getInstance().invalidate(this.getoCREngineConf().getBinary());
+                throw new OCREngineRecognitionException(String.format("pdfsandwich process '%s' failed with returncode %d and output '%s'",
+                        this.getoCREngineConf().getBinary(),
+                        pdfsandwichProcessExitValue,
+                        readLogTail(logFile)));
+            }
+            List<String> retValue = extractPageTexts(outputFile,
+                    workDir);
+            if(sandwichPdfFile != null) {
+                Files.move(outputFile.toPath(),
+                        sandwichPdfFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return retValue;
         } catch(InterruptedException ex) {
-            //InterruptedException is an IOException
-            return null; //might at one point be thrown due to Process.destroy
-                    //cancelation
+            Thread.currentThread().interrupt();
+            return null;
         } catch (IOException ex) {
-            if(ex.getMessage().equals("Stream closed")) {
-                return null; //result of Process.destroy
+            throw new OCREngineRecognitionException(ex);
+        }
+    }
+
+    private static List<String> extractPageTexts(File pdfFile,
+            File workDir) throws IOException {
+        try (PDDocument document = PDDocument.load(pdfFile,
+                MemoryUsageSetting.setupTempFileOnly().setTempDir(workDir))) {
+            PDFTextStripper textStripper = new PDFTextStripper();
+            List<String> retValue = new ArrayList<>(document.getNumberOfPages());
+            for(int page=1; page<=document.getNumberOfPages(); page++) {
+                textStripper.setStartPage(page);
+                textStripper.setEndPage(page);
+                retValue.add(textStripper.getText(document));
             }
-            LOGGER.error("unexpected exception during image recognition",
+            return retValue;
+        }
+    }
+
+    private static String readLogTail(File logFile) {
+        try {
+            String log = FileUtils.readFileToString(logFile,
+                    Charset.defaultCharset());
+            return log.length() > LOG_TAIL_LENGTH
+                    ? log.substring(log.length()-LOG_TAIL_LENGTH)
+                    : log;
+        } catch (IOException ex) {
+            LOGGER.debug("reading pdfsandwich output failed",
+                    ex);
+            return "";
+        }
+    }
+
+    private File createWorkDir() throws OCREngineRecognitionException {
+        try {
+            return Files.createTempDirectory(this.getoCREngineConf().getInputTempFilePrefix()).toFile();
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
+    }
+
+    private static void deleteWorkDir(File workDir) {
+        try {
+            FileUtils.deleteDirectory(workDir);
+        } catch (IOException ex) {
+            LOGGER.warn(String.format("deletion of pdfsandwich working directory '%s' failed",
+                    workDir.getAbsolutePath()),
                     ex);
-            getIssueHandler().handleUnexpectedException(new ExceptionMessage(ex));
-            throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Wraps {@code image} in a one-page PDF which is recognized with
+     * {@link #recognizePdf(java.io.File, java.io.File) }.
+     * @param image the image
+     * @return the recognized text or {@code null} if the recognition has been
+     * canceled
+     */
+    @Override
+    protected String recognizeImage1(BufferedImage image) throws OCREngineRecognitionException {
+        File workDir = createWorkDir();
+        try {
+            File inputFile = new File(workDir, INPUT_FILE_NAME);
+            float pageWidth = image.getWidth()*72f/IMAGE_DPI;
+            float pageHeight = image.getHeight()*72f/IMAGE_DPI;
+            try (PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly().setTempDir(workDir))) {
+                PDPage page = new PDPage(new PDRectangle(pageWidth, pageHeight));
+                document.addPage(page);
+                PDImageXObject imageXObject = LosslessFactory.createFromImage(document,
+                        image);
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    contentStream.drawImage(imageXObject,
+                            0,
+                            0,
+                            pageWidth,
+                            pageHeight);
+                }
+                document.save(inputFile);
+            }
+            List<String> pageTexts = recognizePdf0(inputFile,
+                    null, //sandwichPdfFile
+                    workDir);
+            if(pageTexts == null) {
+                return null;
+            }
+            return String.join("", pageTexts);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        } finally {
+            deleteWorkDir(workDir);
+        }
+    }
+
+    @Override
+    protected String recognizeImageStream0(InputStream inputStream) throws OCREngineRecognitionException {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(inputStream);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
+        if(image == null) {
+            throw new OCREngineRecognitionException("image data can't be decoded");
+        }
+        return recognizeImage1(image);
+    }
+
+    @Override
+    protected String recognizeImageData0(String key,
+            byte[] imageData) throws OCREngineRecognitionException {
+        DocumentPage documentPage = documentPageRecognitions.get(key);
+        if(documentPage != null) {
+            //dependent futures which can be canceled without affecting other
+            //callers waiting for the page
+            CompletableFuture<Long> waitingDeadline = documentPage.document.deadline.thenApply(Function.identity());
+            CompletableFuture<String> waiting = documentPage.recognition.thenApply(Function.identity());
+            try (OCRCancellationToken.Registration registration = getCancellationToken().onCancel(() -> {
+                waitingDeadline.cancel(false);
+                waiting.cancel(false);
+            })) {
+                long pageTimeoutMillis = getoCREngineConf().getPageTimeoutMillis();
+                String retValue;
+                if(pageTimeoutMillis <= 0) {
+                    retValue = waiting.get();
+                }else {
+                    //recognizing the page separately is faster than waiting
+                    //for the documents queued before
+                    long deadline = waitingDeadline.get(pageTimeoutMillis,
+                            TimeUnit.MILLISECONDS);
+                    retValue = waiting.get(Math.max(0, deadline-System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                }
+                if(retValue != null) {
+                    return retValue;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (CancellationException ex) {
+                return null;
+            } catch (ExecutionException ex) {
+                LOGGER.debug("recognition of document failed, recognizing page separately",
+                        ex.getCause());
+            } catch (TimeoutException ex) {
+                LOGGER.debug(String.format("recognition of document didn't start or provide page with key %s in time, recognizing page separately",
+                        key));
+            }
+        }
+        return super.recognizeImageData0(key,
+                imageData);
+    }
+
+    /**
+     * Stops the scheduler and the document worker. Document recognitions which
+     * haven't been started are dropped and complete their futures
+     * exceptionally, page recognitions waiting for them recognize their pages
+     * separately.
+     */
     @Override
-    protected String recognizeImageStream0(InputStream inputStream) {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public void shutdown() {
+        super.shutdown();
+        for(Runnable dropped : documentExecutor.shutdownNow()) {
+            ((DocumentRecognition) dropped).abort();
+        }
+    }
+
+    /**
+     * A page registered by
+     * {@link #recognizeDocumentAsync(java.io.File, java.util.List) } and the
+     * recognition of its document.
+     */
+    private static class DocumentPage {
+        private final CompletableFuture<String> recognition;
+        private final DocumentRecognition document;
+
+        DocumentPage(CompletableFuture<String> recognition,
+                DocumentRecognition document) {
+            this.recognition = recognition;
+            this.document = document;
+        }
+    }
+
+    /**
+     * The recognition of a document queued by
+     * {@link #recognizeDocumentAsync(java.io.File, java.util.List) }.
+     */
+    private class DocumentRecognition implements Runnable {
+        private final File pdfFile;
+        private final List<String> keys;
+        /**
+         * The registered page recognitions in page order which are
+         * {@code null} for pages which have been cached before.
+         */
+        private final List<CompletableFuture<String>> pageRecognitions;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        /**
+         * Completed with the time in milliseconds until which page
+         * recognitions wait for the text of the document when it starts (or
+         * with the current time if it's dropped).
+         */
+        private final CompletableFuture<Long> deadline = new CompletableFuture<>();
+
+        DocumentRecognition(File pdfFile,
+                List<String> keys,
+                List<CompletableFuture<String>> pageRecognitions) {
+            this.pdfFile = pdfFile;
+            this.keys = keys;
+            this.pageRecognitions = pageRecognitions;
+        }
+
+        @Override
+        public void run() {
+            //the process is destroyed after the page timeout multiplied with
+            //the page count, one more page timeout covers loading the PDF
+            deadline.complete(System.currentTimeMillis()
+                    +getoCREngineConf().getPageTimeoutMillis()*(keys.size()+1));
+            List<String> pageTexts = null;
+            try {
+                pageTexts = recognizePdf(pdfFile,
+                        null //sandwichPdfFile
+                );
+                if(pageTexts != null && pageTexts.size() != keys.size()) {
+                    LOGGER.warn(String.format("recognition of document '%s' returned %d pages, but %d were expected, recognizing pages separately",
+                            pdfFile.getAbsolutePath(),
+                            pageTexts.size(),
+                            keys.size()));
+                    pageTexts = null;
+                }
+                if(pageTexts != null) {
+                    for(int i=0; i<keys.size(); i++) {
+                        if(pageRecognitions.get(i) != null) {
+                            putResult(keys.get(i),
+                                    pageTexts.get(i));
+                        }
+                    }
+                }
+                result.complete(null);
+            }catch(OCREngineRecognitionException | RuntimeException ex) {
+                LOGGER.warn(String.format("recognition of document '%s' failed, recognizing pages separately",
+                        pdfFile.getAbsolutePath()),
+                        ex);
+                result.completeExceptionally(ex);
+            }finally {
+                completePageRecognitions(pageTexts);
+            }
+        }
+
+        /**
+         * Completes the futures of a recognition which won't run.
+         */
+        void abort() {
+            LOGGER.debug(String.format("recognition of document '%s' has been dropped because the engine has been shut down",
+                    pdfFile.getAbsolutePath()));
+            deadline.complete(System.currentTimeMillis());
+            completePageRecognitions(null);
+            result.completeExceptionally(new OCREngineRecognitionException("engine has been shut down"));
+        }
+
+        /**
+         * Completes and removes the registered page recognitions. Waiting page
+         * recognitions recognize their page themselves if the text is
+         * {@code null}.
+         */
+        private void completePageRecognitions(List<String> pageTexts) {
+            for(int i=0; i<keys.size(); i++) {
+                CompletableFuture<String> pageRecognition = pageRecognitions.get(i);
+                if(pageRecognition == null) {
+                    continue;
+                }
+                pageRecognition.complete(pageTexts != null ? pageTexts.get(i) : null);
+                documentPageRecognitions.computeIfPresent(keys.get(i),
+                        (key, documentPage) -> documentPage.recognition == pageRecognition
+                                ? null
+                                : documentPage);
+            }
+        }
     }
 }
@@ -14,6 +14,10 @@
  */
 package richtercloud.document.scanner.ocr;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
 import richtercloud.document.scanner.ifaces.OCREngineConfValidationException;
 import richtercloud.message.handler.IssueHandler;
@@ -26,13 +30,43 @@ public class PdfsandwichOCREngineConf extends ProcessOCREngineConf {
     private static final long serialVersionUID = 1L;
     private final static String PDFSANDWICH_DEFAULT = "pdfsandwich";
     private final static String INPUT_TEMP_FILE_PREFIX = "pdfsandwich-ocr-engine-input";
+    private final static List<String> SELECTED_LANGUAGES_DEFAULT = Collections.unmodifiableList(new LinkedList<>(Arrays.asList("deu")));
     private String inputTempFilePrefix = INPUT_TEMP_FILE_PREFIX;
+    /**
+     * The tesseract languages passed to {@code pdfsandwich}.
+     */
+    private List<String> selectedLanguages = new LinkedList<>(SELECTED_LANGUAGES_DEFAULT);
 
     public PdfsandwichOCREngineConf() {
         super(PDFSANDWICH_DEFAULT);
     }
 
+    /**
+     * Cloning constructor of {@code PdfsandwichOCREngineConf}.
+     * @param conf the {@link PdfsandwichOCREngineConf} to clone
+     */
+    public PdfsandwichOCREngineConf(PdfsandwichOCREngineConf conf) {
+        super(conf.getBinary());
+        setWorkerCount(conf.getWorkerCount());
+        setQueueCapacity(conf.getQueueCapacity());
+        setResultCacheDir(conf.getResultCacheDir());
+        setResultCacheMaxBytes(conf.getResultCacheMaxBytes());
+        setMemoryCacheMaxBytes(conf.getMemoryCacheMaxBytes());
+        setDuplicateMaxDistance(conf.getDuplicateMaxDistance());
+        setPageTimeoutSeconds(conf.getPageTimeoutSeconds());
+        setPreprocessingGrayscale(conf.isPreprocessingGrayscale());
+        setPreprocessingBinarization(conf.isPreprocessingBinarization());
+        setPreprocessingTargetDpi(conf.getPreprocessingTargetDpi());
+        setPreprocessingCropMargins(conf.isPreprocessingCropMargins());
+        setInputTempFilePrefix(conf.getInputTempFilePrefix());
+        setSelectedLanguages(new LinkedList<>(conf.getSelectedLanguages()));
+    }
+
     public String getInputTempFilePrefix() {
+        if(inputTempFilePrefix == null) {
+            //field initializers aren't run when deserialized with XStream
+            return INPUT_TEMP_FILE_PREFIX;
+        }
         return inputTempFilePrefix;
     }
 
@@ -40,15 +74,35 @@ public class PdfsandwichOCREngineConf extends ProcessOCREngineConf {
         this.inputTempFilePrefix = inputTempFilePrefix;
     }
 
+    public List<String> getSelectedLanguages() {
+        if(selectedLanguages == null) {
+            return SELECTED_LANGUAGES_DEFAULT;
+        }
+        return Collections.unmodifiableList(selectedLanguages);
+    }
+
+    public void setSelectedLanguages(List<String> selectedLanguages) {
+        this.selectedLanguages = selectedLanguages;
+    }
+
     @Override
     public void validate(IssueHandler issueHandler) throws OCREngineConfValidationException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        try {
+            ProcessOCREngine.checkBinaryAvailableExceptions(this.getBinary(),
+                    issueHandler);
+        } catch (BinaryNotFoundException ex) {
+            throw new OCREngineConfValidationException(ex);
+        }
+        if(getSelectedLanguages().isEmpty()) {
+            throw new OCREngineConfValidationException("list of selected languages mustn't be empty");
+        }
     }
 
     @Override
     public int hashCode() {
         int hash = super.hashCode();
         hash = 17 * hash + Objects.hashCode(this.inputTempFilePrefix);
+        hash = 17 * hash + Objects.hashCode(this.getSelectedLanguages());
         return hash;
     }
 
@@ -59,6 +113,9 @@ public class PdfsandwichOCREngineConf extends ProcessOCREngineConf {
         if (!Objects.equals(this.inputTempFilePrefix, other.inputTempFilePrefix)) {
             return false;
         }
+        if (!Objects.equals(this.getSelectedLanguages(), other.getSelectedLanguages())) {
+            return false;
+        }
         return true;
     }
 
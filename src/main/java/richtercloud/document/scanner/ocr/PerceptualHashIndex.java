@@ -0,0 +1,253 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * An index of perceptual hashes which finds all values whose hash differs from
+ * a query hash in at most {@code maxDistance} bits without comparing the query
+ * with every hash.
+ *
+ * The hashes are split into {@code maxDistance+1} blocks and every block is
+ * indexed separately. Two hashes which differ in at most {@code maxDistance}
+ * bits have at least one identical block (pigeonhole principle), so only the
+ * values sharing a block with the query need to be compared (multi-index
+ * hashing). Blocks consist of bits scattered over the whole hash rather than
+ * contiguous ranges of bits.
+ *
+ * @author richter
+ * @param <V> the type of the indexed values
+ */
+/*
+internal implementation notes:
+- the lookup is fast as long as the blocks are long enough to be selective,
+i.e. for distances which are small compared to the hash length; the maximum
+distance is limited accordingly
+- bits of perceptual hashes of document pages are correlated with their
+position: contiguous bits represent adjacent areas of the page and blank
+margins produce long runs of unset bits. Blocks of contiguous bits would
+therefore put most pages into the block with all bits unset and make lookups
+compare the query with almost every hash. Assigning bits to blocks with a fixed
+pseudo-random permutation makes every block sample the whole page. The
+permutation only depends on the number of bits, so that it's stable as long as
+the specification of Random is.
+*/
+public class PerceptualHashIndex<V> {
+    /**
+     * The minimum number of bits of a block.
+     */
+    private final static int MIN_BLOCK_BITS = 8;
+    private final static long PERMUTATION_SEED = 1L;
+    private final int bitCount;
+    private final int maxDistance;
+    private final int blockCount;
+    /**
+     * The bits of the hash in the order in which they're assigned to blocks.
+     */
+    private final int[] permutation;
+    private final Map<BlockKey, List<Entry<V>>> blocks = new HashMap<>();
+    private int size = 0;
+
+    /**
+     * Creates a new {@code PerceptualHashIndex}.
+     * @param bitCount the number of bits of the hashes
+     * @param maxDistance the maximum number of bits in which hashes of values
+     * returned by {@link #find(long[]) } may differ from the query
+     * @throws IllegalArgumentException if {@code maxDistance} is negative or
+     * too large to split hashes with {@code bitCount} bits into selective
+     * blocks
+     */
+    public PerceptualHashIndex(int bitCount,
+            int maxDistance) {
+        if(maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance mustn't be negative");
+        }
+        if(bitCount/(maxDistance+1) < MIN_BLOCK_BITS) {
+            throw new IllegalArgumentException(String.format("maxDistance mustn't be larger than %d for hashes with %d bits",
+                    bitCount/MIN_BLOCK_BITS-1,
+                    bitCount));
+        }
+        this.bitCount = bitCount;
+        this.maxDistance = maxDistance;
+        this.blockCount = maxDistance+1;
+        this.permutation = createPermutation(bitCount);
+    }
+
+    private static int[] createPermutation(int bitCount) {
+        int[] retValue = new int[bitCount];
+        for(int bit=0; bit<bitCount; bit++) {
+            retValue[bit] = bit;
+        }
+        Random random = new Random(PERMUTATION_SEED);
+        for(int i=bitCount-1; i>0; i--) {
+            int j = random.nextInt(i+1);
+            int swap = retValue[i];
+            retValue[i] = retValue[j];
+            retValue[j] = swap;
+        }
+        return retValue;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Adds {@code value} with {@code hash} to the index.
+     * @param hash the hash
+     * @param value the value
+     */
+    public synchronized void put(long[] hash,
+            V value) {
+        if(hash.length*Long.SIZE != bitCount) {
+            throw new IllegalArgumentException(String.format("hash has to have %d bits",
+                    bitCount));
+        }
+        Entry<V> entry = new Entry<>(hash.clone(),
+                value);
+        for(int block=0; block<blockCount; block++) {
+            blocks.computeIfAbsent(getBlockKey(hash, block),
+                    key -> new LinkedList<>())
+                    .add(entry);
+        }
+        size++;
+    }
+
+    /**
+     * Finds all values whose hash differs from {@code hash} in at most
+     * {@code maxDistance} bits.
+     * @param hash the query hash
+     * @return the values ordered by increasing distance
+     */
+    public synchronized List<V> find(long[] hash) {
+        Set<Entry<V>> candidates = getCandidates(hash);
+        List<Entry<V>> matches = new ArrayList<>();
+        Map<Entry<V>, Integer> distances = new IdentityHashMap<>();
+        for(Entry<V> candidate : candidates) {
+            int distance = distance(candidate.hash, hash);
+            if(distance <= maxDistance) {
+                matches.add(candidate);
+                distances.put(candidate, distance);
+            }
+        }
+        matches.sort(Comparator.comparingInt(distances::get));
+        List<V> retValue = new ArrayList<>(matches.size());
+        for(Entry<V> match : matches) {
+            retValue.add(match.value);
+        }
+        return retValue;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of hashes which {@link #find(long[]) } compares with
+     * {@code hash}.
+     * @param hash the query hash
+     * @return the number of compared hashes
+     */
+    synchronized int getCandidateCount(long[] hash) {
+        return getCandidates(hash).size();
+    }
+
+    private Set<Entry<V>> getCandidates(long[] hash) {
+        Set<Entry<V>> retValue = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int block=0; block<blockCount; block++) {
+            List<Entry<V>> blockEntries = blocks.get(getBlockKey(hash, block));
+            if(blockEntries != null) {
+                retValue.addAll(blockEntries);
+            }
+        }
+        return retValue;
+    }
+
+    private static int distance(long[] hash0,
+            long[] hash1) {
+        int retValue = 0;
+        for(int i=0; i<hash0.length; i++) {
+            retValue += Long.bitCount(hash0[i] ^ hash1[i]);
+        }
+        return retValue;
+    }
+
+    private BlockKey getBlockKey(long[] hash,
+            int block) {
+        int from = block*bitCount/blockCount;
+        int to = (block+1)*bitCount/blockCount;
+        long[] blockBits = new long[(to-from+Long.SIZE-1)/Long.SIZE];
+        for(int i=from; i<to; i++) {
+            int bit = permutation[i];
+            if((hash[bit/Long.SIZE] >>> (bit%Long.SIZE) & 1L) != 0) {
+                int blockBit = i-from;
+                blockBits[blockBit/Long.SIZE] |= 1L << (blockBit%Long.SIZE);
+            }
+        }
+        return new BlockKey(block,
+                blockBits);
+    }
+
+    private final static class Entry<V> {
+        private final long[] hash;
+        private final V value;
+
+        Entry(long[] hash,
+                V value) {
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private final static class BlockKey {
+        private final int block;
+        private final long[] bits;
+
+        BlockKey(int block,
+                long[] bits) {
+            this.block = block;
+            this.bits = bits;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*block+Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) obj;
+            return this.block == other.block
+                    && Arrays.equals(this.bits, other.bits);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk-backed cache for OCR results which survives restarts of the
+ * application. Entries are addressed by a SHA-256 hash of the image data and a
+ * fingerprint of the engine configuration which influences the result (e.g.
+ * the binary and the selected languages).
+ *
+ * Each entry is stored in a file containing the SHA-256 checksum of the text on
+ * the first line followed by the text. Entries whose checksum doesn't match are
+ * deleted and treated as missing. The size of all entries is limited and the
+ * least recently used entries are evicted if it's exceeded. The last
+ * modification time of the entry files is updated on access so that the LRU
+ * order is restored after a restart.
+ *
+ * Use {@link #getInstance(java.io.File, long) } in order to share one instance
+ * per directory.
+ *
+ * @author richter
+ */
+public class PersistentOCRResultCache {
+    private final static Logger LOGGER = LoggerFactory.getLogger(PersistentOCRResultCache.class);
+    private final static String ENTRY_SUFFIX = ".txt";
+    private final static Map<File, PersistentOCRResultCache> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the shared cache for {@code cacheDir}. The size limit of an
+     * existing instance is updated to {@code maxBytes}.
+     *
+     * @param cacheDir the cache directory (created if it doesn't exist)
+     * @param maxBytes the maximum size of all entries
+     * @return the shared instance
+     * @throws IOException if the cache directory can't be created or read
+     */
+    public static PersistentOCRResultCache getInstance(File cacheDir,
+            long maxBytes) throws IOException {
+        File key = cacheDir.getCanonicalFile();
+        PersistentOCRResultCache retValue = INSTANCES.get(key);
+        if(retValue == null) {
+            synchronized(INSTANCES) {
+                retValue = INSTANCES.get(key);
+                if(retValue == null) {
+                    retValue = new PersistentOCRResultCache(key,
+                            maxBytes);
+                    INSTANCES.put(key, retValue);
+                }
+            }
+        }
+        retValue.setMaxBytes(maxBytes);
+        return retValue;
+    }
+
+    /**
+     * Creates a cache key from encoded image data.
+     * @param imageData the encoded image data
+     * @param configurationFingerprint the configuration fingerprint
+     * @return the key
+     */
+    public static String createKey(byte[] imageData,
+            String configurationFingerprint) {
+        return createKeyHasher(configurationFingerprint)
+                .putBytes(imageData)
+                .hash().toString();
+    }
+
+    /**
+     * Creates a hasher which produces the same key as
+     * {@link #createKey(byte[], java.lang.String) } after the encoded image
+     * data has been passed to it (e.g. while it's copied from a stream).
+     * @param configurationFingerprint the configuration fingerprint
+     * @return the hasher
+     */
+    public static Hasher createKeyHasher(String configurationFingerprint) {
+        return Hashing.sha256().newHasher()
+                .putString(configurationFingerprint, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a cache key from the raster data of {@code image} which avoids
+     * encoding it.
+     * @param image the image
+     * @param configurationFingerprint the configuration fingerprint
+     * @return the key
+     */
+    public static String createKey(BufferedImage image,
+            String configurationFingerprint) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(configurationFingerprint, StandardCharsets.UTF_8)
+                .putInt(image.getWidth())
+                .putInt(image.getHeight())
+                .putInt(image.getType());
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        for(int bank=0; bank<dataBuffer.getNumBanks(); bank++) {
+            if(dataBuffer instanceof DataBufferByte) {
+                hasher.putBytes(((DataBufferByte) dataBuffer).getData(bank));
+            }else if(dataBuffer instanceof DataBufferInt) {
+                for(int value : ((DataBufferInt) dataBuffer).getData(bank)) {
+                    hasher.putInt(value);
+                }
+            }else if(dataBuffer instanceof DataBufferUShort) {
+                for(short value : ((DataBufferUShort) dataBuffer).getData(bank)) {
+                    hasher.putShort(value);
+                }
+            }else if(dataBuffer instanceof DataBufferShort) {
+                for(short value : ((DataBufferShort) dataBuffer).getData(bank)) {
+                    hasher.putShort(value);
+                }
+            }else {
+                for(int i=0; i<dataBuffer.getSize(); i++) {
+                    hasher.putInt(dataBuffer.getElem(bank, i));
+                }
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static String checksum(String text) {
+        return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+    }
+
+    private final File cacheDir;
+    private long maxBytes;
+    /**
+     * Maps keys to the size of their entry file in access order.
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16,
+            0.75f,
+            true //accessOrder
+    );
+    private long totalBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    protected PersistentOCRResultCache(File cacheDir,
+            long maxBytes) throws IOException {
+        if(!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException(String.format("creation of OCR result cache directory '%s' failed",
+                    cacheDir.getAbsolutePath()));
+        }
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        File[] shardDirs = cacheDir.listFiles(File::isDirectory);
+        if(shardDirs == null) {
+            throw new IOException(String.format("listing of OCR result cache directory '%s' failed",
+                    cacheDir.getAbsolutePath()));
+        }
+        File[] entryFiles = Arrays.stream(shardDirs)
+                .flatMap(shardDir -> {
+                    File[] shardEntries = shardDir.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+                    return shardEntries == null ? Arrays.stream(new File[0]) : Arrays.stream(shardEntries);
+                })
+                .sorted(Comparator.comparingLong(File::lastModified))
+                .toArray(File[]::new);
+        for(File entryFile : entryFiles) {
+            String name = entryFile.getName();
+            index.put(name.substring(0, name.length()-ENTRY_SUFFIX.length()),
+                    entryFile.length());
+            totalBytes += entryFile.length();
+        }
+        LOGGER.debug(String.format("loaded %d entries with %d bytes from OCR result cache directory '%s'",
+                index.size(),
+                totalBytes,
+                cacheDir.getAbsolutePath()));
+        evict();
+    }
+
+    private File getEntryFile(String key) {
+        return new File(new File(cacheDir, key.substring(0, 2)),
+                key+ENTRY_SUFFIX);
+    }
+
+    /**
+     * Gets the cached result for {@code key}.
+     * @param key the key created with one of the {@code createKey} methods
+     * @return the cached text or {@code null} if there's no valid entry
+     */
+    public String get(String key) {
+        File entryFile;
+        synchronized(this) {
+            if(index.get(key) == null) {
+                missCount += 1;
+                return null;
+            }
+            entryFile = getEntryFile(key);
+        }
+        String retValue = null;
+        try {
+            String content = new String(Files.readAllBytes(entryFile.toPath()),
+                    StandardCharsets.UTF_8);
+            int separatorIndex = content.indexOf('\n');
+            if(separatorIndex >= 0) {
+                String text = content.substring(separatorIndex+1);
+                if(checksum(text).equals(content.substring(0, separatorIndex))) {
+                    retValue = text;
+                }
+            }
+            if(retValue == null) {
+                LOGGER.warn(String.format("checksum of OCR result cache entry '%s' is invalid, removing entry",
+                        entryFile.getAbsolutePath()));
+            }else if(!entryFile.setLastModified(System.currentTimeMillis())) {
+                LOGGER.debug(String.format("updating last modification time of OCR result cache entry '%s' failed",
+                        entryFile.getAbsolutePath()));
+            }
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("reading OCR result cache entry '%s' failed, removing entry",
+                    entryFile.getAbsolutePath()),
+                    ex);
+        }
+        synchronized(this) {
+            if(retValue == null) {
+                remove(key);
+                missCount += 1;
+            }else {
+                hitCount += 1;
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Checks whether there's an entry for {@code key} without reading it or
+     * changing its position in the LRU order.
+     * @param key the key created with one of the {@code createKey} methods
+     * @return {@code true} if there's an entry, {@code false} otherwise
+     */
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Stores {@code text} for {@code key} and evicts least recently used
+     * entries if the size limit is exceeded. Failures are logged since the
+     * cache is only an optimization.
+     * @param key the key created with one of the {@code createKey} methods
+     * @param text the OCR result
+     */
+    public void put(String key,
+            String text) {
+        File entryFile = getEntryFile(key);
+        byte[] content = (checksum(text)+"\n"+text).getBytes(StandardCharsets.UTF_8);
+        try {
+            File shardDir = entryFile.getParentFile();
+            if(!shardDir.exists() && !shardDir.mkdirs() && !shardDir.exists()) {
+                throw new IOException(String.format("creation of directory '%s' failed",
+                        shardDir.getAbsolutePath()));
+            }
+            File tmpFile = File.createTempFile(key, null, shardDir);
+            Files.write(tmpFile.toPath(), content);
+            //renaming makes sure that no partially written entry is read
+            Files.move(tmpFile.toPath(),
+                    entryFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }catch(IOException ex) {
+            LOGGER.warn(String.format("storing OCR result cache entry '%s' failed",
+                    entryFile.getAbsolutePath()),
+                    ex);
+            return;
+        }
+        synchronized(this) {
+            Long previousSize = index.put(key, (long)content.length);
+            if(previousSize != null) {
+                totalBytes -= previousSize;
+            }
+            totalBytes += content.length;
+            evict();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if(size != null) {
+            totalBytes -= size;
+        }
+        File entryFile = getEntryFile(key);
+        if(entryFile.exists() && !entryFile.delete()) {
+            LOGGER.warn(String.format("deletion of OCR result cache entry '%s' failed",
+                    entryFile.getAbsolutePath()));
+        }
+    }
+
+    private synchronized void evict() {
+        //iterate over entries since get changes the order of an
+        //access-ordered map
+        Iterator<Map.Entry<String, Long>> entryItr = index.entrySet().iterator();
+        while(totalBytes > maxBytes && entryItr.hasNext()) {
+            Map.Entry<String, Long> entry = entryItr.next();
+            String key = entry.getKey();
+            totalBytes -= entry.getValue();
+            entryItr.remove();
+            File entryFile = getEntryFile(key);
+            if(!entryFile.delete()) {
+                LOGGER.warn(String.format("deletion of evicted OCR result cache entry '%s' failed",
+                        entryFile.getAbsolutePath()));
+            }
+            evictionCount += 1;
+        }
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+}
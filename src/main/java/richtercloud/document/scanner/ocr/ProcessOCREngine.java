@@ -16,15 +16,22 @@ package richtercloud.document.scanner.ocr;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+import richtercloud.document.scanner.ocr.ImagePreprocessor.PreprocessedImage;
 import richtercloud.message.handler.ExceptionMessage;
 import richtercloud.message.handler.IssueHandler;
 
 /**
+ * An {@link OCREngine} which passes images to an external process. Images are
+ * normalized with an {@link ImagePreprocessor} configured in
+ * {@link ProcessOCREngineConf} before in order to reduce the amount of data to
+ * transfer and to process. Preprocessing runs on the thread performing the
+ * recognition, i.e. on the workers of the {@link OCRScheduler}.
  *
  * @author richter
  */
@@ -56,29 +63,82 @@ public abstract class ProcessOCREngine<C extends ProcessOCREngineConf> extends C
         }
     }
 
+    /**
+     * Checks whether {@code binary} is available and updates the status in
+     * {@link OCRBinaryRegistry} with the result.
+     * @param binary the command to check
+     * @param issueHandler the issue handler to report unexpected exceptions
+     * @throws BinaryNotFoundException if the binary isn't available
+     */
     public static void checkBinaryAvailableExceptions(String binary,
             IssueHandler issueHandler) throws BinaryNotFoundException {
-        IOException exception;
+        OCRBinaryRegistry.BinaryStatus status;
         try {
-            exception = checkBinaryAvailable(binary);
+            status = OCRBinaryRegistry.getInstance().revalidate(binary);
         } catch (InterruptedException ex) {
             LOGGER.error("unexpected exception during availability check of process binary",
                     ex);
             issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
             return;
         }
-        if(exception != null) {
-            throw new BinaryNotFoundException(binary, exception);
+        if(!status.isAvailable()) {
+            throw new BinaryNotFoundException(binary, status.getUnavailableCause());
         }
     }
 
-    private Set<Process> binaryProcesses = new HashSet<>();
+    /**
+     * The processes which are currently running for any request.
+     */
+    private Set<Process> binaryProcesses = ConcurrentHashMap.newKeySet();
     private final IssueHandler issueHandler;
+    private final ImagePreprocessor imagePreprocessor;
 
     public ProcessOCREngine(C oCREngineConf,
             IssueHandler issueHandler) {
         super(oCREngineConf);
         this.issueHandler = issueHandler;
+        this.imagePreprocessor = new ImagePreprocessor(oCREngineConf.isPreprocessingGrayscale(),
+                oCREngineConf.isPreprocessingBinarization(),
+                oCREngineConf.getPreprocessingTargetDpi(),
+                oCREngineConf.isPreprocessingCropMargins());
+    }
+
+    public ImagePreprocessor getImagePreprocessor() {
+        return imagePreprocessor;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * The result depends on the enabled preprocessing steps.
+     */
+    @Override
+    protected String getConfigurationFingerprint() {
+        if(!imagePreprocessor.isEnabled()) {
+            return super.getConfigurationFingerprint();
+        }
+        return String.format("%s:%s",
+                super.getConfigurationFingerprint(),
+                imagePreprocessor.getFingerprint());
+    }
+
+    /**
+     * Decodes and preprocesses {@code imageData}.
+     * @param imageData the encoded image
+     * @return the preprocessed image or {@code null} if preprocessing is
+     * disabled
+     * @throws OCREngineRecognitionException if {@code imageData} can't be
+     * decoded
+     */
+    protected PreprocessedImage preprocessImageData(byte[] imageData) throws OCREngineRecognitionException {
+        if(!imagePreprocessor.isEnabled()) {
+            return null;
+        }
+        try {
+            return imagePreprocessor.preprocess(imageData);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
     }
 
     public IssueHandler getIssueHandler() {
@@ -93,26 +153,108 @@ public abstract class ProcessOCREngine<C extends ProcessOCREngineConf> extends C
         this.binaryProcesses = binaryProcesses;
     }
 
+    /**
+     * Registers {@code process} as running for the request processed by the
+     * calling thread so that it's destroyed if the request is canceled.
+     * @param process the process
+     * @return the registration which has to be closed after the process
+     * terminated
+     */
+    protected OCRCancellationToken.Registration registerProcess(Process process) {
+        binaryProcesses.add(process);
+        OCRCancellationToken.Registration tokenRegistration = getCancellationToken().onCancel(process::destroy);
+        return () -> {
+            tokenRegistration.close();
+            binaryProcesses.remove(process);
+        };
+    }
+
+    /**
+     * Waits for {@code process} at most for the configured page timeout and
+     * destroys it if it didn't terminate.
+     * @param process the process
+     * @return the exit value of the process
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws OCREngineRecognitionException if the process exceeded the page
+     * timeout
+     */
+    protected int waitForProcess(Process process) throws InterruptedException, OCREngineRecognitionException {
+        return waitForProcess(process,
+                1);
+    }
+
+    /**
+     * Waits for {@code process} recognizing {@code pageCount} pages at most
+     * for the configured page timeout multiplied with {@code pageCount} and
+     * destroys it if it didn't terminate.
+     * @param process the process
+     * @param pageCount the number of pages recognized by {@code process}
+     * @return the exit value of the process
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * @throws OCREngineRecognitionException if the process exceeded the
+     * timeout
+     */
+    protected int waitForProcess(Process process,
+            int pageCount) throws InterruptedException, OCREngineRecognitionException {
+        long pageTimeoutMillis = getoCREngineConf().getPageTimeoutMillis();
+        if(pageTimeoutMillis <= 0) {
+            return process.waitFor();
+        }
+        if(!process.waitFor(pageTimeoutMillis*Math.max(1, pageCount), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new OCREngineRecognitionException(String.format("process '%s' didn't finish recognition of %d pages within %d seconds per page and has been destroyed",
+                    getoCREngineConf().getBinary(),
+                    pageCount,
+                    getoCREngineConf().getPageTimeoutSeconds()));
+        }
+        return process.exitValue();
+    }
+
     @Override
     protected String recognizeImage0(BufferedImage image) throws IllegalStateException, OCREngineRecognitionException {
         if(image == null) {
             throw new IllegalArgumentException("image mustn't be null");
         }
         try {
-            checkBinaryAvailableExceptions(this.getoCREngineConf().getBinary(),
-                    issueHandler);
+            //the status is cached by the registry so that no process is
+            //started per image
+            OCRBinaryRegistry.getInstance().checkAvailable(this.getoCREngineConf().getBinary());
         }catch(BinaryNotFoundException ex) {
             throw new OCREngineRecognitionException("tesseract not available (see nested exception for details)",
                     ex);
+        }catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        LOGGER.trace("tesseract binary '{}' found and executable", this.getoCREngineConf().getBinary());
+        if(imagePreprocessor.isEnabled()) {
+            return recognizeImage1(imagePreprocessor.preprocess(image,
+                    -1 //sourceDpi
+            ).getImage());
         }
-        LOGGER.debug("tesseract binary '{}' found and executable", this.getoCREngineConf().getBinary());
         return recognizeImage1(image);
     }
 
+    @Override
+    protected String recognizeImageData0(String key,
+            byte[] imageData) throws OCREngineRecognitionException {
+        PreprocessedImage preprocessedImage = preprocessImageData(imageData);
+        if(preprocessedImage == null) {
+            return super.recognizeImageData0(key,
+                    imageData);
+        }
+        return recognizeImage1(preprocessedImage.getImage());
+    }
+
     protected abstract String recognizeImage1(BufferedImage image) throws IllegalStateException, OCREngineRecognitionException;
 
+    /**
+     * Cancels all requests and destroys all processes, including ones which
+     * haven't been registered with {@link #registerProcess(java.lang.Process) }.
+     */
     @Override
     public void cancelRecognizeImages() {
+        super.cancelRecognizeImages();
         for(Process binaryProcess : this.binaryProcesses) {
             binaryProcess.destroy(); // there's no way of cleanly shutting
                 //down a process in Java process API<ref>http://stackoverflow.com/questions/6339861/how-to-pass-sigint-to-a-process-created-in-java</ref>
@@ -18,15 +18,54 @@ import java.util.Objects;
 import org.apache.commons.lang3.builder.RecursiveToStringStyle;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import richtercloud.document.scanner.ifaces.OCREngineConf;
 
 /**
  *
  * @author richter
  */
-public abstract class ProcessOCREngineConf implements OCREngineConf {
+/*
+internal implementation notes:
+- preprocessingGrayscale is a Boolean so that configuration files written by
+older versions (null) enable it by default
+*/
+public abstract class ProcessOCREngineConf extends CachedOCREngineConf {
     private static final long serialVersionUID = 1L;
+    /**
+     * The default time after which the process recognizing a page is
+     * destroyed.
+     */
+    public final static int PAGE_TIMEOUT_SECONDS_DEFAULT = 300;
     private String binary;
+    /**
+     * The wall-clock time after which the process recognizing a page is
+     * destroyed and the recognition fails. {@code 0} means
+     * {@link #PAGE_TIMEOUT_SECONDS_DEFAULT}, a negative value disables the
+     * timeout.
+     */
+    private int pageTimeoutSeconds = PAGE_TIMEOUT_SECONDS_DEFAULT;
+    /**
+     * Whether images are converted to grayscale before they're passed to the
+     * process ({@code null} means {@code true}).
+     */
+    private Boolean preprocessingGrayscale = true;
+    /**
+     * Whether images are converted to black and white with adaptive
+     * thresholding before they're passed to the process.
+     */
+    private boolean preprocessingBinarization = false;
+    /**
+     * The resolution images with a higher resolution are scaled down to.
+     * {@code 0} means {@link ImagePreprocessor#TARGET_DPI_DEFAULT}, a negative
+     * value disables scaling. Scaling only applies to images which carry
+     * resolution metadata which images stored by {@code DefaultImageWrapper}
+     * don't, therefore it's disabled by default.
+     */
+    private int preprocessingTargetDpi = -1;
+    /**
+     * Whether white margins are removed before images are passed to the
+     * process.
+     */
+    private boolean preprocessingCropMargins = false;
 
     public ProcessOCREngineConf(String binary) {
         this.binary = binary;
@@ -40,6 +79,60 @@ public abstract class ProcessOCREngineConf implements OCREngineConf {
         this.binary = binary;
     }
 
+    public int getPageTimeoutSeconds() {
+        if(pageTimeoutSeconds == 0) {
+            return PAGE_TIMEOUT_SECONDS_DEFAULT;
+        }
+        return pageTimeoutSeconds;
+    }
+
+    public void setPageTimeoutSeconds(int pageTimeoutSeconds) {
+        this.pageTimeoutSeconds = pageTimeoutSeconds;
+    }
+
+    /**
+     * The page timeout in milliseconds.
+     * @return the timeout or a value {@code <= 0} if it's disabled
+     */
+    public long getPageTimeoutMillis() {
+        return getPageTimeoutSeconds()*1000L;
+    }
+
+    public boolean isPreprocessingGrayscale() {
+        return preprocessingGrayscale == null || preprocessingGrayscale;
+    }
+
+    public void setPreprocessingGrayscale(boolean preprocessingGrayscale) {
+        this.preprocessingGrayscale = preprocessingGrayscale;
+    }
+
+    public boolean isPreprocessingBinarization() {
+        return preprocessingBinarization;
+    }
+
+    public void setPreprocessingBinarization(boolean preprocessingBinarization) {
+        this.preprocessingBinarization = preprocessingBinarization;
+    }
+
+    public int getPreprocessingTargetDpi() {
+        if(preprocessingTargetDpi == 0) {
+            return ImagePreprocessor.TARGET_DPI_DEFAULT;
+        }
+        return preprocessingTargetDpi;
+    }
+
+    public void setPreprocessingTargetDpi(int preprocessingTargetDpi) {
+        this.preprocessingTargetDpi = preprocessingTargetDpi;
+    }
+
+    public boolean isPreprocessingCropMargins() {
+        return preprocessingCropMargins;
+    }
+
+    public void setPreprocessingCropMargins(boolean preprocessingCropMargins) {
+        this.preprocessingCropMargins = preprocessingCropMargins;
+    }
+
     @Override
     public String toString() {
         ToStringBuilder toStringBuilder = new ReflectionToStringBuilder(this,
@@ -50,15 +143,38 @@ public abstract class ProcessOCREngineConf implements OCREngineConf {
 
     @Override
     public int hashCode() {
-        int hash = 3;
+        int hash = super.hashCode();
         hash = 79 * hash + Objects.hashCode(this.binary);
+        hash = 79 * hash + this.getPageTimeoutSeconds();
+        hash = 79 * hash + Boolean.hashCode(this.isPreprocessingGrayscale());
+        hash = 79 * hash + Boolean.hashCode(this.isPreprocessingBinarization());
+        hash = 79 * hash + this.getPreprocessingTargetDpi();
+        hash = 79 * hash + Boolean.hashCode(this.isPreprocessingCropMargins());
         return hash;
     }
 
     protected boolean equalsTransitive(ProcessOCREngineConf other) {
+        if(!super.equalsTransitive(other)) {
+            return false;
+        }
         if (!Objects.equals(this.binary, other.binary)) {
             return false;
         }
+        if (this.getPageTimeoutSeconds() != other.getPageTimeoutSeconds()) {
+            return false;
+        }
+        if (this.isPreprocessingGrayscale() != other.isPreprocessingGrayscale()) {
+            return false;
+        }
+        if (this.isPreprocessingBinarization() != other.isPreprocessingBinarization()) {
+            return false;
+        }
+        if (this.getPreprocessingTargetDpi() != other.getPreprocessingTargetDpi()) {
+            return false;
+        }
+        if (this.isPreprocessingCropMargins() != other.isPreprocessingCropMargins()) {
+            return false;
+        }
         return true;
     }
 
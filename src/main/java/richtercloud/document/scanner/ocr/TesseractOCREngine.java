@@ -14,18 +14,37 @@
  */
 package richtercloud.document.scanner.ocr;
 
+import com.google.common.hash.Hasher;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
-import java.util.Iterator;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.ImageIO;
+import org.apache.commons.collections4.OrderedMap;
+import org.apache.commons.collections4.map.LinkedMap;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.ifaces.ImageWrapper;
 import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
+import richtercloud.document.scanner.ocr.ImagePreprocessor.PreprocessedImage;
+import richtercloud.document.scanner.ocr.TesseractProcessPool.PageOutput;
 import richtercloud.message.handler.IssueHandler;
 
 /**
@@ -36,11 +55,80 @@ import richtercloud.message.handler.IssueHandler;
  * idea of {@code pdfsandwich} which sadly doesn't provide text output (only
  * PDF).
  *
+ * If the {@link TesseractProcessPool} is enabled in the configuration, images
+ * are recognized by the processes of the pool which recognize multiple pages
+ * each instead of starting one process per image. All uncached pages of a
+ * {@link #recognizeImageStreams(org.apache.commons.collections4.OrderedMap) }
+ * call are written to files and queued in the pool at once so that they're
+ * recognized by few processes (batch mode). The pool provides the positions of
+ * all words as well which are stored for {@link #getPageResult(richtercloud.document.scanner.ifaces.ImageWrapper) }.
+ * Pages are queued in the pool with the {@link OCRPriority} of their request.
+ *
+ * If strip recognition is enabled in {@link TesseractOCREngineConf}, large
+ * single images are cut into strips by {@link ImageStripSplitter} which are
+ * recognized by the idle processes of the pool at the same time. The text of
+ * the strips is concatenated in reading order and their word positions are
+ * mapped to the coordinates of the image.
+ *
+ * Images which are encoded in memory (e.g. selections or preprocessed images)
+ * are passed in the {@link ImageTransportFormat} configured in
+ * {@link TesseractOCREngineConf}.
+ *
  * @author richter
  */
+/*
+internal implementation notes:
+- batch mode only queues the pages in the pool in advance; the per-page tasks
+submitted to the scheduler still run through the caches and wait for the
+queued recognition (looked up by cache key in batchRecognitions) so that
+single-flight, page listeners and cancelation work like for single pages
+- image streams are written to files while their cache key is computed so that
+no page needs to be held in memory; unrotated images stored by
+DefaultImageWrapper are passed by their storage file instead which avoids the
+copy and the rotation of the image stream (the cache key is computed from the
+storage file as well which keeps keys and page results consistent because
+the per-page tasks read the same file)
+- the storage file is never modified or deleted, preprocessed images are
+written to separate files
+- in batch mode images are preprocessed by the workers of the process pool
+right before the batch is started since the per-page tasks only wait; the
+preprocessed files are separate from the files read by the per-page tasks
+- word positions of preprocessed images are mapped back to the coordinates of
+the original image before they're cached
+- strips are submitted to the process pool rather than the scheduler because
+tasks running on the scheduler mustn't wait for other tasks of the scheduler;
+the number of strips is limited by the number of idle processes so that strip
+recognition only uses capacity which isn't needed for other pages
+- the text of strips is concatenated without their page separators and
+terminated with one separator like the text of a whole page
+- strip recognition settings are part of the configuration fingerprint since
+the layout analysis of strips differs from the one of whole pages; whether a
+page is cut depends on the load, so both kinds of results share keys within a
+configuration with strip recognition only
+*/
 public class TesseractOCREngine extends ProcessOCREngine<TesseractOCREngineConf> {
     private static final Logger LOGGER = LoggerFactory.getLogger(TesseractOCREngine.class);
     private final TesseractOCREngineConf oCREngineConf;
+    /**
+     * The process pool or {@code null} if it's disabled or couldn't be
+     * initialized.
+     */
+    private final TesseractProcessPool processPool;
+    /**
+     * Recognitions queued in the process pool by batch mode which haven't been
+     * requested by a per-page task yet.
+     */
+    private final Map<String, CompletableFuture<PageOutput>> batchRecognitions = new ConcurrentHashMap<>();
+    /**
+     * The mapping information (without image) of pages preprocessed by the
+     * workers of the process pool in batch mode.
+     */
+    private final Map<String, PreprocessedImage> batchPreprocessedImages = new ConcurrentHashMap<>();
+    /**
+     * The splitter for strip recognition or {@code null} if it's disabled or
+     * the process pool is disabled.
+     */
+    private final ImageStripSplitter stripSplitter;
 
     public TesseractOCREngine(TesseractOCREngineConf oCREngineConf,
             IssueHandler issueHandler) {
@@ -53,6 +141,48 @@ public class TesseractOCREngine extends ProcessOCREngine<TesseractOCREngineConf>
         if(oCREngineConf.getSelectedLanguages() == null || oCREngineConf.getSelectedLanguages().isEmpty()) {
             throw new IllegalArgumentException("languages mustn't be null or empty");
         }
+        TesseractProcessPool processPool0 = null;
+        if(oCREngineConf.isProcessPoolEnabled()) {
+            try {
+                processPool0 = new TesseractProcessPool(oCREngineConf.getBinary(),
+                        getLanguageString(),
+                        oCREngineConf.getProcessPoolSize(),
+                        oCREngineConf.getMaxPagesPerProcess(),
+                        oCREngineConf.getPageTimeoutMillis());
+            } catch (IOException ex) {
+                LOGGER.warn("initialization of tesseract process pool failed, continuing with one process per image",
+                        ex);
+            }
+        }
+        this.processPool = processPool0;
+        this.stripSplitter = processPool0 != null && oCREngineConf.isStripRecognitionEnabled()
+                ? new ImageStripSplitter(oCREngineConf.getStripMinPixels())
+                : null;
+    }
+
+    public TesseractProcessPool getProcessPool() {
+        return processPool;
+    }
+
+    private String getLanguageString() {
+        return String.join("+", this.oCREngineConf.getSelectedLanguages());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * The result depends on the binary (and thus the version of tesseract),
+     * the selected languages and the strip recognition settings.
+     */
+    @Override
+    protected String getConfigurationFingerprint() {
+        return String.format("%s:%s:%s:strips=%d",
+                super.getConfigurationFingerprint(),
+                this.oCREngineConf.getBinary(),
+                getLanguageString(),
+                stripSplitter != null
+                        ? stripSplitter.getMinStripPixels()
+                        : 0);
     }
 
     /**
@@ -64,40 +194,440 @@ public class TesseractOCREngine extends ProcessOCREngine<TesseractOCREngineConf>
      */
     @Override
     protected String recognizeImage1(BufferedImage image) throws IllegalStateException, OCREngineRecognitionException {
+        if(processPool != null) {
+            List<Rectangle> strips = splitIntoStrips(image);
+            if(strips.size() > 1) {
+                PageOutput pageOutput = recognizeStrips(image,
+                        strips);
+                return pageOutput != null ? pageOutput.getText() : null;
+            }
+            PageOutput pageOutput = recognizeInProcessPool((imageFileStream) -> {
+                oCREngineConf.getImageTransportFormat().write(image,
+                        imageFileStream);
+            });
+            return pageOutput != null ? pageOutput.getText() : null;
+        }
         String retValue = doRecognizeTask((tesseractProcessStdinStream) -> {
-            ImageIO.write(image, "png", tesseractProcessStdinStream);
+            oCREngineConf.getImageTransportFormat().write(image,
+                    tesseractProcessStdinStream);
         });
         return retValue;
     }
 
     @Override
     protected String recognizeImageStream0(InputStream imageStream) throws OCREngineRecognitionException {
+        if(processPool != null) {
+            PageOutput pageOutput = recognizeInProcessPool((imageFileStream) -> {
+                IOUtils.copy(imageStream, imageFileStream);
+            });
+            return pageOutput != null ? pageOutput.getText() : null;
+        }
         String retValue = doRecognizeTask((tesseractProcessStdinStream) -> {
             IOUtils.copy(imageStream, tesseractProcessStdinStream);
         });
         return retValue;
     }
 
-    private String doRecognizeTask(RecognizeTask task) throws OCREngineRecognitionException {
+    @Override
+    protected List<CompletableFuture<String>> submitImageStreams(OrderedMap<ImageWrapper, InputStream> imageStreams,
+            OCRCancellationToken cancellationToken,
+            OCRPriority priority) throws OCREngineRecognitionException {
+        if(processPool == null || imageStreams.size() < 2) {
+            return super.submitImageStreams(imageStreams,
+                    cancellationToken,
+                    priority);
+        }
+        List<File> imageFiles = new ArrayList<>(imageStreams.size());
+        Map<File, String> imageFileKeys = new ConcurrentHashMap<>();
+        List<InputStream> imageFileStreams = new ArrayList<>(imageStreams.size());
+        Map<String, CompletableFuture<PageOutput>> queuedRecognitions = new HashMap<>();
+        OCRCancellationToken.Registration tokenRegistration = null;
+        List<CompletableFuture<String>> retValue;
+        try {
+            OrderedMap<ImageWrapper, InputStream> imageFileStreamMap = new LinkedMap<>();
+            List<File> uncachedImageFiles = new ArrayList<>(imageStreams.size());
+            List<String> uncachedKeys = new ArrayList<>(imageStreams.size());
+            for(Map.Entry<ImageWrapper, InputStream> imageStream : imageStreams.entrySet()) {
+                Hasher keyHasher = PersistentOCRResultCache.createKeyHasher(getConfigurationFingerprint());
+                byte[] buffer = new byte[8192];
+                int read;
+                File imageFile = getStorageFile(imageStream.getKey());
+                if(imageFile != null) {
+                    try (InputStream storageFileStream = new FileInputStream(imageFile)) {
+                        while((read = storageFileStream.read(buffer)) != -1) {
+                            keyHasher.putBytes(buffer, 0, read);
+                        }
+                    }
+                }else {
+                    imageFile = processPool.createImageFile();
+                    imageFiles.add(imageFile);
+                    try (OutputStream imageFileStream = new BufferedOutputStream(new FileOutputStream(imageFile))) {
+                        while((read = imageStream.getValue().read(buffer)) != -1) {
+                            keyHasher.putBytes(buffer, 0, read);
+                            imageFileStream.write(buffer, 0, read);
+                        }
+                    }
+                }
+                String key = keyHasher.hash().toString();
+                if(!isCached(key)
+                        && !batchRecognitions.containsKey(key)
+                        && !uncachedKeys.contains(key)) {
+                    uncachedImageFiles.add(imageFile);
+                    uncachedKeys.add(key);
+                    imageFileKeys.put(imageFile,
+                            key);
+                }
+                InputStream imageFileStream = new FileInputStream(imageFile);
+                imageFileStreams.add(imageFileStream);
+                imageFileStreamMap.put(imageStream.getKey(),
+                        imageFileStream);
+            }
+            LOGGER.debug(String.format("queueing %d of %d pages in tesseract process pool",
+                    uncachedImageFiles.size(),
+                    imageStreams.size()));
+            List<CompletableFuture<PageOutput>> queuedResults = processPool.submitAll(uncachedImageFiles,
+                    getImagePreprocessor().isEnabled()
+                            ? imageFile -> preprocessImageFile(imageFile,
+                                    imageFileKeys.get(imageFile))
+                            : null,
+                    priority);
+            for(int i=0; i<uncachedKeys.size(); i++) {
+                queuedRecognitions.put(uncachedKeys.get(i),
+                        queuedResults.get(i));
+            }
+            batchRecognitions.putAll(queuedRecognitions);
+            //removes queued pages from the pool and destroys processes of
+            //batches which only contain pages of this request
+            tokenRegistration = cancellationToken.onCancel(() -> {
+                for(CompletableFuture<PageOutput> queuedResult : queuedResults) {
+                    queuedResult.cancel(true);
+                }
+            });
+            retValue = super.submitImageStreams(imageFileStreamMap,
+                    cancellationToken,
+                    priority);
+        } catch (IOException | OCREngineRecognitionException | RuntimeException ex) {
+            if(tokenRegistration != null) {
+                tokenRegistration.close();
+            }
+            cleanUpBatch(imageFiles,
+                    imageFileStreams,
+                    queuedRecognitions);
+            if(ex instanceof OCREngineRecognitionException) {
+                throw (OCREngineRecognitionException) ex;
+            }
+            throw new OCREngineRecognitionException(ex);
+        }
+        OCRCancellationToken.Registration tokenRegistration0 = tokenRegistration;
+        CompletableFuture.allOf(retValue.toArray(new CompletableFuture<?>[retValue.size()]))
+                .whenComplete((result, ex) -> {
+                    tokenRegistration0.close();
+                    cleanUpBatch(imageFiles,
+                            imageFileStreams,
+                            queuedRecognitions);
+                });
+        return retValue;
+    }
+
+    /**
+     * Gets the file {@code image} is stored in if it can be passed to the
+     * process pool instead of a copy of its image stream.
+     * @param image the image
+     * @return the file or {@code null} if passing storage files is disabled
+     * or {@code image} is rotated or not stored in a file
+     */
+    private File getStorageFile(ImageWrapper image) {
+        if(!oCREngineConf.isPassStorageFiles()
+                || !(image instanceof DefaultImageWrapper)
+                || image.getRotationDegrees() != 0) {
+            return null;
+        }
+        File retValue = ((DefaultImageWrapper)image).getStorageFile();
+        if(retValue == null || !retValue.isFile()) {
+            return null;
+        }
+        return retValue;
+    }
+
+    /**
+     * Preprocesses an image file of a batch on a worker of the process pool.
+     * @return the file containing the preprocessed image
+     */
+    private File preprocessImageFile(File imageFile,
+            String key) throws IOException {
+        PreprocessedImage preprocessedImage = getImagePreprocessor().preprocess(Files.readAllBytes(imageFile.toPath()));
+        File retValue = processPool.createImageFile();
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(retValue))) {
+            oCREngineConf.getImageTransportFormat().write(preprocessedImage.getImage(),
+                    outputStream);
+        }
+        //removed by the per-page task or cleanUpBatch
+        batchPreprocessedImages.put(key,
+                preprocessedImage.withoutImage());
+        return retValue;
+    }
+
+    /**
+     * Removes and cancels queued recognitions which haven't been requested
+     * (e.g. because the recognition has been aborted), closes the streams and
+     * deletes the image files of a batch (which don't include storage
+     * files).
+     */
+    private void cleanUpBatch(List<File> imageFiles,
+            List<InputStream> imageFileStreams,
+            Map<String, CompletableFuture<PageOutput>> queuedRecognitions) {
+        for(Map.Entry<String, CompletableFuture<PageOutput>> queuedRecognition : queuedRecognitions.entrySet()) {
+            if(batchRecognitions.remove(queuedRecognition.getKey(),
+                    queuedRecognition.getValue())) {
+                queuedRecognition.getValue().cancel(true);
+            }
+            batchPreprocessedImages.remove(queuedRecognition.getKey());
+        }
+        for(InputStream imageFileStream : imageFileStreams) {
+            try {
+                imageFileStream.close();
+            } catch (IOException ex) {
+                LOGGER.debug("closing image file stream failed",
+                        ex);
+            }
+        }
+        for(File imageFile : imageFiles) {
+            if(!imageFile.delete()) {
+                LOGGER.debug(String.format("deletion of image file '%s' failed",
+                        imageFile.getAbsolutePath()));
+            }
+        }
+    }
+
+    @Override
+    protected String recognizeImageData0(String key,
+            byte[] imageData) throws OCREngineRecognitionException {
+        if(processPool == null) {
+            return super.recognizeImageData0(key,
+                    imageData);
+        }
+        PageOutput pageOutput = null;
+        PreprocessedImage preprocessedImage = null;
+        CompletableFuture<PageOutput> batchRecognition = batchRecognitions.remove(key);
+        if(batchRecognition != null) {
+            pageOutput = processPool.await(batchRecognition);
+            preprocessedImage = batchPreprocessedImages.remove(key);
+            if(pageOutput == null
+                    && !getCancellationToken().isCanceled()
+                    && !Thread.currentThread().isInterrupted()) {
+                //the page has been queued and canceled by another request
+                LOGGER.debug(String.format("queued recognition for key %s has been canceled by another request, recognizing it again",
+                        key));
+                batchRecognition = null;
+            }
+        }
+        if(batchRecognition == null) {
+            PreprocessedImage preprocessedImage0 = preprocessImageData(imageData);
+            preprocessedImage = preprocessedImage0;
+            BufferedImage stripImage = null;
+            List<Rectangle> strips = Collections.emptyList();
+            if(stripSplitter != null) {
+                stripImage = preprocessedImage0 != null
+                        ? preprocessedImage0.getImage()
+                        : decodeImage(imageData);
+                if(stripImage != null) {
+                    strips = splitIntoStrips(stripImage);
+                }
+            }
+            if(strips.size() > 1) {
+                pageOutput = recognizeStrips(stripImage,
+                        strips);
+            }else {
+                pageOutput = recognizeInProcessPool((imageFileStream) -> {
+                    if(preprocessedImage0 != null) {
+                        oCREngineConf.getImageTransportFormat().write(preprocessedImage0.getImage(),
+                                imageFileStream);
+                    }else {
+                        imageFileStream.write(imageData);
+                    }
+                });
+            }
+        }
+        if(pageOutput == null) {
+            return null;
+        }
+        if(pageOutput.getTsv() != null) {
+            if(preprocessedImage != null) {
+                putPageResult(key,
+                        preprocessedImage.toOriginalCoordinates(OCRPageResult.parseTsv(pageOutput.getTsv())));
+            }else {
+                putPageResult(key,
+                        pageOutput.getTsv());
+            }
+        }
+        return pageOutput.getText();
+    }
+
+    private static BufferedImage decodeImage(byte[] imageData) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(imageData));
+        } catch (IOException ex) {
+            LOGGER.debug("decoding image for strip recognition failed, recognizing it as a whole",
+                    ex);
+            return null;
+        }
+    }
+
+    /**
+     * Splits {@code image} into as many strips as processes of the pool are
+     * idle.
+     * @return the strips or a list only containing the bounds of
+     * {@code image} if strip recognition is disabled or {@code image} can't be
+     * split
+     */
+    private List<Rectangle> splitIntoStrips(BufferedImage image) {
+        if(stripSplitter == null) {
+            return Collections.singletonList(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        }
+        return stripSplitter.split(image,
+                processPool.getIdleProcessCount());
+    }
+
+    /**
+     * Recognizes the {@code strips} of {@code image} in the process pool at
+     * the same time and merges their results.
+     * @param image the image
+     * @param strips the strips returned by {@link ImageStripSplitter}
+     * @return the merged result or {@code null} if the recognition has been
+     * canceled
+     * @throws OCREngineRecognitionException if the strips can't be written or
+     * the recognition of any strip fails
+     */
+    private PageOutput recognizeStrips(BufferedImage image,
+            List<Rectangle> strips) throws OCREngineRecognitionException {
+        LOGGER.debug(String.format("recognizing image of size %dx%d in %d strips",
+                image.getWidth(),
+                image.getHeight(),
+                strips.size()));
+        List<File> stripFiles = new ArrayList<>(strips.size());
+        try {
+            for(Rectangle strip : strips) {
+                File stripFile = processPool.createImageFile();
+                stripFiles.add(stripFile);
+                try (OutputStream stripFileStream = new BufferedOutputStream(new FileOutputStream(stripFile))) {
+                    oCREngineConf.getImageTransportFormat().write(image.getSubimage(strip.x, strip.y, strip.width, strip.height),
+                            stripFileStream);
+                }
+            }
+            List<CompletableFuture<PageOutput>> results = processPool.submitAll(stripFiles,
+                    null, //preparer
+                    getPriority());
+            List<PageOutput> stripOutputs = new ArrayList<>(strips.size());
+            try (OCRCancellationToken.Registration tokenRegistration = getCancellationToken().onCancel(() -> {
+                for(CompletableFuture<PageOutput> result : results) {
+                    result.cancel(true);
+                }
+            })) {
+                for(CompletableFuture<PageOutput> result : results) {
+                    PageOutput stripOutput = processPool.await(result);
+                    if(stripOutput == null) {
+                        return null;
+                    }
+                    stripOutputs.add(stripOutput);
+                }
+            }finally {
+                //remaining strips are useless if one failed or has been
+                //canceled
+                for(CompletableFuture<PageOutput> result : results) {
+                    if(!result.isDone()) {
+                        result.cancel(true);
+                    }
+                }
+            }
+            StringBuilder textBuilder = new StringBuilder();
+            List<OCRPageResult> stripResults = new ArrayList<>(strips.size());
+            for(int i=0; i<strips.size(); i++) {
+                PageOutput stripOutput = stripOutputs.get(i);
+                String stripText = stripOutput.getText();
+                if(stripText.endsWith(TesseractProcessPool.PAGE_SEPARATOR)) {
+                    //the strips are one page
+                    stripText = stripText.substring(0,
+                            stripText.length()-TesseractProcessPool.PAGE_SEPARATOR.length());
+                }
+                textBuilder.append(stripText);
+                if(stripOutput.getTsv() != null) {
+                    stripResults.add(OCRPageResult.parseTsv(stripOutput.getTsv()).transform(strips.get(i),
+                            image.getWidth(),
+                            image.getHeight()));
+                }
+            }
+            String tsv = stripResults.size() == strips.size()
+                    ? OCRPageResult.concatenate(stripResults,
+                            image.getWidth(),
+                            image.getHeight()).toTsv()
+                    : null;
+            textBuilder.append(TesseractProcessPool.PAGE_SEPARATOR);
+            return new PageOutput(textBuilder.toString(),
+                    tsv);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        } finally {
+            for(File stripFile : stripFiles) {
+                if(!stripFile.delete()) {
+                    LOGGER.debug(String.format("deletion of strip file '%s' failed",
+                            stripFile.getAbsolutePath()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the image with {@code task} to a file which is recognized by the
+     * process pool.
+     * @param task the task writing the image
+     * @return the result of {@link TesseractProcessPool#recognize(java.io.File) }
+     * @throws OCREngineRecognitionException if the image can't be written or
+     * the recognition fails
+     */
+    private PageOutput recognizeInProcessPool(RecognizeTask task) throws OCREngineRecognitionException {
+        File imageFile = null;
         try {
-            Iterator<String> languagesItr = this.oCREngineConf.getSelectedLanguages().iterator();
-            String lanuguageString = languagesItr.next();
-            while(languagesItr.hasNext()) {
-                lanuguageString += "+"+languagesItr.next();
+            imageFile = processPool.createImageFile();
+            try (OutputStream imageFileStream = new BufferedOutputStream(new FileOutputStream(imageFile))) {
+                task.run(imageFileStream);
+            }
+            CompletableFuture<PageOutput> result = processPool.submitAll(Collections.singletonList(imageFile),
+                    null, //preparer
+                    getPriority()).get(0);
+            try (OCRCancellationToken.Registration tokenRegistration = getCancellationToken().onCancel(() -> result.cancel(true))) {
+                return processPool.await(result);
+            }
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        } finally {
+            if(imageFile != null && !imageFile.delete()) {
+                LOGGER.debug(String.format("deletion of image file '%s' failed",
+                        imageFile.getAbsolutePath()));
             }
+        }
+    }
+
+    private String doRecognizeTask(RecognizeTask task) throws OCREngineRecognitionException {
+        try {
+            String lanuguageString = getLanguageString();
             //remember that in the Java Process API stdin is called outputStream
             //and stdout called inputStream
             ProcessBuilder tesseractProcessBuilder = new ProcessBuilder(this.getoCREngineConf().getBinary(), "-l", lanuguageString, "stdin", "stdout")
                     .redirectOutput(ProcessBuilder.Redirect.PIPE)
                     .redirectInput(ProcessBuilder.Redirect.PIPE);
             Process tesseractProcess = tesseractProcessBuilder.start();
-            getBinaryProcesses().add(tesseractProcess);
-            try (OutputStream tesseractProcessStdinStream = new BufferedOutputStream(tesseractProcess.getOutputStream())) {
-                task.run(tesseractProcessStdinStream);
-                tesseractProcessStdinStream.flush();
-                //sending EOF not an option because it's not documented what is expected (sending -1 once or twice doesn't have any effect, also with flush)
+            int tesseractProcessExitValue;
+            try (OCRCancellationToken.Registration processRegistration = registerProcess(tesseractProcess)) {
+                try (OutputStream tesseractProcessStdinStream = new BufferedOutputStream(tesseractProcess.getOutputStream())) {
+                    task.run(tesseractProcessStdinStream);
+                    tesseractProcessStdinStream.flush();
+                    //sending EOF not an option because it's not documented what is expected (sending -1 once or twice doesn't have any effect, also with flush)
+                }
+                tesseractProcessExitValue = waitForProcess(tesseractProcess);
+            }
+            if(getCancellationToken().isCanceled()) {
+                return null;
             }
-            int tesseractProcessExitValue = tesseractProcess.waitFor();
             if(tesseractProcessExitValue != 0) {
                 //tesseractProcess.destroy might cause IOException, but
                 //termination with exit value != 0 might occur as well
@@ -109,6 +639,8 @@ public class TesseractOCREngine extends ProcessOCREngine<TesseractOCREngineConf>
                         this.getoCREngineConf().getBinary(),
                         tesseractProcessExitValue,
                         tesseractProcessStderr);
+                //probe the binary again before the next recognition
+                OCRBinaryRegistry.getInstance().invalidate(this.getoCREngineConf().getBinary());
                 throw new OCREngineRecognitionException(message);
             }
             StringWriter tesseractResultWriter = new StringWriter();
@@ -128,6 +660,22 @@ public class TesseractOCREngine extends ProcessOCREngine<TesseractOCREngineConf>
         }
     }
 
+    @Override
+    public void cancelRecognizeImages() {
+        super.cancelRecognizeImages();
+        if(processPool != null) {
+            processPool.cancel();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if(processPool != null) {
+            processPool.shutdown();
+        }
+    }
+
     @FunctionalInterface
     private interface RecognizeTask {
         void run(OutputStream tesseractProcessStdinStream) throws IOException;
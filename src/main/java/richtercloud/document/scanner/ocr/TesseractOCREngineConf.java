@@ -36,7 +36,59 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
      * the default name of the tesseract binary
      */
     public final static String TESSERACT_DEFAULT = "tesseract";
+    /**
+     * The default number of tesseract processes of the
+     * {@link TesseractProcessPool}. Less processes than workers of the
+     * scheduler allow pages to be collected in batches.
+     */
+    public final static int PROCESS_POOL_SIZE_DEFAULT = Math.max(1,
+            Runtime.getRuntime().availableProcessors()/2);
+    /**
+     * The default maximum number of pages recognized by one process of the
+     * {@link TesseractProcessPool}.
+     */
+    public final static int MAX_PAGES_PER_PROCESS_DEFAULT = 32;
+    /**
+     * The default format of images encoded for tesseract which has been
+     * chosen because writing uncompressed PNM takes a fraction of the time of
+     * PNG and the larger files only reside in the page cache.
+     */
+    public final static ImageTransportFormat IMAGE_TRANSPORT_FORMAT_DEFAULT = ImageTransportFormat.PNM;
+    /**
+     * The default minimum number of pixels of a strip in strip recognition
+     * which corresponds to approximately half of an A4 page at 300 DPI.
+     */
+    public final static int STRIP_MIN_PIXELS_DEFAULT = 4000000;
     private List<String> selectedLanguages = new LinkedList<>(SELECTED_LANGUAGES_DEFAULT);
+    /**
+     * The number of tesseract processes of the {@link TesseractProcessPool}.
+     * {@code 0} means {@link #PROCESS_POOL_SIZE_DEFAULT}, a negative value
+     * disables the pool and starts one process per page.
+     */
+    private int processPoolSize = PROCESS_POOL_SIZE_DEFAULT;
+    private int maxPagesPerProcess = MAX_PAGES_PER_PROCESS_DEFAULT;
+    /**
+     * The format of images which are encoded for tesseract ({@code null} means
+     * {@link #IMAGE_TRANSPORT_FORMAT_DEFAULT}).
+     */
+    private ImageTransportFormat imageTransportFormat = IMAGE_TRANSPORT_FORMAT_DEFAULT;
+    /**
+     * Whether the stored files of unrotated images are passed to the process
+     * pool instead of copies of their image streams ({@code null} means
+     * {@code true}).
+     */
+    private Boolean passStorageFiles = true;
+    /**
+     * Whether large single images are split into strips which are recognized
+     * in parallel by idle processes of the process pool ({@code null} means
+     * {@code false}).
+     */
+    private Boolean stripRecognitionEnabled = false;
+    /**
+     * The minimum number of pixels of a strip ({@code 0} means
+     * {@link #STRIP_MIN_PIXELS_DEFAULT}).
+     */
+    private int stripMinPixels = STRIP_MIN_PIXELS_DEFAULT;
 
     public TesseractOCREngineConf() {
         this(TESSERACT_DEFAULT,
@@ -56,6 +108,87 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
     public TesseractOCREngineConf(TesseractOCREngineConf conf) {
         this(conf.getBinary(),
                 conf.getSelectedLanguages());
+        setWorkerCount(conf.getWorkerCount());
+        setQueueCapacity(conf.getQueueCapacity());
+        setResultCacheDir(conf.getResultCacheDir());
+        setResultCacheMaxBytes(conf.getResultCacheMaxBytes());
+        setMemoryCacheMaxBytes(conf.getMemoryCacheMaxBytes());
+        setDuplicateMaxDistance(conf.getDuplicateMaxDistance());
+        setProcessPoolSize(conf.getProcessPoolSize());
+        setMaxPagesPerProcess(conf.getMaxPagesPerProcess());
+        setImageTransportFormat(conf.getImageTransportFormat());
+        setPassStorageFiles(conf.isPassStorageFiles());
+        setStripRecognitionEnabled(conf.isStripRecognitionEnabled());
+        setStripMinPixels(conf.getStripMinPixels());
+        setPageTimeoutSeconds(conf.getPageTimeoutSeconds());
+        setPreprocessingGrayscale(conf.isPreprocessingGrayscale());
+        setPreprocessingBinarization(conf.isPreprocessingBinarization());
+        setPreprocessingTargetDpi(conf.getPreprocessingTargetDpi());
+        setPreprocessingCropMargins(conf.isPreprocessingCropMargins());
+    }
+
+    public int getProcessPoolSize() {
+        if(processPoolSize == 0) {
+            return PROCESS_POOL_SIZE_DEFAULT;
+        }
+        return processPoolSize;
+    }
+
+    public void setProcessPoolSize(int processPoolSize) {
+        this.processPoolSize = processPoolSize;
+    }
+
+    public boolean isProcessPoolEnabled() {
+        return getProcessPoolSize() > 0;
+    }
+
+    public int getMaxPagesPerProcess() {
+        if(maxPagesPerProcess <= 0) {
+            return MAX_PAGES_PER_PROCESS_DEFAULT;
+        }
+        return maxPagesPerProcess;
+    }
+
+    public void setMaxPagesPerProcess(int maxPagesPerProcess) {
+        this.maxPagesPerProcess = maxPagesPerProcess;
+    }
+
+    public ImageTransportFormat getImageTransportFormat() {
+        if(imageTransportFormat == null) {
+            return IMAGE_TRANSPORT_FORMAT_DEFAULT;
+        }
+        return imageTransportFormat;
+    }
+
+    public void setImageTransportFormat(ImageTransportFormat imageTransportFormat) {
+        this.imageTransportFormat = imageTransportFormat;
+    }
+
+    public boolean isPassStorageFiles() {
+        return passStorageFiles == null || passStorageFiles;
+    }
+
+    public void setPassStorageFiles(boolean passStorageFiles) {
+        this.passStorageFiles = passStorageFiles;
+    }
+
+    public boolean isStripRecognitionEnabled() {
+        return stripRecognitionEnabled != null && stripRecognitionEnabled;
+    }
+
+    public void setStripRecognitionEnabled(boolean stripRecognitionEnabled) {
+        this.stripRecognitionEnabled = stripRecognitionEnabled;
+    }
+
+    public int getStripMinPixels() {
+        if(stripMinPixels <= 0) {
+            return STRIP_MIN_PIXELS_DEFAULT;
+        }
+        return stripMinPixels;
+    }
+
+    public void setStripMinPixels(int stripMinPixels) {
+        this.stripMinPixels = stripMinPixels;
     }
 
     /**
@@ -73,14 +206,21 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
     }
 
     /**
+     * Gets the languages of the binary which are cached by
+     * {@link OCRBinaryRegistry}.
      *
-     * @return
+     * @return the available languages
      * @throws TesseractOCREngineAvailableLanguageRetrievalException if
      * {@code tesseract} binary invoked with {@code --list-langs} returns a code
      * {@code != 0} or empty output of both {@code stdout} and {@code stderr} or
      * output on both {@code stdout} and {@code stderr}
      */
     public List<String> getAvailableLanguages() throws TesseractOCREngineAvailableLanguageRetrievalException, IOException, InterruptedException {
+        return OCRBinaryRegistry.getInstance().getAvailableLanguages(this.getBinary(),
+                this::retrieveAvailableLanguages);
+    }
+
+    private List<String> retrieveAvailableLanguages() throws TesseractOCREngineAvailableLanguageRetrievalException, IOException, InterruptedException {
         ProcessBuilder tesseractProcessBuilder = new ProcessBuilder(this.getBinary(), "--list-langs");
         Process tesseractProcess = tesseractProcessBuilder.redirectOutput(ProcessBuilder.Redirect.PIPE).start();
         int tesseractProcessReturnCode = tesseractProcess.waitFor();
@@ -125,7 +265,8 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
             throw new OCREngineConfValidationException(ex);
         }
         try {
-            getAvailableLanguages();
+            //checkBinaryAvailableExceptions discards cached languages, so
+            //they're retrieved once for the validation
             if(getAvailableLanguages().isEmpty()) {
                 throw new OCREngineConfValidationException("list of available languages mustn't be empty");
             }
@@ -141,6 +282,12 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
     public int hashCode() {
         int hash = super.hashCode();
         hash = 17 * hash + Objects.hashCode(this.selectedLanguages);
+        hash = 17 * hash + this.getProcessPoolSize();
+        hash = 17 * hash + this.getMaxPagesPerProcess();
+        hash = 17 * hash + Objects.hashCode(this.getImageTransportFormat());
+        hash = 17 * hash + Boolean.hashCode(this.isPassStorageFiles());
+        hash = 17 * hash + Boolean.hashCode(this.isStripRecognitionEnabled());
+        hash = 17 * hash + this.getStripMinPixels();
         return hash;
     }
 
@@ -151,6 +298,24 @@ public class TesseractOCREngineConf extends ProcessOCREngineConf {
         if (!Objects.equals(this.selectedLanguages, other.selectedLanguages)) {
             return false;
         }
+        if (this.getProcessPoolSize() != other.getProcessPoolSize()) {
+            return false;
+        }
+        if (this.getMaxPagesPerProcess() != other.getMaxPagesPerProcess()) {
+            return false;
+        }
+        if (this.getImageTransportFormat() != other.getImageTransportFormat()) {
+            return false;
+        }
+        if (this.isPassStorageFiles() != other.isPassStorageFiles()) {
+            return false;
+        }
+        if (this.isStripRecognitionEnabled() != other.isStripRecognitionEnabled()) {
+            return false;
+        }
+        if (this.getStripMinPixels() != other.getStripMinPixels()) {
+            return false;
+        }
         return true;
     }
 
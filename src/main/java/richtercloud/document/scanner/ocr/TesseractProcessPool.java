@@ -0,0 +1,886 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+
+/**
+ * Runs tesseract for one binary and language set on a limited number of
+ * processes which recognize all pages queued for the pool one after another.
+ * This avoids loading the traineddata of all languages for every page.
+ *
+ * Pages which are submitted while all processes are busy are collected and
+ * passed to the next free process in one file list (up to
+ * {@code maxPagesPerProcess} pages) whose output is split at tesseract's page
+ * separator. A new process is started for every batch, i.e. processes are
+ * recycled after at most {@code maxPagesPerProcess} pages. If the output of a
+ * batch can't be split or the process fails, the pages are recognized
+ * separately so that one corrupt image doesn't fail the other pages. Besides
+ * the text the processes create TSV output with the positions of all words (see
+ * {@link OCRPageResult}).
+ *
+ * Callers which know all pages of a document in advance can queue them at once
+ * with {@link #submitAll(java.util.List) } which distributes them over the idle
+ * processes. An {@link ImageFilePreparer} passed to
+ * {@link #submitAll(java.util.List, richtercloud.document.scanner.ocr.TesseractProcessPool.ImageFilePreparer) }
+ * allows to convert the images on the workers of the pool right before they're
+ * recognized.
+ *
+ * Pending pages are recognized in the order of their {@link OCRPriority} and
+ * batches only contain pages of the same priority. Interactive pages are
+ * recognized separately and on one additional process if all processes are
+ * busy so that they don't wait for running batches of background pages.
+ *
+ * Processes which exceed the page timeout (multiplied by the number of pages of
+ * the batch) are destroyed so that a page which makes tesseract hang doesn't
+ * block a worker forever; the pages of a destroyed batch are retried
+ * separately so that only the hanging page fails.
+ *
+ * The availability of the binary is checked before every batch with
+ * {@link OCRBinaryRegistry} which caches the result and probes the binary again
+ * after every failure.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- tesseract reads the complete file list before recognizing the first page
+(also for stdin and named pipes), so there's no way to feed pages to a running
+process with the command line interface -> collecting the pages queued while
+the previous process was running is the closest approximation of a resident
+worker
+- one drain task is submitted per page so that every page is processed even if
+the batch which would have contained it has already been started; drain tasks
+which find an empty queue return immediately
+- text and TSV output are created by the same process which requires output
+files instead of stdout; stdout and stderr are redirected to a log file in
+order to avoid blocking on full pipe buffers
+- workers are daemon threads which time out when idle like in OCRScheduler
+- the drain tasks of the interactive executor only take interactive pages so
+that the additional process never runs a batch of lower priority; since a
+regular drain task might have taken the interactive page meanwhile, an
+interactive drain task which finds a page of lower priority submits a regular
+drain task in its place so that no page is left without drain task
+*/
+public class TesseractProcessPool {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TesseractProcessPool.class);
+    /**
+     * The separator tesseract writes after every page of text output.
+     */
+    public final static String PAGE_SEPARATOR = "\f";
+    private final static String TEXT_SUFFIX = ".txt";
+    private final static String TSV_SUFFIX = ".tsv";
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    private final static AtomicInteger POOL_COUNTER = new AtomicInteger();
+    private final String binary;
+    private final String languages;
+    private final int processCount;
+    private final int maxPagesPerProcess;
+    private final long pageTimeoutMillis;
+    private final File workDir;
+    private final ThreadPoolExecutor executor;
+    /**
+     * Drains interactive pages which are submitted while all processes are
+     * busy.
+     */
+    private final ThreadPoolExecutor interactiveExecutor;
+    private final PriorityBlockingQueue<PoolPage> pendingPages = new PriorityBlockingQueue<>();
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    /**
+     * Batches whose process is currently running.
+     */
+    private final Set<Batch> runningBatches = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong pageCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+
+    /**
+     * Creates a new {@code TesseractProcessPool}.
+     *
+     * @param binary the tesseract binary
+     * @param languages the languages in the format expected by tesseract's
+     * {@code -l} option
+     * @param processCount the maximum number of processes running at the same
+     * time
+     * @param maxPagesPerProcess the maximum number of pages recognized by one
+     * process
+     * @param pageTimeoutMillis the time after which the process recognizing a
+     * page is destroyed or a value {@code <= 0} in order to wait forever
+     * @throws IOException if the directory for images and file lists can't be
+     * created
+     */
+    public TesseractProcessPool(String binary,
+            String languages,
+            int processCount,
+            int maxPagesPerProcess,
+            long pageTimeoutMillis) throws IOException {
+        if(processCount <= 0) {
+            throw new IllegalArgumentException("processCount has to be > 0");
+        }
+        if(maxPagesPerProcess <= 0) {
+            throw new IllegalArgumentException("maxPagesPerProcess has to be > 0");
+        }
+        this.binary = binary;
+        this.languages = languages;
+        this.processCount = processCount;
+        this.maxPagesPerProcess = maxPagesPerProcess;
+        this.pageTimeoutMillis = pageTimeoutMillis;
+        this.workDir = Files.createTempDirectory("tesseract-process-pool").toFile();
+        final int poolNumber = POOL_COUNTER.incrementAndGet();
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread retValue = new Thread(runnable,
+                        String.format("tesseract-process-pool-%d-worker-%d",
+                                poolNumber,
+                                threadCounter.incrementAndGet()));
+                retValue.setDaemon(true);
+                return retValue;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(processCount,
+                processCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.interactiveExecutor = new ThreadPoolExecutor(1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        this.interactiveExecutor.allowCoreThreadTimeOut(true);
+        LOGGER.debug(String.format("created tesseract process pool for binary '%s' and languages '%s' with %d processes and at most %d pages per process",
+                binary,
+                languages,
+                processCount,
+                maxPagesPerProcess));
+    }
+
+    /**
+     * Creates an empty file in the working directory of the pool which can be
+     * used to pass an image to {@link #recognize(java.io.File) }. The caller is
+     * responsible for deleting it.
+     *
+     * @return the new file
+     * @throws IOException if the file can't be created
+     */
+    public File createImageFile() throws IOException {
+        return File.createTempFile("image", null, workDir);
+    }
+
+    /**
+     * Recognizes the image stored in {@code imageFile} and blocks until the
+     * result is available.
+     *
+     * @param imageFile the image file in a format supported by tesseract
+     * @return the recognized text and word positions or {@code null} if the
+     * recognition has been canceled with {@link #cancel() } or the waiting
+     * thread has been interrupted
+     * @throws OCREngineRecognitionException if tesseract isn't available or
+     * fails to recognize the image
+     */
+    public PageOutput recognize(File imageFile) throws OCREngineRecognitionException {
+        return await(submitAll(Collections.singletonList(imageFile)).get(0));
+    }
+
+    /**
+     * Queues all {@code imageFiles} at once with
+     * {@link OCRPriority#DOCUMENT} and returns immediately. The
+     * pages are distributed over the processes which are currently idle so
+     * that a large number of pages is recognized by few processes.
+     *
+     * @param imageFiles the image files in a format supported by tesseract
+     * which mustn't be deleted before the recognition is completed
+     * @return one future per file in the order of {@code imageFiles} which can
+     * be passed to {@link #await(java.util.concurrent.CompletableFuture) }
+     */
+    public List<CompletableFuture<PageOutput>> submitAll(List<File> imageFiles) {
+        return submitAll(imageFiles,
+                null);
+    }
+
+    /**
+     * Queues all {@code imageFiles} at once like
+     * {@link #submitAll(java.util.List) } and prepares every file with
+     * {@code preparer} on the worker which recognizes it.
+     *
+     * @param imageFiles the image files which mustn't be deleted before the
+     * recognition is completed
+     * @param preparer the preparer or {@code null} in order to recognize the
+     * files unchanged
+     * @return one future per file in the order of {@code imageFiles}
+     */
+    public List<CompletableFuture<PageOutput>> submitAll(List<File> imageFiles,
+            ImageFilePreparer preparer) {
+        return submitAll(imageFiles,
+                preparer,
+                OCRPriority.DOCUMENT);
+    }
+
+    /**
+     * Queues all {@code imageFiles} at once like
+     * {@link #submitAll(java.util.List, richtercloud.document.scanner.ocr.TesseractProcessPool.ImageFilePreparer) }
+     * before all pending pages of lower priorities.
+     *
+     * @param imageFiles the image files which mustn't be deleted before the
+     * recognition is completed
+     * @param preparer the preparer or {@code null} in order to recognize the
+     * files unchanged
+     * @param priority the priority of the pages
+     * @return one future per file in the order of {@code imageFiles}
+     */
+    public List<CompletableFuture<PageOutput>> submitAll(List<File> imageFiles,
+            ImageFilePreparer preparer,
+            OCRPriority priority) {
+        List<PoolPage> pages = new ArrayList<>(imageFiles.size());
+        List<CompletableFuture<PageOutput>> retValue = new ArrayList<>(imageFiles.size());
+        for(File imageFile : imageFiles) {
+            PoolPage page = new PoolPage(imageFile,
+                    preparer,
+                    priority);
+            pages.add(page);
+            retValue.add(page.result);
+        }
+        pendingPages.addAll(pages);
+        for(int i=0; i<pages.size(); i++) {
+            if(priority == OCRPriority.INTERACTIVE
+                    && runningBatches.size() >= processCount) {
+                interactiveExecutor.execute(() -> drain(OCRPriority.INTERACTIVE));
+            }else {
+                executor.execute(() -> drain(OCRPriority.BACKGROUND));
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Waits for {@code result} and cancels the page if the waiting thread is
+     * interrupted.
+     *
+     * @param result a future returned by {@link #submitAll(java.util.List) }
+     * @return the recognized text and word positions or {@code null} if the
+     * recognition has been canceled
+     * @throws OCREngineRecognitionException if tesseract isn't available or
+     * fails to recognize the image
+     */
+    public PageOutput await(CompletableFuture<PageOutput> result) throws OCREngineRecognitionException {
+        try {
+            return result.get();
+        } catch (InterruptedException ex) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException ex) {
+            return null;
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof OCREngineRecognitionException) {
+                throw (OCREngineRecognitionException) ex.getCause();
+            }
+            throw new OCREngineRecognitionException(ex.getCause());
+        }
+    }
+
+    /**
+     * Removes {@code page} from the queue if it's still pending or destroys
+     * its process if all pages of the process have been canceled.
+     * @param page the page to cancel
+     */
+    private void cancelPage(PoolPage page) {
+        page.canceled = true;
+        pendingPages.remove(page);
+        Batch batch = page.batch;
+        if(batch != null
+                && batch.pages.stream().allMatch(batchPage -> batchPage.canceled)) {
+            batch.destroy();
+        }
+    }
+
+    /**
+     * Cancels all pending and running recognitions.
+     */
+    public void cancel() {
+        List<PoolPage> canceledPages = new ArrayList<>();
+        pendingPages.drainTo(canceledPages);
+        for(PoolPage canceledPage : canceledPages) {
+            canceledPage.canceled = true;
+            canceledPage.result.complete(null);
+        }
+        synchronized(runningBatches) {
+            for(Batch runningBatch : runningBatches) {
+                runningBatch.destroy();
+            }
+        }
+    }
+
+    /**
+     * Cancels all recognitions, stops the workers and deletes the working
+     * directory.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        interactiveExecutor.shutdownNow();
+        cancel();
+        try {
+            FileUtils.deleteDirectory(workDir);
+        } catch (IOException ex) {
+            LOGGER.warn(String.format("deletion of tesseract process pool directory '%s' failed",
+                    workDir.getAbsolutePath()),
+                    ex);
+        }
+    }
+
+    /**
+     * Recognizes the next batch of pending pages.
+     * @param lowestPriority the lowest priority of pages which are recognized
+     * by this invocation
+     */
+    private void drain(OCRPriority lowestPriority) {
+        List<PoolPage> pages = takeBatch(lowestPriority);
+        pages.removeIf(page -> page.canceled);
+        try {
+            prepare(pages);
+            if(pages.isEmpty()) {
+                return;
+            }
+            checkHealth();
+            if(!runBatch(pages) && pages.size() > 1) {
+                LOGGER.debug(String.format("recognizing %d pages of failed batch separately",
+                        pages.size()));
+                for(PoolPage page : pages) {
+                    if(!page.canceled) {
+                        runBatch(Collections.singletonList(page));
+                    }
+                }
+            }
+        }catch(OCREngineRecognitionException ex) {
+            for(PoolPage page : pages) {
+                page.result.completeExceptionally(ex);
+            }
+        }catch(Throwable ex) {
+            //make sure that no caller waits forever
+            for(PoolPage page : pages) {
+                page.result.completeExceptionally(new OCREngineRecognitionException(ex));
+            }
+            throw ex;
+        }finally {
+            for(PoolPage page : pages) {
+                if(page.imageFile != page.originalImageFile) {
+                    deleteFile(page.imageFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the next batch from the pending pages which consists of pages of
+     * the highest pending priority only.
+     * @param lowestPriority the lowest priority of pages which are taken
+     * @return the pages of the batch which might be empty
+     */
+    private List<PoolPage> takeBatch(OCRPriority lowestPriority) {
+        List<PoolPage> retValue = new ArrayList<>();
+        PoolPage first = pendingPages.poll();
+        if(first == null) {
+            return retValue;
+        }
+        if(lowestPriority.isHigherThan(first.priority)) {
+            pendingPages.add(first);
+            //the drain task of first might have recognized the page this task
+            //has been submitted for
+            try {
+                executor.execute(() -> drain(OCRPriority.BACKGROUND));
+            }catch(RejectedExecutionException ex) {
+                //shut down
+                LOGGER.debug("drain task rejected after shutdown");
+            }
+            return retValue;
+        }
+        retValue.add(first);
+        int batchSize = 1;
+        if(first.priority != OCRPriority.INTERACTIVE) {
+            //distribute the pending pages over the idle processes (including
+            //this one)
+            int idleProcessCount = Math.max(1,
+                    processCount-runningBatches.size());
+            batchSize = Math.min(maxPagesPerProcess,
+                    Math.max(1, (pendingPages.size()+idleProcessCount)/idleProcessCount));
+        }
+        while(retValue.size() < batchSize) {
+            PoolPage next = pendingPages.poll();
+            if(next == null) {
+                break;
+            }
+            if(next.priority != first.priority) {
+                pendingPages.add(next);
+                break;
+            }
+            retValue.add(next);
+        }
+        return retValue;
+    }
+
+    /**
+     * Runs the preparers of {@code pages} and removes pages whose preparation
+     * failed after completing their result exceptionally.
+     */
+    private void prepare(List<PoolPage> pages) {
+        Iterator<PoolPage> pageItr = pages.iterator();
+        while(pageItr.hasNext()) {
+            PoolPage page = pageItr.next();
+            if(page.preparer == null) {
+                continue;
+            }
+            try {
+                page.imageFile = page.preparer.prepare(page.originalImageFile);
+            } catch (IOException | RuntimeException ex) {
+                page.result.completeExceptionally(new OCREngineRecognitionException(ex));
+                pageItr.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks that the binary can be executed.
+     * @throws OCREngineRecognitionException if the binary can't be executed
+     */
+    private void checkHealth() throws OCREngineRecognitionException {
+        OCRBinaryRegistry.BinaryStatus status;
+        try {
+            status = OCRBinaryRegistry.getInstance().getStatus(binary);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new OCREngineRecognitionException(ex);
+        }
+        if(!status.isAvailable()) {
+            throw new OCREngineRecognitionException(new BinaryNotFoundException(binary,
+                    status.getUnavailableCause()));
+        }
+        if(!status.isHealthy()) {
+            throw new OCREngineRecognitionException(String.format("tesseract binary '%s' failed to answer --version during health check",
+                    binary));
+        }
+    }
+
+    /**
+     * Recognizes {@code pages} in one process and completes their results.
+     * @param pages the pages to recognize
+     * @return {@code true} if the results have been completed, {@code false}
+     * if the process failed or its output couldn't be split into pages
+     * @throws OCREngineRecognitionException if the process fails to recognize
+     * a single page or can't be started
+     */
+    private boolean runBatch(List<PoolPage> pages) throws OCREngineRecognitionException {
+        Batch batch = new Batch(pages);
+        runningBatches.add(batch);
+        File listFile = null;
+        File logFile = null;
+        File outputBase = null;
+        try {
+            String input;
+            if(pages.size() == 1) {
+                input = pages.get(0).imageFile.getAbsolutePath();
+            }else {
+                listFile = File.createTempFile("list", ".txt", workDir);
+                Files.write(listFile.toPath(),
+                        pages.stream()
+                                .map(page -> page.imageFile.getAbsolutePath())
+                                .collect(Collectors.toList()),
+                        StandardCharsets.UTF_8);
+                input = listFile.getAbsolutePath();
+            }
+            logFile = File.createTempFile("log", ".txt", workDir);
+            outputBase = File.createTempFile("output", "", workDir);
+            //tesseract writes the output files with the base name as prefix
+            Process process = new ProcessBuilder(binary,
+                    "-l", languages,
+                    input,
+                    outputBase.getAbsolutePath(),
+                    "txt",
+                    "tsv")
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile)
+                    .start();
+            batch.process = process;
+            for(PoolPage page : pages) {
+                page.batch = batch;
+            }
+            if(batch.destroyed) {
+                //canceled before the process has been assigned
+                process.destroy();
+            }
+            boolean timedOut = false;
+            if(pageTimeoutMillis > 0) {
+                if(!process.waitFor(pageTimeoutMillis*pages.size(), TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    timedOut = true;
+                }
+            }
+            int exitValue = process.waitFor();
+            batchCount.incrementAndGet();
+            if(batch.destroyed || pages.stream().allMatch(page -> page.canceled)) {
+                for(PoolPage page : pages) {
+                    page.result.complete(null);
+                }
+                return true;
+            }
+            if(timedOut) {
+                failedBatchCount.incrementAndGet();
+                String message = String.format("tesseract process '%s' didn't finish recognition of %d pages within %d ms and has been destroyed",
+                        binary,
+                        pages.size(),
+                        pageTimeoutMillis*pages.size());
+                if(pages.size() > 1) {
+                    LOGGER.warn(message);
+                    return false;
+                }
+                throw new OCREngineRecognitionException(message);
+            }
+            File textFile = new File(outputBase.getAbsolutePath()+TEXT_SUFFIX);
+            if(exitValue != 0 || !textFile.exists()) {
+                failedBatchCount.incrementAndGet();
+                OCRBinaryRegistry.getInstance().invalidate(binary);
+                String log = new String(Files.readAllBytes(logFile.toPath()),
+                        StandardCharsets.UTF_8);
+                String message = String.format("tesseract process '%s' failed with returncode %d and output '%s'",
+                        binary,
+                        exitValue,
+                        log);
+                if(pages.size() > 1) {
+                    LOGGER.warn(message);
+                    return false;
+                }
+                throw new OCREngineRecognitionException(message);
+            }
+            List<String> texts = splitPages(new String(Files.readAllBytes(textFile.toPath()),
+                            StandardCharsets.UTF_8),
+                    pages.size());
+            if(texts == null) {
+                failedBatchCount.incrementAndGet();
+                LOGGER.warn(String.format("output of tesseract process '%s' couldn't be split into %d pages",
+                        binary,
+                        pages.size()));
+                return false;
+            }
+            List<String> tsvs = null;
+            File tsvFile = new File(outputBase.getAbsolutePath()+TSV_SUFFIX);
+            if(tsvFile.exists()) {
+                tsvs = splitTsvPages(new String(Files.readAllBytes(tsvFile.toPath()),
+                                StandardCharsets.UTF_8),
+                        pages.size());
+            }else {
+                //tesseract < 3.05 doesn't support TSV output
+                LOGGER.debug(String.format("tesseract process '%s' didn't create TSV output",
+                        binary));
+            }
+            for(int i=0; i<pages.size(); i++) {
+                pages.get(i).result.complete(new PageOutput(texts.get(i),
+                        tsvs != null ? tsvs.get(i) : null));
+            }
+            pageCount.addAndGet(pages.size());
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            for(PoolPage page : pages) {
+                page.result.complete(null);
+            }
+            return true;
+        } catch (IOException ex) {
+            if(batch.destroyed) {
+                for(PoolPage page : pages) {
+                    page.result.complete(null);
+                }
+                return true;
+            }
+            OCRBinaryRegistry.getInstance().invalidate(binary);
+            throw new OCREngineRecognitionException(ex);
+        } finally {
+            runningBatches.remove(batch);
+            for(PoolPage page : pages) {
+                page.batch = null;
+            }
+            deleteFile(listFile);
+            deleteFile(logFile);
+            if(outputBase != null) {
+                deleteFile(outputBase);
+                deleteFile(new File(outputBase.getAbsolutePath()+TEXT_SUFFIX));
+                deleteFile(new File(outputBase.getAbsolutePath()+TSV_SUFFIX));
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if(file != null && file.exists() && !file.delete()) {
+            LOGGER.debug(String.format("deletion of file '%s' failed",
+                    file.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Splits the TSV output of a tesseract process for
+     * {@code expectedPageCount} pages by the {@code page_num} column.
+     * @param tsv the output
+     * @param expectedPageCount the number of pages passed to the process
+     * @return the lines of each page
+     */
+    protected static List<String> splitTsvPages(String tsv,
+            int expectedPageCount) {
+        List<StringBuilder> pageBuilders = new ArrayList<>(expectedPageCount);
+        for(int i=0; i<expectedPageCount; i++) {
+            pageBuilders.add(new StringBuilder());
+        }
+        for(String line : tsv.split("\n")) {
+            String[] columns = line.split("\t", 3);
+            if(columns.length < 3) {
+                continue;
+            }
+            int pageNumber;
+            try {
+                pageNumber = Integer.parseInt(columns[1]);
+            }catch(NumberFormatException ex) {
+                //header
+                continue;
+            }
+            if(pageNumber < 1 || pageNumber > expectedPageCount) {
+                continue;
+            }
+            pageBuilders.get(pageNumber-1).append(line).append('\n');
+        }
+        List<String> retValue = new ArrayList<>(expectedPageCount);
+        for(StringBuilder pageBuilder : pageBuilders) {
+            retValue.add(pageBuilder.toString());
+        }
+        return retValue;
+    }
+
+    /**
+     * Splits the output of a tesseract process for {@code expectedPageCount}
+     * pages. Every page keeps its trailing page separator so that results are
+     * identical to the output of a process for a single page.
+     * @param output the output
+     * @param expectedPageCount the number of pages passed to the process
+     * @return the text of each page or {@code null} if the output doesn't
+     * contain the expected number of pages
+     */
+    protected static List<String> splitPages(String output,
+            int expectedPageCount) {
+        if(expectedPageCount == 1) {
+            return Collections.singletonList(output);
+        }
+        String[] segments = output.split(PAGE_SEPARATOR, -1);
+        if(segments.length != expectedPageCount+1
+                || !segments[expectedPageCount].trim().isEmpty()) {
+            return null;
+        }
+        List<String> retValue = new ArrayList<>(expectedPageCount);
+        for(int i=0; i<expectedPageCount; i++) {
+            retValue.add(segments[i]+PAGE_SEPARATOR);
+        }
+        return retValue;
+    }
+
+    public String getBinary() {
+        return binary;
+    }
+
+    public String getLanguages() {
+        return languages;
+    }
+
+    public int getProcessCount() {
+        return processCount;
+    }
+
+    public int getMaxPagesPerProcess() {
+        return maxPagesPerProcess;
+    }
+
+    /**
+     * The number of processes which are neither running nor needed for the
+     * pending pages.
+     * @return the idle process count
+     */
+    public int getIdleProcessCount() {
+        return Math.max(0,
+                processCount-runningBatches.size()-pendingPages.size());
+    }
+
+    public long getPageTimeoutMillis() {
+        return pageTimeoutMillis;
+    }
+
+    /**
+     * The number of pages waiting for a free process.
+     * @return the number of pending pages
+     */
+    public int getPendingPageCount() {
+        return pendingPages.size();
+    }
+
+    /**
+     * The number of processes which have been started for batches.
+     * @return the batch count
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * The number of pages which have been recognized successfully.
+     * @return the page count
+     */
+    public long getPageCount() {
+        return pageCount.get();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    /**
+     * The text and the word positions of a recognized page.
+     */
+    public static class PageOutput {
+        private final String text;
+        private final String tsv;
+
+        PageOutput(String text,
+                String tsv) {
+            this.text = text;
+            this.tsv = tsv;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * The TSV output for the page which can be parsed with
+         * {@link OCRPageResult#parseTsv(java.lang.String) }.
+         * @return the TSV output or {@code null} if the tesseract version
+         * doesn't support it
+         */
+        public String getTsv() {
+            return tsv;
+        }
+    }
+
+    /**
+     * Converts an image file before it's recognized.
+     */
+    @FunctionalInterface
+    public interface ImageFilePreparer {
+
+        /**
+         * Prepares {@code imageFile} for recognition without changing it.
+         * @param imageFile the image file passed to {@code submitAll}
+         * @return {@code imageFile} if it can be recognized unchanged or a new
+         * file created with {@link TesseractProcessPool#createImageFile() } which is deleted by
+         * the pool after the recognition
+         * @throws IOException if reading or writing the image fails
+         */
+        File prepare(File imageFile) throws IOException;
+    }
+
+    private class PoolPage implements Comparable<PoolPage> {
+        private final File originalImageFile;
+        private final ImageFilePreparer preparer;
+        private final OCRPriority priority;
+        private final long sequence = sequenceCounter.incrementAndGet();
+        /**
+         * The file which is recognized which is set to the result of
+         * {@code preparer} on the worker.
+         */
+        private volatile File imageFile;
+        private final CompletableFuture<PageOutput> result = new CompletableFuture<PageOutput>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                cancelPage(PoolPage.this);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        private volatile boolean canceled = false;
+        /**
+         * The batch which recognizes this page or {@code null} if it's not
+         * running.
+         */
+        private volatile Batch batch;
+
+        PoolPage(File imageFile,
+                ImageFilePreparer preparer,
+                OCRPriority priority) {
+            this.originalImageFile = imageFile;
+            this.imageFile = imageFile;
+            this.preparer = preparer;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(PoolPage other) {
+            int retValue = priority.compareTo(other.priority);
+            if(retValue == 0) {
+                retValue = Long.compare(sequence, other.sequence);
+            }
+            return retValue;
+        }
+    }
+
+    private class Batch {
+        private final List<PoolPage> pages;
+        private volatile Process process;
+        private volatile boolean destroyed = false;
+
+        Batch(List<PoolPage> pages) {
+            this.pages = pages;
+        }
+
+        void destroy() {
+            destroyed = true;
+            Process process0 = process;
+            if(process0 != null) {
+                process0.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+/**
+ * Decides whether the text layer of a PDF page can be used instead of
+ * recognizing the page. The text layers of born digital or already OCRed
+ * PDFs are usually better than a new recognition, but broken font encodings
+ * and text layers of bad OCR produce garbage which has to be rejected.
+ *
+ * A text is accepted if it contains at least a minimum number of
+ * non-whitespace characters and a minimum fraction of its words are plausible.
+ * A word is plausible if it consists mostly of letters and digits and isn't
+ * unusually long.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- the heuristic is language independent on purpose because it's unknown which
+language a document has at import (Character.isLetterOrDigit covers all
+scripts)
+- unmappable glyphs are usually extracted as U+FFFD or control characters
+which are counted as implausible characters
+*/
+public class TextLayerQualityCheck {
+    public final static int MIN_CHARACTERS_DEFAULT = 20;
+    public final static double MIN_PLAUSIBLE_WORD_RATIO_DEFAULT = 0.7;
+    private final static int MAX_WORD_LENGTH = 30;
+    /**
+     * The fraction of letters and digits a word has to consist of in order to
+     * be plausible which allows punctuation, e.g. in "e.g.," or "(2017)".
+     */
+    private final static double MIN_WORD_LETTER_RATIO = 0.5;
+    private final int minCharacters;
+    private final double minPlausibleWordRatio;
+
+    public TextLayerQualityCheck() {
+        this(MIN_CHARACTERS_DEFAULT,
+                MIN_PLAUSIBLE_WORD_RATIO_DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code TextLayerQualityCheck}.
+     * @param minCharacters the minimum number of non-whitespace characters
+     * @param minPlausibleWordRatio the minimum fraction of plausible words
+     * between 0 and 1
+     */
+    public TextLayerQualityCheck(int minCharacters,
+            double minPlausibleWordRatio) {
+        if(minCharacters < 0) {
+            throw new IllegalArgumentException("minCharacters mustn't be negative");
+        }
+        if(minPlausibleWordRatio < 0 || minPlausibleWordRatio > 1) {
+            throw new IllegalArgumentException("minPlausibleWordRatio has to be between 0 and 1");
+        }
+        this.minCharacters = minCharacters;
+        this.minPlausibleWordRatio = minPlausibleWordRatio;
+    }
+
+    /**
+     * Checks whether {@code text} can be used instead of recognizing the page
+     * it has been extracted from.
+     * @param text the extracted text (may be {@code null})
+     * @return {@code true} if {@code text} is usable, {@code false} otherwise
+     */
+    public boolean isUsable(String text) {
+        if(text == null) {
+            return false;
+        }
+        String[] words = text.trim().split("\\s+");
+        int characterCount = 0;
+        int plausibleWordCount = 0;
+        for(String word : words) {
+            characterCount += word.length();
+            if(isPlausibleWord(word)) {
+                plausibleWordCount++;
+            }
+        }
+        if(characterCount == 0 || characterCount < minCharacters) {
+            return false;
+        }
+        return plausibleWordCount >= minPlausibleWordRatio*words.length;
+    }
+
+    private static boolean isPlausibleWord(String word) {
+        if(word.length() > MAX_WORD_LENGTH) {
+            return false;
+        }
+        int letterCount = 0;
+        for(int i=0; i<word.length(); i++) {
+            char character = word.charAt(i);
+            if(character == '\uFFFD' || Character.isISOControl(character)) {
+                return false;
+            }
+            if(Character.isLetterOrDigit(character)) {
+                letterCount++;
+            }
+        }
+        return letterCount >= MIN_WORD_LETTER_RATIO*word.length();
+    }
+}
@@ -14,6 +14,9 @@
  */
 package richtercloud.document.scanner.valuedetectionservice;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -57,6 +60,16 @@ public class DefaultValueDetectionServiceExecutor<T> implements ValueDetectionSe
     private final Map<ValueDetectionService<?>, Boolean> progressFinishedMap = new HashMap<>();
     private final IssueHandler issueHandler;
     private final Set<ValueDetectionServiceExecutorListener<T>> listeners = new HashSet<>();
+    private final static int RESULT_CACHE_SIZE = 16;
+    /**
+     * Results of completed executions by input and language identifier which
+     * are reused for identical input, e.g. for documents whose OCR results
+     * have been reused for duplicate pages.
+     */
+    private final Cache<List<String>, Map<ValueDetectionService<T>, List<ValueDetectionResult<T>>>> resultCache = CacheBuilder.newBuilder()
+            .maximumSize(RESULT_CACHE_SIZE)
+            .build();
+    private volatile boolean canceled = false;
 
     public DefaultValueDetectionServiceExecutor(Set<ValueDetectionService<T>> valueDetectionServices,
             IssueHandler issueHandler) {
@@ -120,6 +133,17 @@ public class DefaultValueDetectionServiceExecutor<T> implements ValueDetectionSe
     @Override
     public Map<ValueDetectionService<T>, List<ValueDetectionResult<T>>> execute(final String input,
             String languageIdentifier) throws ResultFetchingException {
+        List<String> resultCacheKey = Arrays.asList(input,
+                languageIdentifier);
+        Map<ValueDetectionService<T>, List<ValueDetectionResult<T>>> cachedResults = resultCache.getIfPresent(resultCacheKey);
+        if(cachedResults != null) {
+            LOGGER.debug("using value detection results of previous execution for identical input");
+            listeners.forEach(listener -> {
+                listener.onFinished();
+            });
+            return new HashMap<>(cachedResults);
+        }
+        canceled = false;
         progressWordCountMap.clear();
         progressWordNumberMap.clear();
         progressFinishedMap.clear();
@@ -147,11 +171,16 @@ public class DefaultValueDetectionServiceExecutor<T> implements ValueDetectionSe
             issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
             throw new ResultFetchingException(ex);
         }
+        if(!canceled) {
+            resultCache.put(resultCacheKey,
+                    new HashMap<>(retValue));
+        }
         return retValue;
     }
 
     @Override
     public void cancelExecute() {
+        canceled = true;
         for(ValueDetectionService<?> valueDetectionService : valueDetectionServices) {
             valueDetectionService.cancelFetch();
         }
@@ -0,0 +1,139 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ContentAddressedImageStorageTest {
+
+    @Test
+    public void testStoreDispose() throws IOException {
+        File storageDir = Files.createTempDirectory(ContentAddressedImageStorageTest.class.getSimpleName()).toFile();
+        try {
+            List<File> unusedFiles = new LinkedList<>();
+            ContentAddressedImageStorage instance = new ContentAddressedImageStorage(unusedFiles::add);
+            BufferedImage image = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(3, 2, 0xffffff);
+            //the same pixels with a different image type
+            BufferedImage identical = new BufferedImage(7, 5, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D graphics = identical.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+            BufferedImage different = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+            Object owner1 = new Object();
+            Object owner2 = new Object();
+            Object owner3 = new Object();
+            File storageFile = instance.store(storageDir, image, owner1);
+            assertTrue(storageFile.isFile());
+            assertEquals(new File(storageDir, storageFile.getName().substring(0, 2)),
+                    storageFile.getParentFile());
+            assertEquals(storageFile, instance.store(storageDir, identical, owner2));
+            assertEquals(storageFile.getName(), ContentAddressedImageStorage.getHash(storageFile));
+            assertEquals(storageFile, instance.store(storageDir,
+                    new ByteArrayInputStream(Files.readAllBytes(storageFile.toPath())),
+                    storageFile.getName(),
+                    owner3));
+            assertEquals(3, instance.getOwnerCount(storageFile));
+            File differentStorageFile = instance.store(storageDir, different, owner1);
+            assertNotEquals(storageFile, differentStorageFile);
+            instance.dispose(storageFile, owner1);
+            instance.dispose(storageFile, owner2);
+            assertTrue(unusedFiles.isEmpty());
+            instance.dispose(storageFile, owner3);
+            assertEquals(1, unusedFiles.size());
+            //disposed owners can still read the file
+            assertTrue(storageFile.isFile());
+            assertTrue(differentStorageFile.isFile());
+            //no temporary files are left
+            assertEquals(2, FileUtils.listFiles(storageDir, null, true).size());
+        }finally {
+            FileUtils.deleteDirectory(storageDir);
+        }
+    }
+
+    @Test
+    public void testGarbageCollectedOwners() throws IOException, InterruptedException {
+        File storageDir = Files.createTempDirectory(ContentAddressedImageStorageTest.class.getSimpleName()).toFile();
+        try {
+            List<File> unusedFiles = new LinkedList<>();
+            ContentAddressedImageStorage instance = new ContentAddressedImageStorage(unusedFiles::add);
+            BufferedImage image = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+            Object owner = new Object();
+            File storageFile = instance.store(storageDir, image, new Object());
+            assertEquals(storageFile, instance.store(storageDir, image, owner));
+            //the collection of one of two owners keeps the file and its
+            //derived data
+            for(int i=0; i<100 && instance.getOwnerCount(storageFile) > 1; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertEquals(1, instance.getOwnerCount(storageFile));
+            assertTrue(storageFile.isFile());
+            assertTrue(unusedFiles.isEmpty());
+            owner = null;
+            for(int i=0; i<100 && instance.getOwnerCount(storageFile) > 0; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertEquals(0, instance.getOwnerCount(storageFile));
+            assertFalse(storageFile.exists());
+            assertEquals(1, unusedFiles.size());
+        }finally {
+            FileUtils.deleteDirectory(storageDir);
+        }
+    }
+
+    @Test
+    public void testStoreEncoded() throws IOException {
+        File storageDir = Files.createTempDirectory(ContentAddressedImageStorageTest.class.getSimpleName()).toFile();
+        try {
+            ContentAddressedImageStorage instance = new ContentAddressedImageStorage(storageFile -> {});
+            BufferedImage image = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+            File storageFile = instance.store(storageDir, image, new Object());
+            byte[] encoded = Files.readAllBytes(storageFile.toPath());
+            File otherStorageDir = new File(storageDir, "other");
+            File result = instance.store(otherStorageDir,
+                    new ByteArrayInputStream(encoded),
+                    ContentAddressedImageStorage.hash(image),
+                    new Object());
+            assertEquals(storageFile.getName(), result.getName());
+            assertArrayEquals(encoded, Files.readAllBytes(result.toPath()));
+            assertNull(ContentAddressedImageStorage.getHash(new File(storageDir, "0")));
+            //no temporary files are left
+            assertEquals(1, FileUtils.listFiles(otherStorageDir, null, true).size());
+        }finally {
+            FileUtils.deleteDirectory(storageDir);
+        }
+    }
+}
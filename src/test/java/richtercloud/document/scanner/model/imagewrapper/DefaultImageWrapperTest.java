@@ -22,9 +22,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
 import java.nio.file.Files;
+import java.util.Arrays;
 import javafx.embed.swing.JFXPanel;
 import javax.imageio.ImageIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import static org.mockito.Mockito.mock;
 import org.slf4j.Logger;
@@ -72,4 +79,101 @@ public class DefaultImageWrapperTest {
                     ex);
         }
     }
+
+    @Test
+    public void testGetOriginalImageCached() throws IOException {
+        BufferedImage instanceImage = new BufferedImage(40,
+                30,
+                BufferedImage.TYPE_INT_RGB);
+        instanceImage.setRGB(3, 4, 0xff0000);
+        File storageDir = Files.createTempDirectory(DefaultImageWrapperTest.class.getSimpleName()).toFile();
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        DefaultImageWrapper instance = new DefaultImageWrapper(storageDir,
+                instanceImage,
+                issueHandler);
+        BufferedImage result = instance.getOriginalImage();
+        assertEquals(40, result.getWidth());
+        assertEquals(0xff0000, result.getRGB(3, 4) & 0xffffff);
+        //changing the rotation doesn't affect the unrotated image
+        instance.setRotationDegrees(90);
+        assertSame(result, instance.getOriginalImage());
+        assertEquals(30, instance.getImagePreview(40).getWidth());
+    }
+
+    @Test
+    public void testDispose() throws IOException {
+        BufferedImage instanceImage = new BufferedImage(40,
+                30,
+                BufferedImage.TYPE_INT_RGB);
+        instanceImage.setRGB(5, 6, 0x00ff00);
+        File storageDir = Files.createTempDirectory(DefaultImageWrapperTest.class.getSimpleName()).toFile();
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        DefaultImageWrapper instance = new DefaultImageWrapper(storageDir,
+                instanceImage,
+                issueHandler);
+        DefaultImageWrapper identical = new DefaultImageWrapper(storageDir,
+                instanceImage,
+                issueHandler);
+        assertEquals(instance.getStorageFile(), identical.getStorageFile());
+        instance.setRotationDegrees(90);
+        BufferedImage originalImage = instance.getOriginalImage();
+        File streamFile = instance.getOriginalImageStream0("png");
+        assertTrue(streamFile.isFile());
+        //the identical wrapper is still in use
+        instance.dispose();
+        assertTrue(streamFile.isFile());
+        assertSame(originalImage, instance.getOriginalImage());
+        DefaultImageWrapper.disposeAll(Arrays.asList(identical));
+        assertFalse(streamFile.exists());
+        BufferedImage result = instance.getOriginalImage();
+        assertNotSame(originalImage, result);
+        //disposed wrappers remain usable
+        assertEquals(0x00ff00, result.getRGB(5, 6) & 0xffffff);
+        assertTrue(instance.getStorageFile().isFile());
+    }
+
+    @Test
+    public void testDeserializeRotated() throws IOException, ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+        BufferedImage instanceImage = new BufferedImage(40,
+                30,
+                BufferedImage.TYPE_INT_RGB);
+        instanceImage.setRGB(3, 4, 0xff0000);
+        File storageDir = Files.createTempDirectory(DefaultImageWrapperTest.class.getSimpleName()).toFile();
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        DefaultImageWrapper instance = new DefaultImageWrapper(storageDir,
+                instanceImage,
+                issueHandler);
+        instance.setRotationDegrees(90);
+        DefaultImageWrapper result = serializeAndDeserialize(instance);
+        assertEquals(90, result.getRotationDegrees(), 0);
+        assertEquals(40, result.getOriginalImage().getWidth());
+        assertEquals(30, result.getImagePreview(40).getWidth());
+        //older versions named storage files after a counter and persisted the
+        //rotated image
+        File legacyStorageFile = new File(storageDir, "0");
+        ImageIO.write(ImageTransformations.rotate(instanceImage, 90),
+                "png",
+                legacyStorageFile);
+        Field storageFileField = DefaultImageWrapper.class.getDeclaredField("storageFile");
+        storageFileField.setAccessible(true);
+        storageFileField.set(instance,
+                legacyStorageFile);
+        result = serializeAndDeserialize(instance);
+        assertEquals(0, result.getRotationDegrees(), 0);
+        assertEquals(30, result.getInitialWidth());
+        assertEquals(40, result.getInitialHeight());
+        BufferedImage resultImage = result.getOriginalImage();
+        assertEquals(30, resultImage.getWidth());
+        assertEquals(40, result.getImagePreview(30).getHeight());
+    }
+
+    private static DefaultImageWrapper serializeAndDeserialize(DefaultImageWrapper instance) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(outputStream)) {
+            objectOutputStream.writeObject(instance);
+        }
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            return (DefaultImageWrapper) objectInputStream.readObject();
+        }
+    }
 }
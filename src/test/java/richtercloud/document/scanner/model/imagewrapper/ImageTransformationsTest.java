@@ -0,0 +1,95 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ImageTransformationsTest {
+
+    /**
+     * Creates an image of 3x2 pixels whose pixels have the RGB value
+     * {@code 10*x+y}.
+     */
+    private static BufferedImage createImage(int type) {
+        BufferedImage retValue = new BufferedImage(3, 2, type);
+        for(int y=0; y<2; y++) {
+            for(int x=0; x<3; x++) {
+                retValue.getRaster().setSample(x, y, 0, 10*x+y);
+            }
+        }
+        return retValue;
+    }
+
+    private static int sample(BufferedImage image,
+            int x,
+            int y) {
+        return image.getRaster().getSample(x, y, 0);
+    }
+
+    @Test
+    public void testRotateQuadrants() {
+        for(int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            BufferedImage image = createImage(type);
+            assertSame(image, ImageTransformations.rotate(image, 360));
+            BufferedImage result = ImageTransformations.rotate(image, 90);
+            assertEquals(2, result.getWidth());
+            assertEquals(3, result.getHeight());
+            assertEquals(type, result.getType());
+            //clockwise: the bottom left pixel becomes the top left pixel
+            assertEquals(sample(image, 0, 1), sample(result, 0, 0));
+            assertEquals(sample(image, 0, 0), sample(result, 1, 0));
+            assertEquals(sample(image, 2, 1), sample(result, 0, 2));
+            result = ImageTransformations.rotate(image, 180);
+            assertEquals(3, result.getWidth());
+            assertEquals(sample(image, 2, 1), sample(result, 0, 0));
+            assertEquals(sample(image, 0, 0), sample(result, 2, 1));
+            result = ImageTransformations.rotate(image, -90);
+            assertEquals(2, result.getWidth());
+            //counterclockwise: the top right pixel becomes the top left pixel
+            assertEquals(sample(image, 2, 0), sample(result, 0, 0));
+            assertEquals(sample(image, 0, 0), sample(result, 0, 2));
+            assertEquals(sample(image, 2, 1), sample(result, 1, 0));
+        }
+    }
+
+    @Test
+    public void testRotateArbitrary() {
+        BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+        BufferedImage result = ImageTransformations.rotate(image, 45);
+        //the bounds of the rotated image have a width and height of
+        //(100+50)/sqrt(2)
+        assertEquals(107, result.getWidth(), 1);
+        assertEquals(107, result.getHeight(), 1);
+    }
+
+    @Test
+    public void testScaleToWidth() {
+        BufferedImage image = new BufferedImage(4000, 3000, BufferedImage.TYPE_BYTE_GRAY);
+        assertSame(image, ImageTransformations.scaleToWidth(image, 4000));
+        BufferedImage result = ImageTransformations.scaleToWidth(image, 100);
+        assertEquals(100, result.getWidth());
+        assertEquals(75, result.getHeight());
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, result.getType());
+        result = ImageTransformations.scaleToWidth(new BufferedImage(10, 20, BufferedImage.TYPE_INT_ARGB), 30);
+        assertEquals(30, result.getWidth());
+        assertEquals(60, result.getHeight());
+    }
+}
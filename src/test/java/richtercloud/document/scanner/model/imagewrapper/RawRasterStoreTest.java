@@ -0,0 +1,101 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class RawRasterStoreTest {
+
+    @Test
+    public void testWriteRead() throws IOException {
+        File storageDir = Files.createTempDirectory(RawRasterStoreTest.class.getSimpleName()).toFile();
+        try {
+            RawRasterStore instance = new RawRasterStore(Long.MAX_VALUE);
+            for(int type : new int[] {BufferedImage.TYPE_INT_RGB,
+                    BufferedImage.TYPE_BYTE_GRAY,
+                    BufferedImage.TYPE_BYTE_BINARY}) {
+                File storageFile = new File(storageDir, String.valueOf(type));
+                BufferedImage image = new BufferedImage(7, 5, type);
+                image.setRGB(3, 2, 0xffffff);
+                if(type == BufferedImage.TYPE_INT_RGB) {
+                    image.setRGB(1, 4, 0x123456);
+                }
+                assertNull(instance.read(storageFile));
+                instance.write(storageFile, image);
+                BufferedImage result = instance.read(storageFile);
+                assertNotNull(result);
+                assertEquals(7, result.getWidth());
+                assertEquals(5, result.getHeight());
+                for(int y=0; y<5; y++) {
+                    for(int x=0; x<7; x++) {
+                        assertEquals(String.format("type %d at %d,%d", type, x, y),
+                                image.getRGB(x, y),
+                                result.getRGB(x, y));
+                    }
+                }
+            }
+            //images with alpha channel aren't stored
+            File storageFile = new File(storageDir, "alpha");
+            instance.write(storageFile,
+                    new BufferedImage(7, 5, BufferedImage.TYPE_INT_ARGB));
+            assertNull(instance.read(storageFile));
+        }finally {
+            FileUtils.deleteDirectory(storageDir);
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File storageDir = Files.createTempDirectory(RawRasterStoreTest.class.getSimpleName()).toFile();
+        try {
+            //one gray image of 10x10 pixels needs 120 bytes
+            RawRasterStore instance = new RawRasterStore(250);
+            File[] storageFiles = new File[3];
+            for(int i=0; i<storageFiles.length; i++) {
+                storageFiles[i] = new File(storageDir, String.valueOf(i));
+                assertTrue(storageFiles[i].createNewFile());
+                instance.write(storageFiles[i],
+                        new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+            }
+            assertEquals(240, instance.getSizeBytes());
+            assertNull(instance.read(storageFiles[0]));
+            assertNotNull(instance.read(storageFiles[2]));
+            instance.invalidate(storageFiles[2]);
+            assertNull(instance.read(storageFiles[2]));
+            assertEquals(120, instance.getSizeBytes());
+            //storage files are never deleted
+            for(File storageFile : storageFiles) {
+                assertTrue(storageFile.exists());
+            }
+            assertFalse(new File(storageDir, "0.raw").exists());
+        }finally {
+            FileUtils.deleteDirectory(storageDir);
+        }
+    }
+}
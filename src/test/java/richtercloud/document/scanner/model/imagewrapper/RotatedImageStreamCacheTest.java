@@ -0,0 +1,65 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class RotatedImageStreamCacheTest {
+
+    @Test
+    public void testGet() throws IOException {
+        File storageFile = File.createTempFile(RotatedImageStreamCacheTest.class.getSimpleName(),
+                null);
+        RotatedImageStreamCache instance = new RotatedImageStreamCache(250);
+        AtomicInteger encodeCount = new AtomicInteger();
+        RotatedImageStreamCache.Encoder encoder = target -> {
+            encodeCount.incrementAndGet();
+            Files.write(target.toPath(), new byte[100]);
+        };
+        File result90 = instance.get(storageFile, 90, "png", encoder);
+        assertSame(result90, instance.get(storageFile, 450, "PNG", encoder));
+        assertEquals(1, encodeCount.get());
+        File result180 = instance.get(storageFile, 180, "png", encoder);
+        File result270 = instance.get(storageFile, 270, "png", encoder);
+        //the least recently used file exceeding the quota is deleted
+        assertFalse(result90.exists());
+        assertTrue(result180.exists());
+        assertEquals(200, instance.getSizeBytes());
+        instance.invalidate(storageFile);
+        assertFalse(result180.exists());
+        assertFalse(result270.exists());
+        assertEquals(0, instance.getSizeBytes());
+        File result = instance.get(storageFile, 90, "png", encoder);
+        instance.shutdown();
+        assertFalse(result.exists());
+        assertNull(instance.get(storageFile, 90, "png", encoder));
+        //storage files are never touched
+        assertTrue(storageFile.exists());
+        storageFile.delete();
+    }
+}
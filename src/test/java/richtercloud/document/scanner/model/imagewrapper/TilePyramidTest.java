@@ -0,0 +1,92 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.model.imagewrapper;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class TilePyramidTest {
+
+    /**
+     * Creates an image with a black top left quarter on white.
+     */
+    private static BufferedImage createImage(int width,
+            int height) {
+        BufferedImage retValue = new BufferedImage(width,
+                height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(0, 0, width/2, height/2);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+
+    @Test
+    public void testBuild() {
+        TilePyramid instance = TilePyramid.build(createImage(1000, 600));
+        //1000x600, 500x300, 250x150
+        assertEquals(3, instance.getLevelCount());
+        assertEquals(250, instance.getLevelWidth(2));
+        assertEquals(150, instance.getLevelHeight(2));
+        assertEquals(0, instance.selectLevel(1200));
+        assertEquals(0, instance.selectLevel(501));
+        assertEquals(1, instance.selectLevel(500));
+        assertEquals(2, instance.selectLevel(100));
+    }
+
+    @Test
+    public void testPaint() {
+        BufferedImage image = createImage(1000, 600);
+        TilePyramid instance = TilePyramid.build(image);
+        for(int rotationDegrees : new int[] {0, 90, 180, 270}) {
+            BufferedImage expected = ImageTransformations.rotate(ImageTransformations.scaleToWidth(image, 400),
+                    rotationDegrees);
+            BufferedImage result = new BufferedImage(expected.getWidth(),
+                    expected.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = result.createGraphics();
+            try {
+                instance.paint(graphics,
+                        null, //original (level 1 is used)
+                        400,
+                        rotationDegrees);
+            }finally {
+                graphics.dispose();
+            }
+            //compare the centers of the quarters which aren't affected by
+            //interpolation
+            for(int y : new int[] {result.getHeight()/4, result.getHeight()*3/4}) {
+                for(int x : new int[] {result.getWidth()/4, result.getWidth()*3/4}) {
+                    assertEquals(String.format("rotation %d at %d,%d", rotationDegrees, x, y),
+                            expected.getRGB(x, y),
+                            result.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.apache.commons.collections4.OrderedMap;
+import org.apache.commons.collections4.map.LinkedMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import richtercloud.document.scanner.ifaces.ImageWrapper;
+import richtercloud.document.scanner.ifaces.ImageWrapperException;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ *
+ * @author richter
+ */
+public class CachedOCREngineTest {
+
+    private static String recognize(CachedOCREngine<?> instance,
+            ImageWrapper image) throws OCREngineRecognitionException, ImageWrapperException {
+        OrderedMap<ImageWrapper, InputStream> imageStreams = new LinkedMap<>();
+        imageStreams.put(image,
+                image.getOriginalImageStream());
+        return instance.recognizeImageStreams(imageStreams);
+    }
+
+    /**
+     * Tests that text layer results are returned instead of recognizing an
+     * image, but not after a recognition has been required and that they
+     * don't replace recognition results.
+     * @throws IOException
+     * @throws OCREngineRecognitionException
+     * @throws ImageWrapperException
+     */
+    @Test
+    public void testPutTextLayerResult() throws IOException, OCREngineRecognitionException, ImageWrapperException {
+        BufferedImage pageImage = new BufferedImage(40,
+                30,
+                BufferedImage.TYPE_INT_RGB);
+        pageImage.setRGB(3, 4, 0xff0000);
+        File storageDir = Files.createTempDirectory(CachedOCREngineTest.class.getSimpleName()).toFile();
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        ImageWrapper image = new DefaultImageWrapper(storageDir,
+                pageImage,
+                issueHandler);
+        String textLayer = "text layer";
+        FakeOCREngine instance = new FakeOCREngine(new FakeOCREngineConf());
+        try {
+            instance.putTextLayerResult(image,
+                    textLayer);
+            assertEquals(textLayer, recognize(instance, image));
+            assertEquals(0, instance.getRecognitionCount());
+
+            instance.requireRecognition(Arrays.asList(image));
+            String recognizedText = recognize(instance, image);
+            assertNotEquals(textLayer, recognizedText);
+            assertEquals(1, instance.getRecognitionCount());
+
+            //the recognition result is used for other wrappers of the same
+            //image data and isn't replaced by text layers
+            ImageWrapper image2 = new DefaultImageWrapper(storageDir,
+                    pageImage,
+                    issueHandler);
+            instance.putTextLayerResult(image2,
+                    textLayer);
+            assertEquals(recognizedText, recognize(instance, image2));
+            assertEquals(1, instance.getRecognitionCount());
+        }finally {
+            instance.shutdown();
+        }
+    }
+}
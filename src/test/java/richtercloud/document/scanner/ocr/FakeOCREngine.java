@@ -0,0 +1,143 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+
+/**
+ * An in-process {@link OCREngine} which returns text derived from the image
+ * data instead of recognizing it. The same image always produces the same
+ * text, latency and outcome independently of installed OCR software which
+ * allows to measure the overhead of the recognition pipeline
+ * ({@link ParallelOCREngine}, {@link CachedOCREngine} and the consumers of the
+ * text) on its own.
+ *
+ * The text consists of words from a fixed vocabulary, a date and an amount so
+ * that value detection services find values in it.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- latency is simulated with sleep, i.e. it doesn't use CPU which makes results
+independent of the number of cores as long as the pipeline doesn't use much
+CPU itself
+*/
+public class FakeOCREngine extends CachedOCREngine<FakeOCREngineConf> {
+    private final static String[] VOCABULARY = new String[] {"Rechnung",
+        "Betrag", "Kunde", "Datum", "Vertrag", "Konto", "Zahlung", "Summe",
+        "Steuer", "Adresse", "invoice", "amount", "customer", "date",
+        "contract", "account", "payment", "total", "tax", "address"};
+    private final AtomicInteger recognitionCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+
+    public FakeOCREngine(FakeOCREngineConf oCREngineConf) {
+        super(oCREngineConf);
+    }
+
+    /**
+     * The number of recognitions which have been performed, i.e. which
+     * haven't been answered from a cache.
+     * @return the recognition count
+     */
+    public int getRecognitionCount() {
+        return recognitionCount.get();
+    }
+
+    public int getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Creates the text which is returned for {@code image} with
+     * {@code wordCount} words.
+     * @param image the image
+     * @param wordCount the number of words
+     * @return the text
+     */
+    public static String createText(BufferedImage image,
+            int wordCount) {
+        Random random = createRandom(image);
+        //skip values used for latency and failure
+        random.nextDouble();
+        random.nextDouble();
+        StringBuilder retValue = new StringBuilder(wordCount*10+32);
+        for(int i=0; i<wordCount; i++) {
+            retValue.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            retValue.append(i%10 == 9 ? '\n' : ' ');
+        }
+        retValue.append(String.format("%02d.%02d.%d %d,%02d EUR\n",
+                1+random.nextInt(28),
+                1+random.nextInt(12),
+                2000+random.nextInt(20),
+                random.nextInt(10000),
+                random.nextInt(100)));
+        return retValue.toString();
+    }
+
+    private static Random createRandom(BufferedImage image) {
+        String hash = PersistentOCRResultCache.createKey(image,
+                "" //configurationFingerprint
+        );
+        return new Random(Long.parseUnsignedLong(hash.substring(0, 16), 16));
+    }
+
+    @Override
+    protected String recognizeImage0(BufferedImage image) throws OCREngineRecognitionException {
+        recognitionCount.incrementAndGet();
+        Random random = createRandom(image);
+        double latencyFraction = random.nextDouble();
+        double failureValue = random.nextDouble();
+        long latencyMillis = getoCREngineConf().getLatencyMillis()
+                + (long)(latencyFraction*getoCREngineConf().getLatencyJitterMillis());
+        if(latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        if(getCancellationToken().isCanceled()) {
+            return null;
+        }
+        if(failureValue < getoCREngineConf().getFailureRate()) {
+            failureCount.incrementAndGet();
+            throw new OCREngineRecognitionException("simulated recognition failure");
+        }
+        return createText(image,
+                getoCREngineConf().getWordCount());
+    }
+
+    @Override
+    protected String recognizeImageStream0(InputStream inputStream) throws OCREngineRecognitionException {
+        BufferedImage image;
+        try {
+            image = ImageIO.read(inputStream);
+        } catch (IOException ex) {
+            throw new OCREngineRecognitionException(ex);
+        }
+        if(image == null) {
+            throw new OCREngineRecognitionException("image data can't be decoded");
+        }
+        return recognizeImage0(image);
+    }
+}
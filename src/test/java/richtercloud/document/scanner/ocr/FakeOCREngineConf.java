@@ -0,0 +1,96 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import richtercloud.document.scanner.ifaces.OCREngineConfValidationException;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ * Configuration of {@link FakeOCREngine}.
+ *
+ * @author richter
+ */
+public class FakeOCREngineConf extends CachedOCREngineConf {
+    private static final long serialVersionUID = 1L;
+    /**
+     * The time a recognition of one page takes.
+     */
+    private long latencyMillis = 0;
+    /**
+     * The maximum time which is added to {@code latencyMillis} depending on
+     * the image in order to simulate pages of different complexity.
+     */
+    private long latencyJitterMillis = 0;
+    /**
+     * The fraction of pages between 0 and 1 whose recognition fails. Whether
+     * a page fails depends on the image only, i.e. it fails in every
+     * recognition.
+     */
+    private double failureRate = 0;
+    /**
+     * The number of words of the text generated for a page.
+     */
+    private int wordCount = 50;
+
+    public FakeOCREngineConf() {
+        //the persistent cache would make results depend on earlier runs
+        setResultCacheMaxBytes(-1);
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    public void setLatencyJitterMillis(long latencyJitterMillis) {
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public void setWordCount(int wordCount) {
+        this.wordCount = wordCount;
+    }
+
+    @Override
+    public void validate(IssueHandler issueHandler) throws OCREngineConfValidationException {
+        if(latencyMillis < 0 || latencyJitterMillis < 0) {
+            throw new OCREngineConfValidationException("latencies mustn't be negative");
+        }
+        if(failureRate < 0 || failureRate > 1) {
+            throw new OCREngineConfValidationException("failure rate has to be between 0 and 1");
+        }
+        if(wordCount < 0) {
+            throw new OCREngineConfValidationException("word count mustn't be negative");
+        }
+    }
+}
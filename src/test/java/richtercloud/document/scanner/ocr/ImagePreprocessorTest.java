@@ -0,0 +1,113 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import richtercloud.document.scanner.ocr.ImagePreprocessor.PreprocessedImage;
+
+/**
+ *
+ * @author richter
+ */
+public class ImagePreprocessorTest {
+
+    /**
+     * Creates a white image of an A4 page at 600 DPI with a dark block.
+     */
+    private static BufferedImage createPage(Rectangle content) {
+        BufferedImage retValue = new BufferedImage(4960,
+                7016,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = retValue.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, retValue.getWidth(), retValue.getHeight());
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.fill(content);
+        }finally {
+            graphics.dispose();
+        }
+        return retValue;
+    }
+
+    @Test
+    public void testPreprocessScaling() {
+        ImagePreprocessor instance = new ImagePreprocessor(true,
+                false,
+                300,
+                false);
+        PreprocessedImage result = instance.preprocess(createPage(new Rectangle(1000, 1000, 500, 500)),
+                600 //sourceDpi
+        );
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, result.getImage().getType());
+        assertEquals(2480, result.getImage().getWidth());
+        assertEquals(3508, result.getImage().getHeight());
+        assertEquals(new Rectangle(0, 0, 4960, 7016), result.getArea());
+        //images with a lower resolution aren't scaled up
+        result = instance.preprocess(createPage(new Rectangle(1000, 1000, 500, 500)),
+                200);
+        assertEquals(4960, result.getImage().getWidth());
+        //images with an unknown resolution aren't scaled since they might
+        //show a larger page than A4
+        result = instance.preprocess(createPage(new Rectangle(1000, 1000, 500, 500)),
+                -1 //sourceDpi
+        );
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, result.getImage().getType());
+        assertEquals(4960, result.getImage().getWidth());
+        assertEquals(7016, result.getImage().getHeight());
+    }
+
+    @Test
+    public void testPreprocessCropMargins() {
+        ImagePreprocessor instance = new ImagePreprocessor(false,
+                true,
+                -1,
+                true);
+        PreprocessedImage result = instance.preprocess(createPage(new Rectangle(1000, 2000, 500, 300)),
+                -1 //sourceDpi
+        );
+        //padding is 1 % of the longer side
+        assertEquals(new Rectangle(930, 1930, 640, 440), result.getArea());
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, result.getImage().getType());
+        assertEquals(640, result.getImage().getWidth());
+        //padding is white, the edge of the block black
+        assertEquals(Color.WHITE.getRGB(), result.getImage().getRGB(10, 10));
+        assertEquals(Color.BLACK.getRGB(), result.getImage().getRGB(71, 71));
+    }
+
+    /**
+     * Tests that the target resolution is only part of the fingerprint if
+     * scaling is enabled which it isn't by default.
+     */
+    @Test
+    public void testGetFingerprint() {
+        ProcessOCREngineConf conf = new TesseractOCREngineConf();
+        ImagePreprocessor instance = new ImagePreprocessor(true,
+                false,
+                conf.getPreprocessingTargetDpi(),
+                false);
+        assertFalse(instance.getFingerprint().contains("targetDpi"));
+        ImagePreprocessor scalingInstance = new ImagePreprocessor(true,
+                false,
+                300,
+                false);
+        assertTrue(scalingInstance.getFingerprint().contains("targetDpi=300"));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ImageStripSplitterTest {
+
+    /**
+     * Creates a white image with black text lines of height 20 every 50
+     * pixels.
+     */
+    private static BufferedImage createPage(int width,
+            int height) {
+        BufferedImage retValue = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = retValue.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        for(int y=20; y+20<=height-20; y+=50) {
+            graphics.fillRect(20, y, width-40, 20);
+        }
+        graphics.dispose();
+        return retValue;
+    }
+
+    @Test
+    public void testSplit() {
+        BufferedImage image = createPage(200, 1000);
+        ImageStripSplitter instance = new ImageStripSplitter(40000);
+        List<Rectangle> strips = instance.split(image, 4);
+        assertEquals(4, strips.size());
+        assertEquals(0, strips.get(0).y);
+        assertEquals(1000, strips.get(strips.size()-1).y+strips.get(strips.size()-1).height);
+        for(int i=0; i<strips.size(); i++) {
+            Rectangle strip = strips.get(i);
+            //no text line is cut, i.e. the first and last row of a strip are
+            //blank
+            assertEquals(Color.WHITE.getRGB(), image.getRGB(100, strip.y));
+            assertEquals(Color.WHITE.getRGB(), image.getRGB(100, strip.y+strip.height-1));
+            if(i > 0) {
+                //strips overlap by blank rows only
+                Rectangle previousStrip = strips.get(i-1);
+                assertTrue(strip.y < previousStrip.y+previousStrip.height);
+                for(int y=strip.y; y<previousStrip.y+previousStrip.height; y++) {
+                    assertEquals(Color.WHITE.getRGB(), image.getRGB(100, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSplitSmallOrSolidImage() {
+        ImageStripSplitter instance = new ImageStripSplitter(40000);
+        //too small
+        assertEquals(1, instance.split(createPage(200, 300), 4).size());
+        //no blank rows
+        BufferedImage image = new BufferedImage(200, 1000, BufferedImage.TYPE_BYTE_GRAY);
+        List<Rectangle> strips = instance.split(image, 4);
+        assertEquals(1, strips.size());
+        assertEquals(new Rectangle(0, 0, 200, 1000), strips.get(0));
+    }
+}
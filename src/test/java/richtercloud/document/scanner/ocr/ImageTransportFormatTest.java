@@ -0,0 +1,59 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ImageTransportFormatTest {
+
+    @Test
+    public void testWritePnmGray() throws IOException {
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setSamples(0, 0, 3, 2, 0, new int[] {0, 128, 255, 1, 2, 3});
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageTransportFormat.PNM.write(image, outputStream);
+        byte[] result = outputStream.toByteArray();
+        byte[] header = "P5\n3 2\n255\n".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(header, Arrays.copyOf(result, header.length));
+        assertArrayEquals(new byte[] {0, (byte)128, (byte)255, 1, 2, 3},
+                Arrays.copyOfRange(result, header.length, result.length));
+    }
+
+    @Test
+    public void testWritePnmBinary() throws IOException {
+        BufferedImage image = new BufferedImage(10, 1, BufferedImage.TYPE_BYTE_BINARY);
+        image.setRGB(0, 0, Color.WHITE.getRGB());
+        image.setRGB(9, 0, Color.WHITE.getRGB());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageTransportFormat.PNM.write(image, outputStream);
+        byte[] result = outputStream.toByteArray();
+        byte[] header = "P4\n10 1\n".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(header, Arrays.copyOf(result, header.length));
+        //black pixels are 1, rows are padded to full bytes
+        assertArrayEquals(new byte[] {0x7F, (byte)0x80},
+                Arrays.copyOfRange(result, header.length, result.length));
+    }
+}
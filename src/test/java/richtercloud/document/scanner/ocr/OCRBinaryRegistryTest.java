@@ -0,0 +1,117 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class OCRBinaryRegistryTest {
+
+    /**
+     * Creates a shell script which counts its invocations in
+     * {@code countFile}.
+     */
+    private static File createBinary(File countFile) throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        File retValue = File.createTempFile(OCRBinaryRegistryTest.class.getSimpleName(), ".sh");
+        Files.write(retValue.toPath(),
+                String.format("#!/bin/sh\necho x >> '%s'\necho 'fake 1.0'\n",
+                        countFile.getAbsolutePath()).getBytes(StandardCharsets.UTF_8));
+        assertTrue(retValue.setExecutable(true));
+        return retValue;
+    }
+
+    private static int countLines(File countFile) throws IOException {
+        if(!countFile.exists()) {
+            return 0;
+        }
+        return Files.readAllLines(countFile.toPath()).size();
+    }
+
+    @Test
+    public void testGetStatus() throws IOException, InterruptedException {
+        File countFile = File.createTempFile(OCRBinaryRegistryTest.class.getSimpleName(), ".count");
+        File binary = createBinary(countFile);
+        OCRBinaryRegistry instance = new OCRBinaryRegistry(60000);
+        OCRBinaryRegistry.BinaryStatus status = instance.getStatus(binary.getAbsolutePath());
+        assertTrue(status.isHealthy());
+        assertEquals("fake 1.0", status.getVersion());
+        instance.getStatus(binary.getAbsolutePath());
+        assertEquals(1, countLines(countFile));
+        instance.invalidate(binary.getAbsolutePath());
+        instance.getStatus(binary.getAbsolutePath());
+        assertEquals(2, countLines(countFile));
+    }
+
+    /**
+     * Tests that a binary which doesn't terminate and keeps its output open
+     * is destroyed after the probe timeout.
+     */
+    @Test(timeout = 30000)
+    public void testGetStatusHung() throws IOException, InterruptedException {
+        assumeTrue(new File("/bin/sh").exists());
+        File binary = File.createTempFile(OCRBinaryRegistryTest.class.getSimpleName(), ".sh");
+        Files.write(binary.toPath(),
+                "#!/bin/sh\necho 'fake 1.0'\nexec sleep 60\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(binary.setExecutable(true));
+        OCRBinaryRegistry instance = new OCRBinaryRegistry(60000,
+                500 //probeTimeoutMillis
+        );
+        long start = System.nanoTime();
+        OCRBinaryRegistry.BinaryStatus status = instance.getStatus(binary.getAbsolutePath());
+        assertTrue(System.nanoTime()-start < TimeUnit.SECONDS.toNanos(20));
+        assertTrue(status.isAvailable());
+        assertFalse(status.isHealthy());
+    }
+
+    @Test
+    public void testGetStatusUnavailable() throws InterruptedException {
+        OCRBinaryRegistry instance = new OCRBinaryRegistry(60000);
+        OCRBinaryRegistry.BinaryStatus status = instance.getStatus("/nonexisting/binary");
+        assertFalse(status.isAvailable());
+        assertNotNull(status.getUnavailableCause());
+        try {
+            instance.checkAvailable("/nonexisting/binary");
+            fail("BinaryNotFoundException expected");
+        }catch(BinaryNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void testGetAvailableLanguages() throws Exception {
+        OCRBinaryRegistry instance = new OCRBinaryRegistry(60000);
+        int[] retrievalCount = new int[1];
+        OCRBinaryRegistry.LanguageRetrieval retrieval = () -> {
+            retrievalCount[0]++;
+            return Arrays.asList("deu", "eng");
+        };
+        List<String> result = instance.getAvailableLanguages("binary", retrieval);
+        assertEquals(Arrays.asList("deu", "eng"), result);
+        instance.getAvailableLanguages("binary", retrieval);
+        assertEquals(1, retrievalCount[0]);
+    }
+}
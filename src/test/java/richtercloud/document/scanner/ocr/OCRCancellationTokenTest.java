@@ -0,0 +1,45 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class OCRCancellationTokenTest {
+
+    @Test
+    public void testCancel() {
+        OCRCancellationToken instance = new OCRCancellationToken();
+        AtomicInteger canceled = new AtomicInteger();
+        instance.onCancel(canceled::incrementAndGet);
+        OCRCancellationToken.Registration closed = instance.onCancel(canceled::incrementAndGet);
+        closed.close();
+        assertFalse(instance.isCanceled());
+        instance.cancel();
+        assertTrue(instance.isCanceled());
+        assertEquals(1, canceled.get());
+        //cancel actions are run only once
+        instance.cancel();
+        assertEquals(1, canceled.get());
+        //late registrations are canceled immediately
+        instance.onCancel(canceled::incrementAndGet);
+        assertEquals(2, canceled.get());
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class OCRPageResultTest {
+    private final static String TSV = "level\tpage_num\tblock_num\tpar_num\tline_num\tword_num\tleft\ttop\twidth\theight\tconf\ttext\n"
+            + "1\t1\t0\t0\t0\t0\t0\t0\t1000\t2000\t-1\t\n"
+            + "4\t1\t1\t1\t1\t0\t100\t100\t500\t50\t-1\t\n"
+            + "5\t1\t1\t1\t1\t1\t100\t100\t200\t50\t95.5\tInvoice\n"
+            + "5\t1\t1\t1\t1\t2\t400\t100\t200\t50\t91\t2017-01-01\n"
+            + "5\t1\t1\t1\t2\t1\t100\t200\t200\t50\t90\tTotal\n"
+            + "5\t1\t1\t1\t2\t2\t400\t200\t200\t50\t89\t12,00\n"
+            + "5\t1\t2\t1\t1\t1\t100\t1500\t200\t50\t80\tFooter\n";
+
+    @Test
+    public void testParseTsv() {
+        OCRPageResult instance = OCRPageResult.parseTsv(TSV);
+        assertEquals(1000, instance.getWidth());
+        assertEquals(2000, instance.getHeight());
+        assertEquals(5, instance.getWords().size());
+        assertEquals("Invoice", instance.getWords().get(0).getText());
+        assertEquals(new Rectangle(400, 100, 200, 50),
+                instance.getWords().get(1).getBounds());
+    }
+
+    @Test
+    public void testGetText() {
+        OCRPageResult instance = OCRPageResult.parseTsv(TSV);
+        assertEquals("Invoice 2017-01-01\nTotal 12,00",
+                instance.getText(new Rectangle(0, 0, 1000, 300),
+                        1000,
+                        2000));
+        //areas refer to a scaled image
+        assertEquals("2017-01-01\n12,00",
+                instance.getText(new Rectangle(150, 0, 200, 150),
+                        500,
+                        1000));
+        assertEquals("",
+                instance.getText(new Rectangle(0, 800, 10, 10),
+                        1000,
+                        2000));
+    }
+
+    @Test
+    public void testTransformToTsv() {
+        OCRPageResult instance = OCRPageResult.parseTsv(TSV);
+        //the page has been cropped to (100, 50, 2000, 4000) of a 3000x5000
+        //image and scaled by 0.5
+        OCRPageResult transformed = OCRPageResult.parseTsv(instance.transform(new Rectangle(100, 50, 2000, 4000),
+                3000,
+                5000).toTsv());
+        assertEquals(3000, transformed.getWidth());
+        assertEquals(5000, transformed.getHeight());
+        assertEquals(5, transformed.getWords().size());
+        assertEquals(new Rectangle(300, 250, 400, 100),
+                transformed.getWords().get(0).getBounds());
+        assertEquals(95.5, transformed.getWords().get(0).getConfidence(), 0.0);
+        assertEquals("Invoice 2017-01-01\nTotal 12,00",
+                transformed.getText(new Rectangle(0, 0, 3000, 700),
+                        3000,
+                        5000));
+    }
+
+    @Test
+    public void testConcatenate() {
+        String header = "level\tpage_num\tblock_num\tpar_num\tline_num\tword_num\tleft\ttop\twidth\theight\tconf\ttext\n"
+                + "1\t1\t0\t0\t0\t0\t0\t0\t1000\t100\t-1\t\n";
+        OCRPageResult top = OCRPageResult.parseTsv(header+"5\t1\t1\t1\t1\t1\t100\t40\t200\t20\t90\tTop\n")
+                .transform(new Rectangle(0, 0, 1000, 100),
+                        1000,
+                        200);
+        OCRPageResult bottom = OCRPageResult.parseTsv(header+"5\t1\t1\t1\t1\t1\t100\t40\t200\t20\t90\tBottom\n")
+                .transform(new Rectangle(0, 100, 1000, 100),
+                        1000,
+                        200);
+        OCRPageResult instance = OCRPageResult.concatenate(Arrays.asList(top, bottom),
+                1000,
+                200);
+        assertEquals(2, instance.getWords().size());
+        assertEquals(new Rectangle(100, 140, 200, 20),
+                instance.getWords().get(1).getBounds());
+        //both words have the same block, paragraph and line number in their
+        //parts
+        assertEquals("Top\nBottom",
+                instance.getText(new Rectangle(0, 0, 1000, 200),
+                        1000,
+                        200));
+    }
+}
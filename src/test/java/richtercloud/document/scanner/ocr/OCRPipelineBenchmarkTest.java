@@ -0,0 +1,284 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.cache.CacheStats;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import richtercloud.document.scanner.ifaces.OCREngineRecognitionException;
+import richtercloud.document.scanner.valuedetectionservice.DateFormatValueDetectionService;
+import richtercloud.document.scanner.valuedetectionservice.DefaultValueDetectionServiceExecutor;
+import richtercloud.document.scanner.valuedetectionservice.ResultFetchingException;
+import richtercloud.document.scanner.valuedetectionservice.ValueDetectionResult;
+import richtercloud.document.scanner.valuedetectionservice.ValueDetectionService;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ * Runs the recognition pipeline with {@link FakeOCREngine} over synthetic
+ * pages and tests that duplicate and repeated pages and repeated value
+ * detection input are answered from the caches by counting recognitions,
+ * cache hits and value detection service invocations.
+ *
+ * Throughput is only measured and compared to the throughput the simulated
+ * latency allows if the system property {@code ocr.benchmark} is
+ * {@code true} since wall-clock timings depend on the machine and its load.
+ * The number of pages and the latency can be increased with the system
+ * properties {@code ocr.benchmark.pages} and
+ * {@code ocr.benchmark.latencyMillis} for measurements; the defaults keep the
+ * tests fast.
+ *
+ * @author richter
+ */
+/*
+internal implementation notes:
+- the bounds of the benchmark are generous multiples of the ideal time so that
+it doesn't fail on slow or loaded machines while it still detects lost
+parallelism
+*/
+public class OCRPipelineBenchmarkTest {
+    private final static Logger LOGGER = LoggerFactory.getLogger(OCRPipelineBenchmarkTest.class);
+    private final static boolean BENCHMARK = Boolean.getBoolean("ocr.benchmark");
+    private final static int PAGE_COUNT = Integer.getInteger("ocr.benchmark.pages", 64);
+    private final static long LATENCY_MILLIS = Long.getLong("ocr.benchmark.latencyMillis", 20);
+    private final static int WORKER_COUNT = 4;
+    /**
+     * Every {@code DUPLICATE_INTERVAL}th page is a copy of a previous page.
+     */
+    private final static int DUPLICATE_INTERVAL = 4;
+
+    /**
+     * Creates {@code pageCount} pages with random rectangles; every
+     * {@link #DUPLICATE_INTERVAL}th page is a copy of a previous page.
+     */
+    private static List<BufferedImage> createPages(int pageCount,
+            long seed) {
+        Random random = new Random(seed);
+        List<BufferedImage> retValue = new ArrayList<>(pageCount);
+        for(int i=0; i<pageCount; i++) {
+            BufferedImage page = new BufferedImage(400, 560, BufferedImage.TYPE_BYTE_GRAY);
+            if(i%DUPLICATE_INTERVAL == DUPLICATE_INTERVAL-1) {
+                page.setData(retValue.get(random.nextInt(i)).getData());
+            }else {
+                Graphics2D graphics = page.createGraphics();
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, page.getWidth(), page.getHeight());
+                graphics.setColor(Color.BLACK);
+                for(int j=0; j<40; j++) {
+                    graphics.fillRect(random.nextInt(page.getWidth()),
+                            random.nextInt(page.getHeight()),
+                            1+random.nextInt(60),
+                            1+random.nextInt(10));
+                }
+                graphics.dispose();
+            }
+            retValue.add(page);
+        }
+        return retValue;
+    }
+
+    private static FakeOCREngineConf createConf() {
+        FakeOCREngineConf retValue = new FakeOCREngineConf();
+        retValue.setWorkerCount(WORKER_COUNT);
+        retValue.setLatencyMillis(LATENCY_MILLIS);
+        return retValue;
+    }
+
+    /**
+     * Tests that duplicate pages are recognized once and that a second pass is
+     * answered from the cache.
+     * @throws OCREngineRecognitionException
+     */
+    @Test
+    public void testRecognizeImagesCaching() throws OCREngineRecognitionException {
+        List<BufferedImage> pages = createPages(PAGE_COUNT,
+                1 //seed
+        );
+        int distinctPageCount = PAGE_COUNT-PAGE_COUNT/DUPLICATE_INTERVAL;
+        FakeOCREngine instance = new FakeOCREngine(createConf());
+        try {
+            String result = instance.recognizeImages(pages);
+            assertNotNull(result);
+            assertEquals(distinctPageCount, instance.getRecognitionCount());
+            CacheStats coldStats = instance.getCacheStats();
+
+            String result2 = instance.recognizeImages(pages);
+            assertEquals(result, result2);
+            assertEquals(distinctPageCount, instance.getRecognitionCount());
+            CacheStats warmStats = instance.getCacheStats().minus(coldStats);
+            assertEquals(PAGE_COUNT, warmStats.hitCount());
+            assertEquals(0, warmStats.missCount());
+        }finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Tests that pages are recognized in parallel and that a second pass
+     * which is answered from the cache is faster. Skipped unless the system
+     * property {@code ocr.benchmark} is {@code true}.
+     * @throws OCREngineRecognitionException
+     */
+    @Test
+    public void testRecognizeImagesThroughput() throws OCREngineRecognitionException {
+        assumeTrue(BENCHMARK);
+        List<BufferedImage> pages = createPages(PAGE_COUNT,
+                1 //seed
+        );
+        int distinctPageCount = PAGE_COUNT-PAGE_COUNT/DUPLICATE_INTERVAL;
+        FakeOCREngine instance = new FakeOCREngine(createConf());
+        try {
+            long idealMillis = distinctPageCount*LATENCY_MILLIS/WORKER_COUNT;
+            long time = System.currentTimeMillis();
+            String result = instance.recognizeImages(pages);
+            long coldMillis = System.currentTimeMillis()-time;
+            LOGGER.info(String.format("cold pass: %d pages in %d ms (%.1f pages/s, ideal %d ms, overhead %.2f ms per page)",
+                    PAGE_COUNT,
+                    coldMillis,
+                    PAGE_COUNT*1000.0/Math.max(1, coldMillis),
+                    idealMillis,
+                    (coldMillis-idealMillis)/(double)PAGE_COUNT));
+            assertNotNull(result);
+            assertEquals(distinctPageCount, instance.getRecognitionCount());
+            assertTrue(String.format("cold pass took %d ms, but %d ms are ideal",
+                            coldMillis,
+                            idealMillis),
+                    coldMillis < 4*idealMillis+1000);
+
+            time = System.currentTimeMillis();
+            String result2 = instance.recognizeImages(pages);
+            long warmMillis = System.currentTimeMillis()-time;
+            LOGGER.info(String.format("warm pass: %d pages in %d ms (%.2f ms per page)",
+                    PAGE_COUNT,
+                    warmMillis,
+                    warmMillis/(double)PAGE_COUNT));
+            assertEquals(result, result2);
+            assertEquals(distinctPageCount, instance.getRecognitionCount());
+            assertTrue(String.format("warm pass took %d ms, but the cold pass only %d ms",
+                            warmMillis,
+                            coldMillis),
+                    warmMillis <= coldMillis);
+        }finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Tests that the results of {@link FakeOCREngine} don't depend on the
+     * engine instance and that simulated failures are reported and not
+     * cached.
+     * @throws OCREngineRecognitionException
+     */
+    @Test
+    public void testRecognizeImagesDeterministic() throws OCREngineRecognitionException {
+        List<BufferedImage> pages = createPages(8,
+                2 //seed
+        );
+        FakeOCREngine instance1 = new FakeOCREngine(createConf());
+        FakeOCREngine instance2 = new FakeOCREngine(createConf());
+        FakeOCREngineConf failingConf = createConf();
+        failingConf.setFailureRate(1);
+        FakeOCREngine failingInstance = new FakeOCREngine(failingConf);
+        try {
+            assertEquals(instance1.recognizeImages(pages),
+                    instance2.recognizeImages(pages));
+            for(int i=0; i<2; i++) {
+                try {
+                    failingInstance.recognizeImages(pages.subList(0, 1));
+                    fail("OCREngineRecognitionException expected");
+                }catch(OCREngineRecognitionException expected) {
+                    //expected
+                }
+            }
+            assertEquals(2, failingInstance.getFailureCount());
+        }finally {
+            instance1.shutdown();
+            instance2.shutdown();
+            failingInstance.shutdown();
+        }
+    }
+
+    /**
+     * Measures value detection on the recognized text of documents of four
+     * pages and tests that repeated input is answered from the result cache
+     * of the executor without invoking the service.
+     * @throws Exception
+     */
+    @Test
+    public void testValueDetectionCaching() throws Exception {
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        AtomicInteger fetchCount = new AtomicInteger();
+        DateFormatValueDetectionService valueDetectionService = new DateFormatValueDetectionService(issueHandler) {
+            @Override
+            protected LinkedHashSet<ValueDetectionResult<Date>> fetchResults0(String input,
+                    String languageIdentifier) throws ResultFetchingException {
+                fetchCount.incrementAndGet();
+                return super.fetchResults0(input,
+                        languageIdentifier);
+            }
+        };
+        Set<ValueDetectionService<Date>> valueDetectionServices = new HashSet<>(Arrays.asList(valueDetectionService));
+        DefaultValueDetectionServiceExecutor<Date> instance = new DefaultValueDetectionServiceExecutor<>(valueDetectionServices,
+                issueHandler);
+        List<BufferedImage> pages = createPages(16,
+                3 //seed
+        );
+        int documentCount = pages.size()/4;
+        List<String> documentTexts = new ArrayList<>(documentCount);
+        for(int document=0; document<documentCount; document++) {
+            StringBuilder documentText = new StringBuilder();
+            for(BufferedImage page : pages.subList(document*4, (document+1)*4)) {
+                documentText.append(FakeOCREngine.createText(page,
+                        20 //wordCount
+                ));
+            }
+            documentTexts.add(documentText.toString());
+        }
+        long time = System.currentTimeMillis();
+        for(String documentText : documentTexts) {
+            Map<ValueDetectionService<Date>, List<ValueDetectionResult<Date>>> results = instance.execute(documentText,
+                    "de");
+            assertFalse(results.isEmpty());
+        }
+        long coldMillis = System.currentTimeMillis()-time;
+        time = System.currentTimeMillis();
+        for(String documentText : documentTexts) {
+            instance.execute(documentText,
+                    "de");
+        }
+        long warmMillis = System.currentTimeMillis()-time;
+        LOGGER.info(String.format("value detection: %d documents in %d ms, repeated in %d ms",
+                documentCount,
+                coldMillis,
+                warmMillis));
+        assertEquals(documentCount, fetchCount.get());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class OCRSchedulerTest {
+
+    /**
+     * Tests that no more than the configured number of workers run at the same
+     * time and that all tasks are processed even if they exceed the queue
+     * capacity.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testSubmitLimitsConcurrency() throws InterruptedException {
+        int workerCount = 2;
+        int taskCount = 20;
+        OCRScheduler instance = new OCRScheduler(workerCount,
+                3 //queueCapacity
+        );
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finishedLatch = new CountDownLatch(taskCount);
+        for(int i=0; i<taskCount; i++) {
+            instance.submit(() -> {
+                int running0 = running.incrementAndGet();
+                maxRunning.accumulateAndGet(running0, Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                finishedLatch.countDown();
+            });
+            assertTrue(instance.getQueueDepth() <= instance.getQueueCapacity());
+        }
+        assertTrue(finishedLatch.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= workerCount);
+        instance.shutdown();
+    }
+
+    /**
+     * Tests that queued tasks are started in priority order and that
+     * interactive tasks don't wait for busy workers.
+     * @throws InterruptedException
+     */
+    @Test
+    public void testSubmitPriority() throws InterruptedException {
+        OCRScheduler instance = new OCRScheduler(1, //workerCount
+                10 //queueCapacity
+        );
+        CountDownLatch blockingLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        instance.submit(() -> {
+            startedLatch.countDown();
+            try {
+                blockingLatch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finishedLatch = new CountDownLatch(3);
+        instance.submit(() -> {
+                    order.add("background1");
+                    finishedLatch.countDown();
+                },
+                OCRPriority.BACKGROUND);
+        instance.submit(() -> {
+                    order.add("background2");
+                    finishedLatch.countDown();
+                },
+                OCRPriority.BACKGROUND);
+        instance.submit(() -> {
+                    order.add("document");
+                    finishedLatch.countDown();
+                },
+                OCRPriority.DOCUMENT);
+        assertEquals(2, instance.getQueueDepth(OCRPriority.BACKGROUND));
+        CountDownLatch interactiveLatch = new CountDownLatch(1);
+        instance.submit(interactiveLatch::countDown,
+                OCRPriority.INTERACTIVE);
+        assertTrue(interactiveLatch.await(10, TimeUnit.SECONDS));
+        blockingLatch.countDown();
+        assertTrue(finishedLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("document", "background1", "background2"),
+                order);
+        instance.shutdown();
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PdfsandwichOCREngineConfTest {
+
+    @Test
+    public void testCopyConstructor() {
+        PdfsandwichOCREngineConf conf = new PdfsandwichOCREngineConf();
+        conf.setBinary("/opt/pdfsandwich");
+        conf.setWorkerCount(3);
+        conf.setQueueCapacity(7);
+        conf.setResultCacheDir(new File("/tmp/ocr-result-cache"));
+        conf.setResultCacheMaxBytes(1024);
+        conf.setMemoryCacheMaxBytes(2048);
+        conf.setDuplicateMaxDistance(4);
+        conf.setPageTimeoutSeconds(11);
+        conf.setPreprocessingGrayscale(true);
+        conf.setPreprocessingBinarization(true);
+        conf.setPreprocessingTargetDpi(200);
+        conf.setPreprocessingCropMargins(true);
+        conf.setInputTempFilePrefix("prefix");
+        conf.setSelectedLanguages(new LinkedList<>(Arrays.asList("deu", "eng")));
+        PdfsandwichOCREngineConf result = new PdfsandwichOCREngineConf(conf);
+        assertEquals(conf, result);
+        assertEquals(conf.hashCode(), result.hashCode());
+        assertEquals(3, result.getWorkerCount());
+        assertEquals(7, result.getQueueCapacity());
+        assertEquals(new File("/tmp/ocr-result-cache"), result.getResultCacheDir());
+        assertEquals(1024, result.getResultCacheMaxBytes());
+        assertEquals(2048, result.getMemoryCacheMaxBytes());
+        assertEquals(4, result.getDuplicateMaxDistance());
+        assertEquals(11, result.getPageTimeoutSeconds());
+        assertTrue(result.isPreprocessingGrayscale());
+        assertTrue(result.isPreprocessingBinarization());
+        assertEquals(200, result.getPreprocessingTargetDpi());
+        assertTrue(result.isPreprocessingCropMargins());
+        assertEquals("prefix", result.getInputTempFilePrefix());
+        //the copy has its own language list
+        conf.setSelectedLanguages(new LinkedList<>(Arrays.asList("fra")));
+        assertEquals(Arrays.asList("deu", "eng"), result.getSelectedLanguages());
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ *
+ * @author richter
+ */
+public class PdfsandwichOCREngineFactoryTest {
+
+    @Test
+    public void testCreate() {
+        PdfsandwichOCREngineFactory instance = new PdfsandwichOCREngineFactory(mock(IssueHandler.class));
+        PdfsandwichOCREngineConf oCREngineConf = new PdfsandwichOCREngineConf();
+        oCREngineConf.setResultCacheMaxBytes(-1);
+        PdfsandwichOCREngine result = instance.create(oCREngineConf);
+        try {
+            assertSame(oCREngineConf, result.getoCREngineConf());
+            assertNotSame(result, instance.create(oCREngineConf));
+        }finally {
+            result.shutdown();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import richtercloud.document.scanner.ifaces.ImageWrapper;
+import richtercloud.document.scanner.model.imagewrapper.DefaultImageWrapper;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ *
+ * @author richter
+ */
+public class PdfsandwichOCREngineTest {
+    private File tmpDir;
+    /**
+     * A shell script which copies the input PDF to the output PDF, so that
+     * the recognized text is the text of the input, after sleeping the number
+     * of seconds stored in {@code sleepFile} if it exists. It hangs for inputs
+     * whose name contains {@code hanging}.
+     */
+    private File binary;
+    private File sleepFile;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        tmpDir = Files.createTempDirectory(PdfsandwichOCREngineTest.class.getSimpleName()).toFile();
+        binary = new File(tmpDir, "pdfsandwich");
+        sleepFile = new File(tmpDir, "sleep");
+        Files.write(binary.toPath(),
+                ("#!/bin/sh\n"
+                + "if [ -f '"+sleepFile.getAbsolutePath()+"' ]; then sleep $(cat '"+sleepFile.getAbsolutePath()+"'); fi\n"
+                + "while [ $# -gt 1 ]; do if [ \"$1\" = \"-o\" ]; then output=\"$2\"; fi; shift; done\n"
+                + "case \"$1\" in *hanging*) sleep 60;; esac\n"
+                + "cp \"$1\" \"$output\"\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertTrue(binary.setExecutable(true));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if(tmpDir != null) {
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    private PdfsandwichOCREngine createEngine() {
+        return createEngine(new PdfsandwichOCREngineConf());
+    }
+
+    private PdfsandwichOCREngine createEngine(PdfsandwichOCREngineConf oCREngineConf) {
+        oCREngineConf.setBinary(binary.getAbsolutePath());
+        oCREngineConf.setResultCacheMaxBytes(-1);
+        return new PdfsandwichOCREngine(oCREngineConf,
+                mock(IssueHandler.class));
+    }
+
+    private File createPdf(String... pageTexts) throws IOException {
+        File retValue = File.createTempFile("document", ".pdf", tmpDir);
+        try (PDDocument document = new PDDocument()) {
+            for(String pageText : pageTexts) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
+                    contentStream.beginText();
+                    contentStream.setFont(PDType1Font.HELVETICA, 12);
+                    contentStream.newLineAtOffset(100, 700);
+                    contentStream.showText(pageText);
+                    contentStream.endText();
+                }
+            }
+            document.save(retValue);
+        }
+        return retValue;
+    }
+
+    private List<ImageWrapper> createPages(int pageCount) throws IOException {
+        File storageDir = new File(tmpDir, "storage");
+        Files.createDirectories(storageDir.toPath());
+        ImageWrapper[] retValue = new ImageWrapper[pageCount];
+        for(int i=0; i<pageCount; i++) {
+            BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(i%10, i/10, 0xffffff);
+            retValue[i] = new DefaultImageWrapper(storageDir,
+                    image,
+                    mock(IssueHandler.class));
+        }
+        return Arrays.asList(retValue);
+    }
+
+    private static byte[] getImageData(ImageWrapper page) throws IOException {
+        ByteArrayOutputStream retValue = new ByteArrayOutputStream();
+        ImageIO.write(page.getOriginalImage(), "png", retValue);
+        return retValue.toByteArray();
+    }
+
+    @Test
+    public void testRecognizePdf() throws Exception {
+        PdfsandwichOCREngine instance = createEngine();
+        try {
+            List<String> result = instance.recognizePdf(createPdf("page one", "page two"),
+                    null //sandwichPdfFile
+            );
+            assertEquals(2, result.size());
+            assertEquals("page one", result.get(0).trim());
+            assertEquals("page two", result.get(1).trim());
+        }finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Tests that recognitions of pages which are requested while their
+     * document is recognized wait for the text of the document.
+     */
+    @Test(timeout = 30000)
+    public void testRecognizeDocumentAsync() throws Exception {
+        Files.write(sleepFile.toPath(), "1".getBytes(StandardCharsets.UTF_8));
+        PdfsandwichOCREngine instance = createEngine();
+        try {
+            List<ImageWrapper> pages = createPages(2);
+            CompletableFuture<Void> result = instance.recognizeDocumentAsync(createPdf("page one", "page two"),
+                    pages);
+            String pageText = instance.recognizeImageData0(instance.getKey(pages.get(1)),
+                    getImageData(pages.get(1)));
+            assertEquals("page two", pageText.trim());
+            result.get(20, TimeUnit.SECONDS);
+            assertTrue(instance.isCached(instance.getKey(pages.get(0))));
+        }finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Tests that a page recognition doesn't wait for its document while the
+     * process of a document queued before hangs, but recognizes the page
+     * separately.
+     */
+    @Test(timeout = 20000)
+    public void testRecognizeDocumentAsyncHangingProcess() throws Exception {
+        PdfsandwichOCREngineConf oCREngineConf = new PdfsandwichOCREngineConf();
+        oCREngineConf.setPageTimeoutSeconds(1);
+        PdfsandwichOCREngine instance = createEngine(oCREngineConf);
+        try {
+            List<ImageWrapper> pages = createPages(31);
+            String[] hangingPageTexts = new String[30];
+            Arrays.fill(hangingPageTexts, "page");
+            File hangingPdf = new File(tmpDir, "hanging.pdf");
+            Files.move(createPdf(hangingPageTexts).toPath(),
+                    hangingPdf.toPath());
+            //hangs until its process is destroyed after 30 page timeouts
+            //which is longer than the test timeout
+            instance.recognizeDocumentAsync(hangingPdf,
+                    pages.subList(0, 30));
+            CompletableFuture<Void> result = instance.recognizeDocumentAsync(createPdf("page 31"),
+                    pages.subList(30, 31));
+            String pageText = instance.recognizeImageData0(instance.getKey(pages.get(30)),
+                    getImageData(pages.get(30)));
+            assertNotNull(pageText);
+            assertNotEquals("page 31", pageText.trim());
+            assertFalse(result.isDone());
+        }finally {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Tests that documents which are dropped or rejected because of a
+     * shutdown complete their futures so that page recognitions don't wait
+     * for them.
+     */
+    @Test(timeout = 30000)
+    public void testShutdown() throws Exception {
+        Files.write(sleepFile.toPath(), "2".getBytes(StandardCharsets.UTF_8));
+        PdfsandwichOCREngine instance = createEngine();
+        List<ImageWrapper> pages = createPages(3);
+        instance.recognizeDocumentAsync(createPdf("page one"),
+                pages.subList(0, 1));
+        CompletableFuture<Void> queued = instance.recognizeDocumentAsync(createPdf("page two"),
+                pages.subList(1, 2));
+        instance.shutdown();
+        assertTrue(queued.isCompletedExceptionally());
+        CompletableFuture<Void> rejected = instance.recognizeDocumentAsync(createPdf("page three"),
+                pages.subList(2, 3));
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("ExecutionException expected");
+        }catch(ExecutionException expected) {
+        }
+        //the pages are recognized separately
+        Files.delete(sleepFile.toPath());
+        for(ImageWrapper page : pages.subList(1, 3)) {
+            assertNotNull(instance.recognizeImageData0(instance.getKey(page),
+                    getImageData(page)));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import richtercloud.document.scanner.model.imagewrapper.PerceptualHash;
+
+/**
+ *
+ * @author richter
+ */
+public class PerceptualHashIndexTest {
+
+    private static int distance(long[] hash0,
+            long[] hash1) {
+        int retValue = 0;
+        for(int i=0; i<hash0.length; i++) {
+            retValue += Long.bitCount(hash0[i] ^ hash1[i]);
+        }
+        return retValue;
+    }
+
+    private static long[] flipBits(long[] hash,
+            int bitCount,
+            Random random) {
+        long[] retValue = hash.clone();
+        for(int i=0; i<bitCount; i++) {
+            int bit = random.nextInt(hash.length*Long.SIZE);
+            retValue[bit/Long.SIZE] ^= 1L << (bit%Long.SIZE);
+        }
+        return retValue;
+    }
+
+    /**
+     * Tests that {@link PerceptualHashIndex#find(long[]) } returns the same
+     * values as comparing the query with every hash.
+     */
+    @Test
+    public void testFind() {
+        Random random = new Random(1);
+        int maxDistance = 6;
+        PerceptualHashIndex<Integer> instance = new PerceptualHashIndex<>(256,
+                maxDistance);
+        List<long[]> hashes = new ArrayList<>();
+        for(int i=0; i<200; i++) {
+            long[] hash = i%2 == 0 || hashes.isEmpty()
+                    ? new long[] {random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong()}
+                    : flipBits(hashes.get(random.nextInt(hashes.size())),
+                            random.nextInt(2*maxDistance),
+                            random);
+            hashes.add(hash);
+            instance.put(hash, i);
+        }
+        assertEquals(200, instance.size());
+        for(int query=0; query<50; query++) {
+            long[] queryHash = flipBits(hashes.get(random.nextInt(hashes.size())),
+                    random.nextInt(2*maxDistance),
+                    random);
+            Set<Integer> expResult = new HashSet<>();
+            for(int i=0; i<hashes.size(); i++) {
+                if(distance(hashes.get(i), queryHash) <= maxDistance) {
+                    expResult.add(i);
+                }
+            }
+            List<Integer> result = instance.find(queryHash);
+            assertEquals(expResult, new HashSet<>(result));
+            for(int i=1; i<result.size(); i++) {
+                assertTrue(distance(hashes.get(result.get(i-1)), queryHash)
+                        <= distance(hashes.get(result.get(i)), queryHash));
+            }
+        }
+    }
+
+    /**
+     * Creates an image which looks like a document page with margins and a
+     * random number of lines of words.
+     */
+    private static BufferedImage createPage(Random random) {
+        int width = 340;
+        int height = 440;
+        BufferedImage retValue = new BufferedImage(width,
+                height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = retValue.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.DARK_GRAY);
+        int lineCount = 3+random.nextInt(30);
+        for(int line=0; line<lineCount; line++) {
+            int y = 50+line*11;
+            int x = 40+(random.nextInt(4) == 0 ? 30 : 0);
+            int lineEnd = random.nextInt(5) == 0
+                    ? 80+random.nextInt(width-120)
+                    : width-40;
+            while(x < lineEnd) {
+                int wordWidth = Math.min(8+random.nextInt(40), lineEnd-x);
+                graphics.fillRect(x, y, wordWidth, 6);
+                x += wordWidth+6;
+            }
+        }
+        graphics.dispose();
+        return retValue;
+    }
+
+    /**
+     * Tests that pages whose hashes have long runs of unset bits due to blank
+     * margins and areas aren't all compared with the query.
+     */
+    @Test
+    public void testFindPageLikeHashes() {
+        Random random = new Random(1);
+        int maxDistance = 10;
+        PerceptualHashIndex<Integer> instance = new PerceptualHashIndex<>(PerceptualHash.BIT_COUNT,
+                maxDistance);
+        List<long[]> hashes = new ArrayList<>();
+        int pageCount = 400;
+        for(int i=0; i<pageCount; i++) {
+            long[] hash = PerceptualHash.compute(createPage(random));
+            hashes.add(hash);
+            instance.put(hash, i);
+        }
+        int candidateCount = 0;
+        int queryCount = 50;
+        for(int query=0; query<queryCount; query++) {
+            long[] queryHash = flipBits(hashes.get(random.nextInt(hashes.size())),
+                    random.nextInt(maxDistance),
+                    random);
+            Set<Integer> expResult = new HashSet<>();
+            for(int i=0; i<hashes.size(); i++) {
+                if(distance(hashes.get(i), queryHash) <= maxDistance) {
+                    expResult.add(i);
+                }
+            }
+            assertEquals(expResult, new HashSet<>(instance.find(queryHash)));
+            candidateCount += instance.getCandidateCount(queryHash);
+        }
+        //blocks of contiguous bits make every query examine about 80 % of
+        //the pages
+        assertTrue(String.format("%d candidates examined per query on average",
+                        candidateCount/queryCount),
+                candidateCount/queryCount <= pageCount/10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitMaxDistanceTooLarge() {
+        new PerceptualHashIndex<>(256,
+                32);
+    }
+}
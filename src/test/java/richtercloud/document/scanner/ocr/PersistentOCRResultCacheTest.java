@@ -0,0 +1,84 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PersistentOCRResultCacheTest {
+
+    @Test
+    public void testGetPut() throws IOException {
+        File cacheDir = Files.createTempDirectory(PersistentOCRResultCacheTest.class.getSimpleName()).toFile();
+        PersistentOCRResultCache instance = new PersistentOCRResultCache(cacheDir,
+                1024*1024);
+        String key = PersistentOCRResultCache.createKey("image".getBytes(StandardCharsets.UTF_8),
+                "fingerprint");
+        assertNull(instance.get(key));
+        instance.put(key, "text\nwith newline");
+        assertEquals("text\nwith newline", instance.get(key));
+        //a new instance for the same directory has to find the entry
+        PersistentOCRResultCache instance2 = new PersistentOCRResultCache(cacheDir,
+                1024*1024);
+        assertEquals("text\nwith newline", instance2.get(key));
+        assertEquals(1, instance2.getHitCount());
+    }
+
+    @Test
+    public void testChecksumValidation() throws IOException {
+        File cacheDir = Files.createTempDirectory(PersistentOCRResultCacheTest.class.getSimpleName()).toFile();
+        PersistentOCRResultCache instance = new PersistentOCRResultCache(cacheDir,
+                1024*1024);
+        String key = PersistentOCRResultCache.createKey("image".getBytes(StandardCharsets.UTF_8),
+                "fingerprint");
+        instance.put(key, "text");
+        File entryFile = new File(new File(cacheDir, key.substring(0, 2)),
+                key+".txt");
+        assertTrue(entryFile.exists());
+        Files.write(entryFile.toPath(), "invalid\ntext".getBytes(StandardCharsets.UTF_8));
+        assertNull(instance.get(key));
+        assertFalse(entryFile.exists());
+        assertEquals(0, instance.getEntryCount());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File cacheDir = Files.createTempDirectory(PersistentOCRResultCacheTest.class.getSimpleName()).toFile();
+        PersistentOCRResultCache instance = new PersistentOCRResultCache(cacheDir,
+                150 //maxBytes (an entry with one character has 66 bytes)
+        );
+        String key1 = PersistentOCRResultCache.createKey(new byte[] {1}, "");
+        String key2 = PersistentOCRResultCache.createKey(new byte[] {2}, "");
+        String key3 = PersistentOCRResultCache.createKey(new byte[] {3}, "");
+        instance.put(key1, "1");
+        instance.put(key2, "2");
+        instance.get(key1);
+            //makes key2 the least recently used entry
+        instance.put(key3, "3");
+        assertEquals("1", instance.get(key1));
+        assertNull(instance.get(key2));
+        assertEquals("3", instance.get(key3));
+        assertEquals(1, instance.getEvictionCount());
+        assertTrue(instance.getTotalBytes() <= 150);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import richtercloud.message.handler.IssueHandler;
+
+/**
+ *
+ * @author richter
+ */
+public class TesseractOCREngineTest {
+
+    /**
+     * Creates a shell script which answers {@code --version} and otherwise
+     * writes one page of text per input file.
+     */
+    private static File createBinary() throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        File retValue = File.createTempFile(TesseractOCREngineTest.class.getSimpleName(), ".sh");
+        retValue.deleteOnExit();
+        Files.write(retValue.toPath(),
+                ("#!/bin/sh\n"
+                + "if [ \"$1\" = \"--version\" ]; then echo 'tesseract 4.0'; exit 0; fi\n"
+                + "case \"$3\" in *.txt) n=$(wc -l < \"$3\");; *) n=1;; esac\n"
+                + ": > \"$4.txt\"\n"
+                + "i=0; while [ $i -lt $n ]; do printf 'page\\n\\f' >> \"$4.txt\"; i=$((i+1)); done\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertTrue(retValue.setExecutable(true));
+        return retValue;
+    }
+
+    private static TesseractOCREngineConf createConf(File binary,
+            boolean stripRecognitionEnabled) {
+        TesseractOCREngineConf retValue = new TesseractOCREngineConf();
+        retValue.setBinary(binary.getAbsolutePath());
+        retValue.setSelectedLanguages(Arrays.asList("eng"));
+        retValue.setProcessPoolSize(2);
+        retValue.setStripRecognitionEnabled(stripRecognitionEnabled);
+        retValue.setStripMinPixels(10000);
+        retValue.setResultCacheMaxBytes(-1);
+        return retValue;
+    }
+
+    /**
+     * Tests that the text of an image which is recognized in strips contains
+     * one page separator like the text of a whole page and that results of
+     * configurations with and without strip recognition don't share cache
+     * keys.
+     * @throws Exception
+     */
+    @Test(timeout = 30000)
+    public void testRecognizeImageStrips() throws Exception {
+        File binary = createBinary();
+        BufferedImage image = new BufferedImage(400,
+                400,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(50, 50, 300, 50);
+            graphics.fillRect(50, 300, 300, 50);
+        }finally {
+            graphics.dispose();
+        }
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        TesseractOCREngine instance = new TesseractOCREngine(createConf(binary,
+                        true //stripRecognitionEnabled
+                ),
+                issueHandler);
+        TesseractOCREngine wholePageInstance = new TesseractOCREngine(createConf(binary,
+                        false //stripRecognitionEnabled
+                ),
+                issueHandler);
+        try {
+            String result = instance.recognizeImages(Arrays.asList(image));
+            assertEquals("page\npage\n\f", result);
+            String wholePageResult = wholePageInstance.recognizeImages(Arrays.asList(image));
+            assertEquals("page\n\f", wholePageResult);
+            assertNotEquals(instance.getConfigurationFingerprint(),
+                    wholePageInstance.getConfigurationFingerprint());
+        }finally {
+            instance.shutdown();
+            wholePageInstance.shutdown();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class TesseractProcessPoolTest {
+
+    @Test
+    public void testSplitPages() {
+        List<String> result = TesseractProcessPool.splitPages("page 1\n\fpage 2\n\f",
+                2);
+        assertEquals(Arrays.asList("page 1\n\f", "page 2\n\f"),
+                result);
+        //single pages are returned unchanged
+        result = TesseractProcessPool.splitPages("page 1\n\f",
+                1);
+        assertEquals(Arrays.asList("page 1\n\f"),
+                result);
+        //a missing separator has to be detected
+        result = TesseractProcessPool.splitPages("page 1\n\fpage 2\n\f",
+                3);
+        assertNull(result);
+    }
+
+    /**
+     * Creates a shell script which answers {@code --version} and otherwise
+     * writes one page of text per input file after sleeping
+     * {@code sleepSeconds}.
+     */
+    private static File createBinary(String sleepSeconds) throws IOException {
+        assumeTrue(new File("/bin/sh").exists());
+        File retValue = File.createTempFile(TesseractProcessPoolTest.class.getSimpleName(), ".sh");
+        Files.write(retValue.toPath(),
+                ("#!/bin/sh\n"
+                + "if [ \"$1\" = \"--version\" ]; then echo 'tesseract 4.0'; exit 0; fi\n"
+                + "sleep "+sleepSeconds+"\n"
+                + "case \"$3\" in *.txt) n=$(wc -l < \"$3\");; *) n=1;; esac\n"
+                + ": > \"$4.txt\"\n"
+                + "i=0; while [ $i -lt $n ]; do printf 'page\\f' >> \"$4.txt\"; i=$((i+1)); done\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertTrue(retValue.setExecutable(true));
+        return retValue;
+    }
+
+    private static CompletableFuture<TesseractProcessPool.PageOutput> submit(TesseractProcessPool instance,
+            OCRPriority priority) throws IOException {
+        File imageFile = File.createTempFile(TesseractProcessPoolTest.class.getSimpleName(), ".png");
+        imageFile.deleteOnExit();
+        return instance.submitAll(Collections.singletonList(imageFile),
+                null, //preparer
+                priority).get(0);
+    }
+
+    /**
+     * Tests that a background page which is submitted while all processes are
+     * busy is recognized if a regular drain task recognizes an interactive
+     * page before the interactive drain task runs.
+     */
+    @Test(timeout = 30000)
+    public void testSubmitAllMixedPriorities() throws Exception {
+        File binary = createBinary("1");
+        TesseractProcessPool instance = new TesseractProcessPool(binary.getAbsolutePath(),
+                "eng",
+                1, //processCount
+                10, //maxPagesPerProcess
+                0 //pageTimeoutMillis
+        );
+        try {
+            CompletableFuture<TesseractProcessPool.PageOutput> background1 = submit(instance,
+                    OCRPriority.BACKGROUND);
+            Thread.sleep(200);
+            //runs on the additional process
+            CompletableFuture<TesseractProcessPool.PageOutput> interactive1 = submit(instance,
+                    OCRPriority.INTERACTIVE);
+            Thread.sleep(200);
+            //the drain task of background2 takes interactive2 once background1
+            //is recognized
+            CompletableFuture<TesseractProcessPool.PageOutput> background2 = submit(instance,
+                    OCRPriority.BACKGROUND);
+            CompletableFuture<TesseractProcessPool.PageOutput> interactive2 = submit(instance,
+                    OCRPriority.INTERACTIVE);
+            for(CompletableFuture<TesseractProcessPool.PageOutput> result : Arrays.asList(background1,
+                    interactive1,
+                    interactive2,
+                    background2)) {
+                TesseractProcessPool.PageOutput pageOutput = result.get(20, TimeUnit.SECONDS);
+                assertEquals("page\f", pageOutput.getText());
+            }
+            assertEquals(0, instance.getPendingPageCount());
+        }finally {
+            instance.shutdown();
+        }
+    }
+}
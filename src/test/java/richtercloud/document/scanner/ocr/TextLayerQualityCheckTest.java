@@ -0,0 +1,39 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package richtercloud.document.scanner.ocr;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class TextLayerQualityCheckTest {
+
+    @Test
+    public void testIsUsable() {
+        TextLayerQualityCheck instance = new TextLayerQualityCheck();
+        assertTrue(instance.isUsable("Sehr geehrte Damen und Herren,\nanbei die Rechnung Nr. 2017-42 vom 3.5.2017."));
+        assertFalse(instance.isUsable(null));
+        assertFalse(instance.isUsable(" \n\t"));
+        //too short
+        assertFalse(instance.isUsable("Seite 1"));
+        //broken font encoding
+        assertFalse(instance.isUsable("\uFFFD\uFFFD\uFFFD \uFFFD\uFFFD \uFFFD\uFFFD\uFFFD\uFFFD \uFFFD\uFFFD\uFFFD \uFFFD\uFFFD\uFFFD\uFFFD\uFFFD"));
+        //OCR garbage
+        assertFalse(instance.isUsable("~~;; .,-' |||| %$& ;;:: ''' \\\\// ,,.. ~~;; Rechnung"));
+    }
+}